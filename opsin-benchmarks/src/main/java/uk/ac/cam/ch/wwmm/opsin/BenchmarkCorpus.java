@@ -0,0 +1,49 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the chemical names from one of the name to InChI test files of opsin-inchi
+ * e.g. fusedRings.txt, stereochemistry.txt, or generates the synthetic corpus using {@link NameCorpusGenerator}
+ */
+class BenchmarkCorpus {
+
+	private static final String CORPUS_LOCATION = "uk/ac/cam/ch/wwmm/opsin/";
+	static final String SYNTHETIC_CORPUS = "synthetic";
+	private static final int SYNTHETIC_CORPUS_SIZE = 500;
+	private static final long SYNTHETIC_CORPUS_SEED = 0;
+
+	/**
+	 * Returns the names in the given corpus, in file order
+	 * @param corpusName The file name without the .txt extension, or {@link #SYNTHETIC_CORPUS}
+	 * @return
+	 * @throws IOException
+	 */
+	static List<String> loadNames(String corpusName) throws IOException {
+		if (corpusName.equals(SYNTHETIC_CORPUS)) {
+			return new NameCorpusGenerator(SYNTHETIC_CORPUS_SEED).generate(SYNTHETIC_CORPUS_SIZE, true);
+		}
+		String resourceName = CORPUS_LOCATION + corpusName + ".txt";
+		InputStream is = BenchmarkCorpus.class.getClassLoader().getResourceAsStream(resourceName);
+		if (is == null) {
+			throw new IOException("Could not find benchmark corpus: " + resourceName);
+		}
+		List<String> names = new ArrayList<String>();
+		try (BufferedReader input = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = input.readLine()) != null) {
+				if (line.startsWith("//") || line.trim().isEmpty()) {
+					continue;
+				}
+				names.add(line.split("\t")[0]);
+			}
+		}
+		return names;
+	}
+}
@@ -0,0 +1,23 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the OPSIN benchmarks with the GC profiler enabled, so allocation rates are reported alongside throughput.
+ * Accepts the same arguments as the standard JMH runner e.g. a regular expression to select benchmarks,
+ * -p corpus=fusedRings to restrict parameters, -rf json -rff results.json to save results for comparison
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
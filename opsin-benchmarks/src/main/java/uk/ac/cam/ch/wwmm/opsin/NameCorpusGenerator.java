@@ -0,0 +1,693 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * Generates synthetic systematic names for load testing, composed from OPSIN's own token resources.
+ * Names are substitutive: substituent prefixes on a chain, ring or simple benzo-fused parent, optionally with unsaturation and a suffix e.g.
+ * 3-bromo-2-(2-chloroethyl)pent-3-en-1-ol, 5-methoxybenzo[b]thiophen-3-amine<br>
+ * Substituents may themselves be substituted up to the maximum nesting depth.
+ * The number of substituents, and the proportions of ring/fused parents, unsaturation, suffixes and nested substituents are tunable.
+ * The grammar does not guarantee that the name describes a valid structure (e.g. valency may be exceeded), hence generated names may be validated using OPSIN,
+ * with names OPSIN cannot interpret being replaced.<br>
+ * For a given seed and settings, the same names are always generated
+ */
+class NameCorpusGenerator {
+
+	private static final String RESOURCE_PATH = "uk/ac/cam/ch/wwmm/opsin/resources/";
+	private static final int MAX_RING_SIZE_FOR_FUSION = 6;
+	private static final int MAX_ATTEMPTS_PER_NAME = 1000;
+	private static final Pattern WORD = Pattern.compile("[a-z]+");
+	private static final Pattern ACID_OR_WORD = Pattern.compile("[a-z]+( acid)?");
+
+	private final Random random;
+
+	/** Alkane stems e.g. meth, eth, prop, indexed by chain length - 1 */
+	private final List<String> chainStems = new ArrayList<String>();
+	private final List<RingParent> rings = new ArrayList<RingParent>();
+	/** Rings with at most {@link #MAX_RING_SIZE_FOR_FUSION} atoms that may be fused to */
+	private final List<RingParent> monocyclicRings = new ArrayList<RingParent>();
+	/** Fusion prefixes of monocycles e.g. benzo, furo, pyrido */
+	private final List<String> fusionPrefixes = new ArrayList<String>();
+	private final List<String> simpleSubstituents = new ArrayList<String>();
+	/** Suffixes that are given locants e.g. ol, amine */
+	private final List<String> locantedSuffixes = new ArrayList<String>();
+	/** Suffixes that are implicitly at the end of a chain e.g. al, nitrile */
+	private final List<String> terminalSuffixes = new ArrayList<String>();
+	/** e.g. 2 -> di */
+	private final Map<Integer, String> basicMultipliers = new HashMap<Integer, String>();
+	/** e.g. 2 -> bis */
+	private final Map<Integer, String> groupMultipliers = new HashMap<Integer, String>();
+	/** en and yn */
+	private final List<String> unsaturators = new ArrayList<String>();
+
+	private double meanSubstituents = 1.5;
+	private int maxSubstituentMultiplier = 3;
+	private int maxNestingDepth = 2;
+	private double nestingProbability = 0.15;
+	private double ringParentProbability = 0.4;
+	private double fusedRingProbability = 0.1;
+	private double suffixProbability = 0.5;
+	private double unsaturationProbability = 0.2;
+	private int maxChainLength = 12;
+
+	/**
+	 * @param seed
+	 * @throws IOException If OPSIN's resources could not be read
+	 */
+	NameCorpusGenerator(long seed) throws IOException {
+		this.random = new Random(seed);
+		ResourceGetter resourceGetter = new ResourceGetter(RESOURCE_PATH);
+		Map<String, String> alkaneStemsByLength = new HashMap<String, String>();
+		for (Token token : readTokens(resourceGetter, "alkanes.xml")) {
+			if ("alkaneStem".equals(token.get("subType"))) {
+				alkaneStemsByLength.put(String.valueOf(token.get("value").length()), token.text);
+			}
+		}
+		for (Token token : readTokens(resourceGetter, "multipliers.xml")) {
+			if (!"multiplier".equals(token.get("tagname"))) {
+				continue;
+			}
+			int value = Integer.parseInt(token.get("value"));
+			if ("basic".equals(token.get("type")) && value >= 2 && !basicMultipliers.containsKey(value)) {
+				basicMultipliers.put(value, value >= 4 ? token.text + "a" : token.text);
+				if (value >= 10 && !alkaneStemsByLength.containsKey(token.get("value"))) {
+					//multipliers double as stems for longer chains e.g. dodecane
+					alkaneStemsByLength.put(token.get("value"), token.text);
+				}
+			}
+			else if ("group".equals(token.get("type"))) {
+				groupMultipliers.put(value, token.text);
+			}
+		}
+		for (int i = 1; alkaneStemsByLength.containsKey(String.valueOf(i)); i++) {
+			chainStems.add(alkaneStemsByLength.get(String.valueOf(i)));
+		}
+		for (Token token : readTokens(resourceGetter, "arylGroups.xml")) {
+			if ("ring".equals(token.get("subType"))) {
+				RingParent ring = RingParent.fromToken(token);
+				if (ring != null) {
+					rings.add(ring);
+					if (ring.locants.size() <= MAX_RING_SIZE_FOR_FUSION) {
+						monocyclicRings.add(ring);
+					}
+				}
+			}
+		}
+		for (Token token : readTokens(resourceGetter, "fusionComponents.xml")) {
+			String labels = token.get("labels");
+			if ("fusionRing".equals(token.get("subType")) && labels != null &&
+					labels.split("/").length <= MAX_RING_SIZE_FOR_FUSION && token.get("addHeteroAtom") == null) {
+				fusionPrefixes.add(token.text);
+			}
+		}
+		for (Token token : readTokens(resourceGetter, "simpleSubstituents.xml")) {
+			String subType = token.get("subType");
+			String smiles = token.get("value");
+			//substituents with one point of attachment, excluding metals/charged atoms e.g. cuprio
+			if (("halideOrPseudoHalide".equals(subType) || ("simpleSubstituent".equals(subType) && smiles.indexOf('[') < 0)) &&
+					smiles.startsWith("-") && smiles.indexOf('-', 1) < 0 && WORD.matcher(token.text).matches()) {
+				simpleSubstituents.add(token.text);
+			}
+		}
+		for (Token token : readTokens(resourceGetter, "suffixes.xml")) {
+			if (!"suffix".equals(token.get("tagname")) || !"root".equals(token.get("type"))) {
+				continue;
+			}
+			String symbol = token.get("symbol");
+			if ("terminal".equals(token.get("subType"))) {
+				if (("s".equals(symbol) || "\u00a5".equals(symbol)) && ACID_OR_WORD.matcher(token.text).matches()) {
+					//euphonic o e.g. hexanoic acid, hexanoate
+					String value = token.get("value");
+					boolean euphonicO = value.equals("ic") || value.equals("ate") || value.startsWith("hydroxam");
+					terminalSuffixes.add(euphonicO ? "o" + token.text : token.text);
+				}
+			}
+			else if (token.get("subType") == null && "s".equals(symbol) && ACID_OR_WORD.matcher(token.text).matches()) {
+				locantedSuffixes.add(token.text);
+			}
+		}
+		for (Token token : readTokens(resourceGetter, "unsaturators.xml")) {
+			if (!"1".equals(token.get("value"))) {
+				//the elidable form e.g. en
+				unsaturators.add(token.text.substring(0, token.text.length() - 1));
+			}
+		}
+		Collections.sort(simpleSubstituents);//independent of resource file order
+	}
+
+	/**
+	 * Generates a name. The name is not validated
+	 * @return
+	 */
+	String generateName() {
+		return generateParent(0).name;
+	}
+
+	/**
+	 * Writes the given number of newline delimited names
+	 * @param count
+	 * @param validate Only write names that OPSIN can interpret
+	 * @param output
+	 * @throws IOException
+	 */
+	void generate(int count, boolean validate, Writer output) throws IOException {
+		NameToStructure n2s = validate ? NameToStructure.getInstance() : null;
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		for (int i = 0; i < count; i++) {
+			output.write(generateName(n2s, n2sConfig));
+			output.write('\n');
+		}
+		output.flush();
+	}
+
+	/**
+	 * Returns the given number of names
+	 * @param count
+	 * @param validate Only return names that OPSIN can interpret
+	 * @return
+	 */
+	List<String> generate(int count, boolean validate) {
+		NameToStructure n2s = validate ? NameToStructure.getInstance() : null;
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		List<String> names = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			names.add(generateName(n2s, n2sConfig));
+		}
+		return names;
+	}
+
+	private String generateName(NameToStructure n2s, NameToStructureConfig n2sConfig) {
+		for (int attempt = 0; attempt < MAX_ATTEMPTS_PER_NAME; attempt++) {
+			String name = generateName();
+			if (n2s == null || n2s.parseChemicalName(name, n2sConfig).getStatus() == OPSIN_RESULT_STATUS.SUCCESS) {
+				return name;
+			}
+		}
+		throw new IllegalStateException("Failed to generate an interpretable name in " + MAX_ATTEMPTS_PER_NAME + " attempts; check the generator's settings");
+	}
+
+	/**
+	 * A parent (with its prefixes and suffixes) as a whole name, or if depth > 0 as a substituent
+	 * @param depth
+	 * @return
+	 */
+	private Parent generateParent(int depth) {
+		boolean isSubstituent = depth > 0;
+		Parent parent;
+		if (random.nextDouble() < ringParentProbability) {
+			parent = random.nextDouble() < fusedRingProbability ? generateFusedRing() : pick(rings).toParent();
+		}
+		else {
+			int maxLength = Math.min(maxChainLength, chainStems.size());
+			if (isSubstituent) {
+				maxLength = Math.min(maxLength, 6);
+			}
+			int length = 1 + random.nextInt(maxLength);
+			parent = new Parent(chainStems.get(length - 1), locantsUpTo(length), true);
+		}
+		//e.g. propane, pyridine but furan
+		boolean takesE = parent.isChain || !parent.stem.endsWith("an");
+		List<String> freeLocants = new ArrayList<String>(parent.locants);
+		Collections.shuffle(freeLocants, random);
+
+		StringBuilder ending = new StringBuilder();
+		String endingLocant = null;
+		if (parent.isChain && parent.locants.size() >= 2 && random.nextDouble() < unsaturationProbability) {
+			String locant = String.valueOf(1 + random.nextInt(parent.locants.size() - 1));
+			ending.append('-').append(locant).append('-').append(pick(unsaturators));
+			endingLocant = locant;
+		}
+		else {
+			ending.append(parent.isChain ? "an" : "");
+		}
+		if (isSubstituent) {
+			if (parent.isChain && endingLocant == null) {
+				//e.g. ethyl
+				ending.setLength(0);
+				ending.append("yl");
+				freeLocants.remove("1");
+			}
+			else {
+				String locant = takeLocant(freeLocants);
+				appendWithLocants(ending, Collections.singletonList(locant), "yl", takesE);
+			}
+		}
+		else if (random.nextDouble() < suffixProbability) {
+			if (parent.isChain && random.nextBoolean()) {
+				freeLocants.remove("1");
+				appendElidingE(ending, pick(terminalSuffixes), takesE);
+			}
+			else {
+				int multiplier = Math.min(chooseMultiplier(), freeLocants.size());
+				if (multiplier > 0) {
+					List<String> locants = takeLocants(freeLocants, multiplier);
+					appendWithLocants(ending, locants, (multiplier > 1 ? basicMultipliers.get(multiplier) : "") + pick(locantedSuffixes), takesE);
+				}
+				else {
+					appendElidingE(ending, "", takesE);
+				}
+			}
+		}
+		else {
+			appendElidingE(ending, "", takesE);
+		}
+
+		String prefixes = generatePrefixes(freeLocants, depth);
+		StringBuilder name = new StringBuilder();
+		name.append(prefixes).append(parent.stem).append(ending);
+		return new Parent(name.toString(), parent.locants, parent.isChain);
+	}
+
+	private Parent generateFusedRing() {
+		RingParent ring = pick(monocyclicRings);
+		String fusionPrefix = pick(fusionPrefixes);
+		char bond = (char) ('a' + random.nextInt(3));
+		int atomCount = ring.locants.size() + 4;
+		return new Parent(fusionPrefix + "[" + bond + "]" + ring.stem, locantsUpTo(atomCount), false);
+	}
+
+	private String generatePrefixes(List<String> freeLocants, int depth) {
+		int substituentCount = poisson(depth == 0 ? meanSubstituents : meanSubstituents / 2);
+		List<String> prefixes = new ArrayList<String>();
+		Set<String> substituentsUsed = new HashSet<String>();
+		for (int i = 0; i < substituentCount && !freeLocants.isEmpty(); i++) {
+			String substituent;
+			if (depth < maxNestingDepth && random.nextDouble() < nestingProbability) {
+				substituent = generateParent(depth + 1).name;
+			}
+			else {
+				substituent = random.nextInt(3) == 0 ? pick(chainStems.subList(0, Math.min(6, chainStems.size()))) + "yl" : pick(simpleSubstituents);
+			}
+			if (!substituentsUsed.add(substituent)) {
+				continue;
+			}
+			int multiplier = Math.min(chooseMultiplier(), freeLocants.size());
+			List<String> locants = takeLocants(freeLocants, multiplier);
+			StringBuilder prefix = new StringBuilder();
+			appendLocants(prefix, locants);
+			if (substituent.indexOf('-') >= 0) {
+				//compound substituents are bracketed e.g. bis(2-chloroethyl)
+				prefix.append(multiplier > 1 ? groupMultipliers.get(multiplier) : "");
+				prefix.append('(').append(substituent).append(')');
+			}
+			else {
+				prefix.append(multiplier > 1 ? basicMultipliers.get(multiplier) : "");
+				prefix.append(substituent);
+			}
+			prefixes.add(prefix.toString());
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < prefixes.size(); i++) {
+			if (i > 0) {
+				sb.append('-');
+			}
+			sb.append(prefixes.get(i));
+		}
+		return sb.toString();
+	}
+
+	private int chooseMultiplier() {
+		int multiplier = 1;
+		while (multiplier < maxSubstituentMultiplier && random.nextInt(3) == 0) {
+			multiplier++;
+		}
+		return multiplier;
+	}
+
+	/**
+	 * Appends e.g. -2,3-diol, adding the e of ane/ene/yne/ine etc. if the text starts with a consonant
+	 */
+	private static void appendWithLocants(StringBuilder ending, List<String> locants, String text, boolean takesE) {
+		if (takesE && !startsWithVowel(text)) {
+			ending.append('e');
+		}
+		ending.append('-');
+		appendLocants(ending, locants);
+		ending.append(text);
+	}
+
+	/**
+	 * Appends e.g. nitrile or al, adding the e of ane/ene/yne/ine etc. if the text is empty or starts with a consonant
+	 */
+	private static void appendElidingE(StringBuilder ending, String text, boolean takesE) {
+		if (takesE && (text.isEmpty() || !startsWithVowel(text))) {
+			ending.append('e');
+		}
+		ending.append(text);
+	}
+
+	private static void appendLocants(StringBuilder sb, List<String> locants) {
+		List<String> sorted = new ArrayList<String>(locants);
+		Collections.sort(sorted, new LocantComparator());
+		for (int i = 0; i < sorted.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(sorted.get(i));
+		}
+		sb.append('-');
+	}
+
+	private static boolean startsWithVowel(String text) {
+		return "aeiouy".indexOf(text.charAt(0)) >= 0;
+	}
+
+	private static List<String> locantsUpTo(int n) {
+		List<String> locants = new ArrayList<String>(n);
+		for (int i = 1; i <= n; i++) {
+			locants.add(String.valueOf(i));
+		}
+		return locants;
+	}
+
+	private static String takeLocant(List<String> freeLocants) {
+		return freeLocants.isEmpty() ? "1" : freeLocants.remove(freeLocants.size() - 1);
+	}
+
+	private static List<String> takeLocants(List<String> freeLocants, int count) {
+		List<String> locants = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			locants.add(takeLocant(freeLocants));
+		}
+		return locants;
+	}
+
+	private int poisson(double mean) {
+		double limit = Math.exp(-mean);
+		double p = random.nextDouble();
+		int k = 0;
+		while (p > limit) {
+			p *= random.nextDouble();
+			k++;
+		}
+		return k;
+	}
+
+	private <T> T pick(List<T> list) {
+		return list.get(random.nextInt(list.size()));
+	}
+
+	/**
+	 * Sets the mean number of substituent prefixes on the parent of a name, substituents have half this many. Default 1.5
+	 * @param meanSubstituents
+	 */
+	void setMeanSubstituents(double meanSubstituents) {
+		this.meanSubstituents = meanSubstituents;
+	}
+
+	/**
+	 * Sets the maximum multiplier of a substituent or suffix e.g. 3 allows trichloro. Default 3
+	 * @param maxSubstituentMultiplier
+	 */
+	void setMaxSubstituentMultiplier(int maxSubstituentMultiplier) {
+		if (maxSubstituentMultiplier < 1 || !basicMultipliers.containsKey(Math.max(maxSubstituentMultiplier, 2)) || !groupMultipliers.containsKey(Math.max(maxSubstituentMultiplier, 2))) {
+			throw new IllegalArgumentException("Unsupported multiplier: " + maxSubstituentMultiplier);
+		}
+		this.maxSubstituentMultiplier = maxSubstituentMultiplier;
+	}
+
+	/**
+	 * Sets how deeply substituents may be substituted. Default 2
+	 * @param maxNestingDepth
+	 */
+	void setMaxNestingDepth(int maxNestingDepth) {
+		this.maxNestingDepth = maxNestingDepth;
+	}
+
+	/**
+	 * Sets the probability of a substituent itself being substituted (subject to the maximum nesting depth). Default 0.15
+	 * @param nestingProbability
+	 */
+	void setNestingProbability(double nestingProbability) {
+		this.nestingProbability = nestingProbability;
+	}
+
+	/**
+	 * Sets the probability of a parent being a ring rather than a chain. Default 0.4
+	 * @param ringParentProbability
+	 */
+	void setRingParentProbability(double ringParentProbability) {
+		this.ringParentProbability = ringParentProbability;
+	}
+
+	/**
+	 * Sets the probability of a ring parent being a simple fused ring system e.g. benzo[b]thiophene. Default 0.1
+	 * @param fusedRingProbability
+	 */
+	void setFusedRingProbability(double fusedRingProbability) {
+		this.fusedRingProbability = fusedRingProbability;
+	}
+
+	/**
+	 * Sets the probability of a name having a suffix. Default 0.5
+	 * @param suffixProbability
+	 */
+	void setSuffixProbability(double suffixProbability) {
+		this.suffixProbability = suffixProbability;
+	}
+
+	/**
+	 * Sets the probability of a chain having a double or triple bond. Default 0.2
+	 * @param unsaturationProbability
+	 */
+	void setUnsaturationProbability(double unsaturationProbability) {
+		this.unsaturationProbability = unsaturationProbability;
+	}
+
+	/**
+	 * Sets the maximum length of the main chain. Default 12
+	 * @param maxChainLength
+	 */
+	void setMaxChainLength(int maxChainLength) {
+		if (maxChainLength < 1 || maxChainLength > chainStems.size()) {
+			throw new IllegalArgumentException("Maximum chain length must be between 1 and " + chainStems.size());
+		}
+		this.maxChainLength = maxChainLength;
+	}
+
+	/**
+	 * A ring from arylGroups.xml with simple numeric locants e.g. pyridin
+	 */
+	private static class RingParent {
+		private final String stem;
+		private final List<String> locants;
+
+		private RingParent(String stem, List<String> locants) {
+			this.stem = stem;
+			this.locants = locants;
+		}
+
+		/**
+		 * @param token
+		 * @return The ring, or null if the ring's locants are not simple or it has special properties
+		 */
+		static RingParent fromToken(Token token) {
+			String labels = token.get("labels");
+			if (labels == null || !token.text.endsWith("n") || token.get("addGroup") != null || token.get("addHeteroAtom") != null ||
+					token.get("frontLocantsExpected") != null || token.get("fusedRingNumbering") != null) {
+				return null;
+			}
+			List<String> locants = new ArrayList<String>();
+			for (String label : labels.split("/", -1)) {
+				String locant = label.split(",")[0];
+				if (locant.isEmpty()) {
+					return null;
+				}
+				for (int i = 0; i < locant.length(); i++) {
+					if (!Character.isDigit(locant.charAt(i))) {
+						return null;
+					}
+				}
+				locants.add(locant);
+			}
+			return new RingParent(token.text, locants);
+		}
+
+		Parent toParent() {
+			return new Parent(stem, locants, false);
+		}
+	}
+
+	/**
+	 * A stem (or, once generated, a complete name/substituent) with its substitutable locants
+	 */
+	private static class Parent {
+		private final String name;
+		private final String stem;
+		private final List<String> locants;
+		private final boolean isChain;
+
+		Parent(String stem, List<String> locants, boolean isChain) {
+			this.name = stem;
+			this.stem = stem;
+			this.locants = locants;
+			this.isChain = isChain;
+		}
+	}
+
+	private static class LocantComparator implements Comparator<String> {
+		public int compare(String locant1, String locant2) {
+			return Integer.compare(Integer.parseInt(locant1), Integer.parseInt(locant2));
+		}
+	}
+
+	/**
+	 * A token from a token file with the attributes of it and its tokenList.
+	 * text is the first of its | delimited forms, preferring a form ending with " acid"
+	 */
+	private static class Token {
+		private final Map<String, String> attributes;
+		private final String text;
+
+		Token(Map<String, String> attributes, String text) {
+			this.attributes = attributes;
+			this.text = text;
+		}
+
+		String get(String attributeName) {
+			return attributes.get(attributeName);
+		}
+	}
+
+	private static List<Token> readTokens(ResourceGetter resourceGetter, String fileName) throws IOException {
+		List<Token> tokens = new ArrayList<Token>();
+		XMLStreamReader reader = resourceGetter.getXMLStreamReader(fileName);
+		try {
+			Map<String, String> tokenListAttributes = Collections.emptyMap();
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String tagName = reader.getLocalName();
+					if (tagName.equals("tokenList")) {
+						tokenListAttributes = readAttributes(reader, Collections.<String, String>emptyMap());
+					}
+					else if (tagName.equals("token")) {
+						Map<String, String> attributes = readAttributes(reader, tokenListAttributes);
+						String[] forms = reader.getElementText().split("\\|");
+						String text = forms[0];
+						for (String form : forms) {
+							if (form.endsWith(" acid")) {
+								text = form;
+								break;
+							}
+						}
+						tokens.add(new Token(attributes, text));
+					}
+				}
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Parsing exception occurred while reading " + fileName, e);
+		}
+		finally {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				throw new IOException("Parsing exception occurred while reading " + fileName, e);
+			}
+		}
+		return tokens;
+	}
+
+	private static Map<String, String> readAttributes(XMLStreamReader reader, Map<String, String> inherited) {
+		Map<String, String> attributes = new HashMap<String, String>(inherited);
+		for (int i = 0, l = reader.getAttributeCount(); i < l; i++) {
+			attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		}
+		return attributes;
+	}
+
+	/**
+	 * Writes generated names to stdout or a file
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption("h", "help", false, "Displays the allowed command line flags");
+		options.addOption("c", "count", true, "Number of names to generate (default 1000)");
+		options.addOption("s", "seed", true, "Random seed (default 0)");
+		options.addOption("m", "meanSubstituents", true, "Mean number of substituent prefixes on the parent (default 1.5)");
+		options.addOption("d", "maxNestingDepth", true, "Maximum depth of substituted substituents (default 2)");
+		options.addOption("n", "nestingProbability", true, "Probability of a substituent being substituted (default 0.15)");
+		options.addOption("r", "ringProbability", true, "Probability of the parent being a ring (default 0.4)");
+		options.addOption("f", "fusedRingProbability", true, "Probability of a ring parent being fused (default 0.1)");
+		options.addOption("x", "suffixProbability", true, "Probability of a suffix (default 0.5)");
+		options.addOption("u", "unsaturationProbability", true, "Probability of a chain being unsaturated (default 0.2)");
+		options.addOption("l", "maxChainLength", true, "Maximum length of the main chain (default 12)");
+		options.addOption("v", "validate", false, "Only output names that OPSIN can interpret");
+		CommandLine cmd;
+		try {
+			cmd = new DefaultParser().parse(options, args);
+		}
+		catch (ParseException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		if (cmd.hasOption("h") || cmd.getArgs().length > 1) {
+			new HelpFormatter().printHelp("java -cp benchmarks.jar " + NameCorpusGenerator.class.getName() + " [options] [outputfile]", options);
+			System.exit(0);
+		}
+		NameCorpusGenerator generator = new NameCorpusGenerator(Long.parseLong(cmd.getOptionValue("s", "0")));
+		if (cmd.hasOption("m")) {
+			generator.setMeanSubstituents(Double.parseDouble(cmd.getOptionValue("m")));
+		}
+		if (cmd.hasOption("d")) {
+			generator.setMaxNestingDepth(Integer.parseInt(cmd.getOptionValue("d")));
+		}
+		if (cmd.hasOption("n")) {
+			generator.setNestingProbability(Double.parseDouble(cmd.getOptionValue("n")));
+		}
+		if (cmd.hasOption("r")) {
+			generator.setRingParentProbability(Double.parseDouble(cmd.getOptionValue("r")));
+		}
+		if (cmd.hasOption("f")) {
+			generator.setFusedRingProbability(Double.parseDouble(cmd.getOptionValue("f")));
+		}
+		if (cmd.hasOption("x")) {
+			generator.setSuffixProbability(Double.parseDouble(cmd.getOptionValue("x")));
+		}
+		if (cmd.hasOption("u")) {
+			generator.setUnsaturationProbability(Double.parseDouble(cmd.getOptionValue("u")));
+		}
+		if (cmd.hasOption("l")) {
+			generator.setMaxChainLength(Integer.parseInt(cmd.getOptionValue("l")));
+		}
+		int count = Integer.parseInt(cmd.getOptionValue("c", "1000"));
+		OutputStream os = cmd.getArgs().length == 1 ? new FileOutputStream(cmd.getArgs()[0]) : System.out;
+		Writer output = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+		generator.generate(count, cmd.hasOption("v"), output);
+		if (os != System.out) {
+			output.close();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * Benchmarks each stage of the name to structure pipeline in isolation, and the pipeline as a whole.
+ * One operation processes every name in the corpus.
+ * The input to each stage is the output of the previous stage, computed before measurement.
+ * As ComponentGenerator, ComponentProcessor and StructureBuilder modify their input, fresh copies are made before each invocation
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineStageBenchmarks {
+
+	@State(Scope.Benchmark)
+	public static class Pipeline {
+
+		@Param({"fusedRings", "stereochemistry", "carbohydrates", "multiplicativeNomenclature", "functionalReplacement", "organometallics", "miscellany", "synthetic"})
+		public String corpus;
+
+		NameToStructureConfig n2sConfig;
+		Tokeniser tokeniser;
+		Parser parser;
+		SuffixRules suffixRules;
+
+		List<String> names;
+		List<String> preProcessedNames;
+		/** For each name that could be interpreted: its successful parse before any processing */
+		List<Element> parses;
+		/** parses after processing by the ComponentGenerator */
+		List<Element> generatedParses;
+		/** The structures generated from the names that could be interpreted, in the same order as parses */
+		List<OpsinResult> results;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			n2sConfig = new NameToStructureConfig();
+			n2sConfig.setAllowRadicals(true);
+			ResourceGetter resourceGetter = new ResourceGetter("uk/ac/cam/ch/wwmm/opsin/resources/");
+			ResourceManager resourceManager = new ResourceManager(resourceGetter);
+			WordRules wordRules = new WordRules(resourceGetter);
+			tokeniser = new Tokeniser(new ParseRules(resourceManager));
+			parser = new Parser(wordRules, tokeniser, resourceManager);
+			suffixRules = new SuffixRules(resourceGetter);
+
+			names = BenchmarkCorpus.loadNames(corpus);
+			preProcessedNames = new ArrayList<String>();
+			parses = new ArrayList<Element>();
+			generatedParses = new ArrayList<Element>();
+			results = new ArrayList<OpsinResult>();
+			for (String name : names) {
+				String preProcessedName;
+				List<Element> possibleParses;
+				try {
+					preProcessedName = PreProcessor.preProcess(name);
+					possibleParses = parser.parse(n2sConfig, preProcessedName);
+				}
+				catch (Exception e) {
+					continue;
+				}
+				preProcessedNames.add(preProcessedName);
+				for (Element parse : possibleParses) {
+					try {
+						Element generatedParse = parse.copy();
+						new ComponentGenerator(n2sConfig).processParse(generatedParse);
+						Element processedParse = generatedParse.copy();
+						BuildState state = new BuildState(n2sConfig);
+						new ComponentProcessor(state, new SuffixApplier(state, suffixRules)).processParse(processedParse);
+						Fragment frag = new StructureBuilder(state).buildFragment(processedParse);
+						parses.add(parse);
+						generatedParses.add(generatedParse);
+						results.add(new OpsinResult(frag, OPSIN_RESULT_STATUS.SUCCESS, "", name));
+						break;
+					}
+					catch (Exception e) {
+						//try the next parse, as NameToStructure does
+					}
+				}
+			}
+			if (results.isEmpty()) {
+				throw new IllegalStateException("No names in " + corpus + " could be interpreted");
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ComponentGeneratorInput {
+		List<Element> parses;
+
+		@Setup(Level.Invocation)
+		public void copyParses(Pipeline pipeline) {
+			parses = copy(pipeline.parses);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ComponentProcessorInput {
+		List<Element> parses;
+		List<BuildState> states;
+
+		@Setup(Level.Invocation)
+		public void copyParses(Pipeline pipeline) {
+			parses = copy(pipeline.generatedParses);
+			states = new ArrayList<BuildState>(parses.size());
+			for (int i = 0; i < parses.size(); i++) {
+				states.add(new BuildState(pipeline.n2sConfig));
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class StructureBuilderInput {
+		List<Element> parses;
+		List<BuildState> states;
+
+		@Setup(Level.Invocation)
+		public void processParses(Pipeline pipeline) throws Exception {
+			parses = copy(pipeline.generatedParses);
+			states = new ArrayList<BuildState>(parses.size());
+			for (Element parse : parses) {
+				BuildState state = new BuildState(pipeline.n2sConfig);
+				new ComponentProcessor(state, new SuffixApplier(state, pipeline.suffixRules)).processParse(parse);
+				states.add(state);
+			}
+		}
+	}
+
+	private static List<Element> copy(List<Element> parses) {
+		List<Element> copies = new ArrayList<Element>(parses.size());
+		for (Element parse : parses) {
+			copies.add(parse.copy());
+		}
+		return copies;
+	}
+
+	@Benchmark
+	public void preProcess(Pipeline pipeline, Blackhole bh) throws Exception {
+		for (String name : pipeline.names) {
+			try {
+				bh.consume(PreProcessor.preProcess(name));
+			}
+			catch (PreProcessingException e) {
+				bh.consume(e);
+			}
+		}
+	}
+
+	@Benchmark
+	public void tokenize(Pipeline pipeline, Blackhole bh) throws Exception {
+		for (String name : pipeline.preProcessedNames) {
+			bh.consume(pipeline.tokeniser.tokenize(name, true));
+		}
+	}
+
+	@Benchmark
+	public void parse(Pipeline pipeline, Blackhole bh) throws Exception {
+		for (String name : pipeline.preProcessedNames) {
+			bh.consume(pipeline.parser.parse(pipeline.n2sConfig, name));
+		}
+	}
+
+	@Benchmark
+	public void componentGenerator(Pipeline pipeline, ComponentGeneratorInput input, Blackhole bh) throws Exception {
+		for (Element parse : input.parses) {
+			new ComponentGenerator(pipeline.n2sConfig).processParse(parse);
+			bh.consume(parse);
+		}
+	}
+
+	@Benchmark
+	public void componentProcessor(Pipeline pipeline, ComponentProcessorInput input, Blackhole bh) throws Exception {
+		for (int i = 0; i < input.parses.size(); i++) {
+			BuildState state = input.states.get(i);
+			Element parse = input.parses.get(i);
+			new ComponentProcessor(state, new SuffixApplier(state, pipeline.suffixRules)).processParse(parse);
+			bh.consume(parse);
+		}
+	}
+
+	@Benchmark
+	public void structureBuilder(StructureBuilderInput input, Blackhole bh) throws Exception {
+		for (int i = 0; i < input.parses.size(); i++) {
+			bh.consume(new StructureBuilder(input.states.get(i)).buildFragment(input.parses.get(i)));
+		}
+	}
+
+	@Benchmark
+	public void smilesWriter(Pipeline pipeline, Blackhole bh) {
+		for (OpsinResult result : pipeline.results) {
+			bh.consume(SMILESWriter.generateSmiles(result.getStructure()));
+		}
+	}
+
+	@Benchmark
+	public void cmlWriter(Pipeline pipeline, Blackhole bh) {
+		for (OpsinResult result : pipeline.results) {
+			bh.consume(CMLWriter.generateCml(result.getStructure(), result.getChemicalName()));
+		}
+	}
+
+	@Benchmark
+	public void nameToInchi(Pipeline pipeline, Blackhole bh) {
+		for (OpsinResult result : pipeline.results) {
+			bh.consume(NameToInchi.convertResultToInChI(result));
+		}
+	}
+
+	@Benchmark
+	public void nameToStructure(Pipeline pipeline, Blackhole bh) {
+		NameToStructure n2s = NameToStructure.getInstance();
+		for (String name : pipeline.names) {
+			bh.consume(n2s.parseChemicalName(name, pipeline.n2sConfig));
+		}
+	}
+}
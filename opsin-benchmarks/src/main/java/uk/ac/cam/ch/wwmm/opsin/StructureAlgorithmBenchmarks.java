@@ -0,0 +1,169 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the graph algorithms used during structure building, on structures chosen to stress them
+ * e.g. ring perception of cages and fused ring systems, unsaturation of long chains
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructureAlgorithmBenchmarks {
+
+	private static FragmentManager createFragmentManager() {
+		IDManager idManager = new IDManager();
+		return new FragmentManager(new SMILESFragmentBuilder(idManager), idManager);
+	}
+
+	@State(Scope.Benchmark)
+	public static class RingSystem {
+
+		@Param({"steroid", "adamantane", "cubane", "perhydroPolyacene"})
+		public String ringSystem;
+
+		Fragment frag;
+
+		@Setup(Level.Trial)
+		public void setup() throws StructureBuildingException {
+			String smiles;
+			switch (ringSystem) {
+			case "steroid":
+				smiles = "C1CCC2C(C1)CCC1C2CCC2CCCC12";
+				break;
+			case "adamantane":
+				smiles = "C1C2CC3CC1CC(C2)C3";
+				break;
+			case "cubane":
+				smiles = "C12C3C4C1C5C2C3C45";
+				break;
+			case "perhydroPolyacene":
+				smiles = perhydroPolyacene(30);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown ring system: " + ringSystem);
+			}
+			frag = createFragmentManager().buildSMILES(smiles);
+		}
+
+		/**
+		 * Linearly fused cyclohexanes e.g. for 3 rings C1CC2CC3CCCCC3CC2CC1
+		 */
+		private static String perhydroPolyacene(int ringCount) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 1; i <= ringCount; i++) {
+				if (i > 1) {
+					sb.append('C');
+				}
+				sb.append('C').append(ringClosure(i));
+			}
+			sb.append("CCCC");
+			for (int i = ringCount; i >= 1; i--) {
+				sb.append('C').append(ringClosure(i));
+				if (i > 1) {
+					sb.append('C');
+				}
+			}
+			return sb.toString();
+		}
+
+		private static String ringClosure(int i) {
+			return i < 10 ? String.valueOf(i) : "%" + i;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Chain {
+
+		@Param({"100", "1000", "10000"})
+		public int chainLength;
+
+		Fragment frag;
+
+		@Setup(Level.Trial)
+		public void setup() throws StructureBuildingException {
+			frag = createFragmentManager().buildSMILES(StringTools.multiplyString("C", chainLength));
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class BranchedRing {
+
+		@Param({"1000", "25000"})
+		public int branchPoints;
+
+		Fragment frag;
+
+		@Setup(Level.Trial)
+		public void setup() throws StructureBuildingException {
+			frag = createFragmentManager().buildSMILES("C1" + StringTools.multiplyString("C(C)", branchPoints) + "C1");
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class StereoStructures {
+
+		@Param({"stereochemistry", "carbohydrates"})
+		public String corpus;
+
+		List<Fragment> structures;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			NameToStructure n2s = NameToStructure.getInstance();
+			structures = new ArrayList<Fragment>();
+			for (String name : BenchmarkCorpus.loadNames(corpus)) {
+				OpsinResult result = n2s.parseChemicalName(name);
+				if (result.getStructure() != null) {
+					structures.add(result.getStructure());
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void smallestSetOfSmallestRings(RingSystem ringSystem, Blackhole bh) {
+		bh.consume(SSSRFinder.getSetOfSmallestRings(ringSystem.frag));
+	}
+
+	@Benchmark
+	public void findBondsToUnsaturate(Chain chain, Blackhole bh) {
+		bh.consume(StructureBuildingMethods.findBondsToUnSaturate(chain.frag, 2, false));
+		bh.consume(StructureBuildingMethods.findBondsToUnSaturate(chain.frag, 2, true));
+	}
+
+	@Benchmark
+	public void assignWhetherAtomsAreInCycles(BranchedRing branchedRing) {
+		CycleDetector.assignWhetherAtomsAreInCycles(branchedRing.frag);
+	}
+
+	/**
+	 * Symmetry perception, followed by CIP ordering of the substituents of each potential stereocentre/stereobond
+	 */
+	@Benchmark
+	public void stereoAnalysis(StereoStructures stereoStructures, Blackhole bh) {
+		for (Fragment structure : stereoStructures.structures) {
+			StereoAnalyser stereoAnalyser = new StereoAnalyser(structure);
+			bh.consume(stereoAnalyser.findStereoCentres());
+			bh.consume(stereoAnalyser.findStereoBonds());
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+public class NameCorpusGeneratorTest {
+
+	private static NameToStructure n2s;
+
+	@BeforeClass
+	public static void setup() {
+		n2s = NameToStructure.getInstance();
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		n2s = null;
+	}
+
+	@Test
+	public void testSameSeedGivesSameCorpus() throws IOException {
+		List<String> names = new NameCorpusGenerator(42).generate(200, false);
+		assertEquals(names, new NameCorpusGenerator(42).generate(200, false));
+		StringWriter output = new StringWriter();
+		new NameCorpusGenerator(42).generate(200, false, output);
+		assertEquals(join(names), output.toString());
+		assertNotEquals(names, new NameCorpusGenerator(43).generate(200, false));
+	}
+
+	@Test
+	public void testValidatedNamesAllParse() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		StringWriter output = new StringWriter();
+		new NameCorpusGenerator(0).generate(100, true, output);
+		String[] names = output.toString().split("\n");
+		assertEquals(100, names.length);
+		for (String name : names) {
+			assertEquals(name, OPSIN_RESULT_STATUS.SUCCESS, n2s.parseChemicalName(name, n2sConfig).getStatus());
+		}
+	}
+
+	@Test
+	public void testMinimumParseRateWithoutValidation() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		List<String> names = new NameCorpusGenerator(0).generate(500, false);
+		int successes = 0;
+		for (String name : names) {
+			if (n2s.parseChemicalName(name, n2sConfig).getStatus() == OPSIN_RESULT_STATUS.SUCCESS) {
+				successes++;
+			}
+		}
+		//444 of these names are currently interpretable
+		assertTrue("Only " + successes + " of " + names.size() + " generated names could be interpreted", successes >= names.size() * 0.8);
+	}
+
+	private static String join(List<String> names) {
+		StringBuilder sb = new StringBuilder();
+		for (String name : names) {
+			sb.append(name).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -1,9 +1,7 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -13,7 +11,7 @@ import java.util.Set;
 
 class AmbiguityChecker {
 
-	static boolean isSubstitutionAmbiguous(List<Atom> substitutableAtoms, int numberToBeSubstituted) {
+	static boolean isSubstitutionAmbiguous(BuildState state, List<Atom> substitutableAtoms, int numberToBeSubstituted) {
 		if (substitutableAtoms.size() == 0) {
 			throw new IllegalArgumentException("OPSIN Bug: Must provide at least one substituable atom");
 		}
@@ -30,38 +28,38 @@ class AmbiguityChecker {
 		if (uniqueAtoms.size() == 1) {
 			return false;
 		}
-		if (allAtomsEquivalent(uniqueAtoms) && (numberToBeSubstituted == 1 || numberToBeSubstituted == substitutableAtoms.size() - 1)){
+		if (allAtomsEquivalent(state, uniqueAtoms) && (numberToBeSubstituted == 1 || numberToBeSubstituted == substitutableAtoms.size() - 1)){
 			return false;
 		}
 		return true;
 	}
 	
-	static boolean allAtomsEquivalent(Collection<Atom> atoms) {
-		StereoAnalyser analyser = analyseRelevantAtomsAndBonds(atoms);
+	static boolean allAtomsEquivalent(BuildState state, Collection<Atom> atoms) {
+		AtomColourRefiner symmetryClasses = state.symmetryClassifier.getSymmetryClasses(atoms);
 		Set<String> uniqueEnvironments = new HashSet<String>();
 		for (Atom a : atoms) {
-			uniqueEnvironments.add(getAtomEnviron(analyser, a));
+			uniqueEnvironments.add(getAtomEnviron(symmetryClasses, a));
 		}
 		return uniqueEnvironments.size() == 1;
 	}
 
-	static boolean allBondsEquivalent(Collection<Bond> bonds) {
+	static boolean allBondsEquivalent(BuildState state, Collection<Bond> bonds) {
 		Set<Atom> relevantAtoms = new HashSet<Atom>();
 		for (Bond b : bonds) {
 			relevantAtoms.add(b.getFromAtom());
 			relevantAtoms.add(b.getToAtom());
 		}
-		StereoAnalyser analyser = analyseRelevantAtomsAndBonds(relevantAtoms);
+		AtomColourRefiner symmetryClasses = state.symmetryClassifier.getSymmetryClasses(relevantAtoms);
 		Set<String> uniqueBonds = new HashSet<String>();
 		for (Bond b : bonds) {
-			uniqueBonds.add(bondToCanonicalEnvironString(analyser, b));
+			uniqueBonds.add(bondToCanonicalEnvironString(symmetryClasses, b));
 		}
 		return uniqueBonds.size() == 1;
 	}
 
-	private static String bondToCanonicalEnvironString(StereoAnalyser analyser, Bond b) {
-		String s1 = getAtomEnviron(analyser, b.getFromAtom());
-		String s2 = getAtomEnviron(analyser, b.getToAtom());
+	private static String bondToCanonicalEnvironString(AtomColourRefiner symmetryClasses, Bond b) {
+		String s1 = getAtomEnviron(symmetryClasses, b.getFromAtom());
+		String s2 = getAtomEnviron(symmetryClasses, b.getToAtom());
 		if (s1.compareTo(s2) > 0){
 			return s1 + s2;
 		}
@@ -71,7 +69,14 @@ class AmbiguityChecker {
 	}
 
 	static String getAtomEnviron(StereoAnalyser analyser, Atom a) {
-		Integer env = analyser.getAtomEnvironmentNumber(a);
+		return getAtomEnviron(analyser.getAtomEnvironmentNumber(a), a);
+	}
+
+	static String getAtomEnviron(AtomColourRefiner symmetryClasses, Atom a) {
+		return getAtomEnviron(symmetryClasses.getColour(a), a);
+	}
+
+	private static String getAtomEnviron(Integer env, Atom a) {
 		if (env == null) {
 			throw new RuntimeException("OPSIN Bug: Atom was not part of ambiguity analysis");
 		}
@@ -93,42 +98,7 @@ class AmbiguityChecker {
 		return false;
 	}
 
-	static StereoAnalyser analyseRelevantAtomsAndBonds(Collection<Atom> startingAtoms) {
-		Set<Atom> atoms = new HashSet<Atom>();
-		Set<Bond> bonds = new HashSet<Bond>();
-		Deque<Atom> stack = new ArrayDeque<Atom>(startingAtoms);
-		while (!stack.isEmpty()) {
-			Atom a = stack.removeLast();
-			if (!atoms.contains(a)) {
-				atoms.add(a);
-				for (Bond b : a.getBonds()) {
-					bonds.add(b);
-					stack.add(b.getOtherAtom(a));
-				}
-			}
-		}
-		
-		List<Atom> ghostHydrogens = new ArrayList<Atom>();
-		for (Atom atom : atoms) {
-			int explicitHydrogensToAdd = StructureBuildingMethods.calculateSubstitutableHydrogenAtoms(atom);
-			for (int i = 0; i < explicitHydrogensToAdd; i++) {
-				Atom ghostHydrogen = new Atom(ChemEl.H);
-				Bond b = new Bond(ghostHydrogen, atom, 1);
-				atom.addBond(b);
-				ghostHydrogen.addBond(b);
-				ghostHydrogens.add(ghostHydrogen);
-			}
-		}
-		atoms.addAll(ghostHydrogens);
-		StereoAnalyser analyzer = new StereoAnalyser(atoms, bonds);
-		for (Atom ghostHydrogen : ghostHydrogens) {
-			Bond b = ghostHydrogen.getFirstBond();
-			b.getOtherAtom(ghostHydrogen).removeBond(b);
-		}
-		return analyzer;
-	}
-
-	static List<Atom> useAtomEnvironmentsToGivePlausibleSubstitution(List<Atom> substitutableAtoms, int numberToBeSubstituted) {
+	static List<Atom> useAtomEnvironmentsToGivePlausibleSubstitution(BuildState state, List<Atom> substitutableAtoms, int numberToBeSubstituted) {
 		if (substitutableAtoms.size() == 0) {
 			throw new IllegalArgumentException("OPSIN Bug: Must provide at least one substituable atom");
 		}
@@ -139,19 +109,19 @@ class AmbiguityChecker {
 			return substitutableAtoms;
 		}
 
-		List<Atom> preferredAtoms = findPlausibleSubstitutionPatternUsingSymmmetry(substitutableAtoms, numberToBeSubstituted);
+		List<Atom> preferredAtoms = findPlausibleSubstitutionPatternUsingSymmmetry(state, substitutableAtoms, numberToBeSubstituted);
 		if (preferredAtoms != null){
 			return preferredAtoms;
 		}
 		return findPlausibleSubstitutionPatternUsingLocalEnvironment(substitutableAtoms, numberToBeSubstituted);
 	}
 
-	private static List<Atom> findPlausibleSubstitutionPatternUsingSymmmetry(List<Atom> substitutableAtoms, int numberToBeSubstituted) {
+	private static List<Atom> findPlausibleSubstitutionPatternUsingSymmmetry(BuildState state, List<Atom> substitutableAtoms, int numberToBeSubstituted) {
 		//cf. octaethylporphyrin (8 identical atoms capable of substitution)
-		StereoAnalyser analyser = analyseRelevantAtomsAndBonds(new HashSet<Atom>(substitutableAtoms));
+		AtomColourRefiner symmetryClasses = state.symmetryClassifier.getSymmetryClasses(new HashSet<Atom>(substitutableAtoms));
 		Map<String, List<Atom>> atomsInEachEnvironment = new HashMap<String, List<Atom>>();
 		for (Atom a : substitutableAtoms) {
-			String env = getAtomEnviron(analyser, a);
+			String env = getAtomEnviron(symmetryClasses, a);
 			List<Atom> atomsInEnvironment = atomsInEachEnvironment.get(env);
 			if (atomsInEnvironment == null) {
 				atomsInEnvironment = new ArrayList<Atom>();
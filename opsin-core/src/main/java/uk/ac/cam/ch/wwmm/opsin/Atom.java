@@ -1,10 +1,10 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.regex.Matcher;
 
@@ -27,14 +27,22 @@ class Atom {
 	/**The chemical element of the atom. */
 	private ChemEl chemEl;
 
-	/**The locants that pertain to the atom.*/
-	private final List<String> locants = new ArrayList<String>(2);
+	/**The locants that pertain to the atom. Only the first locantCount entries are in use*/
+	private String[] locants = NO_LOCANTS;
+	
+	/**The number of locants that pertain to the atom*/
+	private int locantCount = 0;
+	
+	private static final String[] NO_LOCANTS = new String[0];
 
 	/**The formal charge on the atom.*/
 	private int charge = 0;
 	
-	/**The isotope of the atom. Null if not defined explicitly.*/
-	private Integer isotope = null;
+	/**The isotope of the atom. NOT_SET if not defined explicitly.*/
+	private int isotope = NOT_SET;
+	
+	/**Sentinel for the optional integer fields of the atom*/
+	private static final int NOT_SET = -1;
 
 	/**
 	 * Holds the atomParity object associated with this object
@@ -45,9 +53,9 @@ class Atom {
 	/**The bonds that involve the atom*/
 	private final List<Bond> bonds = new ArrayList<Bond>(4);
 
-	/**A map between PropertyKey s as declared here and useful atom properties, usually relating to some kind of special case. */
-	@SuppressWarnings("rawtypes")
-	private final Map<PropertyKey, Object> properties = new HashMap<PropertyKey, Object>();
+	/**Useful atom properties, usually relating to some kind of special case, indexed by the ordinal of the PropertyKey s declared here.
+	 * Null until a property is first set as most atoms never have any*/
+	private Object[] properties = null;
 	/** A set of atoms that were equally plausible to perform functional replacement on */
 	static final PropertyKey<Set<Atom>> AMBIGUOUS_ELEMENT_ASSIGNMENT = new PropertyKey<Set<Atom>>("ambiguousElementAssignment");
 	/** The atom class which will be output when serialised to SMILES. Useful for distinguishing attachment points */
@@ -64,8 +72,6 @@ class Atom {
 	static final PropertyKey<Boolean> ISALDEHYDE = new PropertyKey<Boolean>("isAldehyde");
 	/** Indicates that this atom is an anomeric atom in a cyclised carbohydrate*/
 	static final PropertyKey<Boolean> ISANOMERIC = new PropertyKey<Boolean>("isAnomeric");
-	/** Transient integer used to indicate traversal of fragments*/
-	static final PropertyKey<Integer> VISITED = new PropertyKey<Integer>("visited");
 
 	/**The fragment to which the atom belongs.*/
 	private Fragment frag;
@@ -80,11 +86,11 @@ class Atom {
 	 * e.g. in butan-2-ylidene this would be 2 for the atom at position 2 and 0 for the other 3 */
 	private int outValency = 0;
 
-	/** Null by default or set by the lambda convention.*/
-	private Integer lambdaConventionValency;
+	/** NOT_SET by default or set by the lambda convention.*/
+	private int lambdaConventionValency = NOT_SET;
 	
-	/** Null by default or set by the SMILES builder*/
-	private Integer minimumValency;
+	/** NOT_SET by default or set by the SMILES builder*/
+	private int minimumValency = NOT_SET;
 	
 	/** Can this atom have implicit hydrogen? True unless explicitly set otherwise otherwise*/
 	private boolean implicitHydrogenAllowed = true;
@@ -146,30 +152,31 @@ class Atom {
 	 * @return
 	 */
 	int determineValency(boolean considerOutValency) {
-		if (lambdaConventionValency != null){
+		if (lambdaConventionValency != NOT_SET){
 			return lambdaConventionValency + protonsExplicitlyAddedOrRemoved;
 		}
 		int currentValency = getIncomingValency();
 		if (considerOutValency){
 			currentValency += outValency;
 		}
-		Integer calculatedMinValency = minimumValency == null ? null : minimumValency + protonsExplicitlyAddedOrRemoved;
+		boolean hasMinValency = minimumValency != NOT_SET;
+		int calculatedMinValency = hasMinValency ? minimumValency + protonsExplicitlyAddedOrRemoved : 0;
 		if (charge ==0 || protonsExplicitlyAddedOrRemoved != 0){
 			Integer defaultValency = ValencyChecker.getDefaultValency(chemEl);
 			if (defaultValency != null){
-				defaultValency += protonsExplicitlyAddedOrRemoved;
-				if (currentValency <= defaultValency && (calculatedMinValency == null || defaultValency >= calculatedMinValency)){
-					return defaultValency;
+				int adjustedDefaultValency = defaultValency + protonsExplicitlyAddedOrRemoved;
+				if (currentValency <= adjustedDefaultValency && (!hasMinValency || adjustedDefaultValency >= calculatedMinValency)){
+					return adjustedDefaultValency;
 				}
 			}
 		}
 		Integer[] possibleValencies = ValencyChecker.getPossibleValencies(chemEl, charge);
 		if (possibleValencies != null) {
-			if (calculatedMinValency != null  && calculatedMinValency >= currentValency){
+			if (hasMinValency && calculatedMinValency >= currentValency){
 				return calculatedMinValency;
 			}
 			for (Integer possibleValency : possibleValencies) {
-				if (calculatedMinValency != null && possibleValency < calculatedMinValency){
+				if (hasMinValency && possibleValency < calculatedMinValency){
 					continue;
 				}
 				if (currentValency <= possibleValency){
@@ -177,7 +184,7 @@ class Atom {
 				}
 			}
 		}
-		if (calculatedMinValency != null && calculatedMinValency >= currentValency){
+		if (hasMinValency && calculatedMinValency >= currentValency){
 			return calculatedMinValency;
 		}
 		else{
@@ -191,7 +198,12 @@ class Atom {
 	 * @param locant The new locant
 	 */
 	void addLocant(String locant) {
-		locants.add(locant);
+		if (locantCount == locants.length) {
+			String[] newLocants = new String[locantCount == 0 ? 1 : locantCount * 2];
+			System.arraycopy(locants, 0, newLocants, 0, locantCount);
+			locants = newLocants;
+		}
+		locants[locantCount++] = locant;
 		frag.addMappingToAtomLocantMap(locant, this);
 	}
 
@@ -205,10 +217,9 @@ class Atom {
 	}
 
 	void removeLocant(String locantToRemove) {
-		int locantArraySize = locants.size();
-		for (int i = locantArraySize -1; i >=0 ; i--) {
-			if (locants.get(i).equals(locantToRemove)){
-				locants.remove(i);
+		for (int i = locantCount -1; i >=0 ; i--) {
+			if (locants[i].equals(locantToRemove)){
+				removeLocantAtIndex(i);
 				frag.removeMappingFromAtomLocantMap(locantToRemove);
 			}
 		}
@@ -218,21 +229,30 @@ class Atom {
 	 *
 	 */
 	void clearLocants() {
-		for (int i = 0, l = locants.size(); i < l; i++) {
-			frag.removeMappingFromAtomLocantMap(locants.get(i));
+		for (int i = 0; i < locantCount; i++) {
+			frag.removeMappingFromAtomLocantMap(locants[i]);
+			locants[i] = null;
 		}
-		locants.clear();
+		locantCount = 0;
+	}
+	
+	private void removeLocantAtIndex(int i) {
+		int numToMove = locantCount - i - 1;
+		if (numToMove > 0) {
+			System.arraycopy(locants, i + 1, locants, i, numToMove);
+		}
+		locants[--locantCount] = null;
 	}
 
 	/**
 	 * Removes only elementSymbolLocants: e.g. N, S', Se
 	 */
 	void removeElementSymbolLocants() {
-		for (int i = locants.size() - 1; i >= 0; i--) {
-			String locant = locants.get(i);
+		for (int i = locantCount - 1; i >= 0; i--) {
+			String locant = locants[i];
 			if (MATCH_ELEMENT_SYMBOL_LOCANT.matcher(locant).matches()){
 				frag.removeMappingFromAtomLocantMap(locant);
-				locants.remove(i);
+				removeLocantAtIndex(i);
 			}
 		}
 	}
@@ -242,11 +262,11 @@ class Atom {
 	 * Hence removes numeric locants and greek locants
 	 */
 	void removeLocantsOtherThanElementSymbolLocants() {
-		for (int i = locants.size() - 1; i >= 0; i--) {
-			String locant = locants.get(i);
+		for (int i = locantCount - 1; i >= 0; i--) {
+			String locant = locants[i];
 			if (!MATCH_ELEMENT_SYMBOL_LOCANT.matcher(locant).matches()){
 				frag.removeMappingFromAtomLocantMap(locant);
-				locants.remove(i);
+				removeLocantAtIndex(i);
 			}
 		}
 	}
@@ -257,8 +277,10 @@ class Atom {
 	 * @return true if it has, false if not
 	 */
 	boolean hasLocant(String locant) {
-		if (locants.contains(locant)) {
-			return true;
+		for (int i = 0; i < locantCount; i++) {
+			if (locants[i].equals(locant)) {
+				return true;
+			}
 		}
 		Matcher m = MATCH_AMINOACID_STYLE_LOCANT.matcher(locant);
 		if (m.matches()){//e.g. N'5
@@ -281,7 +303,7 @@ class Atom {
 	 * @return The locant, or null if there is no locant
 	 */
 	String getFirstLocant() {
-		return locants.size() > 0 ? locants.get(0) : null;
+		return locantCount > 0 ? locants[0] : null;
 	}
 
 	/**Returns the array of locants containing all locants associated with the atom
@@ -289,7 +311,28 @@ class Atom {
 	 * @return The list of locants (may be empty)
 	 */
 	List<String> getLocants() {
-		return Collections.unmodifiableList(locants);
+		if (locantCount == 0) {
+			return Collections.emptyList();
+		}
+		return new LocantView();
+	}
+	
+	/**
+	 * Read-only live view of the atom's locants
+	 */
+	private class LocantView extends AbstractList<String> implements RandomAccess {
+		@Override
+		public String get(int index) {
+			if (index >= locantCount) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + locantCount);
+			}
+			return locants[index];
+		}
+
+		@Override
+		public int size() {
+			return locantCount;
+		}
 	}
 
 	/**Returns the subset of the locants which are element symbol locants e.g. N, S', Se
@@ -298,8 +341,8 @@ class Atom {
 	 */
 	List<String> getElementSymbolLocants() {
 		List<String> elementSymbolLocants = new ArrayList<String>(1);
-		for (int i = 0, l = locants.size(); i < l; i++) {
-			String locant = locants.get(i);
+		for (int i = 0; i < locantCount; i++) {
+			String locant = locants[i];
             if (MATCH_ELEMENT_SYMBOL_LOCANT.matcher(locant).matches()) {
                 elementSymbolLocants.add(locant);
             }
@@ -308,7 +351,21 @@ class Atom {
 	}
 
 	void setFrag(Fragment f) {
-		frag = f;
+		if (frag != f) {
+			structureChanged();
+			frag = f;
+			structureChanged();
+		}
+	}
+
+	/**
+	 * Records a change to this atom that could change its environment
+	 * e.g. its element, bonds, charge or valency, see {@link Fragment#getModificationCount()}
+	 */
+	void structureChanged() {
+		if (frag != null) {
+			frag.structureChanged();
+		}
 	}
 
 	Fragment getFrag() {
@@ -337,6 +394,7 @@ class Atom {
 	 */
 	void setElement(ChemEl chemEl) {
 		this.chemEl = chemEl;
+		structureChanged();
 	}
 
 	/**Gets the formal charge on the atom.
@@ -356,6 +414,7 @@ class Atom {
 	void addChargeAndProtons(int charge, int protons){
 		this.charge += charge;
 		protonsExplicitlyAddedOrRemoved+=protons;
+		structureChanged();
 	}
 
 	/**Sets the formal charge on the atom.
@@ -365,6 +424,7 @@ class Atom {
 	 */
 	void setCharge(int c) {
 		charge = c;
+		structureChanged();
 	}
 	
 	 /** 
@@ -373,6 +433,7 @@ class Atom {
 	void neutraliseCharge() {
 		charge = 0;
 		protonsExplicitlyAddedOrRemoved = 0;
+		structureChanged();
 	}
 
 	/**
@@ -381,7 +442,7 @@ class Atom {
 	 * @return
 	 */
 	Integer getIsotope() {
-		return isotope;
+		return isotope != NOT_SET ? isotope : null;
 	}
 
 	/**
@@ -392,7 +453,8 @@ class Atom {
 		if (isotope != null && isotope < chemEl.ATOMIC_NUM) {
 			throw new RuntimeException("Isotopic mass cannot be less than the element's number of protons: " + chemEl.toString() + " " + isotope + " < " + chemEl.ATOMIC_NUM );
 		}
-		this.isotope = isotope;
+		this.isotope = isotope != null ? isotope : NOT_SET;
+		structureChanged();
 	}
 
 	/**Adds a bond to the atom
@@ -404,6 +466,7 @@ class Atom {
 			throw new IllegalArgumentException("Atom already has given bond (This is not allowed as this would give two bonds between the same atoms!)");
 		}
 		bonds.add(b);
+		structureChanged();
 	}
 
 	/**Removes a bond to the atom
@@ -412,7 +475,11 @@ class Atom {
      * @return whether bond was present
 	 */
 	boolean removeBond(Bond b) {
-		return bonds.remove(b);
+		if (bonds.remove(b)) {
+			structureChanged();
+			return true;
+		}
+		return false;
 	}
 
 	/**Calculates the number of bonds connecting to the atom, excluding bonds to implicit
@@ -435,6 +502,7 @@ class Atom {
 
 	void setProtonsExplicitlyAddedOrRemoved(int protonsExplicitlyAddedOrRemoved) {
 		this.protonsExplicitlyAddedOrRemoved = protonsExplicitlyAddedOrRemoved;
+		structureChanged();
 	}
 	
 	/**Does the atom have spare valency to form double bonds?
@@ -467,6 +535,7 @@ class Atom {
 	 */
 	void addOutValency(int outV) {
 		outValency += outV;
+		structureChanged();
 	}
 
 	List<Bond> getBonds() {
@@ -491,11 +560,12 @@ class Atom {
 	}
 
 	Integer getLambdaConventionValency() {
-		return lambdaConventionValency;
+		return lambdaConventionValency != NOT_SET ? lambdaConventionValency : null;
 	}
 
 	void setLambdaConventionValency(Integer valency) {
-		this.lambdaConventionValency = valency;
+		this.lambdaConventionValency = valency != null ? valency : NOT_SET;
+		structureChanged();
 	}
 
 	String getType() {
@@ -531,11 +601,12 @@ class Atom {
 	}
 	
 	Integer getMinimumValency() {
-		return minimumValency;
+		return minimumValency != NOT_SET ? minimumValency : null;
 	}
 
 	void setMinimumValency(Integer minimumValency) {
-		this.minimumValency = minimumValency;
+		this.minimumValency = minimumValency != null ? minimumValency : NOT_SET;
+		structureChanged();
 	}
 	
 	boolean getImplicitHydrogenAllowed() {
@@ -544,15 +615,31 @@ class Atom {
 
 	void setImplicitHydrogenAllowed(boolean implicitHydrogenAllowed) {
 		this.implicitHydrogenAllowed = implicitHydrogenAllowed;
+		structureChanged();
 	}
 
-    @SuppressWarnings("unchecked")
+	@SuppressWarnings("unchecked")
 	<T> T getProperty(PropertyKey<T> propertyKey) {
-        return (T) properties.get(propertyKey);
-    }
+		int ordinal = propertyKey.ordinal();
+		if (properties == null || ordinal >= properties.length) {
+			return null;
+		}
+		return (T) properties[ordinal];
+	}
 
 	<T> void setProperty(PropertyKey<T> propertyKey, T value) {
-		properties.put(propertyKey, value);
+		int ordinal = propertyKey.ordinal();
+		if (properties == null || ordinal >= properties.length) {
+			if (value == null) {
+				return;
+			}
+			Object[] newProperties = new Object[Math.max(ordinal + 1, PropertyKey.keyCount())];
+			if (properties != null) {
+				System.arraycopy(properties, 0, newProperties, 0, properties.length);
+			}
+			properties = newProperties;
+		}
+		properties[ordinal] = value;
 	}
 
 	/**
@@ -564,8 +651,8 @@ class Atom {
 	 */
 	void ensureSVIsConsistantWithValency(boolean takeIntoAccountExternalBonds) throws StructureBuildingException {
 		if (spareValency) {
-			Integer maxValency;
-			if (lambdaConventionValency != null) {
+			int maxValency;
+			if (lambdaConventionValency != NOT_SET) {
 				maxValency = lambdaConventionValency + protonsExplicitlyAddedOrRemoved;
 			}
 			else{
@@ -0,0 +1,354 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Colours atoms such that atoms in identical environments share a colour and atoms in different environments do not.
+ * Starting from a colouring based on a comparison of the atoms themselves, colours are repeatedly split
+ * by how many neighbours each atom has of a given colour until the colouring is stable.
+ *
+ * This is the classic partition refinement: atoms, and any ghost atoms, are referred to by dense indices,
+ * each colour is a contiguous run (cell) of an array of atom indices
+ * and a queue holds the cells that have yet to be used to split other cells.
+ * When a cell splits only the smaller parts need to be queued, giving close to O(E log V) time.
+ */
+class AtomColourRefiner {
+
+	/** The index of each atom. Indices beyond those of the atoms are used for ghost atoms */
+	private final Map<Atom, Integer> atomToIndex;
+
+	/** The atom indices, grouped into cells */
+	private final int[] elements;
+
+	/** The position of each atom in elements */
+	private final int[] positionOfAtom;
+
+	/** The start of the cell each atom is in. A cell is identified by its start position */
+	private final int[] cellOfAtom;
+
+	/** Indexed by cell: the end (exclusive) of the cell */
+	private final int[] cellEnd;
+
+	/** The indices of each atom's neighbours */
+	private final int[][] neighbours;
+
+	private AtomColourRefiner(Map<Atom, Integer> atomToIndex, int[][] neighbours, int[] initialRank) {
+		this.atomToIndex = atomToIndex;
+		this.neighbours = neighbours;
+		int nodeCount = neighbours.length;
+		elements = new int[nodeCount];
+		positionOfAtom = new int[nodeCount];
+		cellOfAtom = new int[nodeCount];
+		cellEnd = new int[nodeCount];
+		refine(createInitialCells(initialRank));
+	}
+
+	/**
+	 * Colours the given atoms. Every neighbour of every atom must be in the list of atoms.
+	 * @param atoms
+	 * @param initialOrder Orders atoms that are not equivalent before considering their neighbours
+	 * @return
+	 */
+	static AtomColourRefiner colour(List<Atom> atoms, Comparator<Atom> initialOrder) {
+		int atomCount = atoms.size();
+		Map<Atom, Integer> atomToIndex = indexAtoms(atoms);
+		int[][] neighbours = new int[atomCount][];
+		for (int i = 0; i < atomCount; i++) {
+			Atom atom = atoms.get(i);
+			List<Bond> bonds = atom.getBonds();
+			int[] neighbourIndices = new int[bonds.size()];
+			for (int j = 0; j < neighbourIndices.length; j++) {
+				neighbourIndices[j] = getIndexOfNeighbour(atomToIndex, bonds.get(j).getOtherAtom(atom));
+			}
+			neighbours[i] = neighbourIndices;
+		}
+		List<Atom> sortedAtoms = new ArrayList<Atom>(atoms);
+		Collections.sort(sortedAtoms, initialOrder);
+		int[] initialRank = new int[atomCount];
+		int rank = 0;
+		for (int i = 0; i < atomCount; i++) {
+			Atom atom = sortedAtoms.get(i);
+			if (i > 0 && initialOrder.compare(sortedAtoms.get(i - 1), atom) != 0) {
+				rank++;
+			}
+			initialRank[atomToIndex.get(atom)] = rank;
+		}
+		return new AtomColourRefiner(atomToIndex, neighbours, initialRank);
+	}
+
+	/**
+	 * Colours the given atoms, initially distinguishing them by atomic number then atomic mass.
+	 * Every neighbour of every atom must be in the list of atoms.
+	 * In the same way as the CIP rules, multiple bonds are treated as if each end had additional ghost atoms e.g. C=C --> C(G)=C(G)
+	 * Optionally each atom may be treated as if it had additional hydrogen.
+	 * The atoms themselves are not modified.
+	 * @param atoms
+	 * @param hydrogensToAdd Number of ghost hydrogen for each atom in atoms, or null for none
+	 * @return
+	 */
+	static AtomColourRefiner colourWithGhostAtoms(List<Atom> atoms, int[] hydrogensToAdd) {
+		int atomCount = atoms.size();
+		Map<Atom, Integer> atomToIndex = indexAtoms(atoms);
+		int[] degree = new int[atomCount];
+		int ghostCount = 0;
+		for (int i = 0; i < atomCount; i++) {
+			Atom atom = atoms.get(i);
+			degree[i] += atom.getBondCount();
+			if (hydrogensToAdd != null) {
+				degree[i] += hydrogensToAdd[i];
+				ghostCount += hydrogensToAdd[i];
+			}
+			for (Bond bond : atom.getBonds()) {
+				if (bond.getFromAtom() == atom && bond.getOrder() > 1) {
+					int ghostsAtEachEnd = bond.getOrder() - 1;
+					degree[i] += ghostsAtEachEnd;
+					degree[getIndexOfNeighbour(atomToIndex, bond.getToAtom())] += ghostsAtEachEnd;
+					ghostCount += 2 * ghostsAtEachEnd;
+				}
+			}
+		}
+		int nodeCount = atomCount + ghostCount;
+		int[][] neighbours = new int[nodeCount][];
+		int[] initialRank = new int[nodeCount];
+		int[] neighboursAdded = new int[atomCount];
+		for (int i = 0; i < atomCount; i++) {
+			neighbours[i] = new int[degree[i]];
+			initialRank[i] = rankByAtomicNumberThenAtomicMass(atoms.get(i).getElement(), atoms.get(i).getIsotope());
+		}
+		int nextGhost = atomCount;
+		for (int i = 0; i < atomCount; i++) {
+			Atom atom = atoms.get(i);
+			for (Bond bond : atom.getBonds()) {
+				Atom otherAtom = bond.getOtherAtom(atom);
+				int otherIdx = getIndexOfNeighbour(atomToIndex, otherAtom);
+				neighbours[i][neighboursAdded[i]++] = otherIdx;
+				if (bond.getFromAtom() == atom) {
+					for (int j = bond.getOrder(); j > 1; j--) {
+						//a ghost of each atom attached to the other
+						neighbours[nextGhost] = new int[]{otherIdx};
+						initialRank[nextGhost] = rankByAtomicNumberThenAtomicMass(atom.getElement(), null);
+						neighbours[otherIdx][neighboursAdded[otherIdx]++] = nextGhost++;
+						neighbours[nextGhost] = new int[]{i};
+						initialRank[nextGhost] = rankByAtomicNumberThenAtomicMass(otherAtom.getElement(), null);
+						neighbours[i][neighboursAdded[i]++] = nextGhost++;
+					}
+				}
+			}
+			if (hydrogensToAdd != null) {
+				for (int j = 0; j < hydrogensToAdd[i]; j++) {
+					neighbours[nextGhost] = new int[]{i};
+					initialRank[nextGhost] = rankByAtomicNumberThenAtomicMass(ChemEl.H, null);
+					neighbours[i][neighboursAdded[i]++] = nextGhost++;
+				}
+			}
+		}
+		return new AtomColourRefiner(atomToIndex, neighbours, initialRank);
+	}
+
+	/**
+	 * Higher atomic number then higher atomic mass gives a higher rank. An unspecified mass is lowest
+	 */
+	private static int rankByAtomicNumberThenAtomicMass(ChemEl chemEl, Integer isotope) {
+		return (chemEl.ATOMIC_NUM << 16) + (isotope != null ? isotope + 1 : 0);
+	}
+
+	private static Map<Atom, Integer> indexAtoms(List<Atom> atoms) {
+		int atomCount = atoms.size();
+		Map<Atom, Integer> atomToIndex = new HashMap<Atom, Integer>(atomCount * 2);
+		for (int i = 0; i < atomCount; i++) {
+			atomToIndex.put(atoms.get(i), i);
+		}
+		return atomToIndex;
+	}
+
+	private static int getIndexOfNeighbour(Map<Atom, Integer> atomToIndex, Atom neighbour) {
+		Integer idx = atomToIndex.get(neighbour);
+		if (idx == null) {
+			throw new IllegalArgumentException("OPSIN Bug: Atom has a neighbour that is not part of the atoms to be coloured");
+		}
+		return idx;
+	}
+
+	/**
+	 * Orders the nodes by their initial rank, setting up cells of nodes with the same rank
+	 * @return the start of each cell
+	 */
+	private int[] createInitialCells(int[] initialRank) {
+		int nodeCount = initialRank.length;
+		long[] sortKeys = new long[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			sortKeys[i] = ((long) initialRank[i] << 32) | i;
+		}
+		Arrays.sort(sortKeys);
+		int[] cellStarts = new int[nodeCount];
+		int cellCount = 0;
+		int cellStart = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			int idx = (int) sortKeys[i];
+			if (i > 0 && initialRank[idx] != initialRank[(int) sortKeys[i - 1]]) {
+				cellEnd[cellStart] = i;
+				cellStarts[cellCount++] = cellStart;
+				cellStart = i;
+			}
+			elements[i] = idx;
+			positionOfAtom[idx] = i;
+			cellOfAtom[idx] = cellStart;
+		}
+		if (nodeCount > 0) {
+			cellEnd[cellStart] = nodeCount;
+			cellStarts[cellCount++] = cellStart;
+		}
+		return Arrays.copyOf(cellStarts, cellCount);
+	}
+
+	/** Cells that have yet to be used as a splitter, a circular buffer */
+	private int[] queue;
+	private int queueHead;
+	private int queueSize;
+	private boolean[] inQueue;
+
+	private void refine(int[] initialCells) {
+		int atomCount = elements.length;
+		queue = new int[atomCount];
+		inQueue = new boolean[atomCount];
+		for (int cell : initialCells) {
+			enqueue(cell);
+		}
+
+		//the atoms of the current splitter
+		int[] splitterAtoms = new int[atomCount];
+		//for each atom the number of neighbours it has in the current splitter
+		int[] neighboursInSplitter = new int[atomCount];
+		//atoms with at least one neighbour in the current splitter
+		int[] touchedAtoms = new int[atomCount];
+		//cells containing a touched atom
+		int[] touchedCells = new int[atomCount];
+		//indexed by cell: touched atoms are moved to the end of their cell, this is where they start
+		int[] touchedStart = new int[atomCount];
+		boolean[] cellTouched = new boolean[atomCount];
+		long[] sortKeys = new long[atomCount];
+
+		while (queueSize > 0) {
+			int splitter = queue[queueHead];
+			queueHead = (queueHead + 1) % atomCount;
+			queueSize--;
+			inQueue[splitter] = false;
+
+			//copied as moving touched atoms may reorder the splitter itself
+			int splitterSize = cellEnd[splitter] - splitter;
+			System.arraycopy(elements, splitter, splitterAtoms, 0, splitterSize);
+
+			int touchedAtomCount = 0;
+			int touchedCellCount = 0;
+			for (int i = 0; i < splitterSize; i++) {
+				for (int neighbour : neighbours[splitterAtoms[i]]) {
+					if (neighboursInSplitter[neighbour]++ == 0) {
+						touchedAtoms[touchedAtomCount++] = neighbour;
+						int cell = cellOfAtom[neighbour];
+						if (!cellTouched[cell]) {
+							cellTouched[cell] = true;
+							touchedCells[touchedCellCount++] = cell;
+							touchedStart[cell] = cellEnd[cell];
+						}
+						//move to the touched region at the end of the cell
+						swap(positionOfAtom[neighbour], --touchedStart[cell]);
+					}
+				}
+			}
+
+			for (int i = 0; i < touchedCellCount; i++) {
+				int cell = touchedCells[i];
+				cellTouched[cell] = false;
+				splitCell(cell, touchedStart[cell], neighboursInSplitter, sortKeys);
+			}
+
+			for (int i = 0; i < touchedAtomCount; i++) {
+				neighboursInSplitter[touchedAtoms[i]] = 0;
+			}
+		}
+		queue = null;
+		inQueue = null;
+	}
+
+	private void enqueue(int cell) {
+		queue[(queueHead + queueSize) % queue.length] = cell;
+		queueSize++;
+		inQueue[cell] = true;
+	}
+
+	/**
+	 * Splits the cell by the number of neighbours each atom has in the splitter.
+	 * Atoms with no such neighbours occupy the start of the cell, atoms with neighbours the end (from touchedStart)
+	 * If the cell was awaiting use as a splitter all the new cells are queued, otherwise all but the largest
+	 */
+	private void splitCell(int cell, int touchedStart, int[] neighboursInSplitter, long[] sortKeys) {
+		int end = cellEnd[cell];
+		int touchedCount = end - touchedStart;
+		for (int p = touchedStart; p < end; p++) {
+			int atom = elements[p];
+			sortKeys[p - touchedStart] = ((long) neighboursInSplitter[atom] << 32) | atom;
+		}
+		Arrays.sort(sortKeys, 0, touchedCount);
+		for (int i = 0; i < touchedCount; i++) {
+			int atom = (int) sortKeys[i];
+			elements[touchedStart + i] = atom;
+			positionOfAtom[atom] = touchedStart + i;
+		}
+
+		int largestCell = cell;
+		int largestSize = 0;
+		int subCellCount = 0;
+		int subCellStart = cell;
+		for (int p = cell + 1; p <= end; p++) {
+			if (p == end || p == touchedStart ||
+					(p > touchedStart && neighboursInSplitter[elements[p]] != neighboursInSplitter[elements[p - 1]])) {
+				cellEnd[subCellStart] = p;
+				if (subCellStart != cell) {
+					for (int q = subCellStart; q < p; q++) {
+						cellOfAtom[elements[q]] = subCellStart;
+					}
+				}
+				if (p - subCellStart > largestSize) {
+					largestSize = p - subCellStart;
+					largestCell = subCellStart;
+				}
+				subCellCount++;
+				subCellStart = p;
+			}
+		}
+		if (subCellCount > 1) {
+			boolean wasInQueue = inQueue[cell];
+			for (int subCell = cell; subCell < end; subCell = cellEnd[subCell]) {
+				if (!inQueue[subCell] && (wasInQueue || subCell != largestCell)) {
+					enqueue(subCell);
+				}
+			}
+		}
+	}
+
+	private void swap(int pos1, int pos2) {
+		int atom1 = elements[pos1];
+		int atom2 = elements[pos2];
+		elements[pos1] = atom2;
+		positionOfAtom[atom2] = pos1;
+		elements[pos2] = atom1;
+		positionOfAtom[atom1] = pos2;
+	}
+
+	/**
+	 * Returns the colour of the atom. Atoms in identical environments have the same colour
+	 * Null if the atom was not coloured
+	 * @param atom
+	 * @return
+	 */
+	Integer getColour(Atom atom) {
+		Integer idx = atomToIndex.get(atom);
+		return idx != null ? cellEnd[cellOfAtom[idx]] : null;
+	}
+}
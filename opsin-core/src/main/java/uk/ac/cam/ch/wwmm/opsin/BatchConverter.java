@@ -0,0 +1,469 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.ac.cam.ch.wwmm.opsin.CachedOpsinResult.Format;
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+import uk.ac.cam.ch.wwmm.opsin.ResultWriter.CachedResultWriter;
+
+/**
+ * Converts names, one per line, giving the result of each line to all the {@link ResultWriter}s in input order.
+ * Each name is hence only interpreted once regardless of the number of output formats.<br>
+ * Names may be read sequentially from a stream, or in chunks of lines that are interpreted on several threads.
+ * An uncompressed file is memory-mapped, so that its chunks are also decoded on those threads.
+ */
+class BatchConverter {
+
+	static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+	static final int DEFAULT_LINES_PER_CHUNK = 1000;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final NameToStructure nts = NameToStructure.getInstance();
+	private final List<ResultWriter> writers;
+	private final NameToStructureConfig n2sconfig;
+	private final OpsinResultCache cache;
+	private final Set<Format> cachedFormats;
+	private final DuplicateNameCache<CachedOpsinResult> recentCachedResults;
+	private final DuplicateNameCache<OpsinResult> recentResults;
+
+	/**
+	 * @param writers
+	 * @param n2sconfig
+	 * @param cache Consulted when all the writers support cached results, may be null
+	 * @param maxDuplicateNames If positive, the results of up to this many recent names are kept so that repeated names are not reinterpreted.
+	 * When all the writers support cached results only the text they need is kept, otherwise each name's whole structure is kept
+	 */
+	BatchConverter(List<ResultWriter> writers, NameToStructureConfig n2sconfig, OpsinResultCache cache, int maxDuplicateNames) {
+		this.writers = writers;
+		this.n2sconfig = n2sconfig;
+		this.cachedFormats = getCachedFormats(writers);
+		this.cache = cachedFormats != null ? cache : null;
+		this.recentCachedResults = maxDuplicateNames > 0 && cachedFormats != null ? new DuplicateNameCache<CachedOpsinResult>(maxDuplicateNames) : null;
+		this.recentResults = maxDuplicateNames > 0 && cachedFormats == null ? new DuplicateNameCache<OpsinResult>(maxDuplicateNames) : null;
+	}
+
+	/**
+	 * The formats the writers need to write results from an {@link OpsinResultCache}
+	 * @param writers
+	 * @return The formats, or null if any writer cannot write cached results
+	 */
+	static Set<Format> getCachedFormats(List<ResultWriter> writers) {
+		Set<Format> formats = EnumSet.noneOf(Format.class);
+		for (ResultWriter writer : writers) {
+			if (!(writer instanceof CachedResultWriter)) {
+				return null;
+			}
+			formats.add(((CachedResultWriter) writer).getCachedFormat());
+		}
+		return formats;
+	}
+
+	/**
+	 * The cache of recently seen names, or null if repeated names are not being detected
+	 * @return
+	 */
+	DuplicateNameCache<?> getDuplicateNameCache() {
+		return recentCachedResults != null ? recentCachedResults : recentResults;
+	}
+
+	/**
+	 * Converts the lines of the given stream, writing each result as soon as it is available
+	 * @param input
+	 * @throws Exception
+	 */
+	void convert(InputStream input) throws Exception {
+		BufferedReader inputReader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+		String line;
+		while((line =inputReader.readLine()) != null) {
+			write(interpret(line));
+			for (ResultWriter writer : writers) {
+				writer.flush();
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Converts the lines of the given stream. Lines are read in chunks of the given number of lines, each of which is interpreted by one of the given number of threads.
+	 * Results are written in chunk order so the output is the same as if the lines had been converted sequentially
+	 * @param input
+	 * @param threads
+	 * @param linesPerChunk
+	 * @throws Exception
+	 */
+	void convert(InputStream input, int threads, final int linesPerChunk) throws Exception {
+		final BufferedReader inputReader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+		convertChunks(new ChunkSource() {
+			@Override
+			public ChunkConverter next() throws IOException {
+				List<String> lines = new ArrayList<>(linesPerChunk);
+				String line;
+				while (lines.size() < linesPerChunk && (line = inputReader.readLine()) != null) {
+					lines.add(line);
+				}
+				return lines.isEmpty() ? null : new LineChunkConverter(lines);
+			}
+		}, threads, null);
+	}
+
+	/**
+	 * Converts the lines of the given UTF-8 file. The file is split into chunks of around chunkSize bytes, ending on a new line,
+	 * each of which is memory-mapped, decoded and interpreted by one of the given number of threads.
+	 * Results are written in chunk order so the output is the same as if the file had been read sequentially
+	 * @param inputFile
+	 * @param threads
+	 * @param chunkSize
+	 * @throws Exception
+	 */
+	void convert(File inputFile, int threads, int chunkSize) throws Exception {
+		convert(inputFile, 0, inputFile.length(), 0, threads, chunkSize, null);
+	}
+
+	/**
+	 * Converts the lines of the given range of a UTF-8 file, as {@link #convert(File, int, int)}.
+	 * start and end should be the start of a line, or the end of the file.<br>
+	 * After the results of each chunk have been written and flushed, the listener, if any, is given the offset of the end of that chunk.
+	 * Lines that start before lineByLineEnd are converted as chunks of one line, so that a checkpoint is made after each of them.
+	 * Each of these is interpreted alone, so a crash whilst interpreting it is known to be caused by that line
+	 * @param inputFile
+	 * @param start
+	 * @param end
+	 * @param lineByLineEnd
+	 * @param threads
+	 * @param chunkSize
+	 * @param listener may be null
+	 * @throws Exception
+	 */
+	void convert(File inputFile, final long start, long end, final long lineByLineEnd, int threads, final int chunkSize, CheckpointListener listener) throws Exception {
+		RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+		try {
+			final FileChannel channel = file.getChannel();
+			final long size = Math.min(end, channel.size());
+			convertChunks(new ChunkSource() {
+				private long chunkStart = start;
+
+				@Override
+				public ChunkConverter next() throws IOException {
+					if (chunkStart >= size) {
+						return null;
+					}
+					boolean lineByLine = chunkStart < lineByLineEnd;
+					long chunkEnd = findChunkEnd(channel, lineByLine ? chunkStart : chunkStart + chunkSize, size);
+					ChunkConverter chunk = new MappedChunkConverter(channel, chunkStart, chunkEnd, lineByLine);
+					chunkStart = chunkEnd;
+					return chunk;
+				}
+			}, threads, listener);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	private void convertChunks(ChunkSource chunkSource, int threads, CheckpointListener listener) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			//bounds the number of interpreted, but not yet written, results in memory
+			int maxPendingChunks = 2 * threads;
+			Deque<Future<List<ConvertedLine>>> pendingChunks = new ArrayDeque<>();
+			Deque<ChunkConverter> pendingChunkConverters = new ArrayDeque<>();
+			ChunkConverter nextChunk = null;
+			boolean moreChunks = true;
+			while (moreChunks || !pendingChunks.isEmpty()) {
+				while (moreChunks && pendingChunks.size() < maxPendingChunks) {
+					if (nextChunk == null) {
+						nextChunk = chunkSource.next();
+						if (nextChunk == null) {
+							moreChunks = false;
+							break;
+						}
+					}
+					if (!pendingChunks.isEmpty() && (nextChunk.isInterpretedAlone() || pendingChunkConverters.peekLast().isInterpretedAlone())) {
+						break;
+					}
+					pendingChunks.add(executor.submit(nextChunk));
+					pendingChunkConverters.add(nextChunk);
+					nextChunk = null;
+				}
+				if (pendingChunks.isEmpty()) {
+					break;
+				}
+				List<ConvertedLine> convertedLines;
+				try {
+					convertedLines = pendingChunks.poll().get();
+				}
+				catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+				ChunkConverter chunk = pendingChunkConverters.poll();
+				for (ConvertedLine converted : convertedLines) {
+					write(converted);
+				}
+				if (listener != null && chunk.getEnd() >= 0) {
+					for (ResultWriter writer : writers) {
+						writer.flush();
+					}
+					listener.checkpoint(chunk.getEnd());
+				}
+			}
+			finish();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the offset just after the first new line at or after the given offset, or the file size if there is none
+	 * @param channel
+	 * @param offset
+	 * @param size
+	 * @return
+	 * @throws IOException
+	 */
+	static long findChunkEnd(FileChannel channel, long offset, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (offset < size) {
+			((Buffer) buffer).clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Splits text into lines, in the same way as {@link BufferedReader#readLine()}
+	 * @param chars
+	 * @return
+	 */
+	static List<String> splitLines(CharBuffer chars) {
+		List<String> lines = new ArrayList<>();
+		int lineStart = chars.position();
+		int limit = chars.limit();
+		for (int i = lineStart; i < limit; i++) {
+			char ch = chars.get(i);
+			if (ch == '\n' || ch == '\r') {
+				lines.add(chars.subSequence(lineStart - chars.position(), i - chars.position()).toString());
+				if (ch == '\r' && i + 1 < limit && chars.get(i + 1) == '\n') {
+					i++;
+				}
+				lineStart = i + 1;
+			}
+		}
+		if (lineStart < limit) {
+			lines.add(chars.subSequence(lineStart - chars.position(), limit - chars.position()).toString());
+		}
+		return lines;
+	}
+
+	private ConvertedLine interpret(String line) {
+		int splitPoint = line.indexOf('\t');
+		String name = splitPoint >=0 ? line.substring(0, splitPoint) : line;
+		if (cache != null || recentCachedResults != null) {
+			CachedOpsinResult result = recentCachedResults != null ? recentCachedResults.get(name) : null;
+			if (result == null) {
+				result = cache != null ? nts.parseChemicalName(name, n2sconfig, cache, cachedFormats) : new CachedOpsinResult(nts.parseChemicalName(name, n2sconfig), cachedFormats);
+				if (recentCachedResults != null) {
+					recentCachedResults.put(name, result);
+				}
+			}
+			return new ConvertedLine(line, name, null, result);
+		}
+		OpsinResult result = recentResults != null ? recentResults.get(name) : null;
+		if (result == null) {
+			result = nts.parseChemicalName(name, n2sconfig);
+			if (recentResults != null) {
+				recentResults.put(name, result);
+			}
+		}
+		return new ConvertedLine(line, name, result, null);
+	}
+
+	private void write(ConvertedLine converted) throws Exception {
+		boolean failed = false;
+		String message;
+		if (converted.cachedResult != null) {
+			for (ResultWriter writer : writers) {
+				failed |= !((CachedResultWriter) writer).write(converted.line, converted.name, converted.cachedResult);
+			}
+			message = converted.cachedResult.getMessage();
+		}
+		else {
+			for (ResultWriter writer : writers) {
+				failed |= !writer.write(converted.line, converted.name, converted.result);
+			}
+			message = converted.result.getMessage();
+		}
+		if (failed) {
+			System.err.println(message);
+		}
+	}
+
+	/**
+	 * Writes a failure for the given line without interpreting it e.g. as it is known to crash the JVM
+	 * @param line
+	 * @param message
+	 * @throws Exception
+	 */
+	void writeFailure(String line, String message) throws Exception {
+		int splitPoint = line.indexOf('\t');
+		String name = splitPoint >=0 ? line.substring(0, splitPoint) : line;
+		write(new ConvertedLine(line, name, new OpsinResult(null, OPSIN_RESULT_STATUS.FAILURE, message, name), null));
+	}
+
+	private void finish() throws Exception {
+		for (ResultWriter writer : writers) {
+			writer.finish();
+		}
+	}
+
+	/**
+	 * Notified as conversion of a range of a file progresses
+	 */
+	interface CheckpointListener {
+		/**
+		 * Called once the results of all lines before the given offset have been written and flushed
+		 * @param inputOffset
+		 * @throws IOException
+		 */
+		void checkpoint(long inputOffset) throws IOException;
+	}
+
+	private interface ChunkSource {
+		/**
+		 * The next chunk of lines, or null if there are no more
+		 * @return
+		 * @throws IOException
+		 */
+		ChunkConverter next() throws IOException;
+	}
+
+	/**
+	 * Interprets the lines of one chunk of input
+	 */
+	private abstract class ChunkConverter implements Callable<List<ConvertedLine>> {
+
+		abstract List<String> readLines() throws IOException;
+
+		/**
+		 * The offset in the input file of the end of this chunk, or -1 if not read from a file
+		 * @return
+		 */
+		long getEnd() {
+			return -1;
+		}
+
+		/**
+		 * Whether this chunk is interpreted whilst no other chunk is, so that a crash during its interpretation is known to be caused by one of its lines
+		 * @return
+		 */
+		boolean isInterpretedAlone() {
+			return false;
+		}
+
+		@Override
+		public List<ConvertedLine> call() throws Exception {
+			List<String> lines = readLines();
+			List<ConvertedLine> convertedLines = new ArrayList<>(lines.size());
+			for (String line : lines) {
+				convertedLines.add(interpret(line));
+			}
+			return convertedLines;
+		}
+	}
+
+	private class LineChunkConverter extends ChunkConverter {
+		private final List<String> lines;
+
+		LineChunkConverter(List<String> lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		List<String> readLines() {
+			return lines;
+		}
+	}
+
+	/**
+	 * Decodes the lines of a chunk of a file
+	 */
+	private class MappedChunkConverter extends ChunkConverter {
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+		private final boolean interpretedAlone;
+
+		MappedChunkConverter(FileChannel channel, long start, long end, boolean interpretedAlone) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.interpretedAlone = interpretedAlone;
+		}
+
+		@Override
+		List<String> readLines() throws IOException {
+			ByteBuffer bytes = channel.map(MapMode.READ_ONLY, start, end - start);
+			CharBuffer chars = UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.decode(bytes);
+			return splitLines(chars);
+		}
+
+		@Override
+		long getEnd() {
+			return end;
+		}
+
+		@Override
+		boolean isInterpretedAlone() {
+			return interpretedAlone;
+		}
+	}
+
+	private static class ConvertedLine {
+		private final String line;
+		private final String name;
+		private final OpsinResult result;
+		private final CachedOpsinResult cachedResult;
+
+		ConvertedLine(String line, String name, OpsinResult result, CachedOpsinResult cachedResult) {
+			this.line = line;
+			this.name = name;
+			this.result = result;
+			this.cachedResult = cachedResult;
+		}
+	}
+}
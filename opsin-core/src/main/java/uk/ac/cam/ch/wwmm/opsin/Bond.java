@@ -81,6 +81,8 @@ class Bond {
     * @param order*/
 	void setOrder(int order) {
 		this.order = order;
+		from.structureChanged();
+		to.structureChanged();
 	}
 
 	/**
@@ -105,6 +107,8 @@ class Bond {
 	 */
 	void addOrder(int o) {
 		order += o;
+		from.structureChanged();
+		to.structureChanged();
 	}
 
 	/**
@@ -18,6 +18,7 @@ class BuildState {
 	final FragmentManager fragManager;
 	final HashMap<Element, List<Fragment>> xmlSuffixMap;
 	final NameToStructureConfig n2sConfig;
+	final SymmetryClassifier symmetryClassifier;
 	private final List<OpsinWarning> warnings = new ArrayList<OpsinWarning>();
 	
 	WordRule currentWordRule = null;
@@ -27,6 +28,7 @@ class BuildState {
 		IDManager idManager = new IDManager();
 		fragManager = new FragmentManager(new SMILESFragmentBuilder(idManager), idManager);
 		xmlSuffixMap = new HashMap<Element, List<Fragment>>();
+		symmetryClassifier = new SymmetryClassifier();
 	}
 
 	List<OpsinWarning> getWarnings() {
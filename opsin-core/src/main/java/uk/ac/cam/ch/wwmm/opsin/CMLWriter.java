@@ -1,14 +1,19 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
 import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
 
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
 import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
 import com.ctc.wstx.stax.WstxOutputFactory;
 
 class CMLWriter {
@@ -21,6 +26,11 @@ class CMLWriter {
 	static {
 		factory.setProperty(WstxOutputProperties.P_OUTPUT_ESCAPE_CR, false);
 	}
+	private static final XMLInputFactory inputFactory = new WstxInputFactory();
+	static {
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
 	
 	/**The XML writer*/
 	private final XMLStreamWriter writer;
@@ -112,6 +122,54 @@ class CMLWriter {
 		writer.writeEndElement();
 	}
 	
+	/**
+	 * Writes the molecule from CML previously generated by this class, e.g. from a {@link CachedOpsinResult}, giving it the given id.
+	 * If the CML is null, as for a name that could not be interpreted, a molecule with just the chemical name is written
+	 * @param cml
+	 * @param chemicalName
+	 * @param id
+	 * @throws XMLStreamException
+	 */
+	void writeMolecule(String cml, String chemicalName, int id) throws XMLStreamException {
+		if (cml == null) {
+			writeMolecule((Fragment) null, chemicalName, id);
+			return;
+		}
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(cml));
+		try {
+			int depth = 0;
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					if (depth > 1) {//omit the cml root element
+						writer.writeStartElement(reader.getLocalName());
+						for (int i = 0, l = reader.getAttributeCount(); i < l; i++) {
+							String attributeName = reader.getAttributeLocalName(i);
+							writer.writeAttribute(attributeName, depth == 2 && attributeName.equals("id") ? "m" + id : reader.getAttributeValue(i));
+						}
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (depth-- > 1) {
+						writer.writeEndElement();
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+					if (depth > 1) {
+						writer.writeCharacters(reader.getText());
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
 	private void writeAtom(Atom atom) throws XMLStreamException {
 		writer.writeStartElement("atom");
 		writer.writeAttribute("id", "a" + Integer.toString(atom.getID()));
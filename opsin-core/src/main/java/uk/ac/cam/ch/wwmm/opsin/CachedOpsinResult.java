@@ -0,0 +1,129 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * The serialisable outputs of an {@link OpsinResult}, as held by an {@link OpsinResultCache}.
+ * Unlike an OpsinResult no structure is retained, hence only the SMILES and/or CML are available,
+ * and only those that were requested when the name was interpreted
+ */
+public class CachedOpsinResult {
+
+	/**
+	 * The outputs that may be held by a CachedOpsinResult
+	 */
+	public enum Format {
+		SMILES,
+		CML
+	}
+
+	private final String chemicalName;
+	private final OPSIN_RESULT_STATUS status;
+	private final String message;
+	private final Set<Format> formats;
+	private final String smiles;
+	private final String cml;
+
+	/**
+	 * @param chemicalName
+	 * @param status
+	 * @param message
+	 * @param formats The formats that were generated; the output of other formats is null
+	 * @param smiles
+	 * @param cml
+	 */
+	CachedOpsinResult(String chemicalName, OPSIN_RESULT_STATUS status, String message, Set<Format> formats, String smiles, String cml) {
+		this.chemicalName = chemicalName;
+		this.status = status;
+		this.message = message;
+		this.formats = formats;
+		this.smiles = smiles;
+		this.cml = cml;
+	}
+
+	/**
+	 * Generates the given formats of the given result
+	 * @param result
+	 * @param formats
+	 */
+	CachedOpsinResult(OpsinResult result, Set<Format> formats) {
+		this(result.getChemicalName(), result.getStatus(), result.getMessage(), copyOf(formats),
+				formats.contains(Format.SMILES) ? result.getSmiles() : null,
+				formats.contains(Format.CML) ? result.getCml() : null);
+	}
+
+	private static Set<Format> copyOf(Set<Format> formats) {
+		Set<Format> copy = EnumSet.noneOf(Format.class);
+		copy.addAll(formats);
+		return copy;
+	}
+
+	/**
+	 * Whether the given format was generated
+	 * @param format
+	 * @return
+	 */
+	public boolean hasFormat(Format format) {
+		return formats.contains(format);
+	}
+
+	Set<Format> getFormats() {
+		return formats;
+	}
+
+	/**
+	 * Returns the chemical name that this result was generated from
+	 * @return String containing the original chemical name
+	 */
+	public String getChemicalName() {
+		return chemicalName;
+	}
+
+	/**
+	 * Returns an enum indicating whether interpreting the chemical name was successful
+	 * @return {@link OPSIN_RESULT_STATUS} status
+	 */
+	public OPSIN_RESULT_STATUS getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns a message explaining why generation of a molecule from the name failed
+	 * This string will be blank when no problems were encountered
+	 * @return String explaining problems encountered
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * The SMILES corresponding to the molecule described by the name
+	 * If name generation failed i.e. the OPSIN_RESULT_STATUS is FAILURE then null is returned
+	 * @return SMILES as a String
+	 * @throws IllegalStateException If SMILES was not one of the formats generated
+	 */
+	public String getSmiles() {
+		checkFormat(Format.SMILES);
+		return smiles;
+	}
+
+	/**
+	 * The CML corresponding to the molecule described by the name
+	 * If name generation failed i.e. the OPSIN_RESULT_STATUS is FAILURE then null is returned
+	 * @return Chemical Markup Language as a String
+	 * @throws IllegalStateException If CML was not one of the formats generated
+	 */
+	public String getCml() {
+		checkFormat(Format.CML);
+		return cml;
+	}
+
+	private void checkFormat(Format format) {
+		if (!formats.contains(format)) {
+			throw new IllegalStateException(format + " was not generated for this result");
+		}
+	}
+}
@@ -0,0 +1,569 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static uk.ac.cam.ch.wwmm.opsin.OpsinTools.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Scans free text for chemical names.
+ * Example usage:
+ * ChemicalNameRecogniser recogniser = new ChemicalNameRecogniser(reader);
+ * ChemicalNameSpan span;
+ * while ((span = recogniser.next()) != null) {...}
+ * <br>
+ * A span starts at the start of a word of the text and is the longest run of space separated words that
+ * are each wholly accepted by OPSIN's chemical grammar (the same DFA used by {@link ParseRules}) and that ends in a complete name
+ * i.e. a word that ends with a main group, or a functional term preceded by at least one other word e.g. "ethyl acetate", "acetic acid".
+ * Two consecutive words that are each a complete name are treated as separate names. Trailing punctuation is not included in the span.<br>
+ * Only the grammar is consulted: no parse trees are built and no structures are generated, hence OPSIN may still fail to interpret a span.
+ * A span that is a partial name e.g. "ethyl" on its own is not reported, and nor are names longer than the maximum name length.<br>
+ * The input is read incrementally so documents of any size may be scanned.
+ * Instances are not thread-safe, but any number of instances may be used concurrently.
+ */
+public class ChemicalNameRecogniser {
+
+	/** The default maximum length, in chars, of a recognised name */
+	public static final int DEFAULT_MAX_NAME_LENGTH = 2048;
+
+	private static final int READ_SIZE = 1 << 16;
+
+	private static final int NON_ASCII_CHAR = 128;
+	private static final int ANY_CHAR = 129;
+
+	private static final int MAX_CACHED_WORDS = 1 << 14;
+	private static final int MAX_CACHED_WORD_LENGTH = 64;
+
+	private static final Pattern matchCharLookaround = Pattern.compile("\\(\\?<?[=!]\\[[^\\]]*\\]\\)");
+
+	private static final int FULL = 1;
+	private static final int SUBSTITUENT = 2;
+	private static final int FUNCTIONAL_TERM = 4;
+
+	private final RunAutomaton chemAutomaton;
+	private final char[] stateSymbols;
+	private final OpsinRadixTrie[] symbolTokenNamesDict;
+	private final RunAutomaton[] symbolRegexAutomataDict;
+	private final Matcher[] symbolRegexMatchers;
+	/** Whether the regex of each state symbol is a lookahead/lookbehind for a single char, and hence only examines the chars either side of its (empty) match */
+	private final boolean[] symbolRegexIsCharLookaround;
+	/** The word type (if any) that each state symbol ends */
+	private final int[] symbolWordTypes;
+	private final int initialState;
+	/** The transitions out of each DFA state, indexed by first char, found as states are first visited */
+	private final int[][][] stateTransitions;
+	private final int maxNameLength;
+
+	private final Reader reader;
+	private final char[] readBuffer;
+	private final StringBuilder buffer = new StringBuilder();
+	private boolean endOfInput = false;
+	/** The text currently being scanned and its lower cased form (used for matching tokens, as in {@link ParseRules}) */
+	private String text = "";
+	private String textLowerCase = "";
+	/** Offset in the input of text.charAt(0) */
+	private long offset = 0;
+	/** Index in text from which to look for the next name */
+	private int scanPos = 0;
+
+	/** (state, position) pairs visited whilst running the DFA over a word, as an open addressing hash table */
+	private long[] visitedKeys = new long[1024];
+	/** Types of the words ending at the visited pairs */
+	private int[] visitedWordTypes = new int[1024];
+	/** Indices into visitedKeys in order of discovery */
+	private int[] queue = new int[512];
+	private int queueSize;
+	/** Word types of the accepted words indexed by word length */
+	private final int[] acceptedWordTypes;
+	private int[] acceptedLengths = new int[16];
+	private int acceptedCount;
+	/** Types of the word found by the last call to {@link #findWordEnd} */
+	private int wordTypes;
+	/** The range of text examined by the current call to {@link #runGrammar} */
+	private int firstExamined;
+	private int lastExamined;
+	/** Results of {@link #findWordEnd}, packed as word length &lt;&lt; 8 | word types, keyed by the text that determined them */
+	private final Map<String, Integer> wordCache = new HashMap<String, Integer>();
+
+	/**
+	 * Scans the given text for chemical names
+	 * @param text
+	 */
+	public ChemicalNameRecogniser(CharSequence text) {
+		this(new StringReader(text.toString()), DEFAULT_MAX_NAME_LENGTH);
+	}
+
+	/**
+	 * Scans text read from the given reader for chemical names.
+	 * The reader is read as names are requested; it is not closed by the recogniser
+	 * @param reader
+	 */
+	public ChemicalNameRecogniser(Reader reader) {
+		this(reader, DEFAULT_MAX_NAME_LENGTH);
+	}
+
+	/**
+	 * Scans text read from the given reader for chemical names of at most the given length
+	 * @param reader
+	 * @param maxNameLength
+	 */
+	public ChemicalNameRecogniser(Reader reader, int maxNameLength) {
+		this(NameToStructure.getOpsinParser(), reader, maxNameLength);
+	}
+
+	ChemicalNameRecogniser(ParseRules parseRules, Reader reader, int maxNameLength) {
+		if (maxNameLength < 1) {
+			throw new IllegalArgumentException("maxNameLength must be positive");
+		}
+		this.chemAutomaton = parseRules.getChemAutomaton();
+		this.stateSymbols = parseRules.getStateSymbols();
+		this.symbolTokenNamesDict = parseRules.getSymbolTokenNamesDict();
+		this.symbolRegexAutomataDict = parseRules.getSymbolRegexAutomataDict();
+		Pattern[] symbolRegexesDict = parseRules.getSymbolRegexesDict();
+		this.symbolRegexMatchers = new Matcher[stateSymbols.length];
+		this.symbolRegexIsCharLookaround = new boolean[stateSymbols.length];
+		this.symbolWordTypes = new int[stateSymbols.length];
+		for (int i = 0; i < stateSymbols.length; i++) {
+			if (symbolRegexesDict[i] != null) {
+				symbolRegexMatchers[i] = symbolRegexesDict[i].matcher("");
+				symbolRegexIsCharLookaround[i] = matchCharLookaround.matcher(symbolRegexesDict[i].pattern()).matches();
+			}
+			char symbol = stateSymbols[i];
+			symbolWordTypes[i] = symbol == END_OF_MAINGROUP ? FULL : symbol == END_OF_SUBSTITUENT ? SUBSTITUENT : symbol == END_OF_FUNCTIONALTERM ? FUNCTIONAL_TERM : 0;
+		}
+		this.initialState = chemAutomaton.getInitialState();
+		this.stateTransitions = new int[chemAutomaton.getSize()][][];
+		this.maxNameLength = maxNameLength;
+		this.reader = reader;
+		this.readBuffer = new char[Math.max(READ_SIZE, maxNameLength)];
+		this.acceptedWordTypes = new int[maxNameLength + 1];
+		Arrays.fill(visitedKeys, -1);
+	}
+
+	/**
+	 * Convenience method returning all the chemical names in the given text
+	 * @param text
+	 * @return The names in the order they occur in the text
+	 */
+	public static List<ChemicalNameSpan> findNames(CharSequence text) {
+		ChemicalNameRecogniser recogniser = new ChemicalNameRecogniser(text);
+		List<ChemicalNameSpan> names = new ArrayList<ChemicalNameSpan>();
+		try {
+			ChemicalNameSpan span;
+			while ((span = recogniser.next()) != null) {
+				names.add(span);
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("OPSIN bug: IOException whilst reading from a String", e);
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the next chemical name in the input
+	 * @return The next name, or null if the end of the input has been reached
+	 * @throws IOException if reading the input fails
+	 */
+	public ChemicalNameSpan next() throws IOException {
+		while (true) {
+			if (!endOfInput && text.length() - scanPos <= maxNameLength) {
+				fillBuffer();
+			}
+			//a name starting at or before this index cannot run beyond the text that has been read
+			int scanEnd = endOfInput ? text.length() : text.length() - maxNameLength;
+			while (scanPos < scanEnd) {
+				int start = scanPos;
+				if (!isWordStart(start)) {
+					scanPos++;
+					continue;
+				}
+				int end = findName(start);
+				if (end > start) {
+					scanPos = end;
+					return new ChemicalNameSpan(text.substring(start, end), offset + start, offset + end);
+				}
+				scanPos++;
+			}
+			if (endOfInput) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Discards text that has been scanned and reads more of the input.
+	 * The char before scanPos is retained so that word starts can be identified
+	 * @throws IOException
+	 */
+	private void fillBuffer() throws IOException {
+		int discard = Math.max(0, scanPos - 1);
+		buffer.delete(0, discard);
+		offset += discard;
+		scanPos -= discard;
+		int target = buffer.length() + READ_SIZE;
+		while (buffer.length() < target) {
+			int read = reader.read(readBuffer, 0, Math.min(readBuffer.length, target - buffer.length()));
+			if (read == -1) {
+				endOfInput = true;
+				break;
+			}
+			buffer.append(readBuffer, 0, read);
+		}
+		text = buffer.toString();
+		textLowerCase = StringTools.lowerCaseAsciiString(text);
+		for (Matcher m : symbolRegexMatchers) {
+			if (m != null) {
+				m.reset(text);
+				m.useTransparentBounds(true);
+				m.useAnchoringBounds(false);
+			}
+		}
+	}
+
+	private boolean isWordStart(int i) {
+		char ch = text.charAt(i);
+		if (Character.isWhitespace(ch)) {
+			return false;
+		}
+		return i == 0 && offset == 0 || i > 0 && !Character.isLetterOrDigit(text.charAt(i - 1));
+	}
+
+	/**
+	 * Word ends must be followed by the end of the input or a char that is not part of a word
+	 * @param i
+	 * @return
+	 */
+	private boolean isWordEnd(int i) {
+		return i == text.length() || !Character.isLetterOrDigit(text.charAt(i));
+	}
+
+	/**
+	 * Finds the longest name starting at the given index
+	 * @param start
+	 * @return The index after the end of the name or -1 if no name starts here
+	 */
+	private int findName(int start) {
+		int limit = Math.min(text.length(), start + maxNameLength);
+		int nameEnd = -1;
+		int wordStart = start;
+		int previousWordTypes = 0;
+		for (int wordCount = 1; ; wordCount++) {
+			int wordEnd = findWordEnd(wordStart, limit);
+			if (wordEnd == -1 || (previousWordTypes == FULL && wordTypes == FULL)) {
+				//two consecutive complete names are more likely to be a list of names than one name
+				break;
+			}
+			if ((wordTypes & FULL) != 0 || ((wordTypes & FUNCTIONAL_TERM) != 0 && wordCount > 1)) {
+				nameEnd = wordEnd;
+			}
+			//as in the Tokeniser, words are separated by a single space
+			int nextWordStart = wordEnd + 1;
+			if (nextWordStart >= limit || text.charAt(wordEnd) != ' ' || text.charAt(nextWordStart) == ' ') {
+				break;
+			}
+			wordStart = nextWordStart;
+			previousWordTypes = wordTypes;
+		}
+		return nameEnd;
+	}
+
+	/**
+	 * Finds the longest word starting at the given index, as described by {@link #runGrammar(int, int)}.
+	 * Prose is dominated by a small vocabulary of words, which would otherwise be run through the grammar every time they occur,
+	 * so the result is cached against the text from the char before the word to the next whitespace,
+	 * if the grammar did not examine any text outside of this
+	 * @param wordStart
+	 * @param limit The index beyond which words may not extend
+	 * @return The index after the end of the word, or -1 if there is none
+	 */
+	private int findWordEnd(int wordStart, int limit) {
+		String cacheKey = null;
+		if (wordStart > 0) {
+			int keyLimit = Math.min(limit, wordStart + MAX_CACHED_WORD_LENGTH);
+			int whitespacePos = wordStart;
+			while (whitespacePos < keyLimit && !Character.isWhitespace(text.charAt(whitespacePos))) {
+				whitespacePos++;
+			}
+			if (whitespacePos < keyLimit) {
+				cacheKey = text.substring(wordStart - 1, whitespacePos + 1);
+				Integer cachedResult = wordCache.get(cacheKey);
+				if (cachedResult != null) {
+					int length = cachedResult >> 8;
+					wordTypes = cachedResult & 0xff;
+					return length > 0 ? wordStart + length : -1;
+				}
+			}
+		}
+		firstExamined = wordStart;
+		lastExamined = wordStart;
+		int wordEnd = runGrammar(wordStart, limit);
+		if (cacheKey != null && firstExamined >= wordStart - 1 && lastExamined < wordStart - 1 + cacheKey.length()) {
+			if (wordCache.size() >= MAX_CACHED_WORDS) {
+				wordCache.clear();
+			}
+			wordCache.put(cacheKey, ((wordEnd == -1 ? 0 : wordEnd - wordStart) << 8) | wordTypes);
+		}
+		return wordEnd;
+	}
+
+	/**
+	 * Runs the chemical grammar DFA from the given index, exploring every tokenisation of the text.
+	 * Unlike {@link ParseRules#getParses(String)} tokenisations that reach the same DFA state at the same index are merged,
+	 * as only the indices at which the grammar accepts (and the type of word accepted there) are needed.
+	 * The longest accepted word that ends at a word end is returned, with its types set in {@link #wordTypes}
+	 * @param wordStart
+	 * @param limit The index beyond which words may not extend
+	 * The range of text that was examined is recorded in {@link #firstExamined} and {@link #lastExamined}
+	 * @return The index after the end of the word, or -1 if there is none
+	 */
+	private int runGrammar(int wordStart, int limit) {
+		queueSize = 0;
+		visit(initialState, wordStart, 0);
+		for (int q = 0; q < queueSize; q++) {
+			long key = visitedKeys[queue[q]];
+			int state = (int) (key >>> 32);
+			int posInName = (int) key;
+			int[][] transitionsByChar = stateTransitions[state];
+			if (transitionsByChar == null) {
+				transitionsByChar = stateTransitions[state] = findTransitions(state);
+			}
+			applyTransitions(transitionsByChar[ANY_CHAR], posInName, limit);
+			if (posInName < limit) {
+				char ch = text.charAt(posInName);
+				lastExamined = Math.max(lastExamined, posInName);
+				applyTransitions(transitionsByChar[ch < 128 ? ch : NON_ASCII_CHAR], posInName, limit);
+			}
+		}
+
+		acceptedCount = 0;
+		for (int q = 0; q < queueSize; q++) {
+			int slot = queue[q];
+			long key = visitedKeys[slot];
+			int posInName = (int) key;
+			if (posInName > wordStart && chemAutomaton.isAccept((int) (key >>> 32))) {
+				int length = posInName - wordStart;
+				if (acceptedWordTypes[length] == 0) {
+					if (acceptedCount == acceptedLengths.length) {
+						acceptedLengths = Arrays.copyOf(acceptedLengths, acceptedCount * 2);
+					}
+					acceptedLengths[acceptedCount++] = length;
+				}
+				acceptedWordTypes[length] |= visitedWordTypes[slot] | Integer.MIN_VALUE;
+			}
+			visitedKeys[slot] = -1;
+			visitedWordTypes[slot] = 0;
+		}
+
+		int bestLength = 0;
+		for (int i = 0; i < acceptedCount; i++) {
+			int length = acceptedLengths[i];
+			if (length > bestLength) {
+				lastExamined = Math.max(lastExamined, wordStart + length);
+				if (isWordEnd(wordStart + length)) {
+					bestLength = length;
+				}
+			}
+		}
+		wordTypes = acceptedWordTypes[bestLength] & ~Integer.MIN_VALUE;
+		for (int i = 0; i < acceptedCount; i++) {
+			acceptedWordTypes[acceptedLengths[i]] = 0;
+		}
+		return bestLength > 0 ? wordStart + bestLength : -1;
+	}
+
+	/**
+	 * Tokenises the text at the given index using each of the given transitions,
+	 * visiting the resultant state after each token that matches
+	 * @param transitions pairs of (index into stateSymbols, next state)
+	 * @param posInName
+	 * @param limit
+	 */
+	private void applyTransitions(int[] transitions, int posInName, int limit) {
+		for (int t = 0; t < transitions.length; t += 2) {
+			int i = transitions[t];
+			int nextState = transitions[t + 1];
+			int wordType = symbolWordTypes[i];
+			OpsinRadixTrie possibleTokenisationsTrie = symbolTokenNamesDict[i];
+			if (possibleTokenisationsTrie != null) {
+				OpsinTrieNode node = possibleTokenisationsTrie.rootNode;
+				if (node.isEndPoint()) {
+					visit(nextState, posInName, wordType);
+				}
+				for (int j = posInName; j < limit; j++) {
+					char ch = textLowerCase.charAt(j);
+					lastExamined = Math.max(lastExamined, j);
+					if (ch >= 128 || (node = node.getChild(ch)) == null) {
+						break;
+					}
+					int nodeLength = node.getValue().length();
+					if (nodeLength > 1) {
+						if (j + nodeLength > limit) {
+							break;
+						}
+						int charsMatched = node.getNumberOfMatchingCharacters(textLowerCase, j);
+						lastExamined = Math.max(lastExamined, j + Math.min(charsMatched, nodeLength - 1));
+						if (charsMatched != nodeLength) {
+							break;
+						}
+						j += nodeLength - 1;
+					}
+					if (node.isEndPoint()) {
+						visit(nextState, j + 1, wordType);
+					}
+				}
+			}
+			RunAutomaton possibleAutomata = symbolRegexAutomataDict[i];
+			if (possibleAutomata != null) {
+				//equivalent to RunAutomaton.run, but bounded by the limit and recording how far the text was read
+				int automatonState = possibleAutomata.getInitialState();
+				int matchEnd = possibleAutomata.isAccept(automatonState) ? posInName : -1;
+				int j = posInName;
+				for (; j < limit; j++) {
+					automatonState = possibleAutomata.step(automatonState, text.charAt(j));
+					if (automatonState == -1) {
+						break;
+					}
+					if (possibleAutomata.isAccept(automatonState)) {
+						matchEnd = j + 1;
+					}
+				}
+				lastExamined = Math.max(lastExamined, j);
+				if (matchEnd != -1) {
+					visit(nextState, matchEnd, wordType);
+				}
+			}
+			Matcher possibleRegex = symbolRegexMatchers[i];
+			if (possibleRegex != null) {
+				possibleRegex.region(posInName, limit);
+				boolean matches = possibleRegex.lookingAt();
+				if (symbolRegexIsCharLookaround[i]) {
+					firstExamined = Math.min(firstExamined, posInName - 1);
+					lastExamined = Math.max(lastExamined, posInName);
+				}
+				else {
+					firstExamined = 0;
+					lastExamined = limit;
+				}
+				if (matches) {
+					visit(nextState, possibleRegex.end(), wordType);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the symbols that may be consumed from the given state, and the states they lead to,
+	 * indexed by the char that tokens of the symbol may start with.
+	 * Symbols that may match zero chars are indexed by {@link #ANY_CHAR}; those that may start with a non-ASCII char are also indexed by {@link #NON_ASCII_CHAR}
+	 * @param state
+	 * @return for each index, pairs of (index into stateSymbols, next state)
+	 */
+	private int[][] findTransitions(int state) {
+		int[][] transitionsByChar = new int[ANY_CHAR + 1][];
+		int[] sizes = new int[ANY_CHAR + 1];
+		for (int c = 0; c <= ANY_CHAR; c++) {
+			transitionsByChar[c] = new int[4];
+		}
+		for (int i = 0; i < stateSymbols.length; i++) {
+			int nextState = chemAutomaton.step(state, stateSymbols[i]);
+			if (nextState == -1) {//-1 means this state is not accessible from the previous state
+				continue;
+			}
+			OpsinRadixTrie trie = symbolTokenNamesDict[i];
+			RunAutomaton automaton = symbolRegexAutomataDict[i];
+			if (symbolRegexMatchers[i] != null || (trie != null && trie.rootNode.isEndPoint()) ||
+					(automaton != null && automaton.isAccept(automaton.getInitialState()))) {
+				addTransition(transitionsByChar, sizes, ANY_CHAR, i, nextState);
+				continue;
+			}
+			for (char c = 0; c < 128; c++) {
+				char lowerCaseChar = c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+				if ((trie != null && trie.rootNode.getChild(lowerCaseChar) != null) ||
+						(automaton != null && automaton.step(automaton.getInitialState(), c) != -1)) {
+					addTransition(transitionsByChar, sizes, c, i, nextState);
+				}
+			}
+			if (automaton != null) {
+				for (char c : automaton.getCharIntervals()) {
+					if (c >= 128 && automaton.step(automaton.getInitialState(), c) != -1) {
+						addTransition(transitionsByChar, sizes, NON_ASCII_CHAR, i, nextState);
+						break;
+					}
+				}
+			}
+		}
+		for (int c = 0; c <= ANY_CHAR; c++) {
+			transitionsByChar[c] = Arrays.copyOf(transitionsByChar[c], sizes[c]);
+		}
+		return transitionsByChar;
+	}
+
+	private static void addTransition(int[][] transitionsByChar, int[] sizes, int c, int symbolIndex, int nextState) {
+		int[] transitions = transitionsByChar[c];
+		if (sizes[c] + 2 > transitions.length) {
+			transitions = transitionsByChar[c] = Arrays.copyOf(transitions, transitions.length * 2);
+		}
+		transitions[sizes[c]++] = symbolIndex;
+		transitions[sizes[c]++] = nextState;
+	}
+
+	/**
+	 * Records that the given state is reachable at the given index, queueing it if this is the first time it has been reached
+	 * @param state
+	 * @param posInName
+	 * @param wordType The type of word ended by the transition to this state
+	 */
+	private void visit(int state, int posInName, int wordType) {
+		if (queueSize * 2 >= visitedKeys.length) {
+			growVisited();
+		}
+		long key = ((long) state << 32) | posInName;
+		int mask = visitedKeys.length - 1;
+		int slot = (int) ((key ^ (key >>> 29)) * 0x9E3779B9) & mask;
+		long existing;
+		while ((existing = visitedKeys[slot]) != -1) {
+			if (existing == key) {
+				visitedWordTypes[slot] |= wordType;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		visitedKeys[slot] = key;
+		visitedWordTypes[slot] = wordType;
+		if (queueSize == queue.length) {
+			queue = Arrays.copyOf(queue, queueSize * 2);
+		}
+		queue[queueSize++] = slot;
+	}
+
+	private void growVisited() {
+		long[] oldKeys = visitedKeys;
+		int[] oldWordTypes = visitedWordTypes;
+		visitedKeys = new long[oldKeys.length * 2];
+		visitedWordTypes = new int[oldKeys.length * 2];
+		Arrays.fill(visitedKeys, -1);
+		int mask = visitedKeys.length - 1;
+		for (int q = 0; q < queueSize; q++) {
+			int oldSlot = queue[q];
+			long key = oldKeys[oldSlot];
+			int slot = (int) ((key ^ (key >>> 29)) * 0x9E3779B9) & mask;
+			while (visitedKeys[slot] != -1) {
+				slot = (slot + 1) & mask;
+			}
+			visitedKeys[slot] = key;
+			visitedWordTypes[slot] = oldWordTypes[oldSlot];
+			queue[q] = slot;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+/**
+ * A run of text that {@link ChemicalNameRecogniser} found to be accepted by OPSIN's chemical grammar
+ */
+public class ChemicalNameSpan {
+	private final String name;
+	private final long start;
+	private final long end;
+
+	ChemicalNameSpan(String name, long start, long end) {
+		this.name = name;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * The text of the span, as it appeared in the input
+	 * @return String containing the chemical name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The offset, in chars from the start of the input, of the first char of the name
+	 * @return offset of the start of the name
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * The offset, in chars from the start of the input, of the char after the end of the name
+	 * @return offset of the end of the name (exclusive)
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	public String toString() {
+		return name + " [" + start + ", " + end + ")";
+	}
+}
@@ -5,7 +5,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 /**
@@ -84,6 +86,7 @@ class CipSequenceRules {
 	
 	/**
 	 * Holds an atom with associated visited atoms
+	 * i.e. a node in the hierarchical digraph rooted at the chiral atom
 	 * @author dl387
 	 *
 	 */
@@ -96,6 +99,8 @@ class CipSequenceRules {
 		final Atom atom;
 		final List<Atom> visitedAtoms;
 		final Integer indexOfOriginalFromRoot;
+		/** The node's neighbours in the digraph in CIP order, populated on first use */
+		List<AtomWithHistory> nextAtoms;
 	}
 	
 	/**
@@ -110,6 +115,13 @@ class CipSequenceRules {
 		private final CipComparator cipComparator = new CipComparator();
 		private int rule = 0;
 		
+		/**
+		 * For each neighbour of the chiral atom, the root of its branch of the digraph for each rule.
+		 * As nodes remember their neighbours, each branch is only explored once per rule
+		 * regardless of how many other branches it is compared with
+		 */
+		private final Map<Atom, AtomWithHistory[]> branchRoots = new HashMap<Atom, AtomWithHistory[]>();
+		
 
 		SortByCipOrder(Atom chiralAtom) {
 			this.chiralAtom = chiralAtom;
@@ -122,10 +134,8 @@ class CipSequenceRules {
 	    	 * rule = 2 --> Rule 2 Higher atomic mass number precedes lower
 	    	 */
 	    	for (rule = 0; rule <= 2; rule++) {
-				List<Atom> atomsVisted = new ArrayList<Atom>();
-				atomsVisted.add(chiralAtom);
-				AtomWithHistory aWithHistory = new AtomWithHistory(a, atomsVisted, null);
-				AtomWithHistory bWithHistory = new AtomWithHistory(b, new ArrayList<Atom>(atomsVisted), null);
+				AtomWithHistory aWithHistory = getBranchRoot(a);
+				AtomWithHistory bWithHistory = getBranchRoot(b);
 				
 	    		int compare = compareByCipRules(aWithHistory, bWithHistory);
 				if (compare != 0) {
@@ -160,6 +170,22 @@ class CipSequenceRules {
 	    	throw new CipOrderingRunTimeException("Failed to assign CIP stereochemistry, this indicates a bug in OPSIN or a limitation in OPSIN's implementation of the sequence rules");
 	    }
 
+		private AtomWithHistory getBranchRoot(Atom branchAtom) {
+			AtomWithHistory[] rootForEachRule = branchRoots.get(branchAtom);
+			if (rootForEachRule == null) {
+				rootForEachRule = new AtomWithHistory[3];
+				branchRoots.put(branchAtom, rootForEachRule);
+			}
+			AtomWithHistory root = rootForEachRule[rule];
+			if (root == null) {
+				List<Atom> atomsVisted = new ArrayList<Atom>(1);
+				atomsVisted.add(chiralAtom);
+				root = new AtomWithHistory(branchAtom, atomsVisted, null);
+				rootForEachRule[rule] = root;
+			}
+			return root;
+		}
+
 		/**
 		 * Compares the neighbours of the atoms specified in nextAtom1/2 in cipstate.
 		 * Returns the result of the comparison between these neighbours
@@ -212,41 +238,42 @@ class CipSequenceRules {
 		 * If given say [H,C,C] [H,C,C] this becomes [H,H] [C,C,C,C]
 		 * If given say [H,C,C] [H,C,F] this becomes [H],[C,C][H][C][F]
 		 * as [H,C,F] is higher priority than [H,C,C] so all its atoms must be evaluated first
-		 * The input lists of neighbours are assumed to have been presorted.
+		 * The input lists of neighbours are assumed to have been presorted and are not modified.
 		 * @param neighbourLists
 		 */
 		private List<List<AtomWithHistory>> formListsWithSamePriority(List<List<AtomWithHistory>> neighbourLists) {
 			int intialNeighbourListCount = neighbourLists.size();
-			if (intialNeighbourListCount > 1) {
-				List<List<AtomWithHistory>> listsToRemove  = new ArrayList<List<AtomWithHistory>>();
-				for (int i = 0; i < intialNeighbourListCount; i++) {
-					List<List<AtomWithHistory>> neighbourListsToCombine = new ArrayList<List<AtomWithHistory>>();
-					List<AtomWithHistory> primaryAtomList = neighbourLists.get(i);
-					for (int j = i + 1; j < intialNeighbourListCount; j++) {
-						List<AtomWithHistory> neighbourListToCompareWith = neighbourLists.get(j);
-						if (atomListCipComparator.compare(primaryAtomList, neighbourListToCompareWith) == 0) {
-							neighbourListsToCombine.add(neighbourListToCompareWith);
-							i++;
-						}
-						else {
-							break;
+			List<List<AtomWithHistory>> combinedNeighbourLists = new ArrayList<List<AtomWithHistory>>(intialNeighbourListCount);
+			for (int i = 0; i < intialNeighbourListCount; i++) {
+				List<AtomWithHistory> primaryAtomList = neighbourLists.get(i);
+				List<AtomWithHistory> combinedList = null;
+				for (int j = i + 1; j < intialNeighbourListCount; j++) {
+					List<AtomWithHistory> neighbourListToCompareWith = neighbourLists.get(j);
+					if (atomListCipComparator.compare(primaryAtomList, neighbourListToCompareWith) == 0) {
+						if (combinedList == null) {
+							combinedList = new ArrayList<AtomWithHistory>(primaryAtomList);
 						}
+						combinedList.addAll(neighbourListToCompareWith);
+						i++;
 					}
-					for (List<AtomWithHistory> neighbourList: neighbourListsToCombine) {
-						listsToRemove.add(neighbourList);
-						primaryAtomList.addAll(neighbourList);
+					else {
+						break;
 					}
 				}
-				neighbourLists.removeAll(listsToRemove);
+				if (combinedList != null) {
+					Collections.sort(combinedList, cipComparator);
+					combinedNeighbourLists.add(combinedList);
+				}
+				else {
+					combinedNeighbourLists.add(primaryAtomList);
+				}
 			}
 
 			List<List<AtomWithHistory>> updatedNeighbourLists  = new ArrayList<List<AtomWithHistory>>();
-			//lists of same priority have already been combined (see above) e.g. [H,C,C] [H,C,C] -->[H,C,C,H,C,C]
-			//now sort these combined lists by CIP priority
-			//then group atoms that have the same CIP priority
-			for (int i = 0, lstsLen = neighbourLists.size(); i < lstsLen; i++) {
-				List<AtomWithHistory> neighbourList = neighbourLists.get(i);
-				Collections.sort(neighbourList, cipComparator);
+			//lists of same priority have already been combined (see above) e.g. [H,C,C] [H,C,C] -->[H,C,C,H,C,C] and sorted by CIP priority
+			//now group atoms that have the same CIP priority
+			for (int i = 0, lstsLen = combinedNeighbourLists.size(); i < lstsLen; i++) {
+				List<AtomWithHistory> neighbourList = combinedNeighbourLists.get(i);
 				AtomWithHistory lastAtom = null;
 				List<AtomWithHistory> currentAtomList = new ArrayList<AtomWithHistory>();
 				for (int j = 0, lstLen = neighbourList.size(); j < lstLen; j++) {
@@ -355,10 +382,18 @@ class CipSequenceRules {
 		 * Gets the neighbouring atoms bar the previous atom in CIP order
 		 * If the neighbouring atom has already been visited it is replaced with a ghost atom
 		 * Multiple bonds including those to previous atoms yield ghost atoms unless the bond goes to the chiral atom e.g. in a sulfoxide
+		 * The returned list is shared so must not be modified
 		 * @param atoms
 		 * @return
 		 */
 		private List<AtomWithHistory> getNextAtomsWithAppropriateGhostAtoms(AtomWithHistory atomWithHistory) {
+			if (atomWithHistory.nextAtoms == null) {
+				atomWithHistory.nextAtoms = findNextAtomsWithAppropriateGhostAtoms(atomWithHistory);
+			}
+			return atomWithHistory.nextAtoms;
+		}
+
+		private List<AtomWithHistory> findNextAtomsWithAppropriateGhostAtoms(AtomWithHistory atomWithHistory) {
 			Atom atom = atomWithHistory.atom;
 			List<Atom> visitedAtoms = atomWithHistory.visitedAtoms;
 			Atom previousAtom = visitedAtoms.get(visitedAtoms.size()-1);
@@ -251,7 +251,7 @@ class ComponentProcessor {
 		applyHomologyGroupLabelsIfSpecified(group, thisFrag);
 		if (ELEMENTARYATOM_TYPE_VAL.equals(group.getAttributeValue(TYPE_ATR))) {
 			//these do not have implicit hydrogen e.g. phosphorus is literally just a phosphorus atom
-			for (Atom a : thisFrag.getAtomList()) {
+			for (Atom a : thisFrag.getAtoms()) {
 				a.setImplicitHydrogenAllowed(false);
 			}
 		}
@@ -599,7 +599,7 @@ class ComponentProcessor {
 	private static void applyTraditionalAlkaneNumberingIfAppropriate(Element group, Fragment thisFrag)  {
 		String groupType  = group.getAttributeValue(TYPE_ATR);
 		if (groupType.equals(ACIDSTEM_TYPE_VAL)){
-			List<Atom> atomList = thisFrag.getAtomList();
+			List<Atom> atomList = thisFrag.getAtoms();
 			Atom startingAtom = thisFrag.getFirstAtom();
 			if (group.getAttribute(SUFFIXAPPLIESTO_ATR) != null){
 				String suffixAppliesTo = group.getAttributeValue(SUFFIXAPPLIESTO_ATR);
@@ -641,7 +641,7 @@ class ComponentProcessor {
 			}
 		}
 		else if (groupType.equals(CHAIN_TYPE_VAL) && ALKANESTEM_SUBTYPE_VAL.equals(group.getAttributeValue(SUBTYPE_ATR))){
-			List<Atom> atomList = thisFrag.getAtomList();
+			List<Atom> atomList = thisFrag.getAtoms();
 			if (atomList.size() == 1){
 				return;
 			}
@@ -675,7 +675,7 @@ class ComponentProcessor {
 			String[] vals = homologyValsStr.split(";");
 			
 			List<Atom> homologyAtoms = new ArrayList<Atom>();
-			for (Atom a : frag.getAtomList()) {
+			for (Atom a : frag.getAtoms()) {
 				if (a.getElement() == ChemEl.R) {
 					homologyAtoms.add(a);
 				}
@@ -977,7 +977,7 @@ class ComponentProcessor {
 
 	private boolean containsCyclicAtoms(Element potentialRing) {
 		Fragment potentialRingFrag = potentialRing.getFrag();
-		List<Atom> atomList = potentialRingFrag.getAtomList();
+		List<Atom> atomList = potentialRingFrag.getAtoms();
 		for (Atom atom : atomList) {
 			if (atom.getAtomIsInACycle()){
 				return true;
@@ -1291,7 +1291,7 @@ class ComponentProcessor {
 
 	boolean applyDlStereochemistryToAminoAcid(Element aminoAcidEl, String dlStereochemistryValue) throws ComponentGenerationException {
 		Fragment aminoAcid = aminoAcidEl.getFrag();
-		List<Atom> atomList = aminoAcid.getAtomList();
+		List<Atom> atomList = aminoAcid.getAtoms();
 		List<Atom> atomsWithParities = new ArrayList<Atom>();
 		for (Atom atom : atomList) {
 			if (atom.getAtomParity() != null) {
@@ -1331,7 +1331,7 @@ class ComponentProcessor {
 
 	void applyDlStereochemistryToCarbohydrate(Element carbohydrateEl, String dlStereochemistryValue) throws ComponentGenerationException {
 		Fragment carbohydrate = carbohydrateEl.getFrag();
-		List<Atom> atomList = carbohydrate.getAtomList();
+		List<Atom> atomList = carbohydrate.getAtoms();
 		List<Atom> atomsWithParities = new ArrayList<Atom>();
 		for (Atom atom : atomList) {
 			if (atom.getAtomParity()!=null){
@@ -1764,7 +1764,7 @@ class ComponentProcessor {
 	 * @return
 	 */
 	private Atom getAnomericReferenceAtom(Fragment frag){
-		List<Atom> atomList = frag.getAtomList();
+		List<Atom> atomList = frag.getAtoms();
 		int highestLocantfound = Integer.MIN_VALUE;
 		Atom configurationalAtom = null;
 		for (Atom a : atomList) {
@@ -1984,7 +1984,7 @@ class ComponentProcessor {
 			Element primaryConjunctiveGroup =conjunctiveGroups.get(0);
 			Fragment primaryConjunctiveFrag = primaryConjunctiveGroup.getFrag();
 			//remove all locants
-			List<Atom> atomList = primaryConjunctiveFrag.getAtomList();
+			List<Atom> atomList = primaryConjunctiveFrag.getAtoms();
 			for (Atom atom : atomList) {
 				atom.clearLocants();
 			}
@@ -2378,7 +2378,7 @@ class ComponentProcessor {
 						labels = NONE_LABELS_VAL;
 					}
 					suffixFrag = state.fragManager.buildSMILES(suffixRule.getAttributeValue(SUFFIXRULES_SMILES_ATR), SUFFIX_TYPE_VAL, labels);
-					List<Atom> atomList = suffixFrag.getAtomList();
+					List<Atom> atomList = suffixFrag.getAtoms();
 					String functionalIdsAtr = suffixRule.getAttributeValue(SUFFIXRULES_FUNCTIONALIDS_ATR);
 					if (functionalIdsAtr != null) {
 						String[] relativeIdsOfFunctionalAtoms = functionalIdsAtr.split(",");
@@ -2771,7 +2771,7 @@ class ComponentProcessor {
 		List<Element> hwGroups = OpsinTools.getChildElementsWithTagNameAndAttribute(subOrRoot, GROUP_EL, SUBTYPE_ATR, HANTZSCHWIDMAN_SUBTYPE_VAL);
 		for (Element group : hwGroups) {
 			Fragment hwRing = group.getFrag();
-			List<Atom> atomList =hwRing.getAtomList();
+			List<Atom> atomList =hwRing.getAtoms();
 			boolean noLocants = true;
 			List<Element> prevs = new ArrayList<Element>();
 			Element prev = OpsinTools.getPreviousSibling(group);
@@ -3122,10 +3122,10 @@ class ComponentProcessor {
 						if (potentialAtomsOnParent.isEmpty() || potentialAtomsOnClone.isEmpty()) {
 							throw new StructureBuildingException("Unable to find suitable atom for unlocanted ring assembly construction");
 						}
-						if (AmbiguityChecker.isSubstitutionAmbiguous(potentialAtomsOnParent, 1)) {
+						if (AmbiguityChecker.isSubstitutionAmbiguous(state, potentialAtomsOnParent, 1)) {
 							state.addIsAmbiguous("Choice of atoms to form ring assembly: " + group.getValue());
 						}
-						if (AmbiguityChecker.isSubstitutionAmbiguous(potentialAtomsOnClone, 1)) {
+						if (AmbiguityChecker.isSubstitutionAmbiguous(state, potentialAtomsOnClone, 1)) {
 							state.addIsAmbiguous("Choice of atoms to form ring assembly: " + group.getValue());
 						}
 						atomOnParent = potentialAtomsOnParent.get(0);
@@ -3350,7 +3350,7 @@ class ComponentProcessor {
 
 			spiroLocant.detach();
 			Fragment nextFragment = nextGroup.getFrag();
-			FragmentTools.relabelNumericLocants(nextFragment.getAtomList(), StringTools.multiplyString("'", i));
+			FragmentTools.relabelNumericLocants(nextFragment.getAtoms(), StringTools.multiplyString("'", i));
 			String secondLocant = locants[1];
 			Atom atomOnNextFragment;
 			if (secondLocant.endsWith("'")){
@@ -3432,7 +3432,7 @@ class ComponentProcessor {
 			}
 			Fragment previousFrag = previousGroup.getFrag();
 			Fragment parentFrag = nextGroup.getFrag();
-			FragmentTools.relabelNumericLocants(parentFrag.getAtomList(), StringTools.multiplyString("'",i+1));
+			FragmentTools.relabelNumericLocants(parentFrag.getAtoms(), StringTools.multiplyString("'",i+1));
 			elementsToResolve = OpsinTools.getSiblingsUpToElementWithTagName(currentSpiro, POLYCYCLICSPIRO_EL);
 			resolveFeaturesOntoGroup(elementsToResolve);
 			
@@ -3456,7 +3456,7 @@ class ComponentProcessor {
 				if (potentialAtoms.isEmpty()) {
 					throw new StructureBuildingException("No suitable atom found for spiro fusion");
 				}
-				if (AmbiguityChecker.isSubstitutionAmbiguous(potentialAtoms, 1)) {
+				if (AmbiguityChecker.isSubstitutionAmbiguous(state, potentialAtoms, 1)) {
 					state.addIsAmbiguous("Choice of atom for spiro fusion on: " + previousGroup.getValue());
 				}
 				atomToBeReplaced = potentialAtoms.get(0);
@@ -3481,7 +3481,7 @@ class ComponentProcessor {
 				if (potentialAtoms.isEmpty()) {
 					throw new StructureBuildingException("No suitable atom found for spiro fusion");
 				}
-				if (AmbiguityChecker.isSubstitutionAmbiguous(potentialAtoms, 1)) {
+				if (AmbiguityChecker.isSubstitutionAmbiguous(state, potentialAtoms, 1)) {
 					state.addIsAmbiguous("Choice of atom for spiro fusion on: " + nextGroup.getValue());
 				};
 				atomOnParentFrag = potentialAtoms.get(0);
@@ -3793,7 +3793,7 @@ class ComponentProcessor {
 					if (possibleAtoms.isEmpty()) {
 						throw new StructureBuildingException("Unable to find suitable atom to form bridge");
 					}
-					if (AmbiguityChecker.isSubstitutionAmbiguous(possibleAtoms, 1)) {
+					if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleAtoms, 1)) {
 						state.addIsAmbiguous("Addition of bridge to: " + groupEl.getValue());
 					}
 					ringAtoms = StructureBuildingMethods.formEpoxide(state, bridgeFrag, possibleAtoms.get(0));
@@ -3807,7 +3807,7 @@ class ComponentProcessor {
 		List<Fragment> bridgeFragments = new ArrayList<Fragment>(bridgeToRingAtoms.keySet());
 		Collections.sort(bridgeFragments, new SortBridgesByHighestLocantedBridgehead(bridgeToRingAtoms));
 		for (Fragment bridgeFragment: bridgeFragments) {
-			List<Atom> bridgeFragmentAtoms = bridgeFragment.getAtomList();
+			List<Atom> bridgeFragmentAtoms = bridgeFragment.getAtoms();
 			Atom[] ringAtoms = bridgeToRingAtoms.get(bridgeFragment);
 			if (getLocantNumber(ringAtoms[0]) <= getLocantNumber(ringAtoms[1])){
 				for (int i = bridgeFragmentAtoms.size() - 1; i >=0; i--) {
@@ -4181,9 +4181,9 @@ class ComponentProcessor {
 			}
 			//look for locants and check whether they appear to be referring to the other chain
 			if (!placeInImplicitBracket) {
-				List<Element> childrenOfElementBeforeSubstituent = elementBeforeSubstituent.getChildElements();
 				Boolean foundLocantNotReferringToChain = null;
-				for (Element childOfElBeforeSub : childrenOfElementBeforeSubstituent) {
+				for (int i = 0, l = elementBeforeSubstituent.getChildCount(); i < l; i++) {
+					Element childOfElBeforeSub = elementBeforeSubstituent.getChild(i);
 					String currentElementName = childOfElBeforeSub.getName();
 					if (currentElementName.equals(LOCANT_EL)){
 						String locantText = childOfElBeforeSub.getValue();
@@ -4221,7 +4221,7 @@ class ComponentProcessor {
 			}
 			//being not substitutable doesn't mean it can't form additive bonds cf. oxy. Additive bonds can still benefit from implicit bracketing
 			boolean isSubstitutable = false;
-			for (Atom atom : frag.getAtomList()) {
+			for (Atom atom : frag.getAtoms()) {
 				if (StructureBuildingMethods.calculateSubstitutableHydrogenAtoms(atom) > 0){
 					isSubstitutable = true;
 					break;
@@ -4563,9 +4563,9 @@ class ComponentProcessor {
 	 * @return
 	 */
 	private List<Element> findLocantsThatCouldBeIndirectLocants(Element subOrRoot) {
-		List<Element> children = subOrRoot.getChildElements();
 		List<Element> locantEls = new ArrayList<Element>();
-		for (Element el : children) {
+		for (int i = 0, l = subOrRoot.getChildCount(); i < l; i++) {
+			Element el = subOrRoot.getChild(i);
 			if (el.getName().equals(LOCANT_EL)){
 				Element afterLocant = OpsinTools.getNextSibling(el);
 				if (afterLocant!=null && afterLocant.getName().equals(MULTIPLIER_EL)){//locant should not be followed by a multiplier. c.f. 1,2,3-tributyl 2-acetyloxypropane-1,2,3-tricarboxylate
@@ -4590,12 +4590,13 @@ class ComponentProcessor {
 	 */
 	private List<Element> findElementsMissingIndirectLocants(Element subOrRoot,Element locantEl) {
 		List<Element> locantAble = new ArrayList<Element>();
-		List<Element> childrenOfSubOrBracketOrRoot=subOrRoot.getChildElements();
-		for (Element el : childrenOfSubOrBracketOrRoot) {
+		int locantElIndex = subOrRoot.indexOf(locantEl);
+		for (int i = 0, l = subOrRoot.getChildCount(); i < l; i++) {
+			Element el = subOrRoot.getChild(i);
 			String name =el.getName();
 			if (name.equals(SUFFIX_EL) || name.equals(UNSATURATOR_EL) || name.equals(CONJUNCTIVESUFFIXGROUP_EL)){
 				if (el.getAttribute(LOCANT_ATR) ==null && el.getAttribute(LOCANTID_ATR) ==null && el.getAttribute(MULTIPLIED_ATR)==null){// shouldn't already have a locant or be multiplied (should of already had locants assignd to it if that were the case)
-					if (subOrRoot.indexOf(el)>subOrRoot.indexOf(locantEl)){
+					if (i > locantElIndex){
 						if (name.equals(SUFFIX_EL)){//check a few special cases that must not be locanted
 							Element group = OpsinTools.getPreviousSibling(el, GROUP_EL);
 							String type = group.getAttributeValue(TYPE_ATR);
@@ -4675,7 +4676,7 @@ class ComponentProcessor {
 					if (possibleAtoms.isEmpty()){
 						throw new StructureBuildingException("No suitable atom found for conjunctive operation");
 					}
-					if (AmbiguityChecker.isSubstitutionAmbiguous(possibleAtoms, 1)) {
+					if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleAtoms, 1)) {
 						state.addIsAmbiguous("Connection of conjunctive group to: " + ringGroup.getValue());
 					}
 					state.fragManager.createBond(atomToConnectToOnConjunctiveFrag, possibleAtoms.get(0) , 1);
@@ -5132,10 +5133,9 @@ class ComponentProcessor {
 			Element parent = subOrBracket.getParent();
 			//attempt to find cases where locant will not be utilised. A special case is made for carbonyl derivatives //e.g. 1H-2-benzopyran-1,3,4-trione 4-[N-(4-chlorophenyl)hydrazone]
 			if (!parent.getName().equals(WORD_EL) || !parent.getAttributeValue(TYPE_ATR).equals(WordType.full.toString()) || !state.currentWordRule.equals(WordRule.carbonylDerivative)){
-				List<Element> children =parent.getChildElements();
 				boolean foundSomethingToSubstitute =false;
-				for (int i = parent.indexOf(subOrBracket) +1 ; i < children.size(); i++) {
-					if (!children.get(i).getName().equals(HYPHEN_EL)){
+				for (int i = parent.indexOf(subOrBracket) +1, l = parent.getChildCount(); i < l; i++) {
+					if (!parent.getChild(i).getName().equals(HYPHEN_EL)){
 						foundSomethingToSubstitute = true;
 					}
 				}
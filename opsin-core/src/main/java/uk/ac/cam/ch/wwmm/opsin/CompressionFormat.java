@@ -0,0 +1,169 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the command-line's input and output files
+ */
+enum CompressionFormat {
+	none,
+	gzip(".gz", ".gzip"),
+	zstd(".zst", ".zstd");
+
+	private final String[] extensions;
+
+	private CompressionFormat(String... extensions) {
+		this.extensions = extensions;
+	}
+
+	/**
+	 * The compression indicated by the extension of the given file name
+	 * @param fileName
+	 * @return
+	 */
+	static CompressionFormat fromFileName(String fileName) {
+		String lowerCaseName = fileName.toLowerCase(Locale.ROOT);
+		for (CompressionFormat format : values()) {
+			for (String extension : format.extensions) {
+				if (lowerCaseName.endsWith(extension)) {
+					return format;
+				}
+			}
+		}
+		return none;
+	}
+
+	/**
+	 * The compression with the given name, or null if not recognised
+	 * @param name
+	 * @return
+	 */
+	static CompressionFormat fromName(String name) {
+		for (CompressionFormat format : values()) {
+			if (format.name().equalsIgnoreCase(name)) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks that the library needed for this compression is on the classpath,
+	 * so that its absence can be reported before any names are interpreted
+	 * @throws IOException If zstd-jni is needed but not on the classpath
+	 */
+	void checkAvailable() throws IOException {
+		checkAvailable(CompressionFormat.class.getClassLoader());
+	}
+
+	void checkAvailable(ClassLoader classLoader) throws IOException {
+		if (this == zstd) {
+			try {
+				Class.forName("com.github.luben.zstd.ZstdOutputStream", false, classLoader);
+			}
+			catch (ClassNotFoundException e) {
+				throw zstdUnavailable(e);
+			}
+		}
+	}
+
+	/**
+	 * Wraps the given stream such that reads are decompressed
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+		case none:
+			return in;
+		case gzip:
+			return new GZIPInputStream(in, 65536);
+		case zstd:
+			try {
+				return ZstdStreams.decompress(new BufferedInputStream(in, 65536));
+			}
+			catch (NoClassDefFoundError e) {
+				throw zstdUnavailable(e);
+			}
+		default:
+			throw new IllegalArgumentException("Unexpected enum value: " + this);
+		}
+	}
+
+	/**
+	 * Wraps the given stream such that writes are compressed.
+	 * Compressed output is only complete once the returned stream is closed
+	 * @param out
+	 * @param threads The number of threads to compress with
+	 * @return
+	 * @throws IOException
+	 */
+	OutputStream compress(OutputStream out, int threads) throws IOException {
+		switch (this) {
+		case none:
+			return out;
+		case gzip:
+			if (threads > 1) {
+				return new ParallelGzipOutputStream(out, threads, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE);
+			}
+			return new GZIPOutputStream(out, 65536);
+		case zstd:
+			try {
+				return new BufferedOutputStream(ZstdStreams.compress(out, threads), 65536);
+			}
+			catch (NoClassDefFoundError e) {
+				throw zstdUnavailable(e);
+			}
+		default:
+			throw new IllegalArgumentException("Unexpected enum value: " + this);
+		}
+	}
+
+	private static IOException zstdUnavailable(Throwable e) {
+		return new IOException("zstd compression requires zstd-jni (com.github.luben:zstd-jni) to be on the classpath. "
+				+ "It is not included in the jar with dependencies, hence run OPSIN with e.g. "
+				+ "java -cp opsin-jar-with-dependencies.jar:zstd-jni.jar uk.ac.cam.ch.wwmm.opsin.NameToStructure", e);
+	}
+
+	/**
+	 * Kept separate so that zstd-jni's classes are only loaded if zstd is used
+	 */
+	private static class ZstdStreams {
+
+		static InputStream decompress(InputStream in) throws IOException {
+			return new com.github.luben.zstd.ZstdInputStream(in);
+		}
+
+		static OutputStream compress(OutputStream out, int threads) throws IOException {
+			com.github.luben.zstd.ZstdOutputStream zstdOut = new com.github.luben.zstd.ZstdOutputStream(out);
+			if (threads > 1) {
+				zstdOut.setWorkers(threads);
+			}
+			//flushing zstd ends a block, which would be done after every name when output is interactive
+			return new FilterOutputStream(zstdOut) {
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+				}
+
+				@Override
+				public void flush() {
+				}
+
+				@Override
+				public void close() throws IOException {
+					out.close();
+				}
+			};
+		}
+	}
+}
@@ -2,9 +2,12 @@ package uk.ac.cam.ch.wwmm.opsin;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -18,63 +21,131 @@ class CycleDetector {
 	 * Performs a depth first search for rings hence assigning whether atoms are in rings or not
 	 * This is necessary for deciding the applicability, and in some cases meaning, of suffixes and to determine what atoms are capable of having spare valency
 	 * Fragments made of disconnected sections are supported
+	 * Rings may pass through atoms of other fragments the fragment is bonded to, but only the fragment's atoms are assigned
 	 * @param frag
 	 */
 	static void assignWhetherAtomsAreInCycles(Fragment frag) {
 		List<Atom> atomList = frag.getAtomList();
-		for (Atom atom : atomList) {
-			atom.setAtomIsInACycle(false);
-			atom.setProperty(Atom.VISITED, null);
+		int fragAtomCount = atomList.size();
+		if (fragAtomCount == 0) {
+			return;
 		}
-		for (Atom a : atomList) {//as OPSIN does not disallow disconnected sections within a single "fragment" (e.g. in suffixes) for vigorousness this for loop is required
-			if(a.getProperty(Atom.VISITED) == null){//true for only the first atom in a fully connected molecule
-				traverseRings(a, null, 0);
-			}
+		int[][] neighbours = indexNeighbours(atomList);
+		boolean[] inCycle = findAtomsInCycles(neighbours);
+		for (int i = 0; i < fragAtomCount; i++) {
+			atomList.get(i).setAtomIsInACycle(inCycle[i]);
 		}
 	}
-	
-	private static int traverseRings(Atom currentAtom, Atom previousAtom, int depth){
-		Integer previouslyAssignedDepth = currentAtom.getProperty(Atom.VISITED);
-		if(previouslyAssignedDepth != null){
-			return previouslyAssignedDepth;
+
+	/**
+	 * Assigns each atom an index, the atoms in atomList taking their position in the list.
+	 * Atoms reachable from these atoms, but not in the list, are indexed after them.
+	 * @param atomList
+	 * @return For each atom index the indices of its neighbours
+	 */
+	private static int[][] indexNeighbours(List<Atom> atomList) {
+		int lowestId = Integer.MAX_VALUE;
+		int highestId = Integer.MIN_VALUE;
+		for (Atom atom : atomList) {
+			lowestId = Math.min(lowestId, atom.getID());
+			highestId = Math.max(highestId, atom.getID());
 		}
-		currentAtom.setProperty(Atom.VISITED, depth);
-		List<Atom> equivalentAtoms = new ArrayList<Atom>();
-		equivalentAtoms.add(currentAtom);
-		
-		List<Atom> neighbours;
-		for(;;) {
-			//Non-recursively process atoms in a chain
-			//add the atoms in the chain to equivalentAtoms as either all or none of them are in a ring
-			neighbours = currentAtom.getAtomNeighbours();
-			neighbours.remove(previousAtom);
-			if (neighbours.size() != 1) {
-				break;
-			}
-			Atom nextAtom = neighbours.get(0);
-			if (nextAtom.getProperty(Atom.VISITED) != null) {
-				//chain reached a previously visited atom, must be a ring
-				break;
+		Atom[] atomById = new Atom[highestId - lowestId + 1];
+		int[] indexById = new int[highestId - lowestId + 1];
+		for (int i = 0, len = atomList.size(); i < len; i++) {
+			Atom atom = atomList.get(i);
+			atomById[atom.getID() - lowestId] = atom;
+			indexById[atom.getID() - lowestId] = i;
+		}
+		List<Atom> atoms = new ArrayList<Atom>(atomList);
+		Map<Atom, Integer> otherAtomToIndex = null;
+		List<int[]> neighbours = new ArrayList<int[]>(atoms.size());
+		for (int i = 0; i < atoms.size(); i++) {
+			Atom atom = atoms.get(i);
+			List<Bond> bonds = atom.getBonds();
+			int[] neighbourIndices = new int[bonds.size()];
+			for (int j = 0; j < neighbourIndices.length; j++) {
+				Atom neighbour = bonds.get(j).getOtherAtom(atom);
+				int idOffset = neighbour.getID() - lowestId;
+				if (idOffset >= 0 && idOffset < atomById.length && atomById[idOffset] == neighbour) {
+					neighbourIndices[j] = indexById[idOffset];
+				}
+				else {
+					//bond to another fragment
+					if (otherAtomToIndex == null) {
+						otherAtomToIndex = new HashMap<Atom, Integer>();
+					}
+					Integer idx = otherAtomToIndex.get(neighbour);
+					if (idx == null) {
+						idx = atoms.size();
+						atoms.add(neighbour);
+						otherAtomToIndex.put(neighbour, idx);
+					}
+					neighbourIndices[j] = idx;
+				}
 			}
-			previousAtom = currentAtom;
-			currentAtom = nextAtom;
-			equivalentAtoms.add(currentAtom);
-			currentAtom.setProperty(Atom.VISITED, ++depth);
+			neighbours.add(neighbourIndices);
 		}
+		return neighbours.toArray(new int[neighbours.size()][]);
+	}
 
-		int result = depth + 1;
-		for (Atom neighbour : neighbours) {
-		  int temp = traverseRings(neighbour, currentAtom, depth + 1);
-		  result = Math.min(result, temp);
-		}
-		if (result < depth){
-			for (Atom a : equivalentAtoms) {
-				a.setAtomIsInACycle(true);
+	/**
+	 * Iterative depth first search that finds the bonds that are not bridges i.e. the bonds in rings
+	 * A tree bond is in a ring if a descendant of the deeper atom has a bond back to the shallower atom or one of its ancestors
+	 * @param neighbours
+	 * @return For each atom index whether it is in a ring
+	 */
+	private static boolean[] findAtomsInCycles(int[][] neighbours) {
+		int atomCount = neighbours.length;
+		boolean[] inCycle = new boolean[atomCount];
+		int[] depth = new int[atomCount];
+		Arrays.fill(depth, -1);
+		//the shallowest depth reachable from the atom's descendants (and the atom itself) by at most one non-tree bond
+		int[] lowestReachableDepth = new int[atomCount];
+		int[] parent = new int[atomCount];
+		int[] nextNeighbour = new int[atomCount];
+		int[] stack = new int[atomCount];
+		for (int root = 0; root < atomCount; root++) {
+			if (depth[root] != -1) {
+				continue;
+			}
+			int stackSize = 0;
+			stack[stackSize++] = root;
+			depth[root] = 0;
+			lowestReachableDepth[root] = 0;
+			parent[root] = -1;
+			while (stackSize > 0) {
+				int current = stack[stackSize - 1];
+				int[] currentNeighbours = neighbours[current];
+				if (nextNeighbour[current] < currentNeighbours.length) {
+					int neighbour = currentNeighbours[nextNeighbour[current]++];
+					if (neighbour == parent[current]) {
+						continue;
+					}
+					if (depth[neighbour] == -1) {
+						depth[neighbour] = depth[current] + 1;
+						lowestReachableDepth[neighbour] = depth[neighbour];
+						parent[neighbour] = current;
+						stack[stackSize++] = neighbour;
+					}
+					else {
+						lowestReachableDepth[current] = Math.min(lowestReachableDepth[current], depth[neighbour]);
+					}
+				}
+				else {
+					stackSize--;
+					int parentOfCurrent = parent[current];
+					if (parentOfCurrent != -1) {
+						lowestReachableDepth[parentOfCurrent] = Math.min(lowestReachableDepth[parentOfCurrent], lowestReachableDepth[current]);
+						if (lowestReachableDepth[current] <= depth[parentOfCurrent]) {
+							inCycle[current] = true;
+							inCycle[parentOfCurrent] = true;
+						}
+					}
+				}
 			}
-		} else if (result == depth) {
-			currentAtom.setAtomIsInACycle(true);
 		}
-		return result;
+		return inCycle;
 	}
 
 	private static class PathSearchState{
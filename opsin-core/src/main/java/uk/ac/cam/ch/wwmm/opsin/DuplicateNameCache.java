@@ -0,0 +1,101 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Holds the results of recently interpreted names so that when a name is repeated in a batch its result can be reused.
+ * At most the given number of names are held, the least recently used being discarded first,
+ * so a name that repeats only after many other distinct names will be interpreted again.
+ * Counts of lookups and reuses are kept to report how much duplication was found.
+ * An instance may be shared between threads.<br>
+ * A whole {@link OpsinResult} holds the structure of the name, typically a few to tens of kilobytes,
+ * so where possible only the rendered output e.g. a {@link CachedOpsinResult} should be held.
+ * @param <R> The type of result e.g. {@link OpsinResult}
+ */
+class DuplicateNameCache<R> {
+
+	static final int DEFAULT_MAX_NAMES = 10000;
+
+	private final Map<String, R> recentResults;
+	private long lookups = 0;
+	private long reused = 0;
+	private long discarded = 0;
+
+	DuplicateNameCache(final int maxNames) {
+		if (maxNames < 1) {
+			throw new IllegalArgumentException("Maximum number of names must be positive: " + maxNames);
+		}
+		recentResults = new LinkedHashMap<String, R>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, R> eldest) {
+				if (size() > maxNames) {
+					discarded++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the result of the name if it was seen recently, otherwise null
+	 * @param name
+	 * @return
+	 */
+	synchronized R get(String name) {
+		lookups++;
+		R result = recentResults.get(name);
+		if (result != null) {
+			reused++;
+		}
+		return result;
+	}
+
+	/**
+	 * Records the result of a newly interpreted name
+	 * @param name
+	 * @param result
+	 */
+	synchronized void put(String name, R result) {
+		recentResults.put(name, result);
+	}
+
+	/**
+	 * The number of names looked up
+	 * @return
+	 */
+	synchronized long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * The number of names whose result was reused rather than the name being interpreted again
+	 * @return
+	 */
+	synchronized long getReused() {
+		return reused;
+	}
+
+	/**
+	 * The number of names that were discarded to stay within the maximum
+	 * @return
+	 */
+	synchronized long getDiscarded() {
+		return discarded;
+	}
+
+	/**
+	 * A one line summary of the duplication found e.g. for reporting at the end of a batch
+	 * @return
+	 */
+	synchronized String getSummary() {
+		long interpreted = lookups - reused;
+		double ratio = interpreted > 0 ? (double) lookups / interpreted : 1;
+		return String.format(Locale.ROOT, "%d names, %d interpreted, %d reused (%.1f%%), dedup ratio %.2f:1, %d discarded from the duplicate cache",
+				lookups, interpreted, reused, lookups > 0 ? 100.0 * reused / lookups : 0.0, ratio, discarded);
+	}
+}
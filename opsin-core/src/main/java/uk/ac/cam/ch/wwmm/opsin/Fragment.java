@@ -1,11 +1,10 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -23,11 +22,20 @@ import static uk.ac.cam.ch.wwmm.opsin.XmlDeclarations.*;
  */
 class Fragment implements Iterable<Atom> {
 
-	/**A mapping between IDs and the atoms in this fragment, by default is ordered by the order atoms are added to the fragment*/
-	private final Map<Integer, Atom> atomMapFromId = new LinkedHashMap<Integer, Atom>();
+	/**The atoms in this fragment, by default is ordered by the order atoms are added to the fragment*/
+	private final List<Atom> atomList = new ArrayList<Atom>();
 
-	/**Equivalent to and synced to atomMapFromId.values() */
-	private final Collection<Atom> atomCollection = atomMapFromId.values();
+	/**The atoms in this fragment, indexed by their ID minus atomIdOffset. Slots for IDs not in this fragment are null. Synced to atomList */
+	private Atom[] atomsById = new Atom[0];
+
+	/**The ID of the atom at index 0 of atomsById*/
+	private int atomIdOffset = 0;
+	
+	/**Read-only view of atomList */
+	private final List<Atom> atomListView = Collections.unmodifiableList(atomList);
+
+	/**Incremented whenever the structure of the fragment may have changed, see {@link #getModificationCount()}*/
+	private int modificationCount = 0;
 
 	/**A mapping between locants and the atoms in this fragment*/
 	private final Map<String, Atom> atomMapFromLocant = new HashMap<String, Atom>();
@@ -83,16 +91,68 @@ class Fragment implements Iterable<Atom> {
 		for (String locant: locants) {
 			atomMapFromLocant.put(locant, atom);
 		}
-		atomMapFromId.put(atom.getID(), atom);
+		structureChanged();
+		Atom previous = indexAtom(atom);
+		if (previous == null) {
+			atomList.add(atom);
+		}
+		else {
+			atomList.set(atomList.indexOf(previous), atom);
+		}
 		atom.setFrag(this);
 	}
 	
+	/**
+	 * Records the atom in atomsById, growing it as necessary
+	 * @param atom
+	 * @return The atom previously recorded with the same ID, or null
+	 */
+	private Atom indexAtom(Atom atom) {
+		int id = atom.getID();
+		if (atomsById.length == 0) {
+			atomsById = new Atom[16];
+			atomIdOffset = id;
+		}
+		else if (id < atomIdOffset) {
+			//leave space for further atoms with lower IDs, as these are typically added in ascending order of fragment
+			int shift = Math.max(atomIdOffset - id, atomsById.length);
+			Atom[] newAtomsById = new Atom[atomsById.length + shift];
+			System.arraycopy(atomsById, 0, newAtomsById, shift, atomsById.length);
+			atomsById = newAtomsById;
+			atomIdOffset -= shift;
+		}
+		else if (id - atomIdOffset >= atomsById.length) {
+			atomsById = Arrays.copyOf(atomsById, Math.max(atomsById.length * 2, id - atomIdOffset + 1));
+		}
+		int index = id - atomIdOffset;
+		Atom previous = atomsById[index];
+		atomsById[index] = atom;
+		return previous;
+	}
+
+	/**
+	 * A count that changes whenever an atom is added to or removed from this fragment, or one of its atoms changes
+	 * in a way that could change its environment e.g. a bond being added or changing order, or a change in element, charge or valency.
+	 * Hence results computed from the structure can be reused whilst the count is unchanged
+	 * @return
+	 */
+	int getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Records a change to the structure of this fragment, see {@link #getModificationCount()}
+	 */
+	void structureChanged() {
+		modificationCount++;
+	}
+
 	/**
 	 * Return the number of atoms in the fragment
 	 * @return
 	 */
 	int getAtomCount() {
-		return atomCollection.size();
+		return atomList.size();
 	}
 
 	/**
@@ -100,7 +160,17 @@ class Fragment implements Iterable<Atom> {
 	 * @return
 	 */
 	List<Atom> getAtomList() {
-		return new ArrayList<Atom>(atomCollection);
+		return new ArrayList<Atom>(atomList);
+	}
+	
+	/**
+	 * Returns a read-only view of the fragment's atoms, in the same order as {@link #getAtomList()}
+	 * The view reflects later changes to the fragment, hence {@link #getAtomList()} should be used
+	 * if atoms are to be added or removed from the fragment during iteration
+	 * @return
+	 */
+	List<Atom> getAtoms() {
+		return atomListView;
 	}
 
 	/**
@@ -194,7 +264,40 @@ class Fragment implements Iterable<Atom> {
 	 * @return The found atom, or null.
 	 */
 	Atom getAtomByID(int id) {
-		return atomMapFromId.get(id);
+		int index = id - atomIdOffset;
+		if (index < 0 || index >= atomsById.length) {
+			return null;
+		}
+		return atomsById[index];
+	}
+
+	/**
+	 * Is the given atom in this fragment
+	 * @param atom
+	 * @return
+	 */
+	boolean containsAtom(Atom atom) {
+		return getAtomIndex(atom) >= 0;
+	}
+
+	/**
+	 * A small non-negative integer identifying the atom within this fragment,
+	 * suitable for indexing an array or {@link java.util.BitSet} of size {@link #getAtomIndexLimit()}.
+	 * Indices are unchanged until an atom is added to the fragment
+	 * @param atom
+	 * @return The index, or -1 if the atom is not in this fragment
+	 */
+	int getAtomIndex(Atom atom) {
+		int index = atom.getID() - atomIdOffset;
+		return index >= 0 && index < atomsById.length && atomsById[index] == atom ? index : -1;
+	}
+
+	/**
+	 * An upper bound (exclusive) on the values returned by {@link #getAtomIndex(Atom)}
+	 * @return
+	 */
+	int getAtomIndexLimit() {
+		return atomsById.length;
 	}
 
 	/**Gets the atom in the fragment with the specified ID, throwing if this fails.
@@ -218,7 +321,7 @@ class Fragment implements Iterable<Atom> {
 	 * @return The bond found, or null
 	 */
 	Bond findBond(int ID1, int ID2) {
-		Atom a = atomMapFromId.get(ID1);
+		Atom a = getAtomByID(ID1);
 		if (a != null){
 			for (Bond b : a.getBonds()) {
 				if((b.getFrom() == ID1 && b.getTo() == ID2) ||
@@ -440,8 +543,7 @@ class Fragment implements Iterable<Atom> {
 			if (otherAtom == null) {
 				throw new RuntimeException("OPSIN Bug: A bond associated with an atom does not involve it");
 			}
-			//If the other atom is in atomMapFromId then it is in this fragment
-			if (atomMapFromId.get(otherAtom.getID()) != null) {
+			if (containsAtom(otherAtom)) {
 				results.add(otherAtom);
 			}
 		}
@@ -461,15 +563,15 @@ class Fragment implements Iterable<Atom> {
 	int getIntraFragmentIncomingValency(Atom atom) throws StructureBuildingException {
 		int v = 0;
 		for(Bond b :  atom.getBonds()) {
-			//recalled atoms will be null if they are not part of this fragment
+			//only atoms that are part of this fragment are counted
 			if(b.getFromAtom() == atom) {
-				Atom a =getAtomByID(b.getTo());
-				if (a != null && !a.getType().equals(SUFFIX_TYPE_VAL)){
+				Atom a = b.getToAtom();
+				if (containsAtom(a) && !a.getType().equals(SUFFIX_TYPE_VAL)){
 					v += b.getOrder();
 				}
 			} else if(b.getToAtom() == atom) {
-				Atom a =getAtomByID(b.getFrom());
-				if (a != null && !a.getType().equals(SUFFIX_TYPE_VAL)){
+				Atom a = b.getFromAtom();
+				if (containsAtom(a) && !a.getType().equals(SUFFIX_TYPE_VAL)){
 					v += b.getOrder();
 				}
 			}
@@ -485,7 +587,8 @@ class Fragment implements Iterable<Atom> {
 	 * @throws StructureBuildingException
 	 */
 	void checkValencies() throws StructureBuildingException {
-		for(Atom a : atomCollection) {
+		for (int i = 0, l = atomList.size(); i < l; i++) {
+			Atom a = atomList.get(i);
 			if(!ValencyChecker.checkValency(a)) {
 				throw new StructureBuildingException("Atom is in unphysical valency state! Element: " + a.getElement() + " valency: " + a.getIncomingValency());
 			}
@@ -497,8 +600,12 @@ class Fragment implements Iterable<Atom> {
 	 * @param atom
 	 */
 	void removeAtom(Atom atom) {
-		int atomID =atom.getID();
-		atomMapFromId.remove(atomID);
+		int index = atom.getID() - atomIdOffset;
+		if (index >= 0 && index < atomsById.length && atomsById[index] != null) {
+			atomsById[index] = null;
+			atomList.remove(atom);
+			structureChanged();
+		}
 		for (String l : atom.getLocants()) {
 			atomMapFromLocant.remove(l);
 		}
@@ -512,8 +619,8 @@ class Fragment implements Iterable<Atom> {
 	 */
 	int getCharge() {
 		int charge=0;
-		for (Atom a : atomCollection) {
-			charge+=a.getCharge();
+		for (int i = 0, l = atomList.size(); i < l; i++) {
+			charge += atomList.get(i).getCharge();
 		}
 		return charge;
 	}
@@ -588,25 +695,23 @@ class Fragment implements Iterable<Atom> {
 	 * @return firstAtom
 	 */
 	Atom getFirstAtom(){
-		Iterator<Atom> atomIterator =atomCollection.iterator();
-		if (atomIterator.hasNext()){
-			return atomIterator.next();
-		}
-		return null;
+		return atomList.size() > 0 ? atomList.get(0) : null;
 	}
 
 	/**
-	 * Clears and recreates atomMapFromId (and hence AtomCollection) using the order of the atoms in atomList
-	 * @param atomList
+	 * Clears and recreates the ID index and the fragment's atom list using the order of the atoms in newAtomList
+	 * @param newAtomList
 	 * @throws StructureBuildingException
 	 */
-	void reorderAtomCollection(List<Atom> atomList) throws StructureBuildingException {
-		if (atomMapFromId.size() != atomList.size()){
+	void reorderAtomCollection(List<Atom> newAtomList) throws StructureBuildingException {
+		if (atomList.size() != newAtomList.size()){
 			throw new StructureBuildingException("atom list is not the same size as the number of atoms in the fragment");
 		}
-		atomMapFromId.clear();
-		for (Atom atom : atomList) {
-			atomMapFromId.put(atom.getID(), atom);
+		Arrays.fill(atomsById, null);
+		atomList.clear();
+		for (Atom atom : newAtomList) {
+			indexAtom(atom);
+			atomList.add(atom);
 		}
 	}
 
@@ -617,14 +722,14 @@ class Fragment implements Iterable<Atom> {
 	 * @throws StructureBuildingException 
 	 */
 	void sortAtomListByLocant() throws StructureBuildingException {
-		List<Atom> atomList =getAtomList();
-		Collections.sort(atomList, new FragmentTools.SortByLocants());
-		reorderAtomCollection(atomList);
+		List<Atom> sortedAtoms = getAtomList();
+		Collections.sort(sortedAtoms, new FragmentTools.SortByLocants());
+		reorderAtomCollection(sortedAtoms);
 	}
 
 	@Override
 	public Iterator<Atom> iterator() {
-		return atomCollection.iterator();
+		return atomListView.iterator();
 	}
 }
 
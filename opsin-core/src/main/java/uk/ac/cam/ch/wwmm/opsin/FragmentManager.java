@@ -3,6 +3,7 @@ package uk.ac.cam.ch.wwmm.opsin;
 import static uk.ac.cam.ch.wwmm.opsin.XmlDeclarations.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -33,6 +34,9 @@ class FragmentManager {
 	/** A source of unique integers */
 	private final IDManager idManager;
 
+	/** The atoms of the registered fragments, indexed by their ID. Atoms that have been removed are null */
+	private Atom[] atomsById = new Atom[64];
+
 	/** Sets up a new Fragment manager, containing no fragments.
 	 *
 	 * @param sBuilder A SMILESFragmentBuilder - dependency injection.
@@ -101,7 +105,7 @@ class FragmentManager {
 		for (Entry<Fragment, Set<Bond>> entry : fragToInterFragmentBond.entrySet()) {
 			Fragment f = entry.getKey();
 			Set<Bond> interFragmentBonds = entry.getValue();
-			for(Atom atom : f.getAtomList()) {
+			for(Atom atom : f.getAtoms()) {
 				uniFrag.addAtom(atom);
 			}
 			for(Bond bond : f.getBondSet()) {
@@ -132,7 +136,7 @@ class FragmentManager {
      * @throws StructureBuildingException
 	 */
 	void incorporateFragment(Fragment childFrag, Fragment parentFrag) throws StructureBuildingException {
-		for(Atom atom : childFrag.getAtomList()) {
+		for(Atom atom : childFrag.getAtoms()) {
 			parentFrag.addAtom(atom);
 		}
 		for(Bond bond : childFrag.getBondSet()) {
@@ -245,11 +249,12 @@ class FragmentManager {
 	 * @return The atom, or null if no such atom exists.
 	 */
 	Atom getAtomByID(int id) {
-		for(Fragment f : fragments) {
-			Atom a = f.getAtomByID(id);
-			if(a != null) {
-				return a;
-			}
+		if (id < 0 || id >= atomsById.length) {
+			return null;
+		}
+		Atom a = atomsById[id];
+		if (a != null && fragToInterFragmentBond.containsKey(a.getFrag())) {
+			return a;
 		}
 		return null;
 	}
@@ -298,6 +303,21 @@ class FragmentManager {
 	 */
 	private void addFragment(Fragment frag)  {
 		fragToInterFragmentBond.put(frag, new LinkedHashSet<Bond>());
+		for (Atom atom : frag.getAtoms()) {
+			indexAtom(atom);
+		}
+	}
+
+	/**
+	 * Records the atom in the ID to atom index
+	 * @param atom
+	 */
+	private void indexAtom(Atom atom) {
+		int id = atom.getID();
+		if (id >= atomsById.length) {
+			atomsById = Arrays.copyOf(atomsById, Math.max(atomsById.length * 2, id + 1));
+		}
+		atomsById[id] = atom;
 	}
 
 	/**
@@ -625,6 +645,7 @@ class FragmentManager {
 	Atom createAtom(ChemEl chemEl, Fragment frag) {
 		Atom a = new Atom(idManager.getNextID(), chemEl, frag);
 		frag.addAtom(a);
+		indexAtom(a);
 		return a;
 	}
 	
@@ -656,6 +677,10 @@ class FragmentManager {
 			removeBond(bond);
 		}
 		atom.getFrag().removeAtom(atom);
+		int id = atom.getID();
+		if (id >= 0 && id < atomsById.length && atomsById[id] == atom) {
+			atomsById[id] = null;
+		}
 		Set<Atom> ambiguousElementAssignment = atom.getProperty(Atom.AMBIGUOUS_ELEMENT_ASSIGNMENT);
 		if (ambiguousElementAssignment != null){
 			ambiguousElementAssignment.remove(atom);
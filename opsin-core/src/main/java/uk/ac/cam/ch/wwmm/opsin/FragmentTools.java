@@ -18,6 +18,7 @@ import static uk.ac.cam.ch.wwmm.opsin.XmlDeclarations.*;
 
 /**
  * Sorts a list of atoms such that their order agrees with the order symbolic locants are typically assigned
+ * The order of the bond by which each atom was reached must first be recorded using {@link #setBondOrderToAtom(Atom, int)}
  * 
  * Preferred atoms are sorted to the START of the list
  * @author dl387
@@ -25,9 +26,20 @@ import static uk.ac.cam.ch.wwmm.opsin.XmlDeclarations.*;
  */
 class SortAtomsForElementSymbols implements Comparator<Atom> {
 
+	private final Map<Atom, Integer> bondOrderToAtom = new HashMap<Atom, Integer>();
+
+	/**
+	 * Records the order of the bond taken to reach the atom, replacing any previously recorded order
+	 * @param atom
+	 * @param bondOrder
+	 */
+	void setBondOrderToAtom(Atom atom, int bondOrder) {
+		bondOrderToAtom.put(atom, bondOrder);
+	}
+
 	public int compare(Atom a, Atom b){
-		int bondOrderA = a.getProperty(Atom.VISITED);
-		int bondOrderB = b.getProperty(Atom.VISITED);
+		int bondOrderA = bondOrderToAtom.get(a);
+		int bondOrderB = bondOrderToAtom.get(b);
     	if (bondOrderA > bondOrderB) {//lower order bond is preferred
     		return 1;
     	}
@@ -168,7 +180,7 @@ class FragmentTools {
 		 * First check whether any element locants have already been assigned, these will take precedence
 		 */
 		for (Fragment fragment : allFragments) {
-			List<Atom> atomList = fragment.getAtomList();
+			List<Atom> atomList = fragment.getAtoms();
 			for (Atom atom : atomList) {
 				List<String> elementSymbolLocants = atom.getElementSymbolLocants();
 				for (String locant : elementSymbolLocants) {
@@ -187,7 +199,7 @@ class FragmentTools {
 			Set<String> elementsToIgnore = elementCount.keySet();
 	
 			for (Fragment fragment : allFragments) {
-				List<Atom> atomList = fragment.getAtomList();
+				List<Atom> atomList = fragment.getAtoms();
 				for (Atom atom : atomList) {
 					if (elementsToIgnore.contains(atom.getElement().toString())){
 						atomsToIgnore.add(atom);
@@ -218,7 +230,7 @@ class FragmentTools {
 
 	private static void detectAndCorrectHydrazoneDerivativeViolation(List<Fragment> suffixFragments) {
 		fragmentLoop: for (Fragment suffixFrag : suffixFragments) {
-			List<Atom> atomList = suffixFrag.getAtomList();
+			List<Atom> atomList = suffixFrag.getAtoms();
 			for (Atom atom : atomList) {
 				if (atom.getElement() == ChemEl.N && atom.getIncomingValency() ==3 ){
 					List<String> locants =atom.getLocants();
@@ -276,65 +288,79 @@ class FragmentTools {
 	private static void processSuffixLabelling(List<Fragment> suffixFragments, Map<String, Integer> elementCount, Set<Atom> atomsToIgnore) {
 		List<Atom> startingAtoms = new ArrayList<Atom>();
 		Set<Atom> atomsVisited = new HashSet<Atom>();
+		SortAtomsForElementSymbols elementSymbolOrder = new SortAtomsForElementSymbols();
 		for (Fragment fragment : suffixFragments) {
 			Atom rAtom = fragment.getFirstAtom();
-			List<Atom> nextAtoms = getIntraFragmentNeighboursAndSetVisitedBondOrder(rAtom);
+			List<Atom> nextAtoms = getIntraFragmentNeighboursAndRecordBondOrder(rAtom, elementSymbolOrder);
 			atomsVisited.addAll(nextAtoms);
 			startingAtoms.addAll(nextAtoms);
 		}
-		Collections.sort(startingAtoms, new SortAtomsForElementSymbols());
+		Collections.sort(startingAtoms, elementSymbolOrder);
 
 		Deque<Atom> atomsToConsider = new ArrayDeque<Atom>(startingAtoms);
-		while (atomsToConsider.size() > 0){
-			assignLocantsAndExploreNeighbours(elementCount, atomsToIgnore, atomsVisited, atomsToConsider);
-		}
+		assignLocantsAndExploreNeighbours(elementCount, atomsToIgnore, atomsVisited, atomsToConsider, elementSymbolOrder);
 	}
 
 	private static void processNonCarboxylicAcidLabelling(Fragment suffixableFragment, Map<String, Integer> elementCount, Set<Atom> atomsToIgnore) {
 		Set<Atom> atomsVisited = new HashSet<Atom>();
 		Atom firstAtom = suffixableFragment.getFirstAtom();
-		List<Atom> startingAtoms = getIntraFragmentNeighboursAndSetVisitedBondOrder(firstAtom);
+		SortAtomsForElementSymbols elementSymbolOrder = new SortAtomsForElementSymbols();
+		List<Atom> startingAtoms = getIntraFragmentNeighboursAndRecordBondOrder(firstAtom, elementSymbolOrder);
 		
-		Collections.sort(startingAtoms, new SortAtomsForElementSymbols());
+		Collections.sort(startingAtoms, elementSymbolOrder);
 		atomsVisited.add(firstAtom);
 		Deque<Atom> atomsToConsider = new ArrayDeque<Atom>(startingAtoms);
-		while (atomsToConsider.size() > 0){
-			assignLocantsAndExploreNeighbours(elementCount, atomsToIgnore, atomsVisited, atomsToConsider);
-		}
+		assignLocantsAndExploreNeighbours(elementCount, atomsToIgnore, atomsVisited, atomsToConsider, elementSymbolOrder);
 		if (!atomsToIgnore.contains(firstAtom) && firstAtom.determineValency(true) > firstAtom.getIncomingValency()) {
 			//e.g. carbonimidoyl the carbon has locant C
 			assignLocant(firstAtom, elementCount);
 		}
 	}
 
-	private static void assignLocantsAndExploreNeighbours(Map<String, Integer> elementCount, Set<Atom> atomsToIgnore, Set<Atom> atomsVisited, Deque<Atom> atomsToConsider) {
-		Atom atom = atomsToConsider.removeFirst();
-		atomsVisited.add(atom);
-		if (!atomsToIgnore.contains(atom)) {//assign locant
-			assignLocant(atom, elementCount);
-		}
-		List<Atom> atomsToExplore = getIntraFragmentNeighboursAndSetVisitedBondOrder(atom);
-		atomsToExplore.removeAll(atomsVisited);
-		Collections.sort(atomsToExplore, new SortAtomsForElementSymbols());
-		for (int i = atomsToExplore.size() - 1; i >= 0; i--) {
-			atomsToConsider.addFirst(atomsToExplore.get(i));
+	/**
+	 * Depth first walk from the atoms to consider, assigning locants in the order atoms are encountered.
+	 * Uses atomsToConsider as an explicit stack, so the walk depth is not limited by the call stack
+	 * @param elementCount
+	 * @param atomsToIgnore
+	 * @param atomsVisited
+	 * @param atomsToConsider
+	 * @param elementSymbolOrder
+	 */
+	private static void assignLocantsAndExploreNeighbours(Map<String, Integer> elementCount, Set<Atom> atomsToIgnore, Set<Atom> atomsVisited, Deque<Atom> atomsToConsider, SortAtomsForElementSymbols elementSymbolOrder) {
+		while (!atomsToConsider.isEmpty()) {
+			Atom atom = atomsToConsider.removeFirst();
+			atomsVisited.add(atom);
+			if (!atomsToIgnore.contains(atom)) {//assign locant
+				assignLocant(atom, elementCount);
+			}
+			List<Atom> atomsToExplore = getIntraFragmentNeighboursAndRecordBondOrder(atom, elementSymbolOrder);
+			for (int i = atomsToExplore.size() - 1; i >= 0; i--) {
+				if (atomsVisited.contains(atomsToExplore.get(i))) {
+					atomsToExplore.remove(i);
+				}
+			}
+			Collections.sort(atomsToExplore, elementSymbolOrder);
+			for (int i = atomsToExplore.size() - 1; i >= 0; i--) {
+				atomsToConsider.addFirst(atomsToExplore.get(i));
+			}
 		}
 	}
 
 	/**
 	 * Gets the neighbours of an atom that claim to be within the same frag
-	 * The order of bond taken to get to the neighbour is set on the neighbours Atom.VISITED property
+	 * The order of bond taken to get to each neighbour is recorded for use by the given {@link SortAtomsForElementSymbols}
 	 * @param atom
+	 * @param elementSymbolOrder
 	 * @return
 	 */
-	private static List<Atom> getIntraFragmentNeighboursAndSetVisitedBondOrder(Atom atom) {
+	private static List<Atom> getIntraFragmentNeighboursAndRecordBondOrder(Atom atom, SortAtomsForElementSymbols elementSymbolOrder) {
 		List<Atom> atomsToExplore = new ArrayList<Atom>();
 		List<Bond> bonds = atom.getBonds();
 		for (Bond bond : bonds) {
 			Atom neighbour = bond.getOtherAtom(atom);
 			if (neighbour.getFrag().equals(atom.getFrag())) {
 				atomsToExplore.add(neighbour);
-				neighbour.setProperty(Atom.VISITED, bond.getOrder());
+				elementSymbolOrder.setBondOrderToAtom(neighbour, bond.getOrder());
 			}
 		}
 		return atomsToExplore;
@@ -382,7 +408,7 @@ class FragmentTools {
 			}
 		}
 		catch (Exception e) {
-			List<Atom> atomList = fragment.getAtomList();
+			List<Atom> atomList = fragment.getAtoms();
 			int initialIndice = atomList.indexOf(fromAtom);
 			if (initialIndice +1 < atomList.size() && fromAtom.getBondToAtom(atomList.get(initialIndice +1))!=null){
 				toAtom = atomList.get(initialIndice +1);
@@ -515,7 +541,7 @@ class FragmentTools {
      * @throws StructureBuildingException If the algorithm can't work out where to put the bonds
 	 */
 	static void convertSpareValenciesToDoubleBonds(Fragment frag) throws StructureBuildingException {
-		List<Atom> atomCollection = frag.getAtomList();
+		List<Atom> atomCollection = frag.getAtoms();
 		/* pick atom, getAtomNeighbours, decideIfTerminal, resolve */
 
 		/*
@@ -735,7 +761,8 @@ class FragmentTools {
 
 		List<Atom> startingAtoms = new ArrayList<Atom>();
 		Set<Atom> atomsVisited = new HashSet<Atom>();
-		List<Atom> neighbours = getIntraFragmentNeighboursAndSetVisitedBondOrder(backboneAtom);
+		SortAtomsForElementSymbols elementSymbolOrder = new SortAtomsForElementSymbols();
+		List<Atom> neighbours = getIntraFragmentNeighboursAndRecordBondOrder(backboneAtom, elementSymbolOrder);
 		mainLoop: for (Atom neighbour : neighbours) {
 			atomsVisited.add(neighbour);
 			if (!neighbour.getType().equals(SUFFIX_TYPE_VAL)){
@@ -748,7 +775,7 @@ class FragmentTools {
 			startingAtoms.add(neighbour);
 		}
 
-		Collections.sort(startingAtoms, new SortAtomsForElementSymbols());
+		Collections.sort(startingAtoms, elementSymbolOrder);
 		Map<String,Integer> elementCount = new HashMap<String,Integer>();//keeps track of how many times each element has been seen
 	
 		Deque<Atom> atomsToConsider = new ArrayDeque<Atom>(startingAtoms);
@@ -773,7 +800,7 @@ class FragmentTools {
 				hydrazoneSpecialCase =false;
 			}
 
-			List<Atom> atomNeighbours = getIntraFragmentNeighboursAndSetVisitedBondOrder(atom);
+			List<Atom> atomNeighbours = getIntraFragmentNeighboursAndRecordBondOrder(atom, elementSymbolOrder);
 			atomNeighbours.removeAll(atomsVisited);
 			for (int i = atomNeighbours.size() -1; i >=0; i--) {
 				Atom neighbour = atomNeighbours.get(i);
@@ -798,7 +825,7 @@ class FragmentTools {
 				}
 			}
 
-			Collections.sort(atomNeighbours, new SortAtomsForElementSymbols());
+			Collections.sort(atomNeighbours, elementSymbolOrder);
 			for (int i = atomNeighbours.size() - 1; i >= 0; i--) {
 				atomsToConsider.addFirst(atomNeighbours.get(i));
 			}
@@ -888,7 +915,7 @@ class FragmentTools {
 	 * @return true if all equivalent, else false
 	 */
 	static boolean  allAtomsInRingAreIdentical(Fragment ring){
-		List<Atom> atomList = ring.getAtomList();
+		List<Atom> atomList = ring.getAtoms();
 		Atom firstAtom = atomList.get(0);
 		ChemEl chemEl = firstAtom.getElement();
 		int valency = firstAtom.getIncomingValency();
@@ -1038,7 +1065,7 @@ class FragmentTools {
 	 */
 	static List<Atom> findHydroxyGroups(Fragment frag) throws StructureBuildingException {
 		List<Atom> hydroxyAtoms = new ArrayList<Atom>();
-		List<Atom> atoms = frag.getAtomList();
+		List<Atom> atoms = frag.getAtoms();
 		for (Atom atom : atoms) {
 			if (atom.getElement() == ChemEl.O && atom.getIncomingValency() == 1 && atom.getOutValency() == 0 && atom.getCharge() == 0){
 				Atom adjacentAtom = atom.getAtomNeighbours().get(0);
@@ -1175,7 +1202,7 @@ class FragmentTools {
 	}
 	
 	static List<Atom> findnAtomsForSubstitution(Fragment frag, Atom preferredAtom, int numberOfSubstitutionsRequired, int bondOrder, boolean takeIntoAccountOutValency) {
-		return findnAtomsForSubstitution(frag.getAtomList(), preferredAtom, numberOfSubstitutionsRequired, bondOrder, takeIntoAccountOutValency);
+		return findnAtomsForSubstitution(frag.getAtoms(), preferredAtom, numberOfSubstitutionsRequired, bondOrder, takeIntoAccountOutValency);
 	}
 	
 	/**
@@ -1195,7 +1222,7 @@ class FragmentTools {
 	 * @return
 	 */
 	static List<Atom> findnAtomsForSubstitution(Fragment frag, int numberOfSubstitutionsRequired, int bondOrder) {
-		return findnAtomsForSubstitution(frag.getAtomList(), frag.getDefaultInAtom(), numberOfSubstitutionsRequired, bondOrder, true);
+		return findnAtomsForSubstitution(frag.getAtoms(), frag.getDefaultInAtom(), numberOfSubstitutionsRequired, bondOrder, true);
 	}
 	
 	/**
@@ -1222,7 +1249,7 @@ class FragmentTools {
 	}
 
 	static Atom lastNonSuffixCarbonWithSufficientValency(Fragment conjunctiveFragment) {
-		List<Atom> atomList = conjunctiveFragment.getAtomList();
+		List<Atom> atomList = conjunctiveFragment.getAtoms();
 		for (int i = atomList.size()-1; i >=0; i--) {
 			Atom a = atomList.get(i);
 			if (a.getType().equals(SUFFIX_TYPE_VAL)){
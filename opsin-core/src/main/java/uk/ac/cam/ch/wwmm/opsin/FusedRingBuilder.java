@@ -243,7 +243,11 @@ class FusedRingBuilder {
 		}
 		removeMergedAtoms();
 
+		StageTimer timer = StageTimer.start(state.n2sConfig.getParseListener(), ParseStage.FUSED_RING_NUMBERING);
 		FusedRingNumberer.numberFusedRing(parentRing);//numbers the fused ring;
+		if (timer != null) {
+			timer.stageCompleted();
+		}
 
 		StringBuilder fusedRingName = new StringBuilder();
 		for (Element element : nameComponents) {
@@ -949,7 +953,11 @@ class FusedRingBuilder {
 		performSimpleFusion(null, benzoRing , parentRing);
 		state.fragManager.incorporateFragment(benzoRing, parentRing);
 		removeMergedAtoms();
+		StageTimer timer = StageTimer.start(state.n2sConfig.getParseListener(), ParseStage.FUSED_RING_NUMBERING);
 		FusedRingNumberer.numberFusedRing(parentRing);//numbers the fused ring;
+		if (timer != null) {
+			timer.stageCompleted();
+		}
 		Fragment fusedRing =parentRing;
 		setBenzoHeteroatomPositioning(benzoEl, fusedRing);
 	}
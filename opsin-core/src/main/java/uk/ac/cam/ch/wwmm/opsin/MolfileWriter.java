@@ -0,0 +1,430 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes structures as MDL molfiles, or records of an SD-file, directly to an OutputStream.
+ * Each record is built in a buffer that is reused between records and written to the stream in one call.
+ * <br>
+ * Connection tables are written without coordinates (all atoms at the origin).
+ * Tetrahedral stereochemistry is hence expressed using atom parities, and the chiral flag is set when any are present.
+ * The geometry of double bonds cannot be expressed without coordinates, so is not written.
+ * <br>
+ * As OPSIN's structures have explicit hydrogen, the valence of an atom is written where
+ * the default valence model would otherwise add implicit hydrogen to it e.g. radicals.
+ * Structures with more than 999 atoms or bonds, which V2000 cannot represent, are written in the V3000 format.
+ */
+class MolfileWriter {
+
+	private static final int V2000_MAX_ATOMS_OR_BONDS = 999;
+	/** Maximum number of entries on an "M  CHG", "M  ISO" or "M  RAD" line */
+	private static final int MAX_PROPERTIES_PER_LINE = 8;
+	private static final int MAX_TITLE_LENGTH = 80;
+	private static final int PARITY_ODD = 1;
+	private static final int PARITY_EVEN = 2;
+
+	private final OutputStream out;
+	private final boolean alwaysUseV3000;
+
+	/** The record being written, reused between records */
+	private byte[] buffer = new byte[4096];
+	private int bufferSize = 0;
+
+	/** 1-based positions of atoms in the connection table, reused between records */
+	private final Map<Atom, Integer> atomToIndex = new HashMap<Atom, Integer>();
+	private final int[] parityIndices = new int[4];
+
+	/**
+	 * Creates a writer that writes V2000 connection tables unless a structure is too large
+	 * @param out
+	 */
+	MolfileWriter(OutputStream out) {
+		this(out, false);
+	}
+
+	/**
+	 * Creates a writer that writes V2000 connection tables unless a structure is too large
+	 * or alwaysUseV3000 is true
+	 * @param out
+	 * @param alwaysUseV3000
+	 */
+	MolfileWriter(OutputStream out, boolean alwaysUseV3000) {
+		this.out = out;
+		this.alwaysUseV3000 = alwaysUseV3000;
+	}
+
+	static String generateMolfile(Fragment structure, String chemicalName) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			new MolfileWriter(out).writeMolfile(structure, chemicalName);
+			return out.toString("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException("JVM doesn't support UTF-8...but it should do!");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes the structure as a molfile with the given title.
+	 * A null structure, as for a name that could not be interpreted, is written as an empty connection table
+	 * @param structure
+	 * @param title
+	 * @throws IOException
+	 */
+	void writeMolfile(Fragment structure, String title) throws IOException {
+		bufferSize = 0;
+		appendMolfile(structure, title);
+		flushBuffer();
+	}
+
+	/**
+	 * Writes the structure as an SD-file record with the given title and, if dataName is not null, a data item with the given value
+	 * A null structure, as for a name that could not be interpreted, is written as an empty connection table
+	 * so that records stay aligned with the names they were generated from
+	 * @param structure
+	 * @param title
+	 * @param dataName
+	 * @param dataValue
+	 * @throws IOException
+	 */
+	void writeSdfRecord(Fragment structure, String title, String dataName, String dataValue) throws IOException {
+		bufferSize = 0;
+		appendMolfile(structure, title);
+		if (dataName != null) {
+			append(">  <").appendText(dataName, Integer.MAX_VALUE).append(">\n");
+			appendText(dataValue, Integer.MAX_VALUE).append("\n\n");
+		}
+		append("$$$$\n");
+		flushBuffer();
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	private void appendMolfile(Fragment structure, String title) {
+		List<Atom> atoms;
+		Collection<Bond> bonds;
+		if (structure != null) {
+			atoms = structure.getAtoms();
+			bonds = structure.getBondSet();
+		}
+		else {
+			atoms = Collections.emptyList();
+			bonds = Collections.emptyList();
+		}
+		atomToIndex.clear();
+		boolean chiral = false;
+		for (int i = 0, l = atoms.size(); i < l; i++) {
+			Atom atom = atoms.get(i);
+			atomToIndex.put(atom, i + 1);
+			if (atom.getAtomParity() != null) {
+				chiral = true;
+			}
+		}
+		appendText(title != null ? title : "", MAX_TITLE_LENGTH).append('\n');
+		append("  OPSIN             0D\n");
+		append('\n');
+		if (alwaysUseV3000 || atoms.size() > V2000_MAX_ATOMS_OR_BONDS || bonds.size() > V2000_MAX_ATOMS_OR_BONDS) {
+			appendV3000ConnectionTable(atoms, bonds, chiral);
+		}
+		else {
+			appendV2000ConnectionTable(atoms, bonds, chiral);
+		}
+		append("M  END\n");
+	}
+
+	private void appendV2000ConnectionTable(List<Atom> atoms, Collection<Bond> bonds, boolean chiral) {
+		appendPadded(atoms.size(), 3).appendPadded(bonds.size(), 3).append("  0  0").appendPadded(chiral ? 1 : 0, 3).append("  0  0  0  0  0999 V2000\n");
+		int chargedAtoms = 0;
+		int isotopicAtoms = 0;
+		int radicalAtoms = 0;
+		for (Atom atom : atoms) {
+			append("    0.0000    0.0000    0.0000 ");
+			String symbol = elementSymbol(atom);
+			append(symbol);
+			for (int i = symbol.length(); i < 3; i++) {
+				append(' ');
+			}
+			append(" 0  0");
+			appendPadded(calculateParity(atom), 3);
+			append("  0  0");
+			int valence = calculateValenceToWrite(atom);
+			appendPadded(valence == 0 ? 15 : Math.max(valence, 0), 3);
+			append("  0  0  0  0  0  0\n");
+			if (atom.getCharge() != 0) {
+				chargedAtoms++;
+			}
+			if (atom.getIsotope() != null) {
+				isotopicAtoms++;
+			}
+			if (atom.getOutValency() > 0) {
+				radicalAtoms++;
+			}
+		}
+		for (Bond bond : bonds) {
+			appendPadded(atomToIndex.get(bond.getFromAtom()), 3).appendPadded(atomToIndex.get(bond.getToAtom()), 3);
+			appendPadded(bondType(bond), 3).append("  0\n");
+		}
+		if (chargedAtoms > 0) {
+			appendPropertyBlock("M  CHG", atoms, chargedAtoms, PropertyType.CHARGE);
+		}
+		if (isotopicAtoms > 0) {
+			appendPropertyBlock("M  ISO", atoms, isotopicAtoms, PropertyType.ISOTOPE);
+		}
+		if (radicalAtoms > 0) {
+			appendPropertyBlock("M  RAD", atoms, radicalAtoms, PropertyType.RADICAL);
+		}
+	}
+
+	private enum PropertyType {
+		CHARGE,
+		ISOTOPE,
+		RADICAL
+	}
+
+	private void appendPropertyBlock(String prefix, List<Atom> atoms, int count, PropertyType type) {
+		int onLine = 0;
+		for (int i = 0, l = atoms.size(); i < l; i++) {
+			Atom atom = atoms.get(i);
+			int value;
+			switch (type) {
+			case CHARGE:
+				value = atom.getCharge();
+				break;
+			case ISOTOPE:
+				value = atom.getIsotope() != null ? atom.getIsotope() : 0;
+				break;
+			default:
+				value = radicalValue(atom);
+				break;
+			}
+			if (value == 0) {
+				continue;
+			}
+			if (onLine == 0) {
+				append(prefix).appendPadded(Math.min(count, MAX_PROPERTIES_PER_LINE), 3);
+			}
+			appendPadded(i + 1, 4).appendPadded(value, 4);
+			count--;
+			if (++onLine == MAX_PROPERTIES_PER_LINE || count == 0) {
+				append('\n');
+				onLine = 0;
+			}
+		}
+	}
+
+	private void appendV3000ConnectionTable(List<Atom> atoms, Collection<Bond> bonds, boolean chiral) {
+		append("  0  0  0     0  0            999 V3000\n");
+		append("M  V30 BEGIN CTAB\n");
+		append("M  V30 COUNTS ").append(atoms.size()).append(' ').append(bonds.size()).append(" 0 0 ").append(chiral ? 1 : 0).append('\n');
+		append("M  V30 BEGIN ATOM\n");
+		for (int i = 0, l = atoms.size(); i < l; i++) {
+			Atom atom = atoms.get(i);
+			append("M  V30 ").append(i + 1).append(' ').append(elementSymbol(atom)).append(" 0 0 0 0");
+			if (atom.getCharge() != 0) {
+				append(" CHG=").append(atom.getCharge());
+			}
+			if (atom.getIsotope() != null) {
+				append(" MASS=").append(atom.getIsotope());
+			}
+			int radical = radicalValue(atom);
+			if (radical != 0) {
+				append(" RAD=").append(radical);
+			}
+			int parity = calculateParity(atom);
+			if (parity != 0) {
+				append(" CFG=").append(parity);
+			}
+			int valence = calculateValenceToWrite(atom);
+			if (valence >= 0) {
+				append(" VAL=").append(valence == 0 ? -1 : valence);
+			}
+			append('\n');
+		}
+		append("M  V30 END ATOM\n");
+		if (!bonds.isEmpty()) {
+			append("M  V30 BEGIN BOND\n");
+			int i = 1;
+			for (Bond bond : bonds) {
+				append("M  V30 ").append(i++).append(' ').append(bondType(bond)).append(' ');
+				append(atomToIndex.get(bond.getFromAtom())).append(' ').append(atomToIndex.get(bond.getToAtom())).append('\n');
+			}
+			append("M  V30 END BOND\n");
+		}
+		append("M  V30 END CTAB\n");
+	}
+
+	private static String elementSymbol(Atom atom) {
+		ChemEl chemEl = atom.getElement();
+		return chemEl == ChemEl.R ? "R" : chemEl.toString();
+	}
+
+	private static int bondType(Bond bond) {
+		int order = bond.getOrder();
+		return order >= 1 && order <= 3 ? order : 8;//8 is any bond
+	}
+
+	private static int radicalValue(Atom atom) {
+		switch (atom.getOutValency()) {
+		case 0:
+			return 0;
+		case 1:
+			return 2;//doublet
+		default:
+			return 3;//triplet
+		}
+	}
+
+	/**
+	 * The valence to write for the atom, or -1 if the default valence model
+	 * would not add implicit hydrogen to it.
+	 * @param atom
+	 * @return
+	 */
+	private static int calculateValenceToWrite(Atom atom) {
+		if (atom.getElement() == ChemEl.H || atom.getElement() == ChemEl.R) {
+			return -1;
+		}
+		Integer[] possibleValencies = ValencyChecker.getPossibleValencies(atom.getElement(), atom.getCharge());
+		if (possibleValencies == null) {
+			return -1;
+		}
+		int valency = atom.getIncomingValency();
+		for (Integer possibleValency : possibleValencies) {
+			if (possibleValency >= valency) {
+				return possibleValency == valency ? -1 : valency;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The MDL parity of the atom: looking with the highest numbered neighbour pointing away,
+	 * the other neighbours in increasing order are clockwise for odd (1) and anticlockwise for even (2).
+	 * An implicit hydrogen or lone pair counts as the highest numbered neighbour
+	 * @param atom
+	 * @return The parity, or 0 if the atom is not a stereocentre
+	 */
+	private int calculateParity(Atom atom) {
+		AtomParity atomParity = atom.getAtomParity();
+		if (atomParity == null) {
+			return 0;
+		}
+		Atom[] atomRefs4 = atomParity.getAtomRefs4();
+		int[] indices = parityIndices;
+		for (int i = 0; i < 4; i++) {
+			Integer index = atomRefs4[i] != atom ? atomToIndex.get(atomRefs4[i]) : null;
+			indices[i] = index != null ? index : Integer.MAX_VALUE;
+		}
+		int swaps = 0;
+		for (int i = 3; i > 0; i--) {
+			for (int j = 0; j < i; j++) {
+				if (indices[j] > indices[j + 1]) {
+					int temp = indices[j];
+					indices[j] = indices[j + 1];
+					indices[j + 1] = temp;
+					swaps++;
+				}
+			}
+		}
+		//positive parity means that looking from the first atom the remaining three are clockwise, which for atoms in increasing order is odd parity
+		return (swaps % 2 == 0) == (atomParity.getParity() > 0) ? PARITY_ODD : PARITY_EVEN;
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, bufferSize);
+		bufferSize = 0;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (bufferSize + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferSize + extra));
+		}
+	}
+
+	private MolfileWriter append(char c) {
+		ensureCapacity(1);
+		buffer[bufferSize++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Appends a string known to only contain ASCII
+	 * @param s
+	 * @return
+	 */
+	private MolfileWriter append(String s) {
+		int len = s.length();
+		ensureCapacity(len);
+		for (int i = 0; i < len; i++) {
+			buffer[bufferSize++] = (byte) s.charAt(i);
+		}
+		return this;
+	}
+
+	private MolfileWriter append(int i) {
+		return append(Integer.toString(i));
+	}
+
+	/**
+	 * Appends the integer right justified to the given width
+	 * @param i
+	 * @param width
+	 * @return
+	 */
+	private MolfileWriter appendPadded(int i, int width) {
+		String s = Integer.toString(i);
+		for (int j = s.length(); j < width; j++) {
+			append(' ');
+		}
+		return append(s);
+	}
+
+	/**
+	 * Appends up to maxLength chars of arbitrary text as UTF-8, with line breaks replaced by spaces
+	 * @param s
+	 * @param maxLength
+	 * @return
+	 */
+	private MolfileWriter appendText(String s, int maxLength) {
+		int len = Math.min(s.length(), maxLength);
+		ensureCapacity(len * 3);
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c == '\n' || c == '\r') {
+				buffer[bufferSize++] = ' ';
+			}
+			else if (c < 0x80) {
+				buffer[bufferSize++] = (byte) c;
+			}
+			else if (c < 0x800) {
+				buffer[bufferSize++] = (byte) (0xc0 | (c >> 6));
+				buffer[bufferSize++] = (byte) (0x80 | (c & 0x3f));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				buffer[bufferSize++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[bufferSize++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[bufferSize++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[bufferSize++] = (byte) (0x80 | (codePoint & 0x3f));
+			}
+			else {
+				buffer[bufferSize++] = (byte) (0xe0 | (c >> 12));
+				buffer[bufferSize++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[bufferSize++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return this;
+	}
+}
@@ -1,23 +1,21 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
-
-import javax.xml.stream.XMLOutputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -31,9 +29,7 @@ import org.apache.commons.cli.UnrecognizedOptionException;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
-import com.ctc.wstx.api.WstxOutputProperties;
-import com.ctc.wstx.stax.WstxOutputFactory;
-
+import uk.ac.cam.ch.wwmm.opsin.CachedOpsinResult.Format;
 import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
 
 /** The "master" class, to turn a name into a structure.
@@ -162,24 +158,44 @@ public class NameToStructure {
 			throw new IllegalArgumentException("String given for name was null");
 		}
 		n2sConfig = n2sConfig.clone();//avoid n2sconfig being modified mid name processing
+		ParseListener listener = n2sConfig.getParseListener();
+		StageTimer nameTimer = StageTimer.startName(listener, name);
+		StageTimer timer = StageTimer.start(listener, ParseStage.PRE_PROCESSING);
 
-		List<Element> parses;
+		Iterator<Element> parses;
 		try {
 			LOG.debug(name);
 			String modifiedName = PreProcessor.preProcess(name);
-			parses = parser.parse(n2sConfig, modifiedName);
-			Collections.sort(parses, new SortParses());//fewer tokens preferred
+			if (timer != null) {
+				timer.nextStage(ParseStage.PARSING);
+			}
+			parses = parser.parseInOrderOfPreference(n2sConfig, modifiedName);//fewer tokens preferred
+			if (timer != null) {
+				timer.stageCompleted();
+			}
 		} catch (Exception e) {
 			if(LOG.isDebugEnabled()) {
 				LOG.debug(e.getMessage(), e);
 			}
 			String message = e.getMessage() != null ? e.getMessage() : "exception with null message";
-			return new OpsinResult(null, OPSIN_RESULT_STATUS.FAILURE, message, name);
+			if (timer != null) {
+				timer.stageCompleted();
+			}
+			return completed(new OpsinResult(null, OPSIN_RESULT_STATUS.FAILURE, message, name), nameTimer, 0, -1);
 		}
 		String reasonForFailure = "";
 		Fragment fragGeneratedWithWarning = null;
+		int parseIndexWithWarning = -1;
 		List<OpsinWarning> warnings = Collections.emptyList();
-		for(Element parse : parses) {
+		int parseCount = 0;
+		while (parses.hasNext()) {
+			//parses after the first are only written when reached
+			Element parse = parses.next();
+			int i = parseCount++;
+			if (timer != null) {
+				//for parses after the first, completes the PARSING stage started after the previous parse
+				timer.nextStage(ParseStage.COMPONENT_GENERATION);
+			}
 			try {
 				if (LOG.isDebugEnabled()) {
 					LOG.debug(parse.toXML());
@@ -189,23 +205,33 @@ public class NameToStructure {
 				if (LOG.isDebugEnabled()) {
 					LOG.debug(parse.toXML());
 				}
+				if (timer != null) {
+					timer.nextStage(ParseStage.COMPONENT_PROCESSING);
+				}
 				BuildState state = new BuildState(n2sConfig);
 				//Converts the XML to fragments (handles many different nomenclatueres for describing structure). Assigns locants 
 				new ComponentProcessor(state, new SuffixApplier(state, suffixRules)).processParse(parse);
 				if (LOG.isDebugEnabled()) {
 					LOG.debug(parse.toXML());
 				}
+				if (timer != null) {
+					timer.nextStage(ParseStage.STRUCTURE_BUILDING);
+				}
 				//Constructs a single fragment from the fragments generated by the ComponentProcessor. Applies stereochemistry
 				Fragment frag = new StructureBuilder(state).buildFragment(parse);
 				if (LOG.isDebugEnabled()) {
 					LOG.debug(parse.toXML());
 				}
+				if (timer != null) {
+					timer.stageCompleted();
+				}
 				if (state.getWarnings().size() == 0) {
-					return new OpsinResult(frag, OPSIN_RESULT_STATUS.SUCCESS, "", name);
+					return completed(new OpsinResult(frag, OPSIN_RESULT_STATUS.SUCCESS, "", name), nameTimer, parseCount, i);
 				}
 				if (fragGeneratedWithWarning == null) {
 					//record first frag that had a warning but try other parses as they may work without a warning
 					fragGeneratedWithWarning = frag;
+					parseIndexWithWarning = i;
 					warnings = state.getWarnings();
 				}
 			} catch (Exception e) {
@@ -215,12 +241,101 @@ public class NameToStructure {
 				if (LOG.isDebugEnabled()) {
 					LOG.debug(e.getMessage(), e);
 				}
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+			}
+			if (timer != null) {
+				timer.nextStage(ParseStage.PARSING);
 			}
 		}
 		if (fragGeneratedWithWarning != null) {
-			return new OpsinResult(fragGeneratedWithWarning, OPSIN_RESULT_STATUS.WARNING, warnings, name);
+			return completed(new OpsinResult(fragGeneratedWithWarning, OPSIN_RESULT_STATUS.WARNING, warnings, name), nameTimer, parseCount, parseIndexWithWarning);
 		}
-		return new OpsinResult(null, OPSIN_RESULT_STATUS.FAILURE, reasonForFailure, name);
+		return completed(new OpsinResult(null, OPSIN_RESULT_STATUS.FAILURE, reasonForFailure, name), nameTimer, parseCount, -1);
+	}
+
+	/**Determines whether a chemical name could be interpreted, without generating a structure, using OPSIN's default options.
+	 * Only preprocessing, tokenisation and word rules are applied, hence this is much faster than {@link #parseChemicalName(String)}
+	 * and may be used to cheaply reject strings that are not chemical names
+	 *
+	 * @param name The chemical name to check.
+	 * @return ParsabilityResult
+	 */
+	public ParsabilityResult checkParsability(String name) {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		return checkParsability(name, n2sConfig);
+	}
+
+	/**Determines whether a chemical name could be interpreted, without generating a structure.
+	 * Only preprocessing, tokenisation and word rules are applied, hence this is much faster than {@link #parseChemicalName(String, NameToStructureConfig)}
+	 * and may be used to cheaply reject strings that are not chemical names.
+	 * A name that is parsable may still fail to be interpreted, but a name that is not parsable will always fail
+	 *
+	 * @param name The chemical name to check.
+	 * @param n2sConfig Options to control how OPSIN interprets the name e.g. whether substituents are acceptable
+	 * @return ParsabilityResult
+	 */
+	public ParsabilityResult checkParsability(String name, NameToStructureConfig n2sConfig) {
+		if (name == null){
+			throw new IllegalArgumentException("String given for name was null");
+		}
+		String modifiedName;
+		try {
+			modifiedName = PreProcessor.preProcess(name);
+		} catch (PreProcessingException e) {
+			return new ParsabilityResult(name, false, false, name, name, e.getMessage());
+		}
+		return parser.checkParsability(n2sConfig, modifiedName, name);
+	}
+
+	/**
+	 * Reports the interpretation of the name as complete, if a {@link ParseListener} is in use,
+	 * and associates the listener with the result so that output generation is also reported
+	 * @param result
+	 * @param nameTimer null if there is no listener
+	 * @param parseCount
+	 * @param successfulParseIndex
+	 * @return result
+	 */
+	private static OpsinResult completed(OpsinResult result, StageTimer nameTimer, int parseCount, int successfulParseIndex) {
+		if (nameTimer != null) {
+			nameTimer.nameCompleted(result.getChemicalName(), result.getStatus(), parseCount, successfulParseIndex);
+			result.setParseListener(nameTimer.getListener());
+		}
+		return result;
+	}
+
+	/**Parses a chemical name, using the given cache to avoid reinterpreting names that have previously been parsed with the same options.
+	 * If the name is not in the cache, or the cached result lacks a requested format, it is interpreted and the requested formats
+	 * (together with any the cached result already held) are generated and written through to the cache.
+	 * No structure is retained, hence for InChI or other outputs {@link #parseChemicalName(String, NameToStructureConfig)} should be used.
+	 *
+	 * @param name The chemical name to parse.
+	 * @param n2sConfig Options to control how OPSIN interprets the name.
+	 * @param cache The cache to consult and update
+	 * @param formats The formats that are required
+	 * @return CachedOpsinResult
+	 */
+	public CachedOpsinResult parseChemicalName(String name, NameToStructureConfig n2sConfig, OpsinResultCache cache, Set<Format> formats) {
+		if (name == null){
+			throw new IllegalArgumentException("String given for name was null");
+		}
+		CachedOpsinResult result = cache.get(name, n2sConfig);
+		if (result == null || !result.getFormats().containsAll(formats)) {
+			Set<Format> formatsToGenerate = EnumSet.noneOf(Format.class);
+			formatsToGenerate.addAll(formats);
+			if (result != null) {
+				formatsToGenerate.addAll(result.getFormats());
+			}
+			result = new CachedOpsinResult(parseChemicalName(name, n2sConfig), formatsToGenerate);
+			try {
+				cache.put(name, n2sConfig, result);
+			} catch (IOException e) {
+				LOG.warn("Failed to add result to cache", e);
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -235,7 +350,7 @@ public class NameToStructure {
 		return n2s.parseRules;
 	}
 	
-	private enum InchiType{
+	enum InchiType{
 		inchiWithFixedH,
 		stdInchi,
 		stdInchiKey
@@ -265,6 +380,20 @@ public class NameToStructure {
 		}
 
 		NameToStructureConfig n2sconfig = generateOpsinConfigObjectFromCmd(cmd);
+		int threads = getPositiveIntegerFromCmd(cmd, "threads", 1);
+		int maxDuplicateNames = cmd.hasOption("dedup") ? getPositiveIntegerFromCmd(cmd, "dedupMaxNames", DuplicateNameCache.DEFAULT_MAX_NAMES) : 0;
+		if (cmd.hasOption("shard")) {
+			ShardedBatchDriver.runWorker(cmd, n2sconfig, threads, maxDuplicateNames);
+			return;
+		}
+		if (cmd.hasOption("processes")) {
+			runShardedBatch(cmd);
+			return;
+		}
+		if (cmd.hasOption("server")) {
+			runServer(cmd, n2sconfig);
+			return;
+		}
 		
 		InputStream input;
 		OutputStream output;
@@ -287,32 +416,63 @@ public class NameToStructure {
 			output = null;
 			displayUsage(options);
 		}
+		CompressionFormat inputCompression = getCompressionFromCmd(cmd, "inputCompression", unparsedArgs.length > 0 ? unparsedArgs[0] : null);
+		InputStream decompressedInput = inputCompression.decompress(input);
 
-		String outputType = cmd.getOptionValue("o", "smi");
-		boolean outputName = cmd.hasOption("n");
-		if (outputType.equalsIgnoreCase("cml")) {
-			interactiveCmlOutput(input, output, n2sconfig);
-		}
-		else if (outputType.equalsIgnoreCase("smi") || outputType.equalsIgnoreCase("smiles")) {
-			interactiveSmilesOutput(input, output, n2sconfig, false, outputName);
-		}
-		else if (outputType.equalsIgnoreCase("inchi")) {
-			interactiveInchiOutput(input, output, n2sconfig, InchiType.inchiWithFixedH, outputName);
-		}
-		else if (outputType.equalsIgnoreCase("stdinchi")) {
-			interactiveInchiOutput(input, output, n2sconfig, InchiType.stdInchi, outputName);
+		OutputStream compressedOutput = output;
+		List<OutputStream> openedOutputs = new ArrayList<OutputStream>();
+		List<ResultWriter> writers = new ArrayList<ResultWriter>();
+		boolean defaultOutputUsed = false;
+		for (String format : cmd.getOptionValue("o", "smi").split(",")) {
+			format = format.trim();
+			OutputStream formatOutput;
+			int equalsIndex = format.indexOf('=');
+			if (equalsIndex >= 0) {
+				String fileName = format.substring(equalsIndex + 1);
+				formatOutput = getCompressionFromCmd(cmd, "outputCompression", fileName).compress(new FileOutputStream(new File(fileName)), threads);
+				openedOutputs.add(formatOutput);
+				format = format.substring(0, equalsIndex);
+			}
+			else if (!defaultOutputUsed) {
+				compressedOutput = getCompressionFromCmd(cmd, "outputCompression", unparsedArgs.length > 1 ? unparsedArgs[1] : null).compress(output, threads);
+				formatOutput = compressedOutput;
+				defaultOutputUsed = true;
+			}
+			else {
+				System.err.println("Only one output format may be written to the default output, give others a file e.g. -o smi,cml=out.cml");
+				System.exit(1);
+				return;
+			}
+			ResultWriter writer = ResultWriter.forFormat(format, formatOutput, cmd.hasOption("n"), cmd.hasOption("inchiColumn"), cmd.hasOption("deflateColumns"));
+			if (writer == null) {
+				System.err.println("Unrecognised output format: " + format);
+				System.err.println("Expected output types are \"cml\", \"smi\", \"extendedsmi\", \"sdf\", \"sdf3000\", \"columnar\", \"inchi\", \"stdinchi\" and \"stdinchikey\"");
+				System.exit(1);
+			}
+			writers.add(writer);
 		}
-		else if (outputType.equalsIgnoreCase("stdinchikey")) {
-			interactiveInchiOutput(input, output, n2sconfig, InchiType.stdInchiKey, outputName);
+		try (OpsinResultCache cache = openCacheFromCmd(cmd, writers)) {
+			BatchConverter converter = new BatchConverter(writers, n2sconfig, cache, maxDuplicateNames);
+			if (!cmd.hasOption("threads")) {
+				converter.convert(decompressedInput);
+			}
+			else if (unparsedArgs.length > 0 && inputCompression == CompressionFormat.none) {
+				converter.convert(new File(unparsedArgs[0]), threads, BatchConverter.DEFAULT_CHUNK_SIZE);
+			}
+			else {
+				converter.convert(decompressedInput, threads, BatchConverter.DEFAULT_LINES_PER_CHUNK);
+			}
+			DuplicateNameCache<?> duplicateNames = converter.getDuplicateNameCache();
+			if (duplicateNames != null) {
+				System.err.println("Duplicate names: " + duplicateNames.getSummary());
+			}
 		}
-		else if (outputType.equalsIgnoreCase("extendedsmi") || outputType.equalsIgnoreCase("extendedsmiles") || 
-				outputType.equalsIgnoreCase("cxsmi") || outputType.equalsIgnoreCase("cxsmiles")) {
-			interactiveSmilesOutput(input, output, n2sconfig, true, outputName);
+		for (OutputStream formatOutput : openedOutputs) {
+			formatOutput.close();
 		}
-		else{
-			System.err.println("Unrecognised output format: " + outputType);
-			System.err.println("Expected output types are \"cml\", \"smi\", \"inchi\", \"stdinchi\" and \"stdinchikey\"");
-			System.exit(1);
+		if (compressedOutput != output) {
+			//completes the compressed stream
+			compressedOutput.close();
 		}
 		if (unparsedArgs.length == 1) {
 			input.close();
@@ -332,18 +492,23 @@ public class NameToStructure {
 		System.exit(0);
 	}
 
-	private static Options buildCommandLineOptions() {
+	static Options buildCommandLineOptions() {
 		Options options = new Options();
 		Builder outputBuilder = Option.builder("o");
 		outputBuilder.longOpt("output");
 		outputBuilder.hasArg();
-		outputBuilder.argName("format");
+		outputBuilder.argName("format[=file],...");
 		StringBuilder outputOptionsDesc = new StringBuilder();
 		outputOptionsDesc.append("Sets OPSIN's output format (default smi)").append(OpsinTools.NEWLINE);
+		outputOptionsDesc.append("Several comma separated formats may be given, each name is then only interpreted once. "
+				+ "All but one must be written to a file given after an equals sign e.g. smi,cml=out.cml,stdinchikey=out.txt").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("Allowed values are:").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("cml for Chemical Markup Language").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("smi for SMILES").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("extendedsmi for Extended SMILES").append(OpsinTools.NEWLINE);
+		outputOptionsDesc.append("sdf for SD-file (V2000, or V3000 for large structures)").append(OpsinTools.NEWLINE);
+		outputOptionsDesc.append("sdf3000 for SD-file (V3000)").append(OpsinTools.NEWLINE);
+		outputOptionsDesc.append("columnar for OPSIN's binary columnar format, see OpsinResultColumnarReader").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("inchi for InChI (with FixedH)").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("stdinchi for StdInChI").append(OpsinTools.NEWLINE);
 		outputOptionsDesc.append("stdinchikey for StdInChIKey");
@@ -354,12 +519,172 @@ public class NameToStructure {
 		
 		options.addOption("a", "allowAcidsWithoutAcid", false, "Allows interpretation of acids without the word acid e.g. \"acetic\"");
 		options.addOption("f", "detailedFailureAnalysis", false, "Enables reverse parsing to more accurately determine why parsing failed");
-		options.addOption("n", "name", false, "Include name in SMILES/InChI output (tab delimited)");
+		options.addOption("n", "name", false, "Include name in SMILES/InChI output (tab delimited) or as a data item of SD-file output");
 		options.addOption("r", "allowRadicals", false, "Enables interpretation of radicals");
 		options.addOption("s", "allowUninterpretableStereo", false, "Allows stereochemistry uninterpretable by OPSIN to be ignored");
 		options.addOption("w", "wildcardRadicals", false, "Radicals are output as wildcard atoms");
+
+		Builder serverBuilder = Option.builder();
+		serverBuilder.longOpt("server");
+		serverBuilder.hasArg();
+		serverBuilder.argName("port");
+		serverBuilder.desc("Runs an HTTP server on the given port instead of reading names from input. Endpoints are /name?name=..., /batch (POST names) and /metrics. "
+				+ "The output format is given by a format query parameter or the Accept header");
+		options.addOption(serverBuilder.build());
+		Builder serverThreadsBuilder = Option.builder();
+		serverThreadsBuilder.longOpt("serverThreads");
+		serverThreadsBuilder.hasArg();
+		serverThreadsBuilder.argName("n");
+		serverThreadsBuilder.desc("Number of threads handling HTTP requests (default number of processors)");
+		options.addOption(serverThreadsBuilder.build());
+		Builder batchThreadsBuilder = Option.builder();
+		batchThreadsBuilder.longOpt("batchThreads");
+		batchThreadsBuilder.hasArg();
+		batchThreadsBuilder.argName("n");
+		batchThreadsBuilder.desc("Number of threads each HTTP batch request is split over (default number of processors)");
+		options.addOption(batchThreadsBuilder.build());
+		Builder cacheBuilder = Option.builder();
+		cacheBuilder.longOpt("cache");
+		cacheBuilder.hasArg();
+		cacheBuilder.argName("file");
+		cacheBuilder.desc("Persistent cache of results, consulted before interpreting a name and updated afterwards. Used for smi and cml output");
+		options.addOption(cacheBuilder.build());
+		Builder dedupBuilder = Option.builder();
+		dedupBuilder.longOpt("dedup");
+		dedupBuilder.desc("Reuses the result of a repeated name rather than interpreting it again. A summary of the duplication found is reported at the end");
+		options.addOption(dedupBuilder.build());
+		Builder dedupMaxNamesBuilder = Option.builder();
+		dedupMaxNamesBuilder.longOpt("dedupMaxNames");
+		dedupMaxNamesBuilder.hasArg();
+		dedupMaxNamesBuilder.argName("n");
+		dedupMaxNamesBuilder.desc("Number of recent distinct names whose results are kept by --dedup (default " + DuplicateNameCache.DEFAULT_MAX_NAMES + "). " +
+				"Formats other than smi and cml keep each name's structure, typically a few to tens of kilobytes per name");
+		options.addOption(dedupMaxNamesBuilder.build());
+		Builder threadsBuilder = Option.builder();
+		threadsBuilder.longOpt("threads");
+		threadsBuilder.hasArg();
+		threadsBuilder.argName("n");
+		threadsBuilder.desc("Interprets names on n threads, output remains in input order. An uncompressed input file is memory-mapped and split into chunks of lines. "
+				+ "Compressed output is also compressed on n threads");
+		options.addOption(threadsBuilder.build());
+		Builder inputCompressionBuilder = Option.builder();
+		inputCompressionBuilder.longOpt("inputCompression");
+		inputCompressionBuilder.hasArg();
+		inputCompressionBuilder.argName("none|gzip|zstd");
+		inputCompressionBuilder.desc("Compression of the input. By default this is determined from the input file's extension (.gz or .zst), otherwise none");
+		options.addOption(inputCompressionBuilder.build());
+		Builder outputCompressionBuilder = Option.builder();
+		outputCompressionBuilder.longOpt("outputCompression");
+		outputCompressionBuilder.hasArg();
+		outputCompressionBuilder.argName("none|gzip|zstd");
+		outputCompressionBuilder.desc("Compression of the output. By default this is determined from each output file's extension (.gz or .zst), otherwise none. "
+				+ "zstd requires zstd-jni on the classpath");
+		options.addOption(outputCompressionBuilder.build());
+		Builder processesBuilder = Option.builder();
+		processesBuilder.longOpt("processes");
+		processesBuilder.hasArg();
+		processesBuilder.argName("n");
+		processesBuilder.desc("Splits the input file into n shards, each converted by a separate worker JVM, then merges their output into the output file in input order. "
+				+ "A worker that exits abnormally is restarted from its last checkpoint. Requires an uncompressed input file and a single output format with no header or footer e.g. smi");
+		options.addOption(processesBuilder.build());
+		Builder maxRestartsBuilder = Option.builder();
+		maxRestartsBuilder.longOpt("maxRestarts");
+		maxRestartsBuilder.hasArg();
+		maxRestartsBuilder.argName("n");
+		maxRestartsBuilder.desc("Number of times a --processes worker may be restarted from the same position in its shard before the conversion is abandoned (default " + ShardedBatchDriver.DEFAULT_MAX_RESTARTS + ")");
+		options.addOption(maxRestartsBuilder.build());
+		Builder shardBuilder = Option.builder();
+		shardBuilder.longOpt("shard");
+		shardBuilder.hasArg();
+		shardBuilder.argName("start-end");
+		shardBuilder.desc("Used by --processes: converts the given byte range of the input file as a worker");
+		options.addOption(shardBuilder.build());
+		Builder checkpointBuilder = Option.builder();
+		checkpointBuilder.longOpt("checkpoint");
+		checkpointBuilder.hasArg();
+		checkpointBuilder.argName("file");
+		checkpointBuilder.desc("Used by --processes: the file recording a worker's progress");
+		options.addOption(checkpointBuilder.build());
+		Builder lineByLineBuilder = Option.builder();
+		lineByLineBuilder.longOpt("lineByLine");
+		lineByLineBuilder.desc("Used by --processes: a restarted worker checkpoints after each name until it has passed the point it previously failed at");
+		options.addOption(lineByLineBuilder.build());
+		Builder skipFirstLineBuilder = Option.builder();
+		skipFirstLineBuilder.longOpt("skipFirstLine");
+		skipFirstLineBuilder.desc("Used by --processes: a restarted worker writes the name it repeatedly failed on as a failure");
+		options.addOption(skipFirstLineBuilder.build());
+		Builder inchiColumnBuilder = Option.builder();
+		inchiColumnBuilder.longOpt("inchiColumn");
+		inchiColumnBuilder.desc("Include a StdInChI column in columnar output (requires the opsin-inchi module)");
+		options.addOption(inchiColumnBuilder.build());
+		Builder deflateColumnsBuilder = Option.builder();
+		deflateColumnsBuilder.longOpt("deflateColumns");
+		deflateColumnsBuilder.desc("Deflate compress the columns of columnar output");
+		options.addOption(deflateColumnsBuilder.build());
 		return options;
 	}
+
+	/**
+	 * Opens the result cache given on the command line, if the writers can all use it
+	 * @param cmd
+	 * @param writers
+	 * @return The cache, or null if not given or not usable
+	 * @throws IOException
+	 */
+	private static OpsinResultCache openCacheFromCmd(CommandLine cmd, List<ResultWriter> writers) throws IOException {
+		if (!cmd.hasOption("cache")) {
+			return null;
+		}
+		if (BatchConverter.getCachedFormats(writers) == null) {
+			System.err.println("The result cache is not used, as it only holds smi and cml output");
+			return null;
+		}
+		return new OpsinResultCache(new File(cmd.getOptionValue("cache")));
+	}
+
+	private static void runServer(CommandLine cmd, NameToStructureConfig n2sconfig) throws IOException, InterruptedException {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int port;
+		int serverThreads;
+		int batchThreads;
+		try {
+			port = Integer.parseInt(cmd.getOptionValue("server"));
+			serverThreads = Integer.parseInt(cmd.getOptionValue("serverThreads", String.valueOf(processors)));
+			batchThreads = Integer.parseInt(cmd.getOptionValue("batchThreads", String.valueOf(processors)));
+		}
+		catch (NumberFormatException e) {
+			System.err.println("Expected an integer: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		final OpsinResultCache cache = cmd.hasOption("cache") ? new OpsinResultCache(new File(cmd.getOptionValue("cache"))) : null;
+		final OpsinHttpServer server;
+		try {
+			server = new OpsinHttpServer(new InetSocketAddress(port), serverThreads, batchThreads, n2sconfig, cache);
+		}
+		catch (IOException e) {
+			if (cache != null) {
+				cache.close();
+			}
+			throw e;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop(1);
+				if (cache != null) {
+					try {
+						cache.close();
+					} catch (IOException e) {
+						LOG.warn("Failed to close cache", e);
+					}
+				}
+			}
+		});
+		server.start();
+		System.err.println("OPSIN server listening on port " + server.getPort());
+		Thread.currentThread().join();
+	}
 	
 	/**
 	 * Uses the command line parameters to configure a new NameToStructureConfig
@@ -376,102 +701,110 @@ public class NameToStructure {
 		return n2sconfig;
 	}
 
-	private static void interactiveCmlOutput(InputStream input, OutputStream out, NameToStructureConfig n2sconfig) throws IOException, XMLStreamException {
-		NameToStructure nts = NameToStructure.getInstance();
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
-		XMLOutputFactory factory = new WstxOutputFactory();
-		factory.setProperty(WstxOutputProperties.P_OUTPUT_ESCAPE_CR, false);
-		XMLStreamWriter writer = factory.createXMLStreamWriter(out, "UTF-8");
-		writer = new IndentingXMLStreamWriter(writer, 2);
-		writer.writeStartDocument();
-		CMLWriter cmlWriter = new CMLWriter(writer);
-		cmlWriter.writeCmlStart();
-		int id = 1;
-		String line;
-		while((line =inputReader.readLine()) != null) {
-			int splitPoint = line.indexOf('\t');
-			String name = splitPoint >=0 ? line.substring(0, splitPoint) : line;
-			OpsinResult result = nts.parseChemicalName(name, n2sconfig);
-			Fragment structure = result.getStructure();
-			cmlWriter.writeMolecule(structure, name, id++);
-			writer.flush();
-			if(structure == null) {
-				System.err.println(result.getMessage());
-			}
+	/**
+	 * The value of the option with the given name, exiting if it is not a positive integer
+	 * @param cmd
+	 * @param optionName
+	 * @param defaultValue Used if the option was not given
+	 * @return
+	 */
+	private static int getPositiveIntegerFromCmd(CommandLine cmd, String optionName, int defaultValue) {
+		if (!cmd.hasOption(optionName)) {
+			return defaultValue;
 		}
-		cmlWriter.writeCmlEnd();
-		writer.writeEndDocument();
-		writer.flush();
-		writer.close();
+		int value = 0;
+		try {
+			value = Integer.parseInt(cmd.getOptionValue(optionName));
+		}
+		catch (NumberFormatException e) {
+			value = 0;
+		}
+		if (value <= 0) {
+			System.err.println("--" + optionName + " expects a positive integer");
+			System.exit(1);
+		}
+		return value;
 	}
-	
-	private static void interactiveSmilesOutput(InputStream input, OutputStream out, NameToStructureConfig n2sconfig, boolean extendedSmiles, boolean outputName) throws IOException {
-		NameToStructure nts = NameToStructure.getInstance();
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
-		BufferedWriter outputWriter = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
-		String line;
-		while((line =inputReader.readLine()) != null) {
-			int splitPoint = line.indexOf('\t');
-			String name = splitPoint >=0 ? line.substring(0, splitPoint) : line;
-			OpsinResult result = nts.parseChemicalName(name, n2sconfig);
-			String output = extendedSmiles ? result.getExtendedSmiles() : result.getSmiles();
-			if(output == null) {
-				System.err.println(result.getMessage());
-			} else {
-				outputWriter.write(output);
-			}
-			if (outputName) {
-				outputWriter.write('\t');
-				outputWriter.write(line);
-			}
-			outputWriter.newLine();
-			outputWriter.flush();
+
+	/**
+	 * Converts the input file using several worker processes, see {@link ShardedBatchDriver}
+	 * @param cmd
+	 * @throws Exception
+	 */
+	private static void runShardedBatch(CommandLine cmd) throws Exception {
+		String[] unparsedArgs = cmd.getArgs();
+		if (unparsedArgs.length != 2) {
+			System.err.println("--processes requires an input file and an output file");
+			System.exit(1);
 		}
+		if (getCompressionFromCmd(cmd, "inputCompression", unparsedArgs[0]) != CompressionFormat.none) {
+			System.err.println("--processes requires an uncompressed input file, as it is split by byte range");
+			System.exit(1);
+		}
+		String format = cmd.getOptionValue("o", "smi");
+		ResultWriter writer = format.indexOf(',') < 0 ? ResultWriter.forFormat(format, new ByteArrayOutputStream(), false, false, false) : null;
+		if (writer == null || !writer.canConcatenateOutputs()) {
+			System.err.println("--processes requires a single output format that has no header or footer e.g. smi, sdf or stdinchikey");
+			System.exit(1);
+		}
+		if (cmd.hasOption("cache")) {
+			System.err.println("The result cache is not used with --processes, as only one process can have it open");
+		}
+		int processes = getPositiveIntegerFromCmd(cmd, "processes", 1);
+		int maxRestarts = getPositiveIntegerFromCmd(cmd, "maxRestarts", ShardedBatchDriver.DEFAULT_MAX_RESTARTS);
+		new ShardedBatchDriver(new File(unparsedArgs[0]), new File(unparsedArgs[1]),
+				getCompressionFromCmd(cmd, "outputCompression", unparsedArgs[1]), ShardedBatchDriver.getWorkerArgs(cmd), processes, maxRestarts).run();
 	}
 
-	private static void interactiveInchiOutput(InputStream input, OutputStream out, NameToStructureConfig n2sconfig, InchiType inchiType, boolean outputName) throws Exception {
-		NameToStructure nts = NameToStructure.getInstance();
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
-		BufferedWriter outputWriter = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
-		Class<?> c;
+	/**
+	 * The compression given by the option with the given name, or otherwise indicated by the file name's extension.
+	 * Exits if the compression is unrecognised or the library it needs is not on the classpath
+	 * @param cmd
+	 * @param optionName
+	 * @param fileName may be null
+	 * @return
+	 */
+	private static CompressionFormat getCompressionFromCmd(CommandLine cmd, String optionName, String fileName) {
+		CompressionFormat compression;
+		if (cmd.hasOption(optionName)) {
+			compression = CompressionFormat.fromName(cmd.getOptionValue(optionName));
+			if (compression == null) {
+				System.err.println("Unrecognised compression: " + cmd.getOptionValue(optionName));
+				System.err.println("Expected compressions are \"none\", \"gzip\" and \"zstd\"");
+				System.exit(1);
+			}
+		}
+		else {
+			compression = fileName != null ? CompressionFormat.fromFileName(fileName) : CompressionFormat.none;
+		}
 		try {
-			c = Class.forName("uk.ac.cam.ch.wwmm.opsin.NameToInchi");
-		} catch (ClassNotFoundException e) {
-			System.err.println("Could not initialise NameToInChI module. Is it on your classpath?");
-			throw new RuntimeException(e);
+			compression.checkAvailable();
 		}
-		Method m;
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		return compression;
+	}
+
+	/**
+	 * The method of NameToInchi (from the opsin-inchi module) that converts an OpsinResult to the given type of InChI
+	 * @param inchiType
+	 * @return
+	 * @throws ClassNotFoundException If the opsin-inchi module is not on the classpath
+	 * @throws NoSuchMethodException
+	 */
+	static Method getInchiConversionMethod(InchiType inchiType) throws ClassNotFoundException, NoSuchMethodException {
+		Class<?> c = Class.forName("uk.ac.cam.ch.wwmm.opsin.NameToInchi");
 		switch (inchiType) {
 		case inchiWithFixedH:
-			m = c.getMethod("convertResultToInChI", new Class[]{OpsinResult.class});
-			break;
+			return c.getMethod("convertResultToInChI", new Class[]{OpsinResult.class});
 		case stdInchi:
-			m = c.getMethod("convertResultToStdInChI", new Class[]{OpsinResult.class});
-			break;
+			return c.getMethod("convertResultToStdInChI", new Class[]{OpsinResult.class});
 		case stdInchiKey:
-			m = c.getMethod("convertResultToStdInChIKey", new Class[]{OpsinResult.class});
-			break;
+			return c.getMethod("convertResultToStdInChIKey", new Class[]{OpsinResult.class});
 		default :
 			throw new IllegalArgumentException("Unexepected enum value: " + inchiType);
 		}
-
-		String line;
-		while((line =inputReader.readLine()) != null) {
-			int splitPoint = line.indexOf('\t');
-			String name = splitPoint >=0 ? line.substring(0, splitPoint) : line;
-			OpsinResult result = nts.parseChemicalName(name, n2sconfig);
-			String output = (String) m.invoke(null, result);
-			if(output == null) {
-				System.err.println(result.getMessage());
-			} else {
-				outputWriter.write(output);
-			}
-			if (outputName) {
-				outputWriter.write('\t');
-				outputWriter.write(line);
-			}
-			outputWriter.newLine();
-			outputWriter.flush();
-		}
 	}
 }
@@ -18,6 +18,7 @@ public class NameToStructureConfig implements Cloneable {
 	private boolean detailedFailureAnalysis = false;
 	private boolean interpretAcidsWithoutTheWordAcid = false;
 	private boolean warnRatherThanFailOnUninterpretableStereochemistry = false;
+	private ParseListener parseListener = null;
 
 	/**
 	 * Constructs a NameToStructureConfig with default settings:
@@ -26,6 +27,7 @@ public class NameToStructureConfig implements Cloneable {
 	 * detailedFailureAnalysis = false
 	 * interpretAcidsWithoutTheWordAcid = false
 	 * warnRatherThanFailOnUninterpretableStereochemistry = false
+	 * parseListener = null
 	 */
 	public NameToStructureConfig() {
 	}
@@ -114,6 +116,24 @@ public class NameToStructureConfig implements Cloneable {
 		this.warnRatherThanFailOnUninterpretableStereochemistry = warnRatherThanFailOnUninterpretableStereochemistry;
 	}
 
+	/**
+	 * The listener that receives per stage timings and allocations, or null if none (Default)
+	 * @return the {@link ParseListener} or null
+	 */
+	public ParseListener getParseListener() {
+		return parseListener;
+	}
+
+	/**
+	 * Sets a listener to receive per stage timings and allocations as names are interpreted e.g. a {@link ParseMetrics}.
+	 * When null (Default) no measurements are taken.
+	 * The listener is shared, not copied, when this configuration is cloned
+	 * @param parseListener
+	 */
+	public void setParseListener(ParseListener parseListener) {
+		this.parseListener = parseListener;
+	}
+
 
 	/**
 	 * Constructs a NameToStructureConfig with default settings:
@@ -122,6 +142,7 @@ public class NameToStructureConfig implements Cloneable {
 	 * detailedFailureAnalysis = false
 	 * interpretAcidsWithoutTheWordAcid = false
 	 * warnRatherThanFailOnUninterpretableStereochemistry = false
+	 * parseListener = null
 	 */
 	public static NameToStructureConfig getDefaultConfigInstance() {
 		return new NameToStructureConfig();
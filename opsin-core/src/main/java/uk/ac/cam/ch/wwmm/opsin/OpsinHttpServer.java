@@ -0,0 +1,806 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.log4j.Logger;
+
+import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.stax.WstxOutputFactory;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import uk.ac.cam.ch.wwmm.opsin.CachedOpsinResult.Format;
+import uk.ac.cam.ch.wwmm.opsin.NameToStructure.InchiType;
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * Embedded HTTP server that keeps a warm {@link NameToStructure} instance and serves:
+ * <ul>
+ * <li>GET /name?name=... (or /name/{name}, or the name as a POST body): the structure for a single name</li>
+ * <li>POST /batch: the structures for a newline delimited (text/plain) or JSON array of strings (application/json) body of names.
+ * Results are in input order, one per line, or as a JSON array of objects if JSON was posted/accepted</li>
+ * <li>GET /metrics: request counters and {@link ParseMetrics} in the Prometheus text format</li>
+ * </ul>
+ * The output format is given by the "format" query parameter (as for the command-line's -o flag) or negotiated from the Accept header,
+ * defaulting to SMILES. Batches may also be returned in OPSIN's binary columnar format, see {@link OpsinResultColumnarReader}.
+ * Responses always have a known length so that connections may be kept alive.
+ * InChI output requires the opsin-inchi module to be on the classpath
+ */
+class OpsinHttpServer {
+
+	private static final Logger LOG = Logger.getLogger(OpsinHttpServer.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Maximum number of names in a single batch request */
+	static final int MAX_BATCH_SIZE = 100000;
+	/** Default maximum size of a request body in bytes */
+	static final int DEFAULT_MAX_BODY_BYTES = 32 * 1024 * 1024;
+
+	enum OutputFormat {
+		SMILES("smi", "chemical/x-daylight-smiles"),
+		EXTENDED_SMILES("extendedsmi", "chemical/x-chemaxon-cxsmiles"),
+		CML("cml", "chemical/x-cml"),
+		INCHI("inchi", "chemical/x-inchi"),
+		STD_INCHI("stdinchi", "chemical/x-stdinchi"),
+		STD_INCHIKEY("stdinchikey", "chemical/x-inchikey"),
+		COLUMNAR("columnar", "application/x-opsin-columnar");
+
+		final String formatName;
+		final String contentType;
+
+		private OutputFormat(String formatName, String contentType) {
+			this.formatName = formatName;
+			this.contentType = contentType;
+		}
+
+		/**
+		 * The format for the given format name, accepting the same synonyms as the command-line
+		 * @param format
+		 * @return The format or null if unrecognised
+		 */
+		static OutputFormat fromName(String format) {
+			String lc = format.toLowerCase(Locale.ROOT);
+			if (lc.equals("smi") || lc.equals("smiles")) {
+				return SMILES;
+			}
+			if (lc.equals("extendedsmi") || lc.equals("extendedsmiles") || lc.equals("cxsmi") || lc.equals("cxsmiles")) {
+				return EXTENDED_SMILES;
+			}
+			for (OutputFormat outputFormat : values()) {
+				if (outputFormat.formatName.equals(lc)) {
+					return outputFormat;
+				}
+			}
+			return null;
+		}
+
+		static OutputFormat fromContentType(String contentType) {
+			for (OutputFormat outputFormat : values()) {
+				if (outputFormat.contentType.equals(contentType)) {
+					return outputFormat;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final NameToStructure n2s;
+	private final NameToStructureConfig n2sConfig;
+	private final ParseMetrics parseMetrics = new ParseMetrics();
+	private final HttpServer server;
+	private final ExecutorService requestExecutor;
+	private final ExecutorService parseExecutor;
+	private final int parseThreads;
+	private final OpsinResultCache cache;
+	private volatile int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+
+	private final AtomicLong nameRequests = new AtomicLong();
+	private final AtomicLong batchRequests = new AtomicLong();
+	private final AtomicLong batchNames = new AtomicLong();
+	private final AtomicLong clientErrors = new AtomicLong();
+	private final AtomicLong serverErrors = new AtomicLong();
+
+	/**
+	 * Creates, but does not start, a server bound to the given address
+	 * @param address Port 0 will choose an ephemeral port, see {@link #getPort()}
+	 * @param requestThreads Number of threads handling HTTP requests
+	 * @param parseThreads Number of threads over which each batch request is split
+	 * @param n2sConfig Options to use when interpreting names; the server uses a copy
+	 * @param cache Cache of results to use for SMILES and CML output, may be null
+	 * @throws IOException
+	 */
+	OpsinHttpServer(InetSocketAddress address, int requestThreads, int parseThreads, NameToStructureConfig n2sConfig, OpsinResultCache cache) throws IOException {
+		if (requestThreads < 1 || parseThreads < 1) {
+			throw new IllegalArgumentException("Thread counts must be at least 1");
+		}
+		this.n2s = NameToStructure.getInstance();
+		this.n2sConfig = n2sConfig.clone();
+		this.n2sConfig.setParseListener(parseMetrics);
+		this.parseThreads = parseThreads;
+		this.cache = cache;
+		this.server = HttpServer.create(address, 0);
+		this.requestExecutor = Executors.newFixedThreadPool(requestThreads);
+		this.parseExecutor = parseThreads > 1 ? Executors.newFixedThreadPool(parseThreads) : null;
+		server.setExecutor(requestExecutor);
+		server.createContext("/name", new NameHandler());
+		server.createContext("/batch", new BatchHandler());
+		server.createContext("/metrics", new MetricsHandler());
+	}
+
+	void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to the given delay for in-progress requests, and the batch parsing they started, to complete
+	 * @param delaySeconds
+	 */
+	void stop(int delaySeconds) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds);
+		server.stop(delaySeconds);
+		requestExecutor.shutdown();
+		if (parseExecutor != null) {
+			parseExecutor.shutdown();
+		}
+		try {
+			requestExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if (parseExecutor != null) {
+				parseExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sets the maximum size of a request body; larger requests are rejected with status 413
+	 * @param maxBodyBytes
+	 */
+	void setMaxBodyBytes(int maxBodyBytes) {
+		this.maxBodyBytes = maxBodyBytes;
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	ParseMetrics getParseMetrics() {
+		return parseMetrics;
+	}
+
+	private abstract class OpsinHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				handleRequest(exchange);
+			}
+			catch (HttpError e) {
+				clientErrors.incrementAndGet();
+				sendText(exchange, e.status, e.getMessage());
+			}
+			catch (Exception e) {
+				serverErrors.incrementAndGet();
+				LOG.error("Error handling " + exchange.getRequestURI(), e);
+				sendText(exchange, 500, "Internal error: " + e);
+			}
+			finally {
+				exchange.close();
+			}
+		}
+
+		abstract void handleRequest(HttpExchange exchange) throws Exception;
+	}
+
+	private class NameHandler extends OpsinHandler {
+
+		@Override
+		void handleRequest(HttpExchange exchange) throws Exception {
+			nameRequests.incrementAndGet();
+			String method = exchange.getRequestMethod();
+			String name;
+			if (method.equals("POST")) {
+				name = new String(readBody(exchange, maxBodyBytes), UTF_8).trim();
+			}
+			else if (method.equals("GET")) {
+				String path = exchange.getRequestURI().getPath();
+				String context = exchange.getHttpContext().getPath();
+				name = path.length() > context.length() + 1 ? path.substring(context.length() + 1) : getQueryParameter(exchange, "name");
+			}
+			else {
+				throw new HttpError(405, "Expected GET or POST");
+			}
+			if (name == null || name.length() == 0) {
+				throw new HttpError(400, "No name given");
+			}
+			OutputFormat format = negotiateFormat(exchange);
+			if (format == OutputFormat.COLUMNAR) {
+				throw new HttpError(406, "Columnar output is only available for batches");
+			}
+			Method inchiMethod = getInchiMethod(format);
+			NameResult result = interpret(name, format, inchiMethod, true);
+			if (acceptsJson(exchange)) {
+				StringBuilder sb = new StringBuilder();
+				appendJsonResult(sb, result);
+				send(exchange, 200, "application/json; charset=UTF-8", sb.toString());
+			}
+			else if (result.output != null) {
+				send(exchange, 200, format.contentType + "; charset=UTF-8", result.output);
+			}
+			else {
+				sendText(exchange, 404, result.message);
+			}
+		}
+	}
+
+	private class BatchHandler extends OpsinHandler {
+
+		@Override
+		void handleRequest(HttpExchange exchange) throws Exception {
+			batchRequests.incrementAndGet();
+			if (!exchange.getRequestMethod().equals("POST")) {
+				throw new HttpError(405, "Expected POST");
+			}
+			boolean jsonInput = isJsonContentType(exchange.getRequestHeaders().getFirst("Content-Type"));
+			String body = new String(readBody(exchange, maxBodyBytes), UTF_8);
+			List<String> names = jsonInput ? parseJsonStringArray(body) : splitLines(body);
+			if (names.size() > MAX_BATCH_SIZE) {
+				throw new HttpError(413, "Batches are limited to " + MAX_BATCH_SIZE + " names");
+			}
+			batchNames.addAndGet(names.size());
+			OutputFormat format = negotiateFormat(exchange);
+			Method inchiMethod = getInchiMethod(format);
+			NameResult[] results = interpretAll(names, format, inchiMethod);
+
+			if (format == OutputFormat.COLUMNAR) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				OpsinResultColumnarWriter writer = new OpsinResultColumnarWriter(out, false, false);
+				for (NameResult result : results) {
+					writer.write(result.name, result.status, result.message, result.output, null, result.warnings);
+				}
+				writer.close();
+				send(exchange, 200, format.contentType, out.toByteArray());
+			}
+			else if (jsonInput || acceptsJson(exchange)) {
+				StringBuilder sb = new StringBuilder();
+				sb.append('[');
+				for (int i = 0; i < results.length; i++) {
+					if (i > 0) {
+						sb.append(',');
+					}
+					appendJsonResult(sb, results[i]);
+				}
+				sb.append(']');
+				send(exchange, 200, "application/json; charset=UTF-8", sb.toString());
+			}
+			else if (format == OutputFormat.CML) {
+				send(exchange, 200, format.contentType + "; charset=UTF-8", toCmlDocument(results));
+			}
+			else {
+				StringBuilder sb = new StringBuilder();
+				for (NameResult result : results) {
+					if (result.output != null) {
+						sb.append(result.output);
+					}
+					sb.append('\n');
+				}
+				send(exchange, 200, format.contentType + "; charset=UTF-8", sb.toString());
+			}
+		}
+	}
+
+	private class MetricsHandler extends OpsinHandler {
+
+		@Override
+		void handleRequest(HttpExchange exchange) throws Exception {
+			send(exchange, 200, "text/plain; version=0.0.4; charset=UTF-8", formatMetrics());
+		}
+	}
+
+	/**
+	 * The outcome of interpreting a name, with the output in the requested format
+	 */
+	private static class NameResult {
+		final String name;
+		final OPSIN_RESULT_STATUS status;
+		final String message;
+		final String output;
+		final List<OpsinWarning> warnings;
+
+		NameResult(String name, OPSIN_RESULT_STATUS status, String message, String output, List<OpsinWarning> warnings) {
+			this.name = name;
+			this.status = status;
+			this.message = message;
+			this.output = output;
+			this.warnings = warnings;
+		}
+	}
+
+	/**
+	 * Interprets the name, consulting the cache if one is in use and the output format is one that it holds
+	 * @param name
+	 * @param format
+	 * @param inchiMethod
+	 * @param prettyPrint
+	 * @return
+	 * @throws IllegalAccessException
+	 * @throws InvocationTargetException
+	 */
+	private NameResult interpret(String name, OutputFormat format, Method inchiMethod, boolean prettyPrint) throws IllegalAccessException, InvocationTargetException {
+		if (cache != null && (format == OutputFormat.SMILES || format == OutputFormat.CML)) {
+			Format cachedFormat = format == OutputFormat.SMILES ? Format.SMILES : Format.CML;
+			CachedOpsinResult result = n2s.parseChemicalName(name, n2sConfig, cache, EnumSet.of(cachedFormat));
+			return new NameResult(name, result.getStatus(), result.getMessage(), cachedFormat == Format.SMILES ? result.getSmiles() : result.getCml(), null);
+		}
+		OpsinResult result = n2s.parseChemicalName(name, n2sConfig);
+		return new NameResult(name, result.getStatus(), result.getMessage(), convert(result, format, inchiMethod, prettyPrint), result.getWarnings());
+	}
+
+	/**
+	 * Interprets the names, splitting them into contiguous chunks over the parse threads. Results are in input order
+	 * @param names
+	 * @param format
+	 * @param inchiMethod
+	 * @return
+	 * @throws Exception
+	 */
+	private NameResult[] interpretAll(final List<String> names, final OutputFormat format, final Method inchiMethod) throws Exception {
+		final NameResult[] results = new NameResult[names.size()];
+		if (parseExecutor == null || names.size() < 2) {
+			for (int i = 0; i < results.length; i++) {
+				results[i] = interpret(names.get(i), format, inchiMethod, false);
+			}
+			return results;
+		}
+		int chunkSize = (names.size() + parseThreads - 1) / parseThreads;
+		List<Future<?>> futures = new ArrayList<>();
+		for (int start = 0; start < names.size(); start += chunkSize) {
+			final int chunkStart = start;
+			final int chunkEnd = Math.min(start + chunkSize, names.size());
+			futures.add(parseExecutor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = chunkStart; i < chunkEnd; i++) {
+						results[i] = interpret(names.get(i), format, inchiMethod, false);
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+		return results;
+	}
+
+	private static String convert(OpsinResult result, OutputFormat format, Method inchiMethod, boolean prettyPrint) throws IllegalAccessException, InvocationTargetException {
+		switch (format) {
+		case SMILES:
+		case COLUMNAR:
+			return result.getSmiles();
+		case EXTENDED_SMILES:
+			return result.getExtendedSmiles();
+		case CML:
+			return prettyPrint ? result.getPrettyPrintedCml() : result.getCml();
+		default:
+			return (String) inchiMethod.invoke(null, result);
+		}
+	}
+
+	private static String toCmlDocument(NameResult[] results) throws XMLStreamException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLOutputFactory factory = new WstxOutputFactory();
+		factory.setProperty(WstxOutputProperties.P_OUTPUT_ESCAPE_CR, false);
+		XMLStreamWriter writer = new IndentingXMLStreamWriter(factory.createXMLStreamWriter(out, "UTF-8"), 2);
+		writer.writeStartDocument();
+		CMLWriter cmlWriter = new CMLWriter(writer);
+		cmlWriter.writeCmlStart();
+		for (int i = 0; i < results.length; i++) {
+			cmlWriter.writeMolecule(results[i].output, results[i].name, i + 1);
+		}
+		cmlWriter.writeCmlEnd();
+		writer.writeEndDocument();
+		writer.close();
+		return new String(out.toByteArray(), UTF_8);
+	}
+
+	private static Method getInchiMethod(OutputFormat format) throws HttpError, NoSuchMethodException {
+		InchiType inchiType;
+		switch (format) {
+		case INCHI:
+			inchiType = InchiType.inchiWithFixedH;
+			break;
+		case STD_INCHI:
+			inchiType = InchiType.stdInchi;
+			break;
+		case STD_INCHIKEY:
+			inchiType = InchiType.stdInchiKey;
+			break;
+		default:
+			return null;
+		}
+		try {
+			return NameToStructure.getInchiConversionMethod(inchiType);
+		} catch (ClassNotFoundException e) {
+			throw new HttpError(501, "InChI output requires the opsin-inchi module to be on the classpath");
+		}
+	}
+
+	/**
+	 * The format from the "format" query parameter, else the first chemical type in the Accept header, else SMILES
+	 * @param exchange
+	 * @return
+	 * @throws HttpError
+	 */
+	private static OutputFormat negotiateFormat(HttpExchange exchange) throws HttpError, UnsupportedEncodingException {
+		String formatParam = getQueryParameter(exchange, "format");
+		if (formatParam != null) {
+			OutputFormat format = OutputFormat.fromName(formatParam);
+			if (format == null) {
+				throw new HttpError(400, "Unrecognised output format: " + formatParam);
+			}
+			return format;
+		}
+		List<String> accepts = exchange.getRequestHeaders().get("Accept");
+		if (accepts != null) {
+			for (String accept : accepts) {
+				for (String mediaRange : accept.split(",")) {
+					int paramsStart = mediaRange.indexOf(';');
+					String mediaType = (paramsStart >= 0 ? mediaRange.substring(0, paramsStart) : mediaRange).trim().toLowerCase(Locale.ROOT);
+					OutputFormat format = OutputFormat.fromContentType(mediaType);
+					if (format != null) {
+						return format;
+					}
+				}
+			}
+		}
+		return OutputFormat.SMILES;
+	}
+
+	private static boolean acceptsJson(HttpExchange exchange) {
+		List<String> accepts = exchange.getRequestHeaders().get("Accept");
+		if (accepts != null) {
+			for (String accept : accepts) {
+				if (accept.contains("application/json")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String getQueryParameter(HttpExchange exchange, String parameter) throws UnsupportedEncodingException {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, "UTF-8");
+			if (key.equals(parameter)) {
+				return eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), "UTF-8") : "";
+			}
+		}
+		return null;
+	}
+
+	private String formatMetrics() {
+		StringBuilder sb = new StringBuilder();
+		appendCounter(sb, "opsin_http_requests_total", "endpoint=\"name\"", nameRequests.get());
+		appendCounter(sb, "opsin_http_requests_total", "endpoint=\"batch\"", batchRequests.get());
+		appendCounter(sb, "opsin_http_batch_names_total", null, batchNames.get());
+		appendCounter(sb, "opsin_http_errors_total", "type=\"client\"", clientErrors.get());
+		appendCounter(sb, "opsin_http_errors_total", "type=\"server\"", serverErrors.get());
+		for (OPSIN_RESULT_STATUS status : OPSIN_RESULT_STATUS.values()) {
+			appendCounter(sb, "opsin_names_total", "status=\"" + status + "\"", parseMetrics.getStatusCount(status));
+		}
+		appendCounter(sb, "opsin_name_allocated_bytes_total", null, parseMetrics.getNameAllocatedBytes());
+		sb.append("# TYPE opsin_name_duration_seconds histogram\n");
+		long[] histogram = parseMetrics.getNameDurationHistogram();
+		long cumulative = 0;
+		for (int i = 0; i < histogram.length - 1; i++) {
+			cumulative += histogram[i];
+			sb.append("opsin_name_duration_seconds_bucket{le=\"").append((1L << i) / 1e6).append("\"} ").append(cumulative).append('\n');
+		}
+		long nameCount = parseMetrics.getNameCount();
+		sb.append("opsin_name_duration_seconds_bucket{le=\"+Inf\"} ").append(nameCount).append('\n');
+		sb.append("opsin_name_duration_seconds_sum ").append(parseMetrics.getNameTotalNanos() / 1e9).append('\n');
+		sb.append("opsin_name_duration_seconds_count ").append(nameCount).append('\n');
+		for (ParseStage stage : ParseStage.values()) {
+			appendCounter(sb, "opsin_stage_seconds_total", "stage=\"" + stage + "\"", parseMetrics.getStageTotalNanos(stage) / 1e9);
+		}
+		return sb.toString();
+	}
+
+	private static void appendCounter(StringBuilder sb, String metric, String labels, Object value) {
+		if (sb.indexOf("# TYPE " + metric + " ") < 0) {
+			sb.append("# TYPE ").append(metric).append(" counter\n");
+		}
+		sb.append(metric);
+		if (labels != null) {
+			sb.append('{').append(labels).append('}');
+		}
+		sb.append(' ').append(value).append('\n');
+	}
+
+	private static void appendJsonResult(StringBuilder sb, NameResult result) {
+		sb.append("{\"name\":");
+		appendJsonString(sb, result.name);
+		sb.append(",\"status\":");
+		appendJsonString(sb, result.status.toString());
+		sb.append(",\"output\":");
+		if (result.output != null) {
+			appendJsonString(sb, result.output);
+		}
+		else {
+			sb.append("null");
+		}
+		sb.append(",\"message\":");
+		appendJsonString(sb, result.message);
+		sb.append('}');
+	}
+
+	static void appendJsonString(StringBuilder sb, String str) {
+		sb.append('"');
+		for (int i = 0, len = str.length(); i < len; i++) {
+			char ch = str.charAt(i);
+			switch (ch) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (ch < 0x20) {
+					sb.append(String.format("\\u%04x", (int) ch));
+				}
+				else {
+					sb.append(ch);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * Parses a JSON array whose elements are all strings
+	 * @param json
+	 * @return
+	 * @throws HttpError If the input is not a JSON array of strings
+	 */
+	static List<String> parseJsonStringArray(String json) throws HttpError {
+		List<String> strings = new ArrayList<>();
+		int i = skipWhitespace(json, 0);
+		if (i >= json.length() || json.charAt(i) != '[') {
+			throw new HttpError(400, "Expected a JSON array of names");
+		}
+		i = skipWhitespace(json, i + 1);
+		if (i < json.length() && json.charAt(i) == ']') {
+			i++;
+		}
+		else {
+			while (true) {
+				if (i >= json.length() || json.charAt(i) != '"') {
+					throw new HttpError(400, "Expected a JSON string at position " + i);
+				}
+				StringBuilder sb = new StringBuilder();
+				i++;
+				while (true) {
+					if (i >= json.length()) {
+						throw new HttpError(400, "Unterminated JSON string");
+					}
+					char ch = json.charAt(i++);
+					if (ch == '"') {
+						break;
+					}
+					if (ch != '\\') {
+						sb.append(ch);
+						continue;
+					}
+					if (i >= json.length()) {
+						throw new HttpError(400, "Unterminated JSON string");
+					}
+					char escaped = json.charAt(i++);
+					switch (escaped) {
+					case '"':
+					case '\\':
+					case '/':
+						sb.append(escaped);
+						break;
+					case 'b':
+						sb.append('\b');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'u':
+						if (i + 4 > json.length()) {
+							throw new HttpError(400, "Invalid JSON unicode escape");
+						}
+						try {
+							sb.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+						}
+						catch (NumberFormatException e) {
+							throw new HttpError(400, "Invalid JSON unicode escape");
+						}
+						i += 4;
+						break;
+					default:
+						throw new HttpError(400, "Invalid JSON escape: \\" + escaped);
+					}
+				}
+				strings.add(sb.toString());
+				i = skipWhitespace(json, i);
+				if (i < json.length() && json.charAt(i) == ',') {
+					i = skipWhitespace(json, i + 1);
+				}
+				else if (i < json.length() && json.charAt(i) == ']') {
+					i++;
+					break;
+				}
+				else {
+					throw new HttpError(400, "Expected , or ] at position " + i);
+				}
+			}
+		}
+		if (skipWhitespace(json, i) != json.length()) {
+			throw new HttpError(400, "Unexpected content after JSON array");
+		}
+		return strings;
+	}
+
+	private static int skipWhitespace(String str, int i) {
+		while (i < str.length() && Character.isWhitespace(str.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Splits on newlines, ignoring blank lines and anything after a tab (as for the command-line)
+	 * @param body
+	 * @return
+	 */
+	private static List<String> splitLines(String body) {
+		List<String> names = new ArrayList<>();
+		for (String line : body.split("\r?\n")) {
+			int splitPoint = line.indexOf('\t');
+			String name = (splitPoint >= 0 ? line.substring(0, splitPoint) : line).trim();
+			if (name.length() > 0) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Whether the media type of the given Content-Type header is JSON e.g. application/json; charset=UTF-8
+	 * @param contentType may be null
+	 * @return
+	 */
+	static boolean isJsonContentType(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		int paramStart = contentType.indexOf(';');
+		String mediaType = (paramStart >= 0 ? contentType.substring(0, paramStart) : contentType).trim().toLowerCase(Locale.ROOT);
+		return mediaType.equals("application/json") || mediaType.endsWith("+json");
+	}
+
+	/**
+	 * Reads the request body, rejecting it without reading further if it is larger than maxBytes
+	 * @param exchange
+	 * @param maxBytes
+	 * @return
+	 * @throws IOException
+	 * @throws HttpError If the body is larger than maxBytes, or the Content-Length is invalid
+	 */
+	private static byte[] readBody(HttpExchange exchange, int maxBytes) throws IOException, HttpError {
+		String contentLengthHeader = exchange.getRequestHeaders().getFirst("Content-Length");
+		int initialSize = 8192;
+		if (contentLengthHeader != null) {
+			long contentLength;
+			try {
+				contentLength = Long.parseLong(contentLengthHeader.trim());
+			}
+			catch (NumberFormatException e) {
+				throw new HttpError(400, "Invalid Content-Length: " + contentLengthHeader);
+			}
+			if (contentLength > maxBytes) {
+				throw new HttpError(413, "Request bodies are limited to " + maxBytes + " bytes");
+			}
+			initialSize = (int) Math.max(contentLength, 0);
+		}
+		InputStream is = exchange.getRequestBody();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(initialSize);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			if (baos.size() + read > maxBytes) {
+				//e.g. chunked transfer encoding where the length isn't known upfront
+				throw new HttpError(413, "Request bodies are limited to " + maxBytes + " bytes");
+			}
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+		send(exchange, status, "text/plain; charset=UTF-8", message != null ? message + "\n" : "");
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		send(exchange, status, contentType, body.getBytes(UTF_8));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] bytes) throws IOException {
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+		if (bytes.length > 0) {
+			OutputStream os = exchange.getResponseBody();
+			os.write(bytes);
+			os.close();
+		}
+	}
+
+	static class HttpError extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+}
@@ -111,74 +111,3 @@ class OpsinRadixTrie {
 		return indexes;
 	}
 }
-
-class OpsinTrieNode {
-
-	private boolean isEndPoint;
-	private String key;
-	private OpsinTrieNode[] children = new OpsinTrieNode[128];
-
-	OpsinTrieNode(String key, boolean isEndPoint) {
-		this.isEndPoint = isEndPoint;
-		this.key = key;
-	}
-
-	String getValue() {
-		return key;
-	}
-	
-	boolean isEndPoint() {
-		return isEndPoint;
-	}
-
-	void setIsEndPoint(boolean isEndPoint) {
-		this.isEndPoint = isEndPoint;
-	}
-	
-	private void setChildren(OpsinTrieNode[] children) {
-		this.children = children;
-	}
-	
-	OpsinTrieNode add(String remaingStr, int charsMatched) {
-		if (charsMatched < key.length()){//need to split this Trie node
-			OpsinTrieNode newNode = new OpsinTrieNode(key.substring(charsMatched), isEndPoint);
-			newNode.setChildren(children);
-			children = new OpsinTrieNode[128];
-			children[key.charAt(charsMatched)] = newNode;
-			key = key.substring(0, charsMatched);
-			isEndPoint =false;
-		}
-		if (remaingStr.length()!=0){
-			int charValue = (int) remaingStr.charAt(0);
-			if (children[charValue] == null) {
-				children[charValue] = new OpsinTrieNode(remaingStr, false);
-			}
-			return children[charValue];
-		}
-		return this;
-	}
-
-	int getNumberOfMatchingCharacters(String chemicalName, int posInName) {
-		int maxLength = Math.min(key.length(), chemicalName.length() - posInName);
-		for (int i = 0; i < maxLength; i++) {
-			if (key.charAt(i) != chemicalName.charAt(posInName + i)){
-				return i;
-			}
-		}
-		return maxLength;
-	}
-	
-	int getNumberOfMatchingCharactersInReverse(String chemicalName, int posInName) {
-		int maxLength = Math.min(key.length(), posInName + 1);
-		for (int i = 0; i < maxLength; i++) {
-			if (key.charAt(i) != chemicalName.charAt(posInName - i)){
-				return i;
-			}
-		}
-		return maxLength;
-	}
-
-	OpsinTrieNode getChild(char c) {
-		return children[(int) c];
-	}
-}
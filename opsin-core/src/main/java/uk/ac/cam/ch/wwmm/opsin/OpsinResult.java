@@ -20,6 +20,7 @@ public class OpsinResult {
 	private final String message;
 	private final String chemicalName;
 	private final List<OpsinWarning> warnings;
+	private ParseListener parseListener = null;
 
 	/**
 	 * Whether parsing the chemical name was successful, encountered problems or was unsuccessful.<br>
@@ -74,6 +75,18 @@ public class OpsinResult {
 		return structure;
 	}
 
+	/**
+	 * The listener to report {@link ParseStage#OUTPUT} to, or null if none
+	 * @return
+	 */
+	ParseListener getParseListener() {
+		return parseListener;
+	}
+
+	void setParseListener(ParseListener parseListener) {
+		this.parseListener = parseListener;
+	}
+
 	/**
 	 * Returns an enum indicating whether interpreting the chemical name was successful
 	 * If an issue was identified but a chemical structure could be still be deduced the status is {@link OPSIN_RESULT_STATUS#WARNING}
@@ -108,7 +121,12 @@ public class OpsinResult {
 	public String getCml() {
 		if (structure != null){
 			try{
-				return CMLWriter.generateCml(structure, chemicalName);
+				StageTimer timer = StageTimer.start(parseListener, ParseStage.OUTPUT);
+				String cml = CMLWriter.generateCml(structure, chemicalName);
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+				return cml;
 			}
 			catch (Exception e) {
 				LOG.debug("CML generation failed", e);
@@ -126,7 +144,12 @@ public class OpsinResult {
 	public String getPrettyPrintedCml() {
 		if (structure != null){
 			try{
-				return CMLWriter.generateIndentedCml(structure, chemicalName);
+				StageTimer timer = StageTimer.start(parseListener, ParseStage.OUTPUT);
+				String cml = CMLWriter.generateIndentedCml(structure, chemicalName);
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+				return cml;
 			}
 			catch (Exception e) {
 				LOG.debug("CML generation failed", e);
@@ -143,7 +166,12 @@ public class OpsinResult {
 	public String getSmiles() {
 		if (structure != null){
 			try{
-				return SMILESWriter.generateSmiles(structure);
+				StageTimer timer = StageTimer.start(parseListener, ParseStage.OUTPUT);
+				String smiles = SMILESWriter.generateSmiles(structure);
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+				return smiles;
 			}
 			catch (Exception e) {
 				LOG.debug("SMILES generation failed", e);
@@ -161,7 +189,12 @@ public class OpsinResult {
 	public String getExtendedSmiles() {
 		if (structure != null){
 			try{
-				return SMILESWriter.generateExtendedSmiles(structure);
+				StageTimer timer = StageTimer.start(parseListener, ParseStage.OUTPUT);
+				String smiles = SMILESWriter.generateExtendedSmiles(structure);
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+				return smiles;
 			}
 			catch (Exception e) {
 				LOG.debug("Extended SMILES generation failed", e);
@@ -170,6 +203,29 @@ public class OpsinResult {
 		return null;
 	}
 
+	/**
+	 * Generates an MDL molfile corresponding to the molecule described by the name
+	 * The connection table has no coordinates, with tetrahedral stereochemistry given by atom parities
+	 * If name generation failed i.e. the OPSIN_RESULT_STATUS is FAILURE then null is returned
+	 * @return Molfile as a String
+	 */
+	public String getMolfile() {
+		if (structure != null){
+			try{
+				StageTimer timer = StageTimer.start(parseListener, ParseStage.OUTPUT);
+				String molfile = MolfileWriter.generateMolfile(structure, chemicalName);
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+				return molfile;
+			}
+			catch (Exception e) {
+				LOG.debug("Molfile generation failed", e);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * A list of warnings encountered when the result was {@link OPSIN_RESULT_STATUS#WARNING}<br>
 	 * This list of warnings is immutable
@@ -0,0 +1,448 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import uk.ac.cam.ch.wwmm.opsin.CachedOpsinResult.Format;
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * A persistent cache of name interpretations, see {@link NameToStructure#parseChemicalName(String, NameToStructureConfig, OpsinResultCache, Set)}.<br>
+ * Results are keyed by the name and the options of the {@link NameToStructureConfig} that affect interpretation.
+ * The file also records the OPSIN version ({@link NameToStructure#getVersion()}) that wrote it;
+ * opening a file written by a different version discards its contents.<br>
+ * The file is append-only and memory-mapped in fixed size segments. Records are indexed in memory when the file is opened.
+ * Only the formats requested when a name was interpreted are stored; if the name is later stored with a format its record lacks, the new record supersedes it.
+ * Only one OpsinResultCache may have a given file open at a time, but a single instance may be shared between threads
+ */
+public class OpsinResultCache implements Closeable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] MAGIC = "OPSINRC1".getBytes(Charset.forName("US-ASCII"));
+
+	/*
+	 * Header: magic, end of data (long), version length (int), version (UTF-8)
+	 * Record: record length (int), config flags (int), status (byte), then name, message, SMILES and CML each as a UTF-8 length (int, -1 for null, -2 for not generated) followed by the bytes
+	 * Records never span segments; a record length of 0, or less than 4 bytes remaining, marks the end of a segment's records
+	 */
+	private static final int HEADER_SIZE = 256;
+	private static final int DATA_END_OFFSET = 8;
+	private static final int VERSION_OFFSET = 16;
+	private static final int NAME_OFFSET = 9;
+	private static final int NULL_LENGTH = -1;
+	private static final int NOT_GENERATED_LENGTH = -2;
+
+	static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+	private static final int ALLOW_RADICALS = 1;
+	private static final int OUTPUT_RADICALS_AS_WILDCARD_ATOMS = 2;
+	private static final int DETAILED_FAILURE_ANALYSIS = 4;
+	private static final int INTERPRET_ACIDS_WITHOUT_THE_WORD_ACID = 8;
+	private static final int WARN_RATHER_THAN_FAIL_ON_UNINTERPRETABLE_STEREO = 16;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final FileLock lock;
+	private final int segmentSize;
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+	private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+	private long dataEnd;
+	/** Open addressing hash table of record offsets + 1, 0 indicates an empty slot*/
+	private long[] offsets = new long[1024];
+	private int[] hashes = new int[1024];
+	private int size = 0;
+
+	/**
+	 * Opens, or creates, the cache in the given file
+	 * @param cacheFile
+	 * @throws IOException If the file is in use or is not an OPSIN result cache
+	 */
+	public OpsinResultCache(File cacheFile) throws IOException {
+		this(cacheFile, DEFAULT_SEGMENT_SIZE);
+	}
+
+	OpsinResultCache(File cacheFile, int segmentSize) throws IOException {
+		if (segmentSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("Segment size must exceed " + HEADER_SIZE);
+		}
+		this.segmentSize = segmentSize;
+		this.file = new RandomAccessFile(cacheFile, "rw");
+		try {
+			this.channel = file.getChannel();
+			FileLock fileLock;
+			try {
+				fileLock = channel.tryLock();
+			}
+			catch (OverlappingFileLockException e) {
+				fileLock = null;
+			}
+			this.lock = fileLock;
+			if (lock == null) {
+				throw new IOException(cacheFile + " is in use by another process");
+			}
+			long fileSize = channel.size();
+			ByteBuffer header = segment(0);
+			byte[] version = String.valueOf(NameToStructure.getVersion()).getBytes(UTF_8);
+			if (version.length > HEADER_SIZE - VERSION_OFFSET - 4) {
+				version = Arrays.copyOf(version, HEADER_SIZE - VERSION_OFFSET - 4);
+			}
+			if (fileSize == 0 || !hasMagic(header)) {
+				if (fileSize != 0) {
+					throw new IOException(cacheFile + " is not an OPSIN result cache");
+				}
+				writeHeader(header, version);
+			}
+			else if (!Arrays.equals(version, readBytes(header, VERSION_OFFSET))) {
+				writeHeader(header, version);
+			}
+			else {
+				dataEnd = header.getLong(DATA_END_OFFSET);
+				if (dataEnd < HEADER_SIZE || dataEnd > fileSize) {
+					throw new IOException(cacheFile + " is corrupt");
+				}
+				indexRecords();
+			}
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private static boolean hasMagic(ByteBuffer header) {
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (header.get(i) != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writeHeader(ByteBuffer header, byte[] version) {
+		for (int i = 0; i < MAGIC.length; i++) {
+			header.put(i, MAGIC[i]);
+		}
+		dataEnd = HEADER_SIZE;
+		header.putLong(DATA_END_OFFSET, dataEnd);
+		writeBytes(header, VERSION_OFFSET, version);
+	}
+
+	private void indexRecords() throws IOException {
+		long p = HEADER_SIZE;
+		while (p < dataEnd) {
+			int segmentOffset = (int) (p % segmentSize);
+			ByteBuffer segment = segment(p);
+			int recordLength = segmentSize - segmentOffset >= 4 ? segment.getInt(segmentOffset) : 0;
+			if (recordLength == 0) {
+				p = nextSegmentStart(p);
+				continue;
+			}
+			int flags = segment.getInt(segmentOffset + 4);
+			byte[] name = readBytes(segment, segmentOffset + NAME_OFFSET);
+			int hash = hash(flags, name);
+			int slot = findSlot(hash, flags, name);
+			if (slot >= 0) {
+				//superseded by this later record
+				offsets[slot] = p + 1;
+			}
+			else {
+				addToIndex(hash, p);
+			}
+			p += recordLength;
+		}
+	}
+
+	/**
+	 * Returns the cached result for the given name and configuration.
+	 * The result may not hold all formats, see {@link CachedOpsinResult#hasFormat(CachedOpsinResult.Format)}
+	 * @param name
+	 * @param n2sConfig
+	 * @return The result, or null if not cached
+	 */
+	public CachedOpsinResult get(String name, NameToStructureConfig n2sConfig) {
+		int flags = configFlags(n2sConfig);
+		byte[] nameBytes = name.getBytes(UTF_8);
+		rwLock.readLock().lock();
+		try {
+			int slot = findSlot(hash(flags, nameBytes), flags, nameBytes);
+			return slot >= 0 ? readRecord(offsets[slot] - 1) : null;
+		}
+		finally {
+			rwLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends the result for the given name and configuration, unless the name and configuration are already present with all of the result's formats
+	 * @param name
+	 * @param n2sConfig
+	 * @param result
+	 * @throws IOException
+	 */
+	public void put(String name, NameToStructureConfig n2sConfig, CachedOpsinResult result) throws IOException {
+		int flags = configFlags(n2sConfig);
+		byte[][] strings = new byte[][]{name.getBytes(UTF_8), toBytes(result.getMessage()),
+				result.hasFormat(Format.SMILES) ? toBytes(result.getSmiles()) : null,
+				result.hasFormat(Format.CML) ? toBytes(result.getCml()) : null};
+		int[] lengths = new int[strings.length];
+		int recordLength = NAME_OFFSET;
+		for (int i = 0; i < strings.length; i++) {
+			lengths[i] = strings[i] != null ? strings[i].length : NULL_LENGTH;
+			recordLength += 4 + (strings[i] != null ? strings[i].length : 0);
+		}
+		if (!result.hasFormat(Format.SMILES)) {
+			lengths[2] = NOT_GENERATED_LENGTH;
+		}
+		if (!result.hasFormat(Format.CML)) {
+			lengths[3] = NOT_GENERATED_LENGTH;
+		}
+		if (recordLength > segmentSize - HEADER_SIZE) {
+			return;
+		}
+		int hash = hash(flags, strings[0]);
+		rwLock.writeLock().lock();
+		try {
+			int existingSlot = findSlot(hash, flags, strings[0]);
+			if (existingSlot >= 0 && readRecord(offsets[existingSlot] - 1).getFormats().containsAll(result.getFormats())) {
+				return;
+			}
+			long p = dataEnd;
+			if (segmentSize - (p % segmentSize) < recordLength) {
+				if (segmentSize - (p % segmentSize) >= 4) {
+					segment(p).putInt((int) (p % segmentSize), 0);
+				}
+				p = nextSegmentStart(p);
+			}
+			ByteBuffer buffer = segment(p).duplicate();
+			//cast as Buffer.position(int) only returns a ByteBuffer from Java 9
+			((Buffer) buffer).position((int) (p % segmentSize));
+			buffer.putInt(recordLength);
+			buffer.putInt(flags);
+			buffer.put((byte) result.getStatus().ordinal());
+			for (int i = 0; i < strings.length; i++) {
+				buffer.putInt(lengths[i]);
+				if (strings[i] != null) {
+					buffer.put(strings[i]);
+				}
+			}
+			dataEnd = p + recordLength;
+			segments.get(0).putLong(DATA_END_OFFSET, dataEnd);
+			if (existingSlot >= 0) {
+				offsets[existingSlot] = p + 1;
+			}
+			else {
+				addToIndex(hash, p);
+			}
+		}
+		finally {
+			rwLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The number of results in the cache
+	 * @return
+	 */
+	public int size() {
+		rwLock.readLock().lock();
+		try {
+			return size;
+		}
+		finally {
+			rwLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Forces any results appended to the cache to be written to disk
+	 */
+	public void flush() {
+		rwLock.writeLock().lock();
+		try {
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+		}
+		finally {
+			rwLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		rwLock.writeLock().lock();
+		try {
+			segments.clear();
+			lock.release();
+			file.close();
+		}
+		finally {
+			rwLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The options of the configuration that affect the result of interpreting a name
+	 * @param n2sConfig
+	 * @return
+	 */
+	static int configFlags(NameToStructureConfig n2sConfig) {
+		int flags = 0;
+		if (n2sConfig.isAllowRadicals()) {
+			flags |= ALLOW_RADICALS;
+		}
+		if (n2sConfig.isOutputRadicalsAsWildCardAtoms()) {
+			flags |= OUTPUT_RADICALS_AS_WILDCARD_ATOMS;
+		}
+		if (n2sConfig.isDetailedFailureAnalysis()) {
+			flags |= DETAILED_FAILURE_ANALYSIS;
+		}
+		if (n2sConfig.allowInterpretationOfAcidsWithoutTheWordAcid()) {
+			flags |= INTERPRET_ACIDS_WITHOUT_THE_WORD_ACID;
+		}
+		if (n2sConfig.warnRatherThanFailOnUninterpretableStereochemistry()) {
+			flags |= WARN_RATHER_THAN_FAIL_ON_UNINTERPRETABLE_STEREO;
+		}
+		return flags;
+	}
+
+	private static int hash(int flags, byte[] name) {
+		int h = Arrays.hashCode(name) * 31 + flags;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * The index in {@link #offsets} of the record for the given name and flags
+	 * @param hash
+	 * @param flags
+	 * @param name
+	 * @return The index, or -1 if not present
+	 */
+	private int findSlot(int hash, int flags, byte[] name) {
+		int mask = offsets.length - 1;
+		for (int i = hash & mask; offsets[i] != 0; i = (i + 1) & mask) {
+			if (hashes[i] == hash) {
+				long offset = offsets[i] - 1;
+				ByteBuffer segment = segments.get((int) (offset / segmentSize));
+				int segmentOffset = (int) (offset % segmentSize);
+				if (segment.getInt(segmentOffset + 4) == flags && Arrays.equals(name, readBytes(segment, segmentOffset + NAME_OFFSET))) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void addToIndex(int hash, long offset) {
+		if ((size + 1) * 2 > offsets.length) {
+			long[] oldOffsets = offsets;
+			int[] oldHashes = hashes;
+			offsets = new long[oldOffsets.length * 2];
+			hashes = new int[oldOffsets.length * 2];
+			for (int i = 0; i < oldOffsets.length; i++) {
+				if (oldOffsets[i] != 0) {
+					insert(oldHashes[i], oldOffsets[i]);
+				}
+			}
+		}
+		insert(hash, offset + 1);
+		size++;
+	}
+
+	private void insert(int hash, long offsetPlusOne) {
+		int mask = offsets.length - 1;
+		int i = hash & mask;
+		while (offsets[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		offsets[i] = offsetPlusOne;
+		hashes[i] = hash;
+	}
+
+	private CachedOpsinResult readRecord(long offset) {
+		ByteBuffer segment = segments.get((int) (offset / segmentSize));
+		int p = (int) (offset % segmentSize);
+		OPSIN_RESULT_STATUS status = OPSIN_RESULT_STATUS.values()[segment.get(p + 8)];
+		p += NAME_OFFSET;
+		String[] strings = new String[4];
+		Set<Format> formats = EnumSet.noneOf(Format.class);
+		for (int i = 0; i < strings.length; i++) {
+			int length = segment.getInt(p);
+			if (i == 2 && length != NOT_GENERATED_LENGTH) {
+				formats.add(Format.SMILES);
+			}
+			else if (i == 3 && length != NOT_GENERATED_LENGTH) {
+				formats.add(Format.CML);
+			}
+			byte[] bytes = readBytes(segment, p);
+			if (bytes != null) {
+				strings[i] = new String(bytes, UTF_8);
+				p += 4 + bytes.length;
+			}
+			else {
+				p += 4;
+			}
+		}
+		return new CachedOpsinResult(strings[0], status, strings[1], formats, strings[2], strings[3]);
+	}
+
+	private static byte[] readBytes(ByteBuffer buffer, int position) {
+		int length = buffer.getInt(position);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer duplicate = buffer.duplicate();
+		((Buffer) duplicate).position(position + 4);
+		duplicate.get(bytes);
+		return bytes;
+	}
+
+	private static void writeBytes(ByteBuffer buffer, int position, byte[] bytes) {
+		ByteBuffer duplicate = buffer.duplicate();
+		((Buffer) duplicate).position(position);
+		duplicate.putInt(bytes.length);
+		duplicate.put(bytes);
+	}
+
+	private static byte[] toBytes(String str) {
+		return str != null ? str.getBytes(UTF_8) : null;
+	}
+
+	private long nextSegmentStart(long p) {
+		return (p / segmentSize + 1) * segmentSize;
+	}
+
+	/**
+	 * The segment containing the given file offset, mapping it, and hence growing the file, if necessary
+	 * @param offset
+	 * @return
+	 * @throws IOException
+	 */
+	private MappedByteBuffer segment(long offset) throws IOException {
+		int segmentIndex = (int) (offset / segmentSize);
+		while (segments.size() <= segmentIndex) {
+			segments.add(channel.map(MapMode.READ_WRITE, (long) segments.size() * segmentSize, segmentSize));
+		}
+		return segments.get(segmentIndex);
+	}
+}
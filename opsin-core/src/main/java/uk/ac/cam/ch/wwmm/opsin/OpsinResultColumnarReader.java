@@ -0,0 +1,340 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static uk.ac.cam.ch.wwmm.opsin.OpsinResultColumnarWriter.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+import uk.ac.cam.ch.wwmm.opsin.OpsinWarning.OpsinWarningType;
+
+/**
+ * Reads a file written by {@link OpsinResultColumnarWriter}.<br>
+ * Chunks are memory-mapped when requested and their columns are only decoded (and if necessary decompressed) when first accessed
+ */
+public class OpsinResultColumnarReader implements Closeable {
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final byte[] columnIds;
+	private final OPSIN_RESULT_STATUS[] statusDictionary;
+	private final OpsinWarningType[] warningTypeDictionary;
+	private final long[] chunkOffsets;
+	private final int[] chunkRows;
+	private final long footerOffset;
+	private final long rowCount;
+
+	/**
+	 * Opens the file, reading its header and footer
+	 * @param columnarFile
+	 * @throws IOException If the file is not a complete OPSIN columnar file
+	 */
+	public OpsinResultColumnarReader(File columnarFile) throws IOException {
+		this.file = new RandomAccessFile(columnarFile, "r");
+		try {
+			this.channel = file.getChannel();
+			long fileSize = channel.size();
+			if (fileSize < 2 * MAGIC.length + 12) {
+				throw new IOException(columnarFile + " is not an OPSIN columnar file");
+			}
+			byte[] magic = new byte[MAGIC.length];
+			file.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException(columnarFile + " is not an OPSIN columnar file");
+			}
+			int version = file.readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported OPSIN columnar file version: " + version);
+			}
+			columnIds = new byte[file.readUnsignedByte()];
+			file.readFully(columnIds);
+			statusDictionary = new OPSIN_RESULT_STATUS[file.readUnsignedByte()];
+			for (int i = 0; i < statusDictionary.length; i++) {
+				statusDictionary[i] = OPSIN_RESULT_STATUS.valueOf(file.readUTF());
+			}
+			warningTypeDictionary = new OpsinWarningType[file.readUnsignedByte()];
+			for (int i = 0; i < warningTypeDictionary.length; i++) {
+				warningTypeDictionary[i] = OpsinWarningType.valueOf(file.readUTF());
+			}
+
+			file.seek(fileSize - MAGIC.length - 8);
+			footerOffset = file.readLong();
+			file.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || footerOffset < 0 || footerOffset > fileSize) {
+				throw new IOException(columnarFile + " is incomplete");
+			}
+			file.seek(footerOffset);
+			int chunkCount = file.readInt();
+			chunkOffsets = new long[chunkCount];
+			chunkRows = new int[chunkCount];
+			long rows = 0;
+			for (int i = 0; i < chunkCount; i++) {
+				chunkOffsets[i] = file.readLong();
+				chunkRows[i] = file.readInt();
+				rows += chunkRows[i];
+			}
+			rowCount = rows;
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		catch (IllegalArgumentException e) {
+			file.close();
+			throw new IOException("Unrecognised dictionary entry in " + columnarFile, e);
+		}
+	}
+
+	/**
+	 * The total number of rows
+	 * @return
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * The number of chunks, each a group of consecutive rows
+	 * @return
+	 */
+	public int getChunkCount() {
+		return chunkOffsets.length;
+	}
+
+	/**
+	 * Whether the file has an InChI column
+	 * @return
+	 */
+	public boolean hasInchi() {
+		return columnIndex(INCHI_COLUMN) >= 0;
+	}
+
+	private int columnIndex(byte columnId) {
+		for (int i = 0; i < columnIds.length; i++) {
+			if (columnIds[i] == columnId) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Memory-maps the chunk with the given index
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	public Chunk getChunk(int index) throws IOException {
+		long start = chunkOffsets[index];
+		long end = index + 1 < chunkOffsets.length ? chunkOffsets[index + 1] : footerOffset;
+		return new Chunk(channel.map(MapMode.READ_ONLY, start, end - start));
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * A group of consecutive rows. Row indices are relative to the start of the chunk.
+	 * As columns are decoded on first access, a chunk should not be shared between threads
+	 */
+	public class Chunk {
+		private final int rows;
+		private final ByteBuffer[] columns;
+		private final byte[] compression;
+		private final int[] uncompressedLengths;
+
+		private Chunk(ByteBuffer buffer) throws IOException {
+			rows = buffer.getInt();
+			int columnCount = buffer.get() & 0xff;
+			columns = new ByteBuffer[columnIds.length];
+			compression = new byte[columnIds.length];
+			uncompressedLengths = new int[columnIds.length];
+			int dataOffset = buffer.position() + 10 * columnCount;
+			for (int i = 0; i < columnCount; i++) {
+				int columnIndex = columnIndex(buffer.get());
+				byte columnCompression = buffer.get();
+				int uncompressedLength = buffer.getInt();
+				int storedLength = buffer.getInt();
+				if (columnIndex < 0 || dataOffset + storedLength > buffer.limit()) {
+					throw new IOException("Corrupt OPSIN columnar chunk");
+				}
+				ByteBuffer column = buffer.duplicate();
+				//cast as Buffer.position(int) and limit(int) only return a ByteBuffer from Java 9
+				((Buffer) column).position(dataOffset);
+				((Buffer) column).limit(dataOffset + storedLength);
+				columns[columnIndex] = column.slice();
+				compression[columnIndex] = columnCompression;
+				uncompressedLengths[columnIndex] = uncompressedLength;
+				dataOffset += storedLength;
+			}
+		}
+
+		/**
+		 * The number of rows in this chunk
+		 * @return
+		 */
+		public int getRowCount() {
+			return rows;
+		}
+
+		/**
+		 * The decoded bytes of the column, decompressing it on first access
+		 * @param columnId
+		 * @return
+		 */
+		private ByteBuffer column(byte columnId) {
+			int columnIndex = columnIndex(columnId);
+			if (columnIndex < 0) {
+				throw new IllegalStateException("File does not have column " + columnId);
+			}
+			ByteBuffer column = columns[columnIndex];
+			if (compression[columnIndex] == DEFLATE) {
+				byte[] compressed = new byte[column.remaining()];
+				column.duplicate().get(compressed);
+				byte[] uncompressed = new byte[uncompressedLengths[columnIndex]];
+				Inflater inflater = new Inflater();
+				try {
+					inflater.setInput(compressed);
+					int length = 0;
+					while (length < uncompressed.length && !inflater.finished()) {
+						int inflated = inflater.inflate(uncompressed, length, uncompressed.length - length);
+						if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+							break;
+						}
+						length += inflated;
+					}
+					if (length != uncompressed.length) {
+						throw new IllegalStateException("Corrupt OPSIN columnar chunk");
+					}
+				}
+				catch (DataFormatException e) {
+					throw new IllegalStateException("Corrupt OPSIN columnar chunk", e);
+				}
+				finally {
+					inflater.end();
+				}
+				column = ByteBuffer.wrap(uncompressed);
+				columns[columnIndex] = column;
+				compression[columnIndex] = UNCOMPRESSED;
+			}
+			return column;
+		}
+
+		/**
+		 * The name of the given row
+		 * @param row
+		 * @return
+		 */
+		public String getName(int row) {
+			return readText(column(NAME_COLUMN), 0, rows, checkRow(row));
+		}
+
+		/**
+		 * The status of the given row
+		 * @param row
+		 * @return
+		 */
+		public OPSIN_RESULT_STATUS getStatus(int row) {
+			return statusDictionary[column(STATUS_COLUMN).get(checkRow(row)) & 0xff];
+		}
+
+		/**
+		 * The message of the given row, blank if no problems were encountered
+		 * @param row
+		 * @return
+		 */
+		public String getMessage(int row) {
+			return readText(column(MESSAGE_COLUMN), 0, rows, checkRow(row));
+		}
+
+		/**
+		 * The SMILES of the given row, or null if a structure was not generated
+		 * @param row
+		 * @return
+		 */
+		public String getSmiles(int row) {
+			return readText(column(SMILES_COLUMN), 0, rows, checkRow(row));
+		}
+
+		/**
+		 * The InChI of the given row, or null if none was written
+		 * @param row
+		 * @return
+		 * @throws IllegalStateException If the file has no InChI column
+		 */
+		public String getInchi(int row) {
+			return readText(column(INCHI_COLUMN), 0, rows, checkRow(row));
+		}
+
+		/**
+		 * The warnings of the given row
+		 * @param row
+		 * @return
+		 */
+		public List<OpsinWarning> getWarnings(int row) {
+			ByteBuffer column = column(WARNINGS_COLUMN);
+			checkRow(row);
+			int start = column.getInt(4 * row);
+			int end = column.getInt(4 * (row + 1));
+			if (start == end) {
+				return Collections.emptyList();
+			}
+			int warningCount = column.getInt(4 * rows);
+			int typesOffset = 4 * (rows + 1);
+			int messagesOffset = typesOffset + warningCount;
+			List<OpsinWarning> warnings = new ArrayList<OpsinWarning>(end - start);
+			for (int i = start; i < end; i++) {
+				OpsinWarningType type = warningTypeDictionary[column.get(typesOffset + i) & 0xff];
+				warnings.add(new OpsinWarning(type, readText(column, messagesOffset, warningCount, i)));
+			}
+			return warnings;
+		}
+
+		private int checkRow(int row) {
+			if (row < 0 || row >= rows) {
+				throw new IndexOutOfBoundsException("Row " + row + " is not in a chunk of " + rows + " rows");
+			}
+			return row;
+		}
+	}
+
+	/**
+	 * Reads a value from a text column starting at the given offset in the buffer
+	 * @param column
+	 * @param offset
+	 * @param count The number of values in the column
+	 * @param index
+	 * @return
+	 */
+	private static String readText(ByteBuffer column, int offset, int count, int index) {
+		if ((column.get(offset + (index >> 3)) & (1 << (index & 7))) != 0) {
+			return null;
+		}
+		int offsetsStart = offset + ((count + 7) >> 3);
+		int dataStart = offsetsStart + 4 * (count + 1);
+		int start = column.getInt(offsetsStart + 4 * index);
+		int end = column.getInt(offsetsStart + 4 * (index + 1));
+		if (column.hasArray()) {
+			return new String(column.array(), column.arrayOffset() + dataStart + start, end - start, UTF_8);
+		}
+		byte[] bytes = new byte[end - start];
+		ByteBuffer data = column.duplicate();
+		((Buffer) data).position(dataStart + start);
+		data.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
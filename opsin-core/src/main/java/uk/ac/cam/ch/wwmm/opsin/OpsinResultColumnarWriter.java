@@ -0,0 +1,414 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+import uk.ac.cam.ch.wwmm.opsin.OpsinWarning.OpsinWarningType;
+
+/**
+ * Writes OPSIN results to a compact binary columnar file, which may be read with {@link OpsinResultColumnarReader}.<br>
+ * Each result is a row with columns for the name, status, message, SMILES and, optionally, InChI and warnings.
+ * Rows are grouped into chunks; within a chunk each column is stored contiguously, optionally deflate compressed,
+ * so that a reader need only decode the columns it uses.
+ * <br>
+ * The layout, with all integers big-endian, is:
+ * <ul>
+ * <li>Header: magic "OPSINCF1", format version (int), number of columns (byte) then their ids (bytes),
+ * then the status and warning type dictionaries, each as a count (byte) followed by names (modified UTF-8 as by {@link DataOutputStream#writeUTF(String)})</li>
+ * <li>Chunks: row count (int), number of columns (byte), then for each column its id (byte), compression (byte, 0 none, 1 deflate),
+ * uncompressed length (int) and stored length (int), followed by each column's bytes in the same order</li>
+ * <li>Footer: number of chunks (int), then each chunk's offset in the file (long) and row count (int),
+ * then the footer's offset (long) and magic "OPSINCF1" as the last 16 bytes of the file</li>
+ * </ul>
+ * Text columns are a null bitmap of (rows + 7) / 8 bytes (least significant bit first, set for null),
+ * rows + 1 start offsets (int) and UTF-8 bytes. The status column is one byte per row indexing the status dictionary.
+ * The warnings column is rows + 1 start offsets (int) into the warnings, one byte per warning indexing the warning type dictionary,
+ * then the warning messages as a text column.
+ */
+public class OpsinResultColumnarWriter implements Closeable {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final byte[] MAGIC = "OPSINCF1".getBytes(Charset.forName("US-ASCII"));
+	static final int FORMAT_VERSION = 1;
+
+	static final byte NAME_COLUMN = 0;
+	static final byte STATUS_COLUMN = 1;
+	static final byte MESSAGE_COLUMN = 2;
+	static final byte SMILES_COLUMN = 3;
+	static final byte INCHI_COLUMN = 4;
+	static final byte WARNINGS_COLUMN = 5;
+
+	static final byte UNCOMPRESSED = 0;
+	static final byte DEFLATE = 1;
+
+	static final int DEFAULT_CHUNK_SIZE = 16384;
+
+	private final DataOutputStream out;
+	private final boolean includeInchi;
+	private final Deflater deflater;
+	private final int chunkSize;
+	private long position = 0;
+
+	private final TextColumn names = new TextColumn();
+	private final TextColumn messages = new TextColumn();
+	private final TextColumn smiles = new TextColumn();
+	private final TextColumn inchis = new TextColumn();
+	private final TextColumn warningMessages = new TextColumn();
+	private final ByteColumn statuses = new ByteColumn();
+	private final ByteColumn warningTypes = new ByteColumn();
+	private int[] warningOffsets = new int[1024];
+	private int rows = 0;
+
+	/** The encoded, and possibly compressed, columns of the chunk being written, reused between chunks */
+	private final byte[] columns;
+	private final ByteColumn[] encodedColumns;
+	private final ByteColumn[] compressedColumns;
+
+	private long[] chunkOffsets = new long[16];
+	private int[] chunkRows = new int[16];
+	private int chunkCount = 0;
+	private boolean finished = false;
+
+	/**
+	 * Creates a writer, immediately writing the file header
+	 * @param out
+	 * @param includeInchi Whether the file has an InChI column
+	 * @param compress Whether to deflate compress columns
+	 * @throws IOException
+	 */
+	public OpsinResultColumnarWriter(OutputStream out, boolean includeInchi, boolean compress) throws IOException {
+		this(out, includeInchi, compress, DEFAULT_CHUNK_SIZE);
+	}
+
+	OpsinResultColumnarWriter(OutputStream out, boolean includeInchi, boolean compress, int chunkSize) throws IOException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		this.includeInchi = includeInchi;
+		this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+		this.chunkSize = chunkSize;
+		this.columns = columnIds();
+		this.encodedColumns = new ByteColumn[columns.length];
+		this.compressedColumns = new ByteColumn[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			encodedColumns[i] = new ByteColumn();
+			compressedColumns[i] = new ByteColumn();
+		}
+		writeHeader();
+	}
+
+	private void writeHeader() throws IOException {
+		out.write(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeByte(columns.length);
+		out.write(columns);
+		OPSIN_RESULT_STATUS[] statusValues = OPSIN_RESULT_STATUS.values();
+		out.writeByte(statusValues.length);
+		for (OPSIN_RESULT_STATUS status : statusValues) {
+			out.writeUTF(status.name());
+		}
+		OpsinWarningType[] warningTypeValues = OpsinWarningType.values();
+		out.writeByte(warningTypeValues.length);
+		for (OpsinWarningType warningType : warningTypeValues) {
+			out.writeUTF(warningType.name());
+		}
+		position = out.size();
+	}
+
+	private byte[] columnIds() {
+		return includeInchi ?
+				new byte[]{NAME_COLUMN, STATUS_COLUMN, MESSAGE_COLUMN, SMILES_COLUMN, INCHI_COLUMN, WARNINGS_COLUMN} :
+				new byte[]{NAME_COLUMN, STATUS_COLUMN, MESSAGE_COLUMN, SMILES_COLUMN, WARNINGS_COLUMN};
+	}
+
+	/**
+	 * Writes a row for the result with its SMILES
+	 * @param result
+	 * @throws IOException
+	 */
+	public void write(OpsinResult result) throws IOException {
+		write(result, null);
+	}
+
+	/**
+	 * Writes a row for the result with its SMILES and the given InChI, which is ignored if the file has no InChI column
+	 * @param result
+	 * @param inchi InChI for the result, may be null
+	 * @throws IOException
+	 */
+	public void write(OpsinResult result, String inchi) throws IOException {
+		write(result.getChemicalName(), result.getStatus(), result.getMessage(), result.getSmiles(), inchi, result.getWarnings());
+	}
+
+	void write(String name, OPSIN_RESULT_STATUS status, String message, String smilesString, String inchi, List<OpsinWarning> warnings) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("Writer has been closed");
+		}
+		names.add(name);
+		statuses.add((byte) status.ordinal());
+		messages.add(message);
+		smiles.add(smilesString);
+		if (includeInchi) {
+			inchis.add(inchi);
+		}
+		if (rows + 2 > warningOffsets.length) {
+			warningOffsets = Arrays.copyOf(warningOffsets, warningOffsets.length * 2);
+		}
+		if (warnings != null) {
+			for (OpsinWarning warning : warnings) {
+				warningTypes.add((byte) warning.getType().ordinal());
+				warningMessages.add(warning.getMessage());
+			}
+		}
+		warningOffsets[++rows] = warningTypes.size;
+		if (rows == chunkSize) {
+			writeChunk();
+		}
+	}
+
+	private void writeChunk() throws IOException {
+		if (chunkCount == chunkOffsets.length) {
+			chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+			chunkRows = Arrays.copyOf(chunkRows, chunkCount * 2);
+		}
+		chunkOffsets[chunkCount] = position;
+		chunkRows[chunkCount++] = rows;
+
+		for (int i = 0; i < columns.length; i++) {
+			ByteColumn encoded = encodedColumns[i];
+			encoded.size = 0;
+			encodeColumn(columns[i], encoded);
+			compressedColumns[i].size = 0;
+			if (deflater != null && encoded.size > 0) {
+				deflate(encoded, compressedColumns[i]);
+			}
+		}
+		out.writeInt(rows);
+		out.writeByte(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			boolean isCompressed = compressedColumns[i].size > 0;
+			out.writeByte(columns[i]);
+			out.writeByte(isCompressed ? DEFLATE : UNCOMPRESSED);
+			out.writeInt(encodedColumns[i].size);
+			out.writeInt(isCompressed ? compressedColumns[i].size : encodedColumns[i].size);
+		}
+		position += 5 + 10 * columns.length;
+		for (int i = 0; i < columns.length; i++) {
+			ByteColumn payload = compressedColumns[i].size > 0 ? compressedColumns[i] : encodedColumns[i];
+			out.write(payload.bytes, 0, payload.size);
+			position += payload.size;
+		}
+
+		names.clear();
+		statuses.size = 0;
+		messages.clear();
+		smiles.clear();
+		inchis.clear();
+		warningTypes.size = 0;
+		warningMessages.clear();
+		rows = 0;
+	}
+
+	private void encodeColumn(byte column, ByteColumn encoded) {
+		switch (column) {
+		case NAME_COLUMN:
+			names.encode(encoded);
+			break;
+		case STATUS_COLUMN:
+			encoded.add(statuses.bytes, statuses.size);
+			break;
+		case MESSAGE_COLUMN:
+			messages.encode(encoded);
+			break;
+		case SMILES_COLUMN:
+			smiles.encode(encoded);
+			break;
+		case INCHI_COLUMN:
+			inchis.encode(encoded);
+			break;
+		case WARNINGS_COLUMN:
+			for (int i = 0; i <= rows; i++) {
+				encoded.addInt(warningOffsets[i]);
+			}
+			encoded.add(warningTypes.bytes, warningTypes.size);
+			warningMessages.encode(encoded);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown column: " + column);
+		}
+	}
+
+	/**
+	 * Deflates the column into dest, leaving dest empty if compression would not make the column smaller
+	 * @param column
+	 * @param dest
+	 */
+	private void deflate(ByteColumn column, ByteColumn dest) {
+		int length = column.size;
+		dest.ensureCapacity(length);
+		deflater.reset();
+		deflater.setInput(column.bytes, 0, length);
+		deflater.finish();
+		int compressedLength = 0;
+		while (!deflater.finished() && compressedLength < length) {
+			compressedLength += deflater.deflate(dest.bytes, compressedLength, length - compressedLength);
+		}
+		dest.size = deflater.finished() && compressedLength < length ? compressedLength : 0;
+	}
+
+	/**
+	 * Writes any buffered rows and the footer, and flushes the underlying stream, without closing it.
+	 * No more rows may be written afterwards
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		if (rows > 0) {
+			writeChunk();
+		}
+		long footerOffset = position;
+		out.writeInt(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			out.writeLong(chunkOffsets[i]);
+			out.writeInt(chunkRows[i]);
+		}
+		out.writeLong(footerOffset);
+		out.write(MAGIC);
+		out.flush();
+		finished = true;
+		if (deflater != null) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Finishes the file, see {@link #finish()}, and closes the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * A growable byte array
+	 */
+	private static class ByteColumn {
+		byte[] bytes = new byte[1024];
+		int size = 0;
+
+		private void ensureCapacity(int extra) {
+			if (size + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+			}
+		}
+
+		void add(byte b) {
+			ensureCapacity(1);
+			bytes[size++] = b;
+		}
+
+		void add(byte[] b, int length) {
+			ensureCapacity(length);
+			System.arraycopy(b, 0, bytes, size, length);
+			size += length;
+		}
+
+		void addInt(int i) {
+			ensureCapacity(4);
+			bytes[size++] = (byte) (i >>> 24);
+			bytes[size++] = (byte) (i >>> 16);
+			bytes[size++] = (byte) (i >>> 8);
+			bytes[size++] = (byte) i;
+		}
+
+		/**
+		 * Appends the string as UTF-8
+		 * @param s
+		 */
+		void addUtf8(String s) {
+			int len = s.length();
+			ensureCapacity(len * 3);
+			for (int i = 0; i < len; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					bytes[size++] = (byte) c;
+				}
+				else if (c < 0x800) {
+					bytes[size++] = (byte) (0xc0 | (c >> 6));
+					bytes[size++] = (byte) (0x80 | (c & 0x3f));
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, s.charAt(++i));
+					bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+					bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+					bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+					bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+				}
+				else if (Character.isSurrogate(c)) {
+					bytes[size++] = '?';
+				}
+				else {
+					bytes[size++] = (byte) (0xe0 | (c >> 12));
+					bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+					bytes[size++] = (byte) (0x80 | (c & 0x3f));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The values of a text column for the current chunk
+	 */
+	private static class TextColumn {
+		private final ByteColumn data = new ByteColumn();
+		private int[] offsets = new int[1024];
+		private byte[] nulls = new byte[128];
+		private int count = 0;
+
+		void add(String s) {
+			if (count + 2 > offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			if ((count >> 3) >= nulls.length) {
+				nulls = Arrays.copyOf(nulls, nulls.length * 2);
+			}
+			if (s == null) {
+				nulls[count >> 3] |= 1 << (count & 7);
+			}
+			else {
+				data.addUtf8(s);
+			}
+			offsets[++count] = data.size;
+		}
+
+		void encode(ByteColumn dest) {
+			dest.add(nulls, (count + 7) >> 3);
+			for (int i = 0; i <= count; i++) {
+				dest.addInt(offsets[i]);
+			}
+			dest.add(data.bytes, data.size);
+		}
+
+		void clear() {
+			Arrays.fill(nulls, 0, (count + 7) >> 3, (byte) 0);
+			data.size = 0;
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compresses data on several threads.
+ * The data is split into blocks that are each compressed as a separate gzip member, in the same way as pigz.
+ * Concatenated members are a valid gzip file, which gunzip and {@link java.util.zip.GZIPInputStream} read as a whole.<br>
+ * {@link #flush()} only writes blocks that have already been compressed, the remainder is written by {@link #finish()} or {@link #close()}
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+	static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final ExecutorService executor;
+	private final int maxPendingBlocks;
+	private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+	private byte[] block;
+	private int blockLength = 0;
+	private long blocksWritten = 0;
+	private boolean finished = false;
+
+	/**
+	 * @param out
+	 * @param threads The number of threads compressing blocks
+	 * @param blockSize The number of uncompressed bytes in each block
+	 */
+	ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) {
+		if (threads < 1 || blockSize < 1) {
+			throw new IllegalArgumentException("The number of threads and block size must be positive");
+		}
+		this.out = out;
+		this.blockSize = blockSize;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				//don't prevent exit if the stream is abandoned without being finished
+				Thread t = new Thread(r, "opsin-gzip");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.maxPendingBlocks = 2 * threads;
+		this.block = new byte[blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkNotFinished();
+		block[blockLength++] = (byte) b;
+		if (blockLength == blockSize) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkNotFinished();
+		while (len > 0) {
+			int toCopy = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, toCopy);
+			blockLength += toCopy;
+			off += toCopy;
+			len -= toCopy;
+			if (blockLength == blockSize) {
+				submitBlock();
+			}
+		}
+	}
+
+	private void checkNotFinished() throws IOException {
+		if (finished) {
+			throw new IOException("Stream has been finished");
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return compress(data, length);
+			}
+		}));
+		block = new byte[blockSize];
+		blockLength = 0;
+		while (pendingBlocks.size() > maxPendingBlocks) {
+			writeBlock(pendingBlocks.poll());
+		}
+	}
+
+	private static byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed, 65536);
+		gzip.write(data, 0, length);
+		gzip.close();
+		return compressed.toByteArray();
+	}
+
+	private void writeBlock(Future<byte[]> compressedBlock) throws IOException {
+		try {
+			out.write(compressedBlock.get());
+			blocksWritten++;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes the blocks that have finished compressing, but does not compress a partially filled block
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone()) {
+			writeBlock(pendingBlocks.poll());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compresses and writes all remaining data, without closing the underlying stream
+	 * @throws IOException
+	 */
+	void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		try {
+			//an empty gzip file still needs one member
+			if (blockLength > 0 || blocksWritten + pendingBlocks.size() == 0) {
+				submitBlock();
+			}
+			while (!pendingBlocks.isEmpty()) {
+				writeBlock(pendingBlocks.poll());
+			}
+			out.flush();
+		}
+		finally {
+			finished = true;
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		}
+		finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+/**
+ * Whether a chemical name could be tokenised, and its words grouped by OPSIN's word rules,
+ * as determined by {@link NameToStructure#checkParsability(String, NameToStructureConfig)}.
+ * A parsable name may still fail to be converted to a structure, but a name that is not parsable will always fail
+ */
+public class ParsabilityResult {
+	private final String chemicalName;
+	private final boolean tokenisable;
+	private final boolean parsable;
+	private final String uninterpretableName;
+	private final String unparsableName;
+	private final String message;
+
+	ParsabilityResult(String chemicalName, boolean tokenisable, boolean parsable, String uninterpretableName, String unparsableName, String message) {
+		this.chemicalName = chemicalName;
+		this.tokenisable = tokenisable;
+		this.parsable = parsable;
+		this.uninterpretableName = uninterpretableName;
+		this.unparsableName = unparsableName;
+		this.message = message;
+	}
+
+	/**
+	 * Returns the chemical name that this result was generated from
+	 * @return String containing the original chemical name
+	 */
+	public String getChemicalName() {
+		return chemicalName;
+	}
+
+	/**
+	 * Whether the entire name could be broken into tokens by OPSIN's chemical grammar
+	 * @return true if the name was tokenised
+	 */
+	public boolean isTokenisable() {
+		return tokenisable;
+	}
+
+	/**
+	 * Whether the name was tokenised and an interpretation of its words could be grouped by word rules
+	 * @return true if the name was parsed
+	 */
+	public boolean isParsable() {
+		return parsable;
+	}
+
+	/**
+	 * The substring of the name that could not be classified into a substituent/full/functionalTerm,
+	 * as given by {@link ParseRulesResults#getUninterpretableName()}.
+	 * This string will be blank if the name was tokenisable
+	 * @return String of uninterpretable chemical name
+	 */
+	public String getUninterpretableName() {
+		return uninterpretableName;
+	}
+
+	/**
+	 * The substring of the name that could not be tokenised at all,
+	 * as given by {@link ParseRulesResults#getUnparseableName()}.
+	 * This string will be blank if the name was tokenisable
+	 * @return String of unparsable chemical name
+	 */
+	public String getUnparsableName() {
+		return unparsableName;
+	}
+
+	/**
+	 * Returns a message explaining why the name was not parsable
+	 * This string will be blank when no problems were encountered
+	 * @return String explaining problems encountered
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
@@ -23,14 +23,6 @@ class Parse {
 		name = chemicalName;
 	}
 
-	Parse deepCopy() {
-		Parse p = new Parse(name);
-		for(ParseWord pw : words) {
-			p.words.add(pw.deepCopy());
-		}
-		return p;
-	}
-
 	public String toString() {
 		return "[" + name + ", " +  words.toString() + "]";
 	}
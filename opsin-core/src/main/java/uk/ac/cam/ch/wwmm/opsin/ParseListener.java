@@ -0,0 +1,52 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * Receives timing and allocation measurements as OPSIN interprets names.
+ * Set using {@link NameToStructureConfig#setParseListener(ParseListener)}; when no listener is set no measurements are taken.<br>
+ * Methods are called on the thread that is interpreting the name, hence implementations shared between threads must be thread-safe.
+ * {@link #nameStarted} is called before, and {@link #nameCompleted} after, all calls for stages of that name,
+ * except those for {@link ParseStage#OUTPUT} which occur whenever output is generated from the {@link OpsinResult}.
+ * Each {@link #stageCompleted} call is preceded by a {@link #stageStarted} call for that stage on the same thread,
+ * but a started stage is not always completed e.g. if an exception is thrown or no further parse is generated.<br>
+ * Times are from {@link System#nanoTime()}. Allocated bytes are as reported by the JVM's ThreadMXBean for the current thread, or -1 if this is not supported.
+ * Implementations should not throw exceptions.
+ * {@link ParseMetrics} is an implementation that aggregates the measurements
+ */
+public interface ParseListener {
+
+	/**
+	 * Called when the interpretation of a name starts
+	 * @param name The chemical name as given to {@link NameToStructure}
+	 */
+	void nameStarted(String name);
+
+	/**
+	 * Called when a stage starts
+	 * @param stage
+	 */
+	void stageStarted(ParseStage stage);
+
+	/**
+	 * Called when a stage completes, whether or not it was successful.
+	 * Stages that operate on individual parses are reported once for each parse that reached that stage
+	 * @param stage
+	 * @param startNanos
+	 * @param endNanos
+	 * @param allocatedBytes bytes allocated by the current thread during the stage, or -1 if unknown
+	 */
+	void stageCompleted(ParseStage stage, long startNanos, long endNanos, long allocatedBytes);
+
+	/**
+	 * Called when the interpretation of a name is complete
+	 * @param name The chemical name as given to {@link NameToStructure}
+	 * @param status
+	 * @param parseCount The number of parses (combinations of token interpretations) generated for the name; 0 if the name could not be parsed
+	 * @param successfulParseIndex The index (in order of preference) of the parse the structure was generated from, or -1 if none
+	 * @param startNanos
+	 * @param endNanos
+	 * @param allocatedBytes bytes allocated by the current thread whilst interpreting the name, or -1 if unknown
+	 */
+	void nameCompleted(String name, OPSIN_RESULT_STATUS status, int parseCount, int successfulParseIndex, long startNanos, long endNanos, long allocatedBytes);
+}
@@ -0,0 +1,218 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * A thread-safe {@link ParseListener} that aggregates the measurements it receives into counters and histograms.
+ * A single instance may be shared by any number of threads/{@link NameToStructureConfig}s.<br>
+ * Durations are histogrammed into power of two buckets of microseconds: bucket 0 holds durations below 1 microsecond,
+ * bucket i holds durations from 2^(i-1) up to 2^i microseconds.
+ * Parse counts and successful parse indices are histogrammed directly, with the final bucket also holding all larger values.
+ * Values read whilst names are being interpreted are not guaranteed to be mutually consistent
+ */
+public class ParseMetrics implements ParseListener {
+
+	/** Number of buckets in duration histograms */
+	public static final int DURATION_BUCKETS = 32;
+	/** Number of buckets in parse count and successful parse index histograms */
+	public static final int PARSE_BUCKETS = 64;
+
+	private static final int COUNT = 0;
+	private static final int NANOS = 1;
+	private static final int BYTES = 2;
+	private static final int TOTALS_LENGTH = 3;
+
+	private final AtomicLongArray stageTotals = new AtomicLongArray(ParseStage.values().length * TOTALS_LENGTH);
+	private final AtomicLongArray stageDurations = new AtomicLongArray(ParseStage.values().length * DURATION_BUCKETS);
+	private final AtomicLongArray nameTotals = new AtomicLongArray(TOTALS_LENGTH);
+	private final AtomicLongArray nameDurations = new AtomicLongArray(DURATION_BUCKETS);
+	private final AtomicLongArray statusCounts = new AtomicLongArray(OPSIN_RESULT_STATUS.values().length);
+	private final AtomicLongArray parseCounts = new AtomicLongArray(PARSE_BUCKETS);
+	private final AtomicLongArray successfulParseIndices = new AtomicLongArray(PARSE_BUCKETS);
+
+	public void nameStarted(String name) {
+		//measurements are recorded on completion
+	}
+
+	public void stageStarted(ParseStage stage) {
+		//measurements are recorded on completion
+	}
+
+	public void stageCompleted(ParseStage stage, long startNanos, long endNanos, long allocatedBytes) {
+		int ordinal = stage.ordinal();
+		long nanos = endNanos - startNanos;
+		record(stageTotals, ordinal * TOTALS_LENGTH, nanos, allocatedBytes);
+		stageDurations.incrementAndGet(ordinal * DURATION_BUCKETS + durationBucket(nanos));
+	}
+
+	public void nameCompleted(String name, OPSIN_RESULT_STATUS status, int parseCount, int successfulParseIndex, long startNanos, long endNanos, long allocatedBytes) {
+		long nanos = endNanos - startNanos;
+		record(nameTotals, 0, nanos, allocatedBytes);
+		nameDurations.incrementAndGet(durationBucket(nanos));
+		statusCounts.incrementAndGet(status.ordinal());
+		parseCounts.incrementAndGet(Math.min(parseCount, PARSE_BUCKETS - 1));
+		if (successfulParseIndex >= 0) {
+			successfulParseIndices.incrementAndGet(Math.min(successfulParseIndex, PARSE_BUCKETS - 1));
+		}
+	}
+
+	private static void record(AtomicLongArray totals, int offset, long nanos, long allocatedBytes) {
+		totals.incrementAndGet(offset + COUNT);
+		totals.addAndGet(offset + NANOS, nanos);
+		if (allocatedBytes >= 0) {
+			totals.addAndGet(offset + BYTES, allocatedBytes);
+		}
+	}
+
+	static int durationBucket(long nanos) {
+		long micros = nanos / 1000;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		return Math.min(bucket, DURATION_BUCKETS - 1);
+	}
+
+	/**
+	 * The number of times the given stage has completed
+	 * @param stage
+	 * @return
+	 */
+	public long getStageCount(ParseStage stage) {
+		return stageTotals.get(stage.ordinal() * TOTALS_LENGTH + COUNT);
+	}
+
+	/**
+	 * The total time spent in the given stage, in nanoseconds
+	 * @param stage
+	 * @return
+	 */
+	public long getStageTotalNanos(ParseStage stage) {
+		return stageTotals.get(stage.ordinal() * TOTALS_LENGTH + NANOS);
+	}
+
+	/**
+	 * The total bytes allocated in the given stage.
+	 * Excludes completions for which allocation could not be measured
+	 * @param stage
+	 * @return
+	 */
+	public long getStageAllocatedBytes(ParseStage stage) {
+		return stageTotals.get(stage.ordinal() * TOTALS_LENGTH + BYTES);
+	}
+
+	/**
+	 * Histogram of the durations of the given stage, see {@link ParseMetrics} for the bucketing
+	 * @param stage
+	 * @return
+	 */
+	public long[] getStageDurationHistogram(ParseStage stage) {
+		return copy(stageDurations, stage.ordinal() * DURATION_BUCKETS, DURATION_BUCKETS);
+	}
+
+	/**
+	 * The number of names that have been interpreted (successfully or not)
+	 * @return
+	 */
+	public long getNameCount() {
+		return nameTotals.get(COUNT);
+	}
+
+	/**
+	 * The total time spent interpreting names, in nanoseconds
+	 * @return
+	 */
+	public long getNameTotalNanos() {
+		return nameTotals.get(NANOS);
+	}
+
+	/**
+	 * The total bytes allocated whilst interpreting names.
+	 * Excludes names for which allocation could not be measured
+	 * @return
+	 */
+	public long getNameAllocatedBytes() {
+		return nameTotals.get(BYTES);
+	}
+
+	/**
+	 * Histogram of the time taken to interpret names, see {@link ParseMetrics} for the bucketing
+	 * @return
+	 */
+	public long[] getNameDurationHistogram() {
+		return copy(nameDurations, 0, DURATION_BUCKETS);
+	}
+
+	/**
+	 * The number of names interpreted with the given status
+	 * @param status
+	 * @return
+	 */
+	public long getStatusCount(OPSIN_RESULT_STATUS status) {
+		return statusCounts.get(status.ordinal());
+	}
+
+	/**
+	 * Histogram of the number of parses generated per name; index 0 counts names that could not be parsed
+	 * @return
+	 */
+	public long[] getParseCountHistogram() {
+		return copy(parseCounts, 0, PARSE_BUCKETS);
+	}
+
+	/**
+	 * Histogram of the index of the parse that a structure was generated from; index 0 counts names where the preferred parse was used.
+	 * Names for which no structure was generated are not counted
+	 * @return
+	 */
+	public long[] getSuccessfulParseIndexHistogram() {
+		return copy(successfulParseIndices, 0, PARSE_BUCKETS);
+	}
+
+	/**
+	 * Resets all counters and histograms to zero
+	 */
+	public void reset() {
+		clear(stageTotals);
+		clear(stageDurations);
+		clear(nameTotals);
+		clear(nameDurations);
+		clear(statusCounts);
+		clear(parseCounts);
+		clear(successfulParseIndices);
+	}
+
+	private static long[] copy(AtomicLongArray array, int offset, int length) {
+		long[] result = new long[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = array.get(offset + i);
+		}
+		return result;
+	}
+
+	private static void clear(AtomicLongArray array) {
+		for (int i = 0, len = array.length(); i < len; i++) {
+			array.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		long nameCount = getNameCount();
+		sb.append("names: ").append(nameCount);
+		for (OPSIN_RESULT_STATUS status : OPSIN_RESULT_STATUS.values()) {
+			sb.append(", ").append(status).append(": ").append(getStatusCount(status));
+		}
+		sb.append(", total ms: ").append(getNameTotalNanos() / 1000000);
+		sb.append(", total bytes: ").append(getNameAllocatedBytes());
+		for (ParseStage stage : ParseStage.values()) {
+			long count = getStageCount(stage);
+			if (count > 0) {
+				sb.append('\n').append(stage).append(": count ").append(count);
+				sb.append(", total ms: ").append(getStageTotalNanos(stage) / 1000000);
+				sb.append(", total bytes: ").append(getStageAllocatedBytes(stage));
+			}
+		}
+		return sb.toString();
+	}
+}
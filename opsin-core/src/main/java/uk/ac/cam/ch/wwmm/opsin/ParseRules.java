@@ -2,8 +2,10 @@ package uk.ac.cam.ch.wwmm.opsin;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,6 +39,16 @@ public class ParseRules {
 	
 	private final AnnotatorState initialState;
 
+	/** The transitions out of each state of chemAutomaton, as pairs of (index into stateSymbols, next state), computed as states are first reached */
+	private final AtomicReferenceArray<int[]> stateTransitions;
+	/** For each symbol, the ASCII chars (bits 0-63 and 64-127) with which its tokens may start, as tested against the lower cased name for tokens and the name for regexes */
+	private final long[] symbolFirstCharsLow;
+	private final long[] symbolFirstCharsHigh;
+	/** Whether a token of each symbol may start with a non-ASCII char */
+	private final boolean[] symbolMatchesNonAsciiChar;
+	/** Whether a token of each symbol may be zero-length */
+	private final boolean[] symbolMatchesEmpty;
+
 	/**
 	 * Creates a left to right parser that can parse a substituent/full/functional word
 	 * @param resourceManager
@@ -48,6 +60,108 @@ public class ParseRules {
 		this.symbolRegexesDict = resourceManager.getSymbolRegexesDict();
 		this.stateSymbols = chemAutomaton.getCharIntervals();
 		this.initialState = new AnnotatorState(chemAutomaton.getInitialState(), '\0', 0, true, null);
+		this.stateTransitions = new AtomicReferenceArray<int[]>(chemAutomaton.getSize());
+		int symbolCount = stateSymbols.length;
+		this.symbolFirstCharsLow = new long[symbolCount];
+		this.symbolFirstCharsHigh = new long[symbolCount];
+		this.symbolMatchesNonAsciiChar = new boolean[symbolCount];
+		this.symbolMatchesEmpty = new boolean[symbolCount];
+		for (int i = 0; i < symbolCount; i++) {
+			OpsinRadixTrie trie = symbolTokenNamesDict[i];
+			RunAutomaton automaton = symbolRegexAutomataDict[i];
+			if (symbolRegexesDict[i] != null || (trie != null && trie.rootNode.isEndPoint()) ||
+					(automaton != null && automaton.isAccept(automaton.getInitialState()))) {
+				//regexes may be zero-width assertions, hence are always tried
+				symbolFirstCharsLow[i] = -1;
+				symbolFirstCharsHigh[i] = -1;
+				symbolMatchesNonAsciiChar[i] = true;
+				symbolMatchesEmpty[i] = true;
+				continue;
+			}
+			for (char c = 0; c < 128; c++) {
+				char lowerCaseChar = c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+				if ((trie != null && trie.rootNode.getChild(lowerCaseChar) != null) ||
+						(automaton != null && automaton.step(automaton.getInitialState(), c) != -1)) {
+					if (c < 64) {
+						symbolFirstCharsLow[i] |= 1L << c;
+					}
+					else {
+						symbolFirstCharsHigh[i] |= 1L << (c - 64);
+					}
+				}
+			}
+			if (automaton != null) {
+				for (char c : automaton.getCharIntervals()) {
+					if (c >= 128 && automaton.step(automaton.getInitialState(), c) != -1) {
+						symbolMatchesNonAsciiChar[i] = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The transitions out of the given state of the chemical grammar DFA
+	 * @param state
+	 * @return pairs of (index into stateSymbols, next state)
+	 */
+	int[] getTransitions(int state) {
+		int[] transitions = stateTransitions.get(state);
+		if (transitions == null) {
+			transitions = new int[stateSymbols.length * 2];
+			int size = 0;
+			for (int i = 0; i < stateSymbols.length; i++) {
+				int potentialNextState = chemAutomaton.step(state, stateSymbols[i]);
+				if (potentialNextState != -1) {//-1 means this state is not accessible from the previous state
+					transitions[size++] = i;
+					transitions[size++] = potentialNextState;
+				}
+			}
+			transitions = Arrays.copyOf(transitions, size);
+			stateTransitions.set(state, transitions);
+		}
+		return transitions;
+	}
+
+	/**
+	 * Whether a token for the given symbol could match the name at the given index
+	 * @param symbolIndex index into stateSymbols
+	 * @param name
+	 * @param posInName
+	 * @return false if the symbol's tokens definitely do not match
+	 */
+	boolean isPossibleTokenStart(int symbolIndex, String name, int posInName) {
+		if (posInName == name.length()) {
+			return symbolMatchesEmpty[symbolIndex];
+		}
+		char c = name.charAt(posInName);
+		if (c < 64) {
+			return (symbolFirstCharsLow[symbolIndex] & (1L << c)) != 0;
+		}
+		if (c < 128) {
+			return (symbolFirstCharsHigh[symbolIndex] & (1L << (c - 64))) != 0;
+		}
+		return symbolMatchesNonAsciiChar[symbolIndex];
+	}
+
+	RunAutomaton getChemAutomaton() {
+		return chemAutomaton;
+	}
+
+	char[] getStateSymbols() {
+		return stateSymbols;
+	}
+
+	OpsinRadixTrie[] getSymbolTokenNamesDict() {
+		return symbolTokenNamesDict;
+	}
+
+	RunAutomaton[] getSymbolRegexAutomataDict() {
+		return symbolRegexAutomataDict;
+	}
+
+	Pattern[] getSymbolRegexesDict() {
+		return symbolRegexesDict;
 	}
 
 	/**Determines the possible annotations for a chemical word
@@ -68,7 +182,6 @@ public class ParseRules {
 		int posInNameOfLastSuccessfulAnnotations = 0;
 		List<AnnotatorState> successfulAnnotations = new ArrayList<AnnotatorState>();
 		AnnotatorState longestAnnotation = initialState;//this is the longest annotation. It does not necessarily end in an accept state
-		int stateSymbolsSize = stateSymbols.length;
 		while (!asStack.isEmpty()) {
 			AnnotatorState as = asStack.removeFirst();
 			int posInName = as.getPosInName();
@@ -89,10 +202,12 @@ public class ParseRules {
 				longestAnnotation = as;
 			}
 
-			for (int i = 0; i < stateSymbolsSize; i++) {
-				char annotationCharacter = stateSymbols[i];
-				int potentialNextState = chemAutomaton.step(as.getState(), annotationCharacter);
-				if (potentialNextState != -1) {//-1 means this state is not accessible from the previous state
+			int[] transitions = getTransitions(as.getState());
+			for (int t = 0; t < transitions.length; t += 2) {
+				int i = transitions[t];
+				if (isPossibleTokenStart(i, chemicalWord, posInName)) {
+					char annotationCharacter = stateSymbols[i];
+					int potentialNextState = transitions[t + 1];
 					OpsinRadixTrie possibleTokenisationsTrie = symbolTokenNamesDict[i];
 					if (possibleTokenisationsTrie != null) {
 						List<Integer> possibleTokenisations = possibleTokenisationsTrie.findMatches(chemicalWordLowerCase, posInName);
@@ -0,0 +1,44 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+/**
+ * The stages OPSIN goes through to convert a name to a structure and output it.
+ * Reported to a {@link ParseListener} as each stage completes
+ */
+public enum ParseStage {
+	/**
+	 * Normalisation of the name prior to parsing e.g. removal of unusual whitespace and special cases
+	 */
+	PRE_PROCESSING,
+	/**
+	 * Tokenisation of the name and generation/sorting of the resulting parses
+	 */
+	PARSING,
+	/**
+	 * {@link ComponentGenerator}: processing of a parse prior to structure generation e.g. nesting brackets
+	 */
+	COMPONENT_GENERATION,
+	/**
+	 * {@link ComponentProcessor}: conversion of a parse to fragments
+	 */
+	COMPONENT_PROCESSING,
+	/**
+	 * Numbering of a fused ring system. Occurs during, and is included in, {@link #COMPONENT_PROCESSING}
+	 */
+	FUSED_RING_NUMBERING,
+	/**
+	 * {@link StructureBuilder}: connection of fragments into a single structure. Includes {@link #STEREOCHEMISTRY}
+	 */
+	STRUCTURE_BUILDING,
+	/**
+	 * Application of stereochemistry to the built structure. Reported in addition to, and before, {@link #STRUCTURE_BUILDING}
+	 */
+	STEREOCHEMISTRY,
+	/**
+	 * CIP ordering of the neighbours of a stereocentre or the atoms of a stereobond. Occurs during, and is included in, {@link #STEREOCHEMISTRY}
+	 */
+	CIP_ORDERING,
+	/**
+	 * Generation of an output format (e.g. SMILES, CML or InChI) from an {@link OpsinResult}
+	 */
+	OUTPUT
+}
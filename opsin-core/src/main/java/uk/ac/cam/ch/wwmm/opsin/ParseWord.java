@@ -14,10 +14,6 @@ class ParseWord {
 	/**All of the possible tokenisations of the word.*/
 	private final List<ParseTokens> parseTokens;
 
-	ParseWord deepCopy() {
-		return new ParseWord(word, parseTokens);
-	}
-	
 	ParseWord(String word, List<ParseTokens> parseTokens) {
 		this.word =word;
 		if (parseTokens ==null){
@@ -1,11 +1,12 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Deque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,14 +59,109 @@ class Parser {
 		this.parseRules = tokeniser.getParseRules();
 	}
 
-	/**Parses a chemical name to an XML representation of the parse.
+	/**Parses a chemical name to XML representations of its possible parses, in order of preference.
 	 * @param n2sConfig 
 	 *
 	 * @param name The name to parse.
-	 * @return The parse.
+	 * @return The parses.
 	 * @throws ParsingException If the name is unparsable.
 	 */
 	List<Element> parse(NameToStructureConfig n2sConfig, String name) throws ParsingException {
+		Iterator<Element> parses = parseInOrderOfPreference(n2sConfig, name);
+		List<Element> results = new ArrayList<Element>();
+		while (parses.hasNext()) {
+			results.add(parses.next());
+		}
+		return results;
+	}
+
+	/**Parses a chemical name to XML representations of its possible parses, in order of preference.
+	 * The first parse is written before returning; subsequent parses are only written as the iterator reaches them,
+	 * hence names interpreted from their first parse do not pay for writing the others.
+	 * @param n2sConfig 
+	 *
+	 * @param name The name to parse.
+	 * @return An iterator over the parses, which will have at least one parse.
+	 * @throws ParsingException If the name is unparsable.
+	 */
+	Iterator<Element> parseInOrderOfPreference(NameToStructureConfig n2sConfig, String name) throws ParsingException {
+		Tokenisation tokenisation = tokenise(name);
+		if (tokenisation.parse == null) {
+			TokenizationResult tokenizationResult = tokenisation.failedTokenizationResult;
+			if (n2sConfig.isDetailedFailureAnalysis()){
+				generateExactParseFailureReason(tokenizationResult, tokenisation.name);
+			}
+			throw new ParsingException(tokenisation.name + " is unparsable due to the following being uninterpretable: " + tokenizationResult.getUninterpretableName()
+					+ " The following was not parseable: " +tokenizationResult.getUnparsableName());
+		}
+		ParseIterator parses = createParseIterator(n2sConfig, tokenisation);
+		if (!parses.advance()) {
+			if (parses.preciseException != null) {
+				throw parses.preciseException;
+			}
+			throw new ParsingException(tokenisation.name + " could be parsed but OPSIN was unsure of the meaning of the words. This error will occur, by default, if a name is just a substituent");
+		}
+		return parses;
+	}
+
+	/**Determines whether a chemical name can be tokenised and, if so, whether its words can be grouped by word rules.
+	 * Parse trees are only written until one is found to which word rules can be applied;
+	 * no further processing of the parse tree is performed
+	 * @param n2sConfig
+	 * @param name The name to check, which should have already been preprocessed
+	 * @param originalName The name before preprocessing
+	 * @return
+	 */
+	ParsabilityResult checkParsability(NameToStructureConfig n2sConfig, String name, String originalName) {
+		Tokenisation tokenisation;
+		try {
+			tokenisation = tokenise(name);
+		}
+		catch (ParsingException e) {
+			return new ParsabilityResult(originalName, false, false, name, name, e.getMessage());
+		}
+		if (tokenisation.parse == null) {
+			TokenizationResult tokenizationResult = tokenisation.failedTokenizationResult;
+			return new ParsabilityResult(originalName, false, false, tokenizationResult.getUninterpretableName(), tokenizationResult.getUnparsableName(),
+					tokenisation.name + " is unparsable due to the following being uninterpretable: " + tokenizationResult.getUninterpretableName()
+					+ " The following was not parseable: " +tokenizationResult.getUnparsableName());
+		}
+		try {
+			ParseIterator parses = createParseIterator(n2sConfig, tokenisation);
+			if (parses.writeUntilAParseIsFound()) {
+				return new ParsabilityResult(originalName, true, true, "", "", "");
+			}
+			if (parses.preciseException != null) {
+				return new ParsabilityResult(originalName, true, false, "", "", parses.preciseException.getMessage());
+			}
+			return new ParsabilityResult(originalName, true, false, "", "", tokenisation.name + " could be parsed but OPSIN was unsure of the meaning of the words. This error will occur, by default, if a name is just a substituent");
+		}
+		catch (ParsingException e) {
+			return new ParsabilityResult(originalName, true, false, "", "", e.getMessage());
+		}
+	}
+
+	/**
+	 * The result of tokenising a name: either a parse or, if the name could not be tokenised, the failed tokenization
+	 */
+	private static class Tokenisation {
+		/** The name, with any stoichiometry indication removed */
+		private final String name;
+		private final Integer[] componentRatios;
+		private final Parse parse;
+		private final boolean allowSpaceRemoval;
+		private final TokenizationResult failedTokenizationResult;
+
+		Tokenisation(String name, Integer[] componentRatios, Parse parse, boolean allowSpaceRemoval, TokenizationResult failedTokenizationResult) {
+			this.name = name;
+			this.componentRatios = componentRatios;
+			this.parse = parse;
+			this.allowSpaceRemoval = allowSpaceRemoval;
+			this.failedTokenizationResult = failedTokenizationResult;
+		}
+	}
+
+	private Tokenisation tokenise(String name) throws ParsingException {
 		Integer[] componentRatios = null;
 		if (name.endsWith(")") || name.endsWith("]") || name.endsWith("}")){
 			Matcher m = matchStoichiometryIndication.matcher(name);
@@ -74,12 +170,11 @@ class Parser {
 				name = m.replaceAll("");
 			}
 		}
-		Parse parse = null;
 		if (name.contains(", ")){
 			try{
 				TokenizationResult tokenizationResult = tokeniser.tokenize(CASTools.uninvertCASName(name, parseRules), false);
 				if (tokenizationResult.isSuccessfullyTokenized()){
-					parse = tokenizationResult.getParse();
+					return new Tokenisation(name, componentRatios, tokenizationResult.getParse(), false, null);
 				}
 			}
 			catch (ParsingException ignored) {
@@ -88,47 +183,154 @@ class Parser {
 		else if (name.contains("; ")){//a mixture, spaces are sufficient for OPSIN to treat as a mixture. These spaces for obvious reasons must not be removed
 			TokenizationResult tokenizationResult = tokeniser.tokenize(matchSemiColonSpace.matcher(name).replaceAll(" "), false);
 			if (tokenizationResult.isSuccessfullyTokenized()){
-				parse = tokenizationResult.getParse();
+				return new Tokenisation(name, componentRatios, tokenizationResult.getParse(), false, null);
 			}
 		}
-		boolean allowSpaceRemoval;
-		if (parse == null) {
-			allowSpaceRemoval = true;
-			TokenizationResult tokenizationResult = tokeniser.tokenize(name , true);
-			if (tokenizationResult.isSuccessfullyTokenized()){
-				parse = tokenizationResult.getParse();
-			}
-			else{
-				if (n2sConfig.isDetailedFailureAnalysis()){
-					generateExactParseFailureReason(tokenizationResult, name);
+		TokenizationResult tokenizationResult = tokeniser.tokenize(name , true);
+		if (tokenizationResult.isSuccessfullyTokenized()){
+			return new Tokenisation(name, componentRatios, tokenizationResult.getParse(), true, null);
+		}
+		return new Tokenisation(name, componentRatios, null, true, tokenizationResult);
+	}
+
+	private ParseIterator createParseIterator(NameToStructureConfig n2sConfig, Tokenisation tokenisation) throws ParsingException {
+		List<ParseWord> parseWords = tokenisation.parse.getWords();
+		List<ParseCombination> combinations = orderParseCombinations(parseWords);
+		if (combinations.size()==0) {
+			throw new ParsingException("No parses could be found for " + tokenisation.name);
+		}
+		return new ParseIterator(n2sConfig, tokenisation.name, parseWords, combinations, tokenisation.allowSpaceRemoval, tokenisation.componentRatios);
+	}
+
+	/**
+	 * A combination of word interpretations, given as the index of the parseTokens used for each word,
+	 * and a lower bound on the sort key of its parse tree
+	 */
+	private static class ParseCombination {
+		private final int[] parseTokensIndices;
+		private final int[] sortKeyLowerBound;
+
+		ParseCombination(int[] parseTokensIndices, int[] sortKeyLowerBound) {
+			this.parseTokensIndices = parseTokensIndices;
+			this.sortKeyLowerBound = sortKeyLowerBound;
+		}
+	}
+
+	/**
+	 * Writes the parse trees of the combinations of word interpretations, in order of their sort key lower bound, as they are needed.
+	 * A written parse is only returned once its sort key is no greater than the lower bound of any unwritten combination,
+	 * hence parses are returned in the order that sorting every parse tree by {@link #sortKey(Element, int)} would give.
+	 * Combinations to which word rules cannot be applied are skipped
+	 */
+	private class ParseIterator implements Iterator<Element> {
+		private final NameToStructureConfig n2sConfig;
+		private final String name;
+		private final List<ParseWord> parseWords;
+		private final List<ParseCombination> combinations;
+		private final boolean allowSpaceRemoval;
+		private final Integer[] componentRatios;
+		private final List<Element> writtenParses = new ArrayList<Element>();
+		private final List<int[]> writtenSortKeys = new ArrayList<int[]>();
+		private int nextCombination = 0;
+		private Element nextParse = null;
+		private ParsingException preciseException = null;
+
+		ParseIterator(NameToStructureConfig n2sConfig, String name, List<ParseWord> parseWords, List<ParseCombination> combinations, boolean allowSpaceRemoval, Integer[] componentRatios) {
+			this.n2sConfig = n2sConfig;
+			this.name = name;
+			this.parseWords = parseWords;
+			this.combinations = combinations;
+			this.allowSpaceRemoval = allowSpaceRemoval;
+			this.componentRatios = componentRatios;
+		}
+
+		/**
+		 * Writes parse trees until the most preferred of the remaining parses is known or the combinations are exhausted
+		 * @return whether there is a next parse
+		 * @throws ParsingException
+		 */
+		boolean advance() throws ParsingException {
+			while (nextParse == null) {
+				int best = -1;
+				for (int i = 0; i < writtenSortKeys.size(); i++) {
+					if (best == -1 || compareSortKeys(writtenSortKeys.get(i), writtenSortKeys.get(best)) < 0) {
+						best = i;
+					}
 				}
-				else{
-					throw new ParsingException(name + " is unparsable due to the following being uninterpretable: " + tokenizationResult.getUninterpretableName()
-							+ " The following was not parseable: " +tokenizationResult.getUnparsableName());
+				if (nextCombination < combinations.size() &&
+						(best == -1 || compareSortKeys(writtenSortKeys.get(best), combinations.get(nextCombination).sortKeyLowerBound) > 0)) {
+					writeNextCombination();
+				}
+				else if (best != -1) {
+					writtenSortKeys.remove(best);
+					nextParse = writtenParses.remove(best);
+				}
+				else {
+					return false;
 				}
 			}
+			return true;
 		}
-		else {
-			allowSpaceRemoval = false;
+
+		/**
+		 * Writes parse trees until one is obtained or the combinations are exhausted
+		 * @return whether there is at least one parse
+		 * @throws ParsingException
+		 */
+		boolean writeUntilAParseIsFound() throws ParsingException {
+			while (nextParse == null && writtenParses.isEmpty() && nextCombination < combinations.size()) {
+				writeNextCombination();
+			}
+			return nextParse != null || !writtenParses.isEmpty();
 		}
-		
-		List<Parse> parses = generateParseCombinations(parse);
-		if (parses.size()==0) {
-			throw new ParsingException("No parses could be found for " + name);
+
+		private void writeNextCombination() throws ParsingException {
+			ParseCombination combination = combinations.get(nextCombination++);
+			Element parse = writeParse(combination.parseTokensIndices);
+			if (parse != null) {
+				writtenParses.add(parse);
+				writtenSortKeys.add(sortKey(parse, combination.sortKeyLowerBound[3]));
+			}
 		}
-		
-		List<Element> results = new ArrayList<Element>();
-		ParsingException preciseException = null;
-		for(Parse pp : parses) {
+
+		public boolean hasNext() {
+			try {
+				return advance();
+			} catch (ParsingException e) {
+				//this combination's parse tree could not be written; there may still be others
+				if(LOG.isDebugEnabled()) {
+					LOG.debug(e.getMessage(), e);
+				}
+				return hasNext();
+			}
+		}
+
+		public Element next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Element parse = nextParse;
+			nextParse = null;
+			return parse;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * @param combination The index of the ParseTokens to use for each word
+		 * @return The parse tree, or null if word rules could not be applied
+		 * @throws ParsingException
+		 */
+		private Element writeParse(int[] combination) throws ParsingException {
 			Element moleculeEl = new GroupingEl(MOLECULE_EL);
 			moleculeEl.addAttribute(new Attribute(NAME_ATR, name));
-			for(ParseWord pw : pp.getWords()) {
+			for (int i = 0; i < combination.length; i++) {
+				ParseWord pw = parseWords.get(i);
 				Element word = new GroupingEl(WORD_EL);
 				moleculeEl.addChild(word);
-				if (pw.getParseTokens().size() != 1){
-					throw new ParsingException("OPSIN bug: parseWord should have exactly 1 annotations after creating additional parses step");
-				}
-				ParseTokens tokensForWord = pw.getParseTokens().get(0);
+				ParseTokens tokensForWord = pw.getParseTokens().get(combination[i]);
 				WordType wordType = OpsinTools.determineWordType(tokensForWord.getAnnotations());
 				word.addAttribute(new Attribute(TYPE_ATR, wordType.toString()));
 				if (pw.getWord().startsWith("-")){//we want -functionalterm to be the same as functionalterm
@@ -151,7 +353,7 @@ class Parser {
 					LOG.debug(e.getMessage(), e);
 				}
 				// Using that parse no word rules matched
-				continue;
+				return null;
 			}
 			try{
 				if (componentRatios != null){
@@ -160,20 +362,12 @@ class Parser {
 				if (moleculeEl.getAttributeValue(ISSALT_ATR) != null && moleculeEl.getChildElements(WORDRULE_EL).size() < 2) {
 					throw new ParsingException(name + " is apparently a salt, but the name only contained one component. The name could be describing a class of compounds");
 				}
-				results.add(moleculeEl);
+				return moleculeEl;
 			} catch (ParsingException e) {
 				preciseException = e;
+				return null;
 			}
-	
-		}
-		if (results.size() == 0) {
-			if (preciseException != null) {
-				throw preciseException;
-			}
-			throw new ParsingException(name + " could be parsed but OPSIN was unsure of the meaning of the words. This error will occur, by default, if a name is just a substituent");
 		}
-		
-		return results;
 	}
 
 	static Integer[] processStoichiometryIndication(String ratioString) throws ParsingException {
@@ -236,49 +430,129 @@ class Parser {
 	}
 
 	/**
-	 * For cases where any of the parse's parseWords contain multiple annotations create a
-	 * parse for each possibility. Hence after this process there may be multiple Parse objects but
-	 * the parseWords they contain will each only have one parseTokens object.
-	 * @param parse
+	 * For cases where any of the parse's parseWords contain multiple annotations each combination of
+	 * annotations is a potential parse. Parse trees are preferred in the order given by their sort key:
+	 * <ul>
+	 * <li>Prefer non-substituent word rules to the substituent word rule e.g. ethylene is C=C not -CC-</li>
+	 * <li>Prefer the parse with the least elements that have 0 children e.g. benzal beats benz al (1 childless element vs 2 childless elements)</li>
+	 * <li>Prefer less elements e.g. &lt;acryl(acidStem)amide(suffix)&gt; beats &lt;acryl(substituent)&gt;&lt;amide(group)&gt;</li>
+	 * </ul>
+	 * As this key depends on the word rules applied it is only known once a parse tree has been written, hence the combinations are
+	 * ordered by a lower bound on it, computed from the tokens of their words: the substituent word rule is assumed not to apply,
+	 * and the counts allow for the elements that word rules may add or remove.
+	 * @param parseWords
 	 * @return
 	 * @throws ParsingException 
 	 */
-	private List<Parse> generateParseCombinations(Parse parse) throws ParsingException {
+	private List<ParseCombination> orderParseCombinations(List<ParseWord> parseWords) throws ParsingException {
+		int wordCount = parseWords.size();
 		int numberOfCombinations = 1;
-		List<ParseWord> parseWords = parse.getWords();
-		for (ParseWord pw : parseWords) {
-			int parsesForWord = pw.getParseTokens().size();
+		int[][] elementCounts = new int[wordCount][];
+		int[][] childLessElementCounts = new int[wordCount][];
+		for (int i = 0; i < wordCount; i++) {
+			List<ParseTokens> parseTokensList = parseWords.get(i).getParseTokens();
+			int parsesForWord = parseTokensList.size();
 			numberOfCombinations *= parsesForWord;
 			if (numberOfCombinations > 128){//checked here to avoid integer overflow on inappropriate input
 				throw new ParsingException("Too many different combinations of word interpretation are possible (>128) i.e. name contains too many terms that OPSIN finds ambiguous to interpret");
 			}
+			elementCounts[i] = new int[parsesForWord];
+			childLessElementCounts[i] = new int[parsesForWord];
+			String word = parseWords.get(i).getWord();
+			for (int j = 0; j < parsesForWord; j++) {
+				ParseTokens parseTokens = parseTokensList.get(j);
+				countElementsInWordXML(parseTokens, elementCounts[i], childLessElementCounts[i], j);
+				if (OpsinTools.determineWordType(parseTokens.getAnnotations()) == WordType.functionalTerm) {
+					//word rules may remove a salt word, or the multiplier of an oxide, from the parse tree
+					if (word.equalsIgnoreCase("salt") || word.equalsIgnoreCase("-salt")) {
+						elementCounts[i][j] = 0;
+						childLessElementCounts[i][j] = 0;
+					}
+					else {
+						elementCounts[i][j]--;
+						childLessElementCounts[i][j]--;
+					}
+				}
+			}
 		}
-		if (numberOfCombinations ==1){
-			return Arrays.asList(parse);
-		}
-		List<Parse> parses = new ArrayList<Parse>();
-		
-		Deque<Parse> parseQueue = new ArrayDeque<Parse>();
-		parseQueue.add(new Parse(parse.getName()));
-		while (!parseQueue.isEmpty()){
-			Parse currentParse = parseQueue.removeFirst();
-			int wordsInCurrentParse = currentParse.getWords().size();
-			if(wordsInCurrentParse == parseWords.size()) {
-				parses.add(currentParse);
+		List<ParseCombination> combinations = new ArrayList<ParseCombination>(numberOfCombinations);
+		for (int c = 0; c < numberOfCombinations; c++) {
+			//enumerated with the first word's interpretations varying slowest, each in reverse order
+			int[] parseTokensIndices = new int[wordCount];
+			int remainder = c;
+			for (int i = wordCount - 1; i >= 0; i--) {
+				int parsesForWord = elementCounts[i].length;
+				parseTokensIndices[i] = parsesForWord - 1 - (remainder % parsesForWord);
+				remainder /= parsesForWord;
+			}
+			//word rules add at least one wordRule element but may join all the words into one
+			int elements = 2 - wordCount;
+			int childLessElements = 0;
+			for (int i = 0; i < wordCount; i++) {
+				int j = parseTokensIndices[i];
+				elements += elementCounts[i][j];
+				childLessElements += childLessElementCounts[i][j];
+			}
+			combinations.add(new ParseCombination(parseTokensIndices, new int[]{0, childLessElements, elements, c}));
+		}
+		if (numberOfCombinations > 1) {
+			Collections.sort(combinations, new Comparator<ParseCombination>() {
+				public int compare(ParseCombination c1, ParseCombination c2) {
+					return compareSortKeys(c1.sortKeyLowerBound, c2.sortKeyLowerBound);
+				}
+			});
+		}
+		return combinations;
+	}
+
+	/**
+	 * The sort key of a parse tree: whether its first word rule is the substituent word rule,
+	 * its number of childless elements, its number of elements and finally the order in which its combination was enumerated
+	 * @param moleculeEl
+	 * @param enumerationIndex
+	 * @return
+	 */
+	private static int[] sortKey(Element moleculeEl, int enumerationIndex) {
+		boolean isSubstituent = WordRule.substituent.toString().equals(moleculeEl.getFirstChildElement(WORDRULE_EL).getAttributeValue(WORDRULE_ATR));
+		int[] counts = OpsinTools.countNumberOfElementsAndNumberOfChildLessElements(moleculeEl);
+		return new int[]{isSubstituent ? 1 : 0, counts[1], counts[0], enumerationIndex};
+	}
+
+	private static int compareSortKeys(int[] key1, int[] key2) {
+		for (int i = 0; i < key1.length; i++) {
+			if (key1[i] != key2[i]) {
+				return key1[i] < key2[i] ? -1 : 1;
 			}
-			else {
-				ParseWord referenceWord = parseWords.get(wordsInCurrentParse);
-				List<ParseTokens> referenceWordParseTokens = referenceWord.getParseTokens();
-				for (int i = referenceWordParseTokens.size()-1; i >=0; i--) {
-					ParseTokens parseTokens = referenceWordParseTokens.get(i);
-					Parse parseWithNextWord = i > 0 ? currentParse.deepCopy() : currentParse;
-					ParseWord newParseWord = new ParseWord(referenceWord.getWord(), Arrays.asList(parseTokens));
-					parseWithNextWord.addWord(newParseWord);
-					parseQueue.add(parseWithNextWord);
+		}
+		return 0;
+	}
+
+	/**
+	 * Counts the elements, and childless elements, that {@link #writeWordXML(Element, List, List)} would produce for the given parseTokens
+	 * @param parseTokens
+	 * @param elementCounts
+	 * @param childLessElementCounts
+	 * @param index The index in the count arrays to populate
+	 * @throws ParsingException
+	 */
+	private void countElementsInWordXML(ParseTokens parseTokens, int[] elementCounts, int[] childLessElementCounts, int index) throws ParsingException {
+		List<String> tokens = parseTokens.getTokens();
+		List<List<Character>> chunks = WordTools.chunkAnnotations(parseTokens.getAnnotations());
+		int elements = 1 + chunks.size();//the word and its substituent/root/functionalTerm elements
+		int childLessElements = 0;
+		int tokenIndex = 0;
+		for (List<Character> chunk : chunks) {
+			int tokenElements = 0;
+			for (Character annotation : chunk) {
+				if (resourceManager.isWrittenToParseTree(tokens.get(tokenIndex++), annotation)) {
+					tokenElements++;
 				}
 			}
+			elements += tokenElements;
+			childLessElements += tokenElements > 0 ? tokenElements : 1;
 		}
-		return parses;
+		elementCounts[index] = elements;
+		childLessElementCounts[index] = childLessElements;
 	}
 
 	/**Write the XML corresponding to a particular word in a parse.
@@ -1,4 +1,7 @@
 package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 
  * @author dl387
@@ -6,10 +9,28 @@ package uk.ac.cam.ch.wwmm.opsin;
  * @param <T>
  */
 class PropertyKey<T> {
+    private static final AtomicInteger KEY_COUNT = new AtomicInteger();
+
     private final String name;
+    
+    /**Dense index of this key, allowing properties to be stored in an array rather than a map*/
+    private final int ordinal;
 
     public PropertyKey(String name) {
         this.name = name;
+        this.ordinal = KEY_COUNT.getAndIncrement();
+    }
+    
+    int ordinal() {
+        return ordinal;
+    }
+    
+    /**
+     * The number of PropertyKeys that have been created
+     * @return
+     */
+    static int keyCount() {
+        return KEY_COUNT.get();
     }
 
     @Override
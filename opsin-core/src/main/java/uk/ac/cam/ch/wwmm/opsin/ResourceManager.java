@@ -486,6 +486,29 @@ class ResourceManager {
 		throw new ParsingException("Parsing Error: This is a bug in the program. A token element could not be found for token: " + tokenString +" using annotation symbol: " +symbol);
 	}
 	
+	/**
+	 * Whether {@link #makeTokenElement(String, Character)} would produce an element for the token string,
+	 * rather than it being ignored when writing the parse tree
+	 * @param tokenString The token string.
+	 * @param symbol The annotation character.
+	 * @return
+	 * @throws ParsingException
+	 */
+	boolean isWrittenToParseTree(String tokenString, Character symbol) throws ParsingException {
+		Map<Character, TokenEl> annotationToToken = tokenDict.get(tokenString);
+		if(annotationToToken != null){
+			TokenEl token = annotationToToken.get(symbol);
+			if (token != null) {
+				return token != IGNORE_WHEN_WRITING_PARSE_TREE;
+			}
+		}
+		TokenEl regexToken = reSymbolTokenDict.get(symbol);
+		if (regexToken != null){
+			return regexToken != IGNORE_WHEN_WRITING_PARSE_TREE;
+		}
+		throw new ParsingException("Parsing Error: This is a bug in the program. A token element could not be found for token: " + tokenString +" using annotation symbol: " +symbol);
+	}
+
 	RunAutomaton getChemicalAutomaton() {
 		return chemicalAutomaton;
 	}
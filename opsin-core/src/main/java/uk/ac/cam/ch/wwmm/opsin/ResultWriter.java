@@ -0,0 +1,373 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+import uk.ac.cam.ch.wwmm.opsin.CachedOpsinResult.Format;
+import uk.ac.cam.ch.wwmm.opsin.NameToStructure.InchiType;
+
+/**
+ * Writes the results of converting a stream of names in one of OPSIN's command-line output formats.
+ * As each writer is given the same {@link OpsinResult}, several formats can be produced from a single interpretation of each name
+ */
+abstract class ResultWriter {
+
+	/**
+	 * Writes the result for one line of input
+	 * @param line The input line
+	 * @param name The name from the input line
+	 * @param result
+	 * @return false if no structure could be written for this name
+	 * @throws Exception
+	 */
+	abstract boolean write(String line, String name, OpsinResult result) throws Exception;
+
+	/**
+	 * Flushes output written so far, so that interactive use sees each result as soon as it is available
+	 * @throws Exception
+	 */
+	abstract void flush() throws Exception;
+
+	/**
+	 * Writes anything needed to complete the output and flushes it. The underlying stream is not closed
+	 * @throws Exception
+	 */
+	abstract void finish() throws Exception;
+
+	/**
+	 * Whether the output for consecutive groups of names, each written by a separate writer, may simply be concatenated
+	 * i.e. this format has no header or footer
+	 * @return
+	 */
+	boolean canConcatenateOutputs() {
+		return false;
+	}
+
+	/**
+	 * Creates a writer for the given output format, or returns null if the format is not recognised
+	 * @param format e.g. smi, cml, stdinchikey
+	 * @param out
+	 * @param outputName Whether the input line should be included with each result
+	 * @param inchiColumn Whether columnar output includes a StdInChI column
+	 * @param deflateColumns Whether columnar output is compressed
+	 * @return
+	 * @throws Exception
+	 */
+	static ResultWriter forFormat(String format, OutputStream out, boolean outputName, boolean inchiColumn, boolean deflateColumns) throws Exception {
+		if (format.equalsIgnoreCase("cml")) {
+			return new CmlResultWriter(out);
+		}
+		else if (format.equalsIgnoreCase("smi") || format.equalsIgnoreCase("smiles")) {
+			return new SmilesResultWriter(out, outputName);
+		}
+		else if (format.equalsIgnoreCase("extendedsmi") || format.equalsIgnoreCase("extendedsmiles") ||
+				format.equalsIgnoreCase("cxsmi") || format.equalsIgnoreCase("cxsmiles")) {
+			return new ExtendedSmilesResultWriter(out, outputName);
+		}
+		else if (format.equalsIgnoreCase("sdf") || format.equalsIgnoreCase("mol")) {
+			return new SdfResultWriter(out, false, outputName);
+		}
+		else if (format.equalsIgnoreCase("sdf3000") || format.equalsIgnoreCase("mol3000")) {
+			return new SdfResultWriter(out, true, outputName);
+		}
+		else if (format.equalsIgnoreCase("columnar")) {
+			return new ColumnarResultWriter(out, inchiColumn, deflateColumns);
+		}
+		else if (format.equalsIgnoreCase("inchi")) {
+			return new InchiResultWriter(out, InchiType.inchiWithFixedH, outputName);
+		}
+		else if (format.equalsIgnoreCase("stdinchi")) {
+			return new InchiResultWriter(out, InchiType.stdInchi, outputName);
+		}
+		else if (format.equalsIgnoreCase("stdinchikey")) {
+			return new InchiResultWriter(out, InchiType.stdInchiKey, outputName);
+		}
+		return null;
+	}
+
+	private static Method inchiConversionMethod(InchiType inchiType) throws NoSuchMethodException {
+		try {
+			return NameToStructure.getInchiConversionMethod(inchiType);
+		} catch (ClassNotFoundException e) {
+			System.err.println("Could not initialise NameToInChI module. Is it on your classpath?");
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Base for the formats that can also be written from the results held by an {@link OpsinResultCache}
+	 */
+	static abstract class CachedResultWriter extends ResultWriter {
+
+		/**
+		 * The format this writer needs to write results from an {@link OpsinResultCache}
+		 * @return
+		 */
+		abstract Format getCachedFormat();
+
+		/**
+		 * Writes the result for one line of input from a cached result
+		 * @param line The input line
+		 * @param name The name from the input line
+		 * @param result
+		 * @return false if no structure could be written for this name
+		 * @throws Exception
+		 */
+		abstract boolean write(String line, String name, CachedOpsinResult result) throws Exception;
+	}
+
+	/**
+	 * Writes one line of text per name, optionally followed by the input line
+	 */
+	private static class LineOutput {
+		private final BufferedWriter outputWriter;
+		private final boolean outputName;
+
+		LineOutput(OutputStream out, boolean outputName) throws IOException {
+			this.outputWriter = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+			this.outputName = outputName;
+		}
+
+		/**
+		 * Writes the output for a name, or a blank if output is null
+		 * @param line
+		 * @param output
+		 * @return whether output was non-null
+		 * @throws IOException
+		 */
+		boolean writeLine(String line, String output) throws IOException {
+			if (output != null) {
+				outputWriter.write(output);
+			}
+			if (outputName) {
+				outputWriter.write('\t');
+				outputWriter.write(line);
+			}
+			outputWriter.newLine();
+			return output != null;
+		}
+
+		void flush() throws IOException {
+			outputWriter.flush();
+		}
+	}
+
+	/**
+	 * Base for the formats that write one line of text per name
+	 */
+	private static abstract class LineResultWriter extends ResultWriter {
+		private final LineOutput output;
+
+		LineResultWriter(OutputStream out, boolean outputName) throws IOException {
+			this.output = new LineOutput(out, outputName);
+		}
+
+		/**
+		 * Writes the output for a name, or a blank if output is null
+		 * @param line
+		 * @param output
+		 * @return whether output was non-null
+		 * @throws IOException
+		 */
+		boolean writeLine(String line, String output) throws IOException {
+			return this.output.writeLine(line, output);
+		}
+
+		@Override
+		void flush() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		void finish() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		boolean canConcatenateOutputs() {
+			return true;
+		}
+	}
+
+	private static class SmilesResultWriter extends CachedResultWriter {
+		private final LineOutput output;
+
+		SmilesResultWriter(OutputStream out, boolean outputName) throws IOException {
+			this.output = new LineOutput(out, outputName);
+		}
+
+		@Override
+		boolean write(String line, String name, OpsinResult result) throws IOException {
+			return output.writeLine(line, result.getSmiles());
+		}
+
+		@Override
+		Format getCachedFormat() {
+			return Format.SMILES;
+		}
+
+		@Override
+		boolean write(String line, String name, CachedOpsinResult result) throws IOException {
+			return output.writeLine(line, result.getSmiles());
+		}
+
+		@Override
+		void flush() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		void finish() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		boolean canConcatenateOutputs() {
+			return true;
+		}
+	}
+
+	/**
+	 * Extended SMILES are not held by an {@link OpsinResultCache}
+	 */
+	private static class ExtendedSmilesResultWriter extends LineResultWriter {
+
+		ExtendedSmilesResultWriter(OutputStream out, boolean outputName) throws IOException {
+			super(out, outputName);
+		}
+
+		@Override
+		boolean write(String line, String name, OpsinResult result) throws IOException {
+			return writeLine(line, result.getExtendedSmiles());
+		}
+	}
+
+	private static class InchiResultWriter extends LineResultWriter {
+		private final Method m;
+
+		InchiResultWriter(OutputStream out, InchiType inchiType, boolean outputName) throws IOException, NoSuchMethodException {
+			super(out, outputName);
+			this.m = inchiConversionMethod(inchiType);
+		}
+
+		@Override
+		boolean write(String line, String name, OpsinResult result) throws Exception {
+			return writeLine(line, (String) m.invoke(null, result));
+		}
+	}
+
+	private static class CmlResultWriter extends CachedResultWriter {
+		private final XMLStreamWriter writer;
+		private final CMLWriter cmlWriter;
+		private int id = 1;
+
+		CmlResultWriter(OutputStream out) throws XMLStreamException {
+			XMLOutputFactory factory = new WstxOutputFactory();
+			factory.setProperty(WstxOutputProperties.P_OUTPUT_ESCAPE_CR, false);
+			XMLStreamWriter writer = factory.createXMLStreamWriter(out, "UTF-8");
+			this.writer = new IndentingXMLStreamWriter(writer, 2);
+			this.writer.writeStartDocument();
+			this.cmlWriter = new CMLWriter(this.writer);
+			cmlWriter.writeCmlStart();
+		}
+
+		@Override
+		boolean write(String line, String name, OpsinResult result) throws XMLStreamException {
+			Fragment structure = result.getStructure();
+			cmlWriter.writeMolecule(structure, name, id++);
+			return structure != null;
+		}
+
+		@Override
+		Format getCachedFormat() {
+			return Format.CML;
+		}
+
+		@Override
+		boolean write(String line, String name, CachedOpsinResult result) throws XMLStreamException {
+			cmlWriter.writeMolecule(result.getCml(), name, id++);
+			return result.getCml() != null;
+		}
+
+		@Override
+		void flush() throws XMLStreamException {
+			writer.flush();
+		}
+
+		@Override
+		void finish() throws XMLStreamException {
+			cmlWriter.writeCmlEnd();
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+		}
+	}
+
+	private static class SdfResultWriter extends ResultWriter {
+		private final MolfileWriter molfileWriter;
+		private final boolean outputName;
+
+		SdfResultWriter(OutputStream out, boolean alwaysUseV3000, boolean outputName) {
+			this.molfileWriter = new MolfileWriter(out, alwaysUseV3000);
+			this.outputName = outputName;
+		}
+
+		@Override
+		boolean write(String line, String name, OpsinResult result) throws IOException {
+			Fragment structure = result.getStructure();
+			molfileWriter.writeSdfRecord(structure, name, outputName ? "NAME" : null, line);
+			return structure != null;
+		}
+
+		@Override
+		void flush() throws IOException {
+			molfileWriter.flush();
+		}
+
+		@Override
+		void finish() throws IOException {
+			molfileWriter.flush();
+		}
+
+		@Override
+		boolean canConcatenateOutputs() {
+			return true;
+		}
+	}
+
+	private static class ColumnarResultWriter extends ResultWriter {
+		private final OpsinResultColumnarWriter writer;
+		private final Method m;
+
+		ColumnarResultWriter(OutputStream out, boolean includeInchi, boolean compress) throws IOException, NoSuchMethodException {
+			this.m = includeInchi ? inchiConversionMethod(InchiType.stdInchi) : null;
+			this.writer = new OpsinResultColumnarWriter(out, includeInchi, compress);
+		}
+
+		@Override
+		boolean write(String line, String name, OpsinResult result) throws Exception {
+			writer.write(result, m != null ? (String) m.invoke(null, result) : null);
+			return result.getStructure() != null;
+		}
+
+		@Override
+		void flush() {
+			//rows are buffered until a chunk is complete
+		}
+
+		@Override
+		void finish() throws IOException {
+			writer.finish();
+		}
+	}
+}
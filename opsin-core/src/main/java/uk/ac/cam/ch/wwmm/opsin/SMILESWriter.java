@@ -51,6 +51,15 @@ class SMILESWriter {
 	/**The order atoms were traversed when creating the SMILES*/
 	private List<Atom> smilesOutputOrder;
 
+	/**Depth value of atoms that are not written e.g. implicit hydrogen*/
+	private static final int NOT_VISITED = -1;
+
+	/**The lowest ID of an atom in the structure, atom IDs are offset by this to index depthById*/
+	private final int lowestAtomId;
+
+	/**How many bonds each atom is from the start of the walk of its component, indexed by atom ID (offset by lowestAtomId)*/
+	private final int[] depthById;
+
 	static {
 		organicAtomsToStandardValencies.put(ChemEl.B, new Integer[]{3});
 		organicAtomsToStandardValencies.put(ChemEl.C, new Integer[]{4});
@@ -82,6 +91,15 @@ class SMILESWriter {
 	private SMILESWriter(Fragment structure, boolean outputExtendedSmiles) {
 		this.structure = structure;
 		this.outputExtendedSmiles = outputExtendedSmiles;
+		List<Atom> atomList = structure.getAtomList();
+		int lowestId = Integer.MAX_VALUE;
+		int highestId = Integer.MIN_VALUE;
+		for (Atom atom : atomList) {
+			lowestId = Math.min(lowestId, atom.getID());
+			highestId = Math.max(highestId, atom.getID());
+		}
+		this.lowestAtomId = lowestId;
+		this.depthById = new int[atomList.isEmpty() ? 0 : highestId - lowestId + 1];
 	}
 
 	/**
@@ -117,8 +135,7 @@ class SMILESWriter {
 
 		boolean isEmpty = true;
 		for (Atom currentAtom : atomList) {
-			Integer visitedDepth = currentAtom.getProperty(Atom.VISITED);
-			if (visitedDepth != null && visitedDepth ==0) {//new component
+			if (getDepth(currentAtom) == 0) {//new component
 				if (!isEmpty){
 					smilesBuilder.append('.');
 				}
@@ -257,16 +274,13 @@ class SMILESWriter {
 	}
 
 	/**
-	 * Walks through the fragment populating the Atom.VISITED property indicating how many bonds
+	 * Walks through the fragment populating depthById indicating how many bonds
 	 * an atom is from the start of the fragment walk. A new walk will be started for each disconnected component of the fragment
 	 */
 	private void assignSmilesOrder() {
-		List<Atom> atomList = structure.getAtomList();
-		for (Atom atom : atomList) {
-			atom.setProperty(Atom.VISITED, null);
-		}
-		for (Atom a : atomList) {
-			if(a.getProperty(Atom.VISITED) == null && !isSmilesImplicitProton(a)){//true for only the first atom in a fully connected molecule
+		Arrays.fill(depthById, NOT_VISITED);
+		for (Atom a : structure.getAtomList()) {
+			if(getDepth(a) == NOT_VISITED && !isSmilesImplicitProton(a)){//true for only the first atom in a fully connected molecule
 				traverseMolecule(a);
 			}
 		}
@@ -285,7 +299,7 @@ class SMILESWriter {
 	}
 	
 	/**
-	 * Iterative function for populating the Atom.VISITED property 
+	 * Iterative function for populating depthById
 	 * Also populates the bondToNextAtom Map
 	 * @param startingAtom
 	 * @return
@@ -300,11 +314,11 @@ class SMILESWriter {
 			if (bondtaken != null) {
 				bondToNextAtomMap.put(bondtaken, currentAtom);
 			}	
-			if(currentAtom.getProperty(Atom.VISITED) != null){
+			if(getDepth(currentAtom) != NOT_VISITED){
 				continue;
 			}
 			int depth = currentstate.depth;
-			currentAtom.setProperty(Atom.VISITED, depth);
+			setDepth(currentAtom, depth);
 			List<Bond> bonds = currentAtom.getBonds();
 			for (int i = bonds.size() - 1; i >=0; i--) {
 				Bond bond = bonds.get(i);
@@ -312,7 +326,7 @@ class SMILESWriter {
 					continue;
 				}
 				Atom neighbour = bond.getOtherAtom(currentAtom);
-				if (isSmilesImplicitProton(neighbour)){
+				if (isSmilesImplicitProton(neighbour) || !structure.containsAtom(neighbour)){
 					continue;
 				}
 				stack.add(new TraversalState(neighbour, bond, depth + 1));
@@ -320,6 +334,15 @@ class SMILESWriter {
 		}
 	}
 
+	private int getDepth(Atom atom) {
+		int idx = atom.getID() - lowestAtomId;
+		return idx >= 0 && idx < depthById.length ? depthById[idx] : NOT_VISITED;
+	}
+
+	private void setDepth(Atom atom, int depth) {
+		depthById[atom.getID() - lowestAtomId] = depth;
+	}
+
 	private boolean isSmilesImplicitProton(Atom atom) {
 		if (atom.getElement() != ChemEl.H){
 			//not hydrogen
@@ -520,8 +543,8 @@ class SMILESWriter {
 					continue;
 				}
 				Atom neighbour = bond.getOtherAtom(currentAtom);
-				Integer nDepth = neighbour.getProperty(Atom.VISITED);
-				if (nDepth != null && nDepth <= depth){
+				int nDepth = getDepth(neighbour);
+				if (nDepth != NOT_VISITED && nDepth <= depth){
 					String closure = bondToClosureSymbolMap.get(bond);
 					smilesBuilder.append(closure);
 					if (newlyAvailableClosureSymbols == null){
@@ -532,8 +555,8 @@ class SMILESWriter {
 			}
 			for (Bond bond : bonds) {//ring openings
 				Atom neighbour = bond.getOtherAtom(currentAtom);
-				Integer nDepth = neighbour.getProperty(Atom.VISITED);
-				if (nDepth != null && nDepth > (depth +1)){
+				int nDepth = getDepth(neighbour);
+				if (nDepth != NOT_VISITED && nDepth > (depth +1)){
 					String closure = availableClosureSymbols.removeFirst();
 					bondToClosureSymbolMap.put(bond, closure);
 					smilesBuilder.append(bondToSmiles(bond));
@@ -554,8 +577,8 @@ class SMILESWriter {
 				//adjacent atoms which have not been previously written
 				Bond bond = bonds.get(i);
 				Atom neighbour = bond.getOtherAtom(currentAtom);
-				Integer nDepth = neighbour.getProperty(Atom.VISITED);
-				if (nDepth != null && nDepth == depth + 1){
+				int nDepth = getDepth(neighbour);
+				if (nDepth != NOT_VISITED && nDepth == depth + 1){
 					if (!seenFirstBranch){
 						stack.add(new TraversalState(neighbour, bond, depth + 1));
 						seenFirstBranch = true;
@@ -639,7 +662,7 @@ class SMILESWriter {
 		List<Atom> neighbours = atom.getAtomNeighbours();
 		int count = 0;
 		for (Atom neighbour : neighbours) {
-			if (neighbour.getProperty(Atom.VISITED) == null){
+			if (getDepth(neighbour) == NOT_VISITED){
 				count++;
 			}
 		}
@@ -707,7 +730,7 @@ class SMILESWriter {
 		List<Bond> bonds = currentAtom.getBonds();
 		for (Bond bond : bonds) {//implicit hydrogen
 			Atom neighbour = bond.getOtherAtom(currentAtom);
-			if (neighbour.getProperty(Atom.VISITED) == null){
+			if (getDepth(neighbour) == NOT_VISITED){
 				atomrefs4Current.add(currentAtom);
 			}
 		}
@@ -716,29 +739,29 @@ class SMILESWriter {
 				continue;
 			}
 			Atom neighbour = bond.getOtherAtom(currentAtom);
-			if (neighbour.getProperty(Atom.VISITED) == null){
+			if (getDepth(neighbour) == NOT_VISITED){
 				continue;
 			}
-			if (neighbour.getProperty(Atom.VISITED) <= depth){
+			if (getDepth(neighbour) <= depth){
 				atomrefs4Current.add(neighbour);
 			}
 		}
 		for (Bond bond : bonds) {//ring openings
 			Atom neighbour = bond.getOtherAtom(currentAtom);
-			if (neighbour.getProperty(Atom.VISITED) == null){
+			if (getDepth(neighbour) == NOT_VISITED){
 				continue;
 			}
-			if (neighbour.getProperty(Atom.VISITED) > (depth +1)){
+			if (getDepth(neighbour) > (depth +1)){
 				atomrefs4Current.add(neighbour);
 			}
 
 		}
 		for (Bond bond : bonds) {//next atom/s
 			Atom neighbour = bond.getOtherAtom(currentAtom);
-			if (neighbour.getProperty(Atom.VISITED) == null){
+			if (getDepth(neighbour) == NOT_VISITED){
 				continue;
 			}
-			if (neighbour.getProperty(Atom.VISITED) == depth + 1){
+			if (getDepth(neighbour) == depth + 1){
 				atomrefs4Current.add(neighbour);
 			}
 		}
@@ -747,7 +770,7 @@ class SMILESWriter {
 			atomrefs4CurrentArr[i] = atomrefs4Current.get(i);
 		}
 		for (int i = 0; i < atomRefs4.length; i++) {//replace mentions of explicit hydrogen with the central atom the hydrogens are attached to, to be consistent with the SMILES representation
-			if (atomRefs4[i].getProperty(Atom.VISITED) == null){
+			if (getDepth(atomRefs4[i]) == NOT_VISITED){
 				atomRefs4[i] = currentAtom;
 			}
 		}
@@ -1,6 +1,9 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -11,7 +14,10 @@ import java.util.Set;
 /**
  * Class for finding SSSR
  * The algorithm employed does not work in some corner cases
- * 
+ *
+ * Rings are manipulated as sets of bond indices, so symmetric differences and ring sizes
+ * are computed without creating intermediate {@link Ring}s
+ *
  * @author pm286
  * @author dl387
  *
@@ -20,132 +26,226 @@ class SSSRFinder {
 
 	/** get set of smallest rings.
 	 * In corner cases the list of rings returned will not be the SSSR
-	 * @param frag 
+	 * @param frag
 	 * @return list of rings
 	 */
 	static List<Ring> getSetOfSmallestRings(Fragment frag){
-		List<Atom> atomSet = frag.getAtomList();
-				
-		List<Ring> ringList = getRings(atomSet);
-		
-		if (ringList.size() > 1) {
+		List<Bond> indexToBond = new ArrayList<Bond>();
+		List<BondCycle> cycleList = getCycles(frag.getAtoms().get(0), indexToBond);
+
+		if (cycleList.size() > 1) {
 			boolean change = true;
 			while (change) {
-				for (int i = 0; i < ringList.size(); i++) {
-					Ring ring = ringList.get(i);
-					change = reduceRingSizes(ring, ringList);
+				for (int i = 0; i < cycleList.size(); i++) {
+					BondCycle cycle = cycleList.get(i);
+					change = reduceCycleSizes(cycle, cycleList);
 				}
 			}
-		}		
+		}
+		List<Ring> ringList = new ArrayList<Ring>(cycleList.size());
+		for (BondCycle cycle : cycleList) {
+			ringList.add(cycle.toRing(indexToBond));
+		}
 		return ringList;
 	}
 
-	/** get list of rings.
+	/**
+	 * A cycle as an ordered array of bond indices and the equivalent set
+	 */
+	private static class BondCycle {
+		private final int[] bondIndices;
+		private final BitSet bondSet;
+
+		BondCycle(int[] bondIndices) {
+			this.bondIndices = bondIndices;
+			this.bondSet = new BitSet();
+			for (int idx : bondIndices) {
+				bondSet.set(idx);
+			}
+		}
+
+		int size() {
+			return bondIndices.length;
+		}
+
+		Ring toRing(List<Bond> indexToBond) {
+			List<Bond> bonds = new ArrayList<Bond>(bondIndices.length);
+			for (int idx : bondIndices) {
+				bonds.add(indexToBond.get(idx));
+			}
+			return new Ring(bonds);
+		}
+	}
+
+	/** get list of cycles.
 	 * not necessarily SSSR
-	 * @param atomSet
-	 * @return list of rings
+	 * @param root
+	 * @param indexToBond populated with the bonds encountered, a bond's index being its position in this list
+	 * @return list of cycles
 	 */
-	private static List<Ring> getRings(List<Atom> atomSet ){
-		List<Ring> ringList = new ArrayList<Ring>();
-		Set<Atom> usedAtoms = new HashSet<Atom>();
-		
-		Atom root = atomSet.get(0); 
-		Atom parentAtom = null;
+	private static List<BondCycle> getCycles(Atom root, List<Bond> indexToBond){
+		Map<Bond, Integer> bondToIndex = new HashMap<Bond, Integer>();
 		Map<Atom, Atom> atomToParentMap = new HashMap<Atom, Atom>();
-		Set<Bond> linkBondSet = new LinkedHashSet<Bond>(); 
-		
-		expand(root, parentAtom, usedAtoms, atomToParentMap, linkBondSet);
-		
+		Set<Bond> linkBondSet = new LinkedHashSet<Bond>();
+
+		expand(root, atomToParentMap, linkBondSet);
+
+		List<BondCycle> cycleList = new ArrayList<BondCycle>(linkBondSet.size());
 		for (Bond bond : linkBondSet) {
-			Ring ring = getRing(bond, atomToParentMap);
-			ringList.add(ring);
+			cycleList.add(getCycle(bond, atomToParentMap, bondToIndex, indexToBond));
 		}
-		
-		return ringList;
+		return cycleList;
 	}
-	
-	private static Ring getRing(Bond bond, Map<Atom, Atom> atomToParentMap){ 
-		Atom atomFrom =  bond.getFromAtom() ;
-		Atom atomTo = bond.getToAtom(); 
-		List<Bond>  bondSet0 = getAncestors1(atomFrom, atomToParentMap);
-		List<Bond>  bondSet1 = getAncestors1(atomTo, atomToParentMap);
-		List<Bond>  mergedBondSet = symmetricDifference (bondSet0, bondSet1); 
-		
-		mergedBondSet.add(bond);
-		return new Ring(mergedBondSet);
+
+	private static BondCycle getCycle(Bond bond, Map<Atom, Atom> atomToParentMap, Map<Bond, Integer> bondToIndex, List<Bond> indexToBond){
+		List<Integer> ancestors0 = getAncestors(bond.getFromAtom(), atomToParentMap, bondToIndex, indexToBond);
+		List<Integer> ancestors1 = getAncestors(bond.getToAtom(), atomToParentMap, bondToIndex, indexToBond);
+		BitSet set0 = new BitSet();
+		for (Integer idx : ancestors0) {
+			set0.set(idx);
+		}
+		BitSet set1 = new BitSet();
+		for (Integer idx : ancestors1) {
+			set1.set(idx);
+		}
+		//symmetric difference of the two paths to the root, followed by the closing bond
+		List<Integer> merged = new ArrayList<Integer>();
+		for (Integer idx : ancestors0) {
+			if (!set1.get(idx)) {
+				merged.add(idx);
+			}
+		}
+		for (Integer idx : ancestors1) {
+			if (!set0.get(idx)) {
+				merged.add(idx);
+			}
+		}
+		merged.add(indexOf(bond, bondToIndex, indexToBond));
+		int[] bondIndices = new int[merged.size()];
+		for (int i = 0; i < bondIndices.length; i++) {
+			bondIndices[i] = merged.get(i);
+		}
+		return new BondCycle(bondIndices);
 	}
-	
-	private static List<Bond> getAncestors1(Atom atom, Map<Atom, Atom> atomToParentMap){
-		List<Bond> newBondSet = new ArrayList<Bond>();
+
+	private static List<Integer> getAncestors(Atom atom, Map<Atom, Atom> atomToParentMap, Map<Bond, Integer> bondToIndex, List<Bond> indexToBond){
+		List<Integer> path = new ArrayList<Integer>();
+		BitSet seen = new BitSet();
 		while (true) {
 			Atom atom1 = atomToParentMap.get(atom);
 			if (atom1 == null) {
 				break;
 			}
-			Bond bond = atom.getBondToAtom(atom1);
-			if (newBondSet.contains(bond)) {
+			int idx = indexOf(atom.getBondToAtom(atom1), bondToIndex, indexToBond);
+			if (seen.get(idx)) {
 				break;
 			}
-			newBondSet.add(bond);
+			seen.set(idx);
+			path.add(idx);
 			atom = atom1;
 		}
-		return newBondSet;
+		return path;
+	}
+
+	private static int indexOf(Bond bond, Map<Bond, Integer> bondToIndex, List<Bond> indexToBond) {
+		Integer idx = bondToIndex.get(bond);
+		if (idx == null) {
+			idx = indexToBond.size();
+			indexToBond.add(bond);
+			bondToIndex.put(bond, idx);
+		}
+		return idx;
 	}
-	
-	private static void expand(Atom atom, Atom parentAtom, 
-			Set<Atom> usedAtoms, Map<Atom, Atom> atomToParentMap,
-			Set<Bond> linkBondSet){
-		
-		usedAtoms.add(atom);
-		atomToParentMap.put(atom, parentAtom);
-		List<Atom> ligandAtomList = atom.getAtomNeighbours();
-		
-		for (Atom ligandAtom : ligandAtomList) {
-			if (ligandAtom.equals(parentAtom)) {
+
+	/**
+	 * Depth first search from the root, recording each atom's parent and the bonds that close rings.
+	 * Visits atoms in the same order as a recursive search, but without using the call stack
+	 * @param root
+	 * @param atomToParentMap
+	 * @param linkBondSet
+	 */
+	private static void expand(Atom root, Map<Atom, Atom> atomToParentMap, Set<Bond> linkBondSet){
+		Set<Atom> usedAtoms = new HashSet<Atom>();
+		Deque<SearchFrame> stack = new ArrayDeque<SearchFrame>();
+		usedAtoms.add(root);
+		atomToParentMap.put(root, null);
+		stack.push(new SearchFrame(root, null));
+		while (!stack.isEmpty()) {
+			SearchFrame frame = stack.peek();
+			if (frame.nextNeighbour == frame.neighbours.size()) {
+				stack.pop();
+				continue;
+			}
+			Atom ligandAtom = frame.neighbours.get(frame.nextNeighbour++);
+			if (ligandAtom.equals(frame.parentAtom)) {
 				// skip existing bond
 			} else if (usedAtoms.contains(ligandAtom)) {
-				Bond linkBond = atom.getBondToAtom(ligandAtom);
-				linkBondSet.add(linkBond);
 				// already treated
+				linkBondSet.add(frame.atom.getBondToAtom(ligandAtom));
 			} else {
-				expand(ligandAtom, atom, usedAtoms, atomToParentMap, linkBondSet);
+				usedAtoms.add(ligandAtom);
+				atomToParentMap.put(ligandAtom, frame.atom);
+				stack.push(new SearchFrame(ligandAtom, frame.atom));
 			}
 		}
 	}
 
-	private static boolean reduceRingSizes(Ring ring, List<Ring> newList){
+	private static class SearchFrame {
+		private final Atom atom;
+		private final Atom parentAtom;
+		private final List<Atom> neighbours;
+		private int nextNeighbour = 0;
+
+		SearchFrame(Atom atom, Atom parentAtom) {
+			this.atom = atom;
+			this.parentAtom = parentAtom;
+			this.neighbours = atom.getAtomNeighbours();
+		}
+	}
+
+	private static boolean reduceCycleSizes(BondCycle cycle, List<BondCycle> newList){
 		boolean change = false;
 		for (int i = 0; i < newList.size(); i++) {
-			Ring target = newList.get(i);
-			if (target == ring) {
+			BondCycle target = newList.get(i);
+			if (target == cycle) {
 				continue;
 			}
-			
-			List<Bond> newBondSet = symmetricDifference ( target.getBondList(), ring.getBondList() ) ;
-			if (newBondSet.size() < target.size()) {
-				Ring newRing = new Ring(newBondSet);
-				newList.set(i, newRing);
+			int shared = 0;
+			for (int idx : cycle.bondIndices) {
+				if (target.bondSet.get(idx)) {
+					shared++;
+				}
+			}
+			int symmetricDifferenceSize = target.size() + cycle.size() - 2 * shared;
+			if (symmetricDifferenceSize < target.size()) {
+				newList.set(i, symmetricDifference(target, cycle, symmetricDifferenceSize));
 				change = true;
 			}
 		}
 		return change;
 	}
 
-	
-	private static List<Bond> symmetricDifference(List<Bond> bondSet1, List<Bond> bondSet2) {
-		List<Bond> newBondSet = new ArrayList<Bond>();
-
-		for (Bond bond1 : bondSet1) {
-			if (!bondSet2.contains(bond1)) {
-				newBondSet.add(bond1);
+	/**
+	 * The bonds in only one of the cycles, those of cycle1 preceding those of cycle2
+	 * @param cycle1
+	 * @param cycle2
+	 * @param size
+	 * @return
+	 */
+	private static BondCycle symmetricDifference(BondCycle cycle1, BondCycle cycle2, int size) {
+		int[] bondIndices = new int[size];
+		int i = 0;
+		for (int idx : cycle1.bondIndices) {
+			if (!cycle2.bondSet.get(idx)) {
+				bondIndices[i++] = idx;
 			}
 		}
-		for (Bond bond2 : bondSet2) {
-			if (!bondSet1.contains(bond2)) {
-				newBondSet.add(bond2);
+		for (int idx : cycle2.bondIndices) {
+			if (!cycle1.bondSet.get(idx)) {
+				bondIndices[i++] = idx;
 			}
 		}
-		return newBondSet;
+		return new BondCycle(bondIndices);
 	}
 
 }
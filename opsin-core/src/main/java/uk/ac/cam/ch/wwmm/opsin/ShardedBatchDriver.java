@@ -0,0 +1,393 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.management.ManagementFactory;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+
+import uk.ac.cam.ch.wwmm.opsin.BatchConverter.CheckpointListener;
+
+/**
+ * Converts a file of names using several worker JVMs on the local machine,
+ * e.g. to keep each JVM's heap small or so that a JVM crash (such as in native InChI code) only affects part of the work.<br>
+ * The input is split by byte range into one shard per worker. Each worker runs OPSIN's command line on its shard,
+ * writing the shard's output to a separate file and recording a checkpoint after each chunk of names.
+ * A worker that exits abnormally is restarted from its last checkpoint, initially converting one name at a time.
+ * If the worker fails again on the same name, that name is written as a failure without being interpreted.<br>
+ * Once all shards are complete their outputs are concatenated in input order, hence the output format must not have a header or footer
+ */
+class ShardedBatchDriver {
+
+	static final int DEFAULT_MAX_RESTARTS = 5;
+	static final String WORKER_FAILED_MESSAGE = "OPSIN worker process exited abnormally whilst converting this name";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Command line options of the driver that are not passed on to workers
+	 */
+	private static final Set<String> DRIVER_ONLY_OPTIONS = new HashSet<>(Arrays.asList(
+			"processes", "maxRestarts", "cache", "inputCompression", "outputCompression",
+			"shard", "checkpoint", "lineByLine", "skipFirstLine"));
+
+	private final File inputFile;
+	private final File outputFile;
+	private final CompressionFormat outputCompression;
+	private final List<String> workerCommand;
+	private final int processes;
+	private final int maxRestarts;
+	private final File shardDirectory;
+
+	/**
+	 * @param inputFile An uncompressed file of names
+	 * @param outputFile
+	 * @param outputCompression
+	 * @param workerArgs Command line arguments for OPSIN that all workers should use e.g. the output format
+	 * @param processes The number of worker processes
+	 * @param maxRestarts The number of times a worker may be restarted from the same position in its shard before the conversion is abandoned
+	 */
+	ShardedBatchDriver(File inputFile, File outputFile, CompressionFormat outputCompression, List<String> workerArgs, int processes, int maxRestarts) {
+		this(inputFile, outputFile, outputCompression, workerArgs, processes, maxRestarts, NameToStructure.class.getName());
+	}
+
+	/**
+	 * @param inputFile An uncompressed file of names
+	 * @param outputFile
+	 * @param outputCompression
+	 * @param workerArgs Command line arguments for OPSIN that all workers should use e.g. the output format
+	 * @param processes The number of worker processes
+	 * @param maxRestarts The number of times a worker may be restarted from the same position in its shard before the conversion is abandoned
+	 * @param workerMainClass The class whose main method runs a worker, given the same arguments as {@link NameToStructure}
+	 */
+	ShardedBatchDriver(File inputFile, File outputFile, CompressionFormat outputCompression, List<String> workerArgs, int processes, int maxRestarts, String workerMainClass) {
+		this.inputFile = inputFile;
+		this.outputFile = outputFile;
+		this.outputCompression = outputCompression;
+		this.processes = processes;
+		this.maxRestarts = maxRestarts;
+		this.shardDirectory = new File(outputFile.getPath() + ".shards");
+		List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			//heap, GC and system properties, but not e.g. debugging agents whose ports would clash
+			if (jvmArg.startsWith("-Xm") || jvmArg.startsWith("-Xss") || jvmArg.startsWith("-XX:") || jvmArg.startsWith("-D")) {
+				command.add(jvmArg);
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(workerMainClass);
+		command.addAll(workerArgs);
+		this.workerCommand = command;
+	}
+
+	/**
+	 * The arguments to pass on to workers from the driver's command line, excluding input/output files
+	 * @param cmd
+	 * @return
+	 */
+	static List<String> getWorkerArgs(CommandLine cmd) {
+		List<String> args = new ArrayList<>();
+		for (Option option : cmd.getOptions()) {
+			if (DRIVER_ONLY_OPTIONS.contains(option.getLongOpt())) {
+				continue;
+			}
+			args.add("--" + option.getLongOpt());
+			if (option.hasArg()) {
+				args.add(option.getValue());
+			}
+		}
+		return args;
+	}
+
+	/**
+	 * Runs the workers and, if all succeed, merges their output
+	 * @throws Exception If a worker failed more than the maximum number of times
+	 */
+	void run() throws Exception {
+		long[] boundaries = findShardBoundaries(inputFile, processes);
+		int shards = boundaries.length - 1;
+		if (!shardDirectory.isDirectory() && !shardDirectory.mkdirs()) {
+			throw new IOException("Could not create directory: " + shardDirectory);
+		}
+		for (int i = 0; i < shards; i++) {
+			deleteShardFiles(i);
+		}
+		if (shards > 0) {
+			ExecutorService executor = Executors.newFixedThreadPool(shards);
+			try {
+				List<Future<Void>> results = new ArrayList<>();
+				for (int i = 0; i < shards; i++) {
+					results.add(executor.submit(new ShardRunner(i, boundaries[i], boundaries[i + 1])));
+				}
+				for (Future<Void> result : results) {
+					try {
+						result.get();
+					}
+					catch (ExecutionException e) {
+						throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+				}
+			}
+			finally {
+				//interrupts and hence destroys any workers still running
+				executor.shutdownNow();
+			}
+		}
+
+		OutputStream out = outputCompression.compress(new FileOutputStream(outputFile), processes);
+		try {
+			for (int i = 0; i < shards; i++) {
+				Files.copy(shardFile(i, "out").toPath(), out);
+			}
+		}
+		finally {
+			out.close();
+		}
+		for (int i = 0; i < shards; i++) {
+			File log = shardFile(i, "log");
+			if (log.exists()) {
+				Files.copy(log.toPath(), System.err);
+			}
+			deleteShardFiles(i);
+		}
+		shardDirectory.delete();
+	}
+
+	/**
+	 * Splits the file into the given number of byte ranges, each starting at the start of a line.
+	 * Fewer ranges are returned if the file has too few lines
+	 * @param file
+	 * @param shards
+	 * @return The offsets of the start of each range, followed by the file size
+	 * @throws IOException
+	 */
+	static long[] findShardBoundaries(File file, int shards) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long size = raf.length();
+			List<Long> boundaries = new ArrayList<>();
+			boundaries.add(0L);
+			for (int i = 1; i < shards; i++) {
+				long boundary = BatchConverter.findChunkEnd(raf.getChannel(), size / shards * i, size);
+				if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size) {
+					boundaries.add(boundary);
+				}
+			}
+			if (size > 0) {
+				boundaries.add(size);
+			}
+			long[] result = new long[boundaries.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = boundaries.get(i);
+			}
+			return result;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private File shardFile(int shard, String extension) {
+		return new File(shardDirectory, "shard-" + shard + "." + extension);
+	}
+
+	private void deleteShardFiles(int shard) {
+		for (String extension : new String[]{"out", "checkpoint", "log"}) {
+			shardFile(shard, extension).delete();
+		}
+	}
+
+	/**
+	 * Runs, and if necessary restarts, the worker for one shard
+	 */
+	private class ShardRunner implements Callable<Void> {
+		private final int shard;
+		private final long start;
+		private final long end;
+
+		ShardRunner(int shard, long start, long end) {
+			this.shard = shard;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Void call() throws IOException, InterruptedException {
+			File checkpointFile = shardFile(shard, "checkpoint");
+			File log = shardFile(shard, "log");
+			int failures = 0;
+			boolean lineByLine = false;
+			boolean skipFirstLine = false;
+			long lastFailureOffset = -1;
+			while (true) {
+				List<String> command = new ArrayList<>(workerCommand);
+				command.add("--shard");
+				command.add(start + "-" + end);
+				command.add("--checkpoint");
+				command.add(checkpointFile.getPath());
+				if (lineByLine) {
+					command.add("--lineByLine");
+				}
+				if (skipFirstLine) {
+					command.add("--skipFirstLine");
+				}
+				command.add(inputFile.getPath());
+				command.add(shardFile(shard, "out").getPath());
+				ProcessBuilder processBuilder = new ProcessBuilder(command);
+				processBuilder.redirectOutput(Redirect.appendTo(log));
+				processBuilder.redirectError(Redirect.appendTo(log));
+				Process process = processBuilder.start();
+				int exitValue;
+				try {
+					exitValue = process.waitFor();
+				}
+				catch (InterruptedException e) {
+					process.destroy();
+					throw e;
+				}
+				if (exitValue == 0) {
+					return null;
+				}
+				long offset = readCheckpoint(checkpointFile, start)[0];
+				if (offset != lastFailureOffset) {
+					//the worker got past the position of its previous failure, so each name that crashes it has its own restarts
+					failures = 0;
+				}
+				failures++;
+				if (failures > maxRestarts) {
+					throw new IOException("Worker for shard " + shard + " failed " + failures + " times at byte " + offset + ", see " + log);
+				}
+				//a second failure on the same line, which the worker was converting on its own, is attributed to that line
+				skipFirstLine = lineByLine && offset == lastFailureOffset;
+				lineByLine = true;
+				lastFailureOffset = offset;
+				System.err.println("Worker for shard " + shard + " exited with status " + exitValue + ", restarting from byte " + offset +
+						(skipFirstLine ? " and skipping the name at that position" : ""));
+			}
+		}
+	}
+
+	/**
+	 * Reads a worker's checkpoint
+	 * @param checkpointFile
+	 * @param shardStart
+	 * @return The offset in the input up to which output has been written and the length of that output
+	 * @throws IOException
+	 */
+	static long[] readCheckpoint(File checkpointFile, long shardStart) throws IOException {
+		if (!checkpointFile.exists()) {
+			return new long[]{shardStart, 0};
+		}
+		String[] values = new String(Files.readAllBytes(checkpointFile.toPath()), UTF_8).trim().split(" ");
+		try {
+			return new long[]{Long.parseLong(values[0]), Long.parseLong(values[1])};
+		}
+		catch (RuntimeException e) {
+			throw new IOException("Corrupt checkpoint: " + checkpointFile, e);
+		}
+	}
+
+	/**
+	 * Atomically replaces a worker's checkpoint
+	 * @param checkpointFile
+	 * @param inputOffset
+	 * @param outputLength
+	 * @throws IOException
+	 */
+	static void writeCheckpoint(File checkpointFile, long inputOffset, long outputLength) throws IOException {
+		File tmp = new File(checkpointFile.getPath() + ".tmp");
+		Files.write(tmp.toPath(), (inputOffset + " " + outputLength + "\n").getBytes(UTF_8));
+		Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Converts one shard, as a worker process. Output is appended to the output file from the last checkpoint, if any
+	 * @param cmd
+	 * @param n2sconfig
+	 * @param threads
+	 * @param maxDuplicateNames
+	 * @throws Exception
+	 */
+	static void runWorker(CommandLine cmd, NameToStructureConfig n2sconfig, int threads, int maxDuplicateNames) throws Exception {
+		String[] files = cmd.getArgs();
+		if (files.length != 2) {
+			throw new IllegalArgumentException("A shard worker requires an input and an output file");
+		}
+		String[] range = cmd.getOptionValue("shard").split("-");
+		long end = Long.parseLong(range[1]);
+		File inputFile = new File(files[0]);
+		final File checkpointFile = new File(cmd.getOptionValue("checkpoint"));
+		long[] checkpoint = readCheckpoint(checkpointFile, Long.parseLong(range[0]));
+		long inputOffset = checkpoint[0];
+		//discards output written after the last checkpoint
+		RandomAccessFile raf = new RandomAccessFile(files[1], "rw");
+		try {
+			raf.setLength(checkpoint[1]);
+		}
+		finally {
+			raf.close();
+		}
+		final FileOutputStream out = new FileOutputStream(files[1], true);
+		try {
+			ResultWriter writer = ResultWriter.forFormat(cmd.getOptionValue("o", "smi"), out, cmd.hasOption("n"), cmd.hasOption("inchiColumn"), cmd.hasOption("deflateColumns"));
+			BatchConverter converter = new BatchConverter(Collections.singletonList(writer), n2sconfig, null, maxDuplicateNames);
+			CheckpointListener listener = new CheckpointListener() {
+				@Override
+				public void checkpoint(long inputOffset) throws IOException {
+					writeCheckpoint(checkpointFile, inputOffset, out.getChannel().position());
+				}
+			};
+			if (cmd.hasOption("skipFirstLine") && inputOffset < end) {
+				RandomAccessFile input = new RandomAccessFile(inputFile, "r");
+				long lineEnd;
+				String line;
+				try {
+					lineEnd = BatchConverter.findChunkEnd(input.getChannel(), inputOffset, end);
+					ByteBuffer bytes = ByteBuffer.allocate((int) (lineEnd - inputOffset));
+					input.getChannel().read(bytes, inputOffset);
+					((Buffer) bytes).flip();
+					List<String> lines = BatchConverter.splitLines(UTF_8.decode(bytes));
+					line = lines.isEmpty() ? "" : lines.get(0);
+				}
+				finally {
+					input.close();
+				}
+				converter.writeFailure(line, WORKER_FAILED_MESSAGE);
+				writer.flush();
+				listener.checkpoint(lineEnd);
+				inputOffset = lineEnd;
+			}
+			long lineByLineEnd = cmd.hasOption("lineByLine") ? inputOffset + BatchConverter.DEFAULT_CHUNK_SIZE : inputOffset;
+			converter.convert(inputFile, inputOffset, end, lineByLineEnd, threads, BatchConverter.DEFAULT_CHUNK_SIZE, listener);
+			DuplicateNameCache<?> duplicateNames = converter.getDuplicateNameCache();
+			if (duplicateNames != null) {
+				System.err.println("Duplicate names: " + duplicateNames.getSummary());
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.lang.management.ManagementFactory;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * Measures elapsed time and bytes allocated by the current thread and reports them to a {@link ParseListener}.
+ * Only created when a listener is present; callers check for null so that no measurements are taken otherwise
+ */
+class StageTimer {
+
+	/** Set once it is found that the JVM lacks com.sun.management, so that loading the counter is not attempted again */
+	private static volatile boolean allocationCounterUnavailable = false;
+
+	private final ParseListener listener;
+	private ParseStage stage;
+	private long startNanos;
+	private long startAllocatedBytes;
+
+	private StageTimer(ParseListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts timing the given stage if listener is not null
+	 * @param listener
+	 * @param stage
+	 * @return a started timer, or null if listener is null
+	 */
+	static StageTimer start(ParseListener listener, ParseStage stage) {
+		if (listener == null) {
+			return null;
+		}
+		StageTimer timer = new StageTimer(listener);
+		timer.startStage(stage);
+		return timer;
+	}
+
+	/**
+	 * Starts timing the interpretation of the given name if listener is not null
+	 * @param listener
+	 * @param name
+	 * @return a started timer, or null if listener is null
+	 */
+	static StageTimer startName(ParseListener listener, String name) {
+		if (listener == null) {
+			return null;
+		}
+		StageTimer timer = new StageTimer(listener);
+		listener.nameStarted(name);
+		timer.restart();
+		return timer;
+	}
+
+	/**
+	 * Reports the current stage as having taken place from when it was started until now.
+	 * Does nothing if the current stage has already been reported
+	 */
+	void stageCompleted() {
+		if (stage == null) {
+			return;
+		}
+		long endNanos = System.nanoTime();
+		long allocatedBytes = allocatedBytesSinceStart();
+		listener.stageCompleted(stage, startNanos, endNanos, allocatedBytes);
+		stage = null;
+	}
+
+	/**
+	 * Reports the current stage, if any, as completed and starts timing the given stage,
+	 * so consecutive stages can be reported using the same timer
+	 * @param stage
+	 */
+	void nextStage(ParseStage stage) {
+		stageCompleted();
+		startStage(stage);
+	}
+
+	/**
+	 * Reports the name as having been interpreted from when this timer was started until now
+	 * @param name
+	 * @param status
+	 * @param parseCount
+	 * @param successfulParseIndex
+	 */
+	void nameCompleted(String name, OPSIN_RESULT_STATUS status, int parseCount, int successfulParseIndex) {
+		long endNanos = System.nanoTime();
+		long allocatedBytes = allocatedBytesSinceStart();
+		listener.nameCompleted(name, status, parseCount, successfulParseIndex, startNanos, endNanos, allocatedBytes);
+	}
+
+	ParseListener getListener() {
+		return listener;
+	}
+
+	private void startStage(ParseStage stage) {
+		this.stage = stage;
+		listener.stageStarted(stage);
+		restart();
+	}
+
+	private void restart() {
+		startAllocatedBytes = currentThreadAllocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	private long allocatedBytesSinceStart() {
+		if (startAllocatedBytes < 0) {
+			return -1;
+		}
+		long allocatedBytes = currentThreadAllocatedBytes();
+		return allocatedBytes >= 0 ? allocatedBytes - startAllocatedBytes : -1;
+	}
+
+	/**
+	 * Bytes allocated by the current thread, or -1 if this is not supported by the JVM
+	 * @return
+	 */
+	static long currentThreadAllocatedBytes() {
+		if (allocationCounterUnavailable) {
+			return -1;
+		}
+		try {
+			return AllocationCounter.currentThreadAllocatedBytes();
+		}
+		catch (NoClassDefFoundError e) {
+			//com.sun.management is not available on this JVM
+			allocationCounterUnavailable = true;
+			return -1;
+		}
+	}
+
+	/**
+	 * Holds the only references to com.sun.management, so that its classes are only loaded once allocations are first measured
+	 */
+	private static class AllocationCounter {
+
+		private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = getThreadMXBean();
+
+		static long currentThreadAllocatedBytes() {
+			if (THREAD_MX_BEAN == null) {
+				return -1;
+			}
+			return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		private static com.sun.management.ThreadMXBean getThreadMXBean() {
+			try {
+				java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+				if (bean instanceof com.sun.management.ThreadMXBean) {
+					com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+					if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+						return sunBean;
+					}
+				}
+			}
+			catch (LinkageError e) {
+				//com.sun.management is not available on this JVM
+			}
+			catch (SecurityException e) {
+				//not permitted to access the management interface
+			}
+			return null;
+		}
+	}
+}
@@ -1,10 +1,7 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -22,14 +19,8 @@ class StereoAnalyser {
 	private final Collection<Atom> atoms;
 	private final Collection<Bond> bonds;
 	
-	/** Maps each atom to its currently assigned colour. Eventually all atoms in non identical environments will have different colours. Higher is higher priority*/
-	private final Map<Atom, Integer> mappingToColour;
-
-	/** Maps each atom to an array of the colours of its neighbours*/
-	private final Map<Atom, int[]> atomNeighbourColours;
-
-	private final AtomNeighbouringColoursComparator atomNeighbouringColoursComparator = new AtomNeighbouringColoursComparator();
-	private static final AtomicNumberThenAtomicMassComparator atomicNumberThenAtomicMassComparator = new AtomicNumberThenAtomicMassComparator();
+	/** Assigns each atom a colour. All atoms in non identical environments have different colours*/
+	private final AtomColourRefiner colouring;
 	
 	/**
 	 * Holds information about a tetrahedral stereocentre
@@ -108,81 +99,6 @@ class StereoAnalyser {
 		}
 	}
 	
-	/**
-	 * Sorts atoms by their atomic number, low to high
-	 * In the case of a tie sorts by atomic mass
-	 * @author dl387
-	 *
-	 */
-	private static class AtomicNumberThenAtomicMassComparator implements Comparator<Atom> {
-	    public int compare(Atom a, Atom b){
-	    	return compareAtomicNumberThenAtomicMass(a, b);
-	    }
-	}
-	
-	private static int compareAtomicNumberThenAtomicMass(Atom a, Atom b){
-    	int atomicNumber1 = a.getElement().ATOMIC_NUM;
-    	int atomicNumber2 = b.getElement().ATOMIC_NUM;
-    	if (atomicNumber1 > atomicNumber2){
-    		return 1;
-    	}
-    	else if (atomicNumber1 < atomicNumber2){
-    		return -1;
-    	}
-    	Integer atomicMass1 = a.getIsotope();
-    	Integer atomicMass2 = b.getIsotope();
-    	if (atomicMass1 != null && atomicMass2 == null){
-    		return 1;
-    	}
-    	else if (atomicMass1 == null && atomicMass2 != null){
-    		return -1;
-    	}
-    	else if (atomicMass1 != null && atomicMass2 != null){
-        	if (atomicMass1 > atomicMass2){
-	    		return 1;
-	    	}
-	    	else if (atomicMass1 < atomicMass2){
-	    		return -1;
-	    	}
-    	}
-		return 0;
-	}
-	
-	/**
-	 * Sorts based on the list of colours for neighbouring atoms 
-	 * e.g. [1,2] > [1,1]  [1,1,3] > [2,2,2]  [1,1,3] > [3]  
-	 * @author dl387
-	 *
-	 */
-	private class AtomNeighbouringColoursComparator implements Comparator<Atom> {
-	    public int compare(Atom a, Atom b){
-	    	int[] colours1 = atomNeighbourColours.get(a);
-	    	int[] colours2 = atomNeighbourColours.get(b);
-	    	
-	    	int colours1Size = colours1.length;
-	    	int colours2Size = colours2.length;
-	    	
-	    	int maxCommonColourSize = Math.min(colours1Size, colours2Size);
-	    	for (int i = 1; i <= maxCommonColourSize; i++) {
-				int difference = colours1[colours1Size - i] - colours2[colours2Size - i];
-				if (difference > 0){
-					return 1;
-				}
-				if (difference < 0){
-					return -1;
-				}
-			}
-	    	int differenceInSize = colours1Size - colours2Size;
-	    	if (differenceInSize > 0){
-	    		return 1;
-	    	}
-	    	if (differenceInSize < 0){
-	    		return -1;
-	    	}
-			return 0;
-	    }
-	}
-	
 	/**
 	 * Employs a derivative of the InChI algorithm to label which atoms are equivalent.
 	 * These labels can then be used by the findStereo(Atoms/Bonds) functions to find features that
@@ -204,161 +120,7 @@ class StereoAnalyser {
 	StereoAnalyser(Collection<Atom> atoms, Collection<Bond> bonds) {
 		this.atoms = atoms;
 		this.bonds = bonds;
-		List<Atom> ghostAtoms = addGhostAtoms();
-		List<Atom> atomsToSort = new ArrayList<Atom>(atoms);
-		atomsToSort.addAll(ghostAtoms);
-		mappingToColour = new HashMap<Atom, Integer>(atomsToSort.size());
-		atomNeighbourColours = new HashMap<Atom, int[]>(atomsToSort.size());
-		Collections.sort(atomsToSort, atomicNumberThenAtomicMassComparator);
-		List<List<Atom>> groupsByColour = populateColoursByAtomicNumberAndMass(atomsToSort);
-		boolean changeFound = true;
-		while(changeFound){
-			for (List<Atom> groupWithAColour : groupsByColour) {
-				for (Atom atom : groupWithAColour) {
-					int[] neighbourColours = findColourOfNeighbours(atom);
-					atomNeighbourColours.put(atom, neighbourColours);
-				}
-			}
-			List<List<Atom>> updatedGroupsByColour = new ArrayList<List<Atom>>();
-			changeFound = populateColoursAndReportIfColoursWereChanged(groupsByColour, updatedGroupsByColour);
-			groupsByColour = updatedGroupsByColour;
-		}
-		removeGhostAtoms(ghostAtoms);
-	}
-
-	/**
-	 * Adds "ghost" atoms in the same way as the CIP rules for handling double bonds
-	 * e.g. C=C --> C(G)=C(G) where ghost is a carbon with no hydrogen bonded to it
-	 * @return The ghost atoms created
-	 */
-	private List<Atom> addGhostAtoms() {
-		List<Atom> ghostAtoms = new ArrayList<Atom>();
-		for (Bond bond : bonds) {
-			int bondOrder = bond.getOrder();
-			for (int i = bondOrder; i > 1; i--) {
-				Atom fromAtom = bond.getFromAtom();
-				Atom toAtom = bond.getToAtom();
-
-				Atom ghost1 = new Atom(fromAtom.getElement());
-				Bond b1 = new Bond(ghost1, toAtom, 1);
-				toAtom.addBond(b1);
-				ghost1.addBond(b1);
-				ghostAtoms.add(ghost1);
-				
-				Atom ghost2 = new Atom(toAtom.getElement());
-				Bond b2 = new Bond(ghost2, fromAtom, 1);
-				fromAtom.addBond(b2);
-				ghost2.addBond(b2);
-				ghostAtoms.add(ghost2);
-			}
-		}
-		return ghostAtoms;
-	}
-
-	/**
-	 * Removes the ghost atoms added by addGhostAtoms
-	 * @param ghostAtoms 
-	 */
-	private void removeGhostAtoms(List<Atom> ghostAtoms) {
-		for (Atom atom : ghostAtoms) {
-			Bond b = atom.getFirstBond();
-			b.getOtherAtom(atom).removeBond(b);
-		}
-	}
-
-
-	/**
-	 * Takes a list of atoms sorted by atomic number/mass
-	 * and populates the mappingToColour map
-	 * @param atomList
-	 * @return 
-	 */
-	private List<List<Atom>> populateColoursByAtomicNumberAndMass(List<Atom> atomList) {
-		List<List<Atom>> groupsByColour = new ArrayList<List<Atom>>();
-		Atom previousAtom = null;
-		List<Atom> atomsOfThisColour = new ArrayList<Atom>();
-		int atomsSeen = 0;
-		for (Atom atom : atomList) {
-			if (previousAtom != null && compareAtomicNumberThenAtomicMass(previousAtom, atom) != 0){
-				for (Atom atomOfthisColour : atomsOfThisColour) {
-					mappingToColour.put(atomOfthisColour, atomsSeen);
-				}
-				groupsByColour.add(atomsOfThisColour);
-				atomsOfThisColour = new ArrayList<Atom>();
-			}
-			previousAtom = atom;
-			atomsOfThisColour.add(atom);
-			atomsSeen++;
-		}
-		if (!atomsOfThisColour.isEmpty()){
-			for (Atom atomOfThisColour : atomsOfThisColour) {
-				mappingToColour.put(atomOfThisColour, atomsSeen);
-			}
-			groupsByColour.add(atomsOfThisColour);
-		}
-		return groupsByColour;
-	}
-
-	/**
-	 * Takes the lists of atoms pre-grouped by colour and sorts each by its neighbours colours
-	 * The updatedGroupsByColour is populated with those for which this process caused a change
-	 * and populates the mappingToColour map
-	 * Returns whether mappingToColour was changed 
-	 * @param groupsByColour 
-	 * @param updatedGroupsByColour 
-	 * @return boolean Whether mappingToColour was changed
-	 */
-	private boolean populateColoursAndReportIfColoursWereChanged(List<List<Atom>> groupsByColour, List<List<Atom>> updatedGroupsByColour) {
-		boolean changeFound = false;
-		int atomsSeen = 0;
-		for (List<Atom> groupWithAColour : groupsByColour) {
-			Collections.sort(groupWithAColour, atomNeighbouringColoursComparator);
-			Atom previousAtom = null;
-			List<Atom> atomsOfThisColour = new ArrayList<Atom>();
-			for (Atom atom : groupWithAColour) {
-				if (previousAtom != null && atomNeighbouringColoursComparator.compare(previousAtom, atom) != 0){
-					for (Atom atomOfThisColour : atomsOfThisColour) {
-						if (!changeFound && atomsSeen != mappingToColour.get(atomOfThisColour)){
-							changeFound = true;
-						}
-						mappingToColour.put(atomOfThisColour, atomsSeen);
-					}
-					updatedGroupsByColour.add(atomsOfThisColour);
-					atomsOfThisColour = new ArrayList<Atom>();
-				}
-				previousAtom = atom;
-				atomsOfThisColour.add(atom);
-				atomsSeen++;
-			}
-			if (!atomsOfThisColour.isEmpty()){
-				for (Atom atomOfThisColour : atomsOfThisColour) {
-					if (!changeFound && atomsSeen != mappingToColour.get(atomOfThisColour)){
-						changeFound = true;
-					}
-					mappingToColour.put(atomOfThisColour, atomsSeen);
-				}
-				updatedGroupsByColour.add(atomsOfThisColour);
-			}
-		}
-		return changeFound;
-	}
-
-	/**
-	 * Produces a sorted (low to high) array of the colour of the atoms surrounding a given atom
-	 * @param atom
-	 * @return int[] colourOfAdjacentAtoms
-	 */
-	private int[] findColourOfNeighbours(Atom atom) {	
-		List<Bond> bonds = atom.getBonds();
-		int bondCount = bonds.size();
-		int[] colourOfAdjacentAtoms = new int[bondCount];
-		for (int i = 0; i < bondCount; i++) {
-			Bond bond = bonds.get(i);
-			Atom otherAtom = bond.getOtherAtom(atom);
-			colourOfAdjacentAtoms[i] = mappingToColour.get(otherAtom);
-		} 
-		Arrays.sort(colourOfAdjacentAtoms);//sort such that this goes from low to high
-		return colourOfAdjacentAtoms;
+		colouring = AtomColourRefiner.colourWithGhostAtoms(new ArrayList<Atom>(atoms), null);
 	}
 
 	/**
@@ -413,7 +175,7 @@ class StereoAnalyser {
 		}
 		int[] colours = new int[4];
 		for (int i = neighbours.size() - 1 ; i >=0; i--) {
-			colours[i] = mappingToColour.get(neighbours.get(i));
+			colours[i] = colouring.getColour(neighbours.get(i));
 		}
 		
 		boolean foundIdenticalNeighbour =false;
@@ -442,7 +204,7 @@ class StereoAnalyser {
 			if (neighbours.size() == 4){
 				int[] colours = new int[4];
 				for (int i = neighbours.size() - 1 ; i >=0; i--) {
-					colours[i] = mappingToColour.get(neighbours.get(i));
+					colours[i] = colouring.getColour(neighbours.get(i));
 				}
 				//find pairs of constitutionally identical substituents
 				Map<Integer, Integer> foundPairs = new HashMap<Integer, Integer>();
@@ -620,14 +382,14 @@ class StereoAnalyser {
 				List<Atom> neighbours1 =  a1.getAtomNeighbours();
 				neighbours1.remove(bond.getToAtom());
 				if (neighbours1.size()==2 || (neighbours1.size()==1 && a1.getElement() == ChemEl.N && a1.getIncomingValency()==3 && a1.getCharge()==0)){
-					if (neighbours1.size()==2 && mappingToColour.get(neighbours1.get(0)).equals(mappingToColour.get(neighbours1.get(1)))){
+					if (neighbours1.size()==2 && colouring.getColour(neighbours1.get(0)).equals(colouring.getColour(neighbours1.get(1)))){
 						continue;
 					}
 					Atom a2 = bond.getToAtom();
 					List<Atom> neighbours2 = a2.getAtomNeighbours();
 					neighbours2.remove(bond.getFromAtom());
 					if (neighbours2.size()==2 || (neighbours2.size()==1 && a2.getElement() == ChemEl.N && a2.getIncomingValency()==3 && a2.getCharge()==0)){
-						if (neighbours2.size()==2 && mappingToColour.get(neighbours2.get(0)).equals(mappingToColour.get(neighbours2.get(1)))){
+						if (neighbours2.size()==2 && colouring.getColour(neighbours2.get(0)).equals(colouring.getColour(neighbours2.get(1)))){
 							continue;
 						}
 						stereoBonds.add(new StereoBond(bond));
@@ -645,6 +407,6 @@ class StereoAnalyser {
 	 * @return
 	 */
 	Integer getAtomEnvironmentNumber(Atom a) {
-		return mappingToColour.get(a);
+		return colouring.getColour(a);
 	}
 }
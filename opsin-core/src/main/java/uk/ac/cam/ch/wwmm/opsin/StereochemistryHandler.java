@@ -217,7 +217,7 @@ class StereochemistryHandler {
 
 	private boolean attemptAssignmentOfStereoCentreToFragment(Fragment fragment, String rOrS, String locant) throws StereochemistryException, StructureBuildingException {
 		if (locant == null) {//undefined locant
-			List<Atom> atomList = fragment.getAtomList();
+			List<Atom> atomList = fragment.getAtoms();
 			for (Atom potentialStereoAtom : atomList) {
 				if (notExplicitlyDefinedStereoCentreMap.containsKey(potentialStereoAtom)){
 					applyStereoChemistryToStereoCentre(potentialStereoAtom, notExplicitlyDefinedStereoCentreMap.get(potentialStereoAtom), rOrS);
@@ -246,7 +246,11 @@ class StereochemistryHandler {
 	 * @throws StereochemistryException
 	 */
 	private void applyStereoChemistryToStereoCentre(Atom atom, StereoCentre stereoCentre, String rOrS) throws StructureBuildingException, StereochemistryException {
+		StageTimer timer = StageTimer.start(state.n2sConfig.getParseListener(), ParseStage.CIP_ORDERING);
 		List<Atom> cipOrderedAtoms =stereoCentre.getCipOrderedAtoms();
+		if (timer != null) {
+			timer.stageCompleted();
+		}
 		if (cipOrderedAtoms.size()!=4){
 			throw new StructureBuildingException("Only tetrahedral chirality is currently supported");
 		}
@@ -418,7 +422,11 @@ class StereochemistryHandler {
 	 * @throws StereochemistryException 
 	 */
 	private void applyStereoChemistryToStereoBond(Bond bond, StereoBond stereoBond, String eOrZ ) throws StereochemistryException {
+		StageTimer timer = StageTimer.start(state.n2sConfig.getParseListener(), ParseStage.CIP_ORDERING);
 		List<Atom> stereoBondAtoms = stereoBond.getOrderedStereoAtoms();
+		if (timer != null) {
+			timer.stageCompleted();
+		}
 		//stereoBondAtoms contains the higher priority atom at one end, the two bond atoms and the higher priority atom at the other end
 		Atom[] atomRefs4 = new Atom[4];
 		atomRefs4[0] = stereoBondAtoms.get(0);
@@ -480,7 +488,7 @@ class StereochemistryHandler {
 
 
 	private boolean attemptAssignmentOfCisTransRingStereoToFragment(Fragment fragment, Element stereoChemistryEl) throws StructureBuildingException {
-		List<Atom> atomList = fragment.getAtomList();
+		List<Atom> atomList = fragment.getAtoms();
 		List<Atom> stereoAtoms = new ArrayList<Atom>();
 		for (Atom potentialStereoAtom : atomList) {
 			if (potentialStereoAtom.getAtomIsInACycle()){
@@ -492,7 +500,7 @@ class StereochemistryHandler {
 						if (neighbour.getElement() == ChemEl.H){
 							hydrogenCount++;
 						}
-						if (!neighbour.getAtomIsInACycle() || !atomList.contains(neighbour)){
+						if (!neighbour.getAtomIsInACycle() || !fragment.containsAtom(neighbour)){
 							acylicOrNotInFrag++;
 						}
 					}
@@ -697,11 +705,11 @@ class StereochemistryHandler {
 				neighbours.remove(atomRefs4[3]);
 				Atom a1 =neighbours.get(0);
 				Atom a2 =neighbours.get(1);
-				if ((fragment.getAtomList().contains(a1) && ringOrder.contains(a1.getFirstLocant()))){
+				if ((fragment.containsAtom(a1) && ringOrder.contains(a1.getFirstLocant()))){
 					atomRefs4[1]=a1;
 					atomRefs4[2]=a2;
 				}
-				else if ((fragment.getAtomList().contains(a2) && ringOrder.contains(a2.getFirstLocant()))){
+				else if ((fragment.containsAtom(a2) && ringOrder.contains(a2.getFirstLocant()))){
 					atomRefs4[1]=a2;
 					atomRefs4[2]=a1;
 				}
@@ -713,11 +721,11 @@ class StereochemistryHandler {
 					atomRefs4[1]=a1;
 					atomRefs4[2]=a2;
 				}//TODO support case where alpha/beta are applied prior to a suffix (and the stereocentre doesn't have a hydrogen) e.g. 17alpha-yl
-				else if (substituentGroup !=null && fragment !=substituentGroup && substituentGroup.getAtomList().contains(a1)){
+				else if (substituentGroup !=null && fragment !=substituentGroup && substituentGroup.containsAtom(a1)){
 					atomRefs4[1]=a1;
 					atomRefs4[2]=a2;
 				}
-				else if (substituentGroup !=null && fragment !=substituentGroup && substituentGroup.getAtomList().contains(a2)){
+				else if (substituentGroup !=null && fragment !=substituentGroup && substituentGroup.containsAtom(a2)){
 					atomRefs4[1]=a2;
 					atomRefs4[2]=a1;
 				}
@@ -772,7 +780,7 @@ class StereochemistryHandler {
 		Set<Atom> atoms = notExplicitlyDefinedStereoCentreMap.keySet();
 		List<Atom> stereocentresInCarbohydrate = new ArrayList<Atom>();
 		for (Atom atom : atoms) {
-			if (carbohydrate.getAtomByID(atom.getID())!=null){
+			if (carbohydrate.containsAtom(atom)){
 				Boolean isAnomeric = atom.getProperty(Atom.ISANOMERIC);
 				if (isAnomeric ==null || !isAnomeric) {
 					stereocentresInCarbohydrate.add(atom);
@@ -847,7 +855,7 @@ class StereochemistryHandler {
 
 
 	private boolean attemptAssignmentOfDlStereoToFragment(Fragment fragment, String dOrL) throws StereochemistryException, StructureBuildingException {
-		List<Atom> atomList = fragment.getAtomList();
+		List<Atom> atomList = fragment.getAtoms();
 		for (Atom potentialStereoAtom : atomList) {
 			if (notExplicitlyDefinedStereoCentreMap.containsKey(potentialStereoAtom) && potentialStereoAtom.getBondCount() == 4) {
 				List<Atom> neighbours = potentialStereoAtom.getAtomNeighbours();
@@ -933,4 +941,4 @@ class StereochemistryHandler {
 		return swaps1 %2 == swaps2 %2;
 	}
 }
-
+
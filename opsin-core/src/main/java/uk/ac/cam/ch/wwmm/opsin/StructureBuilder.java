@@ -64,7 +64,11 @@ class StructureBuilder {
 		state.fragManager.makeHydrogensExplicit();
 
 		Fragment uniFrag = state.fragManager.getUnifiedFragment();
+		StageTimer stereochemistryTimer = StageTimer.start(state.n2sConfig.getParseListener(), ParseStage.STEREOCHEMISTRY);
 		processStereochemistry(molecule, uniFrag);
+		if (stereochemistryTimer != null) {
+			stereochemistryTimer.stageCompleted();
+		}
 
 		if (uniFrag.getOutAtomCount() > 0) {
 			if (!state.n2sConfig.isAllowRadicals()) {
@@ -571,7 +575,7 @@ class StructureBuilder {
 					continue mainLoop;
 				}
 				else{
-					List<Atom> atomList = groupToModify.getAtomList();
+					List<Atom> atomList = groupToModify.getAtoms();
 					//In preference suffixes are substituted onto e.g. acetonitrile oxide
 					for (Atom atom : atomList) {
 						if (!atom.getType().equals(SUFFIX_TYPE_VAL)) {
@@ -613,7 +617,7 @@ class StructureBuilder {
 					}
 				}
 				//something like where oxide goes on an oxygen propan-2-one oxide
-				List<Atom> atomList = groupToModify.getAtomList();
+				List<Atom> atomList = groupToModify.getAtoms();
 				for (Atom atom : atomList) {
 					if (!atom.getType().equals(SUFFIX_TYPE_VAL)) {
 						continue;
@@ -710,7 +714,7 @@ class StructureBuilder {
 				if (i >0){
 					FragmentTools.relabelLocants(replacementFragment.getAtomList(), StringTools.multiplyString("'", i));
 				}
-				List<Atom> atomList = replacementFragment.getAtomList();
+				List<Atom> atomList = replacementFragment.getAtoms();
 				for (Atom atom : atomList) {
 					atom.removeLocantsOtherThanElementSymbolLocants();//prevents numeric locant locanted substitution from outside the functional word
 				}
@@ -813,7 +817,7 @@ class StructureBuilder {
 	 */
 	private List<Atom> findCarbonylOxygens(Fragment fragment, List<String> locantForCarbonylAtom) throws StructureBuildingException {
 		List<Atom> matches = new ArrayList<Atom>();
-		List<Atom> rootFragAtomList = fragment.getAtomList();
+		List<Atom> rootFragAtomList = fragment.getAtoms();
 		for (Atom atom : rootFragAtomList) {//find all carbonyl oxygen
 			if (atom.getElement() == ChemEl.O && atom.getCharge()==0){
 				List<Atom> neighbours =atom.getAtomNeighbours();
@@ -1010,7 +1014,7 @@ class StructureBuilder {
 		Fragment anhydride = state.fragManager.buildSMILES(anhydrideSmiles, FUNCTIONALCLASS_TYPE_VAL, NONE_LABELS_VAL);
 		Fragment acidFragment1 = oxygen1.getFrag();
 		state.fragManager.replaceAtomWithAnotherAtomPreservingConnectivity(oxygen1, anhydride.getFirstAtom());
-		List<Atom> atomsInAnhydrideLinkage = anhydride.getAtomList();
+		List<Atom> atomsInAnhydrideLinkage = anhydride.getAtoms();
 		state.fragManager.createBond(atomsInAnhydrideLinkage.get(atomsInAnhydrideLinkage.size()-1), atomOnSecondAcidToConnectTo, 1);
 		state.fragManager.incorporateFragment(anhydride, acidFragment1);
 	}
@@ -1391,7 +1395,7 @@ class StructureBuilder {
 		carbonylOxygen.remove(0);
 		Fragment acetalFrag = state.fragManager.buildSMILES(StringTools.arrayToString(elements, "."),"",NONE_LABELS_VAL);
 		FragmentTools.assignElementLocants(acetalFrag, new ArrayList<Fragment>());
-		List<Atom> acetalAtomList = acetalFrag.getAtomList();
+		List<Atom> acetalAtomList = acetalFrag.getAtoms();
 		Atom atom1 = acetalAtomList.get(0);
 		state.fragManager.createBond(neighbouringCarbon, atom1, 1);
 		Atom atom2 = acetalAtomList.get(1);
@@ -1452,7 +1456,7 @@ class StructureBuilder {
 			if (!chosenHydroxyAtoms.isEmpty()) {
 				throw new RuntimeException("OPSIN Bug: Either all or none of the esters should be locanted in alcohol ester rule");
 			}
-			if (hydroxyAtoms.size() == ateWords  || hydroxyAtoms.size() > ateWords && (AmbiguityChecker.allAtomsEquivalent(hydroxyAtoms) || potentialAlcoholFragment.getTokenEl().getValue().equals("glycerol") )) {
+			if (hydroxyAtoms.size() == ateWords  || hydroxyAtoms.size() > ateWords && (AmbiguityChecker.allAtomsEquivalent(state, hydroxyAtoms) || potentialAlcoholFragment.getTokenEl().getValue().equals("glycerol") )) {
 				for (int i = 0; i < ateWords; i++) {
 					chosenHydroxyAtoms.add(hydroxyAtoms.get(i));
 				}
@@ -1591,7 +1595,7 @@ class StructureBuilder {
 					if (numericLocant){
 						Atom a  =OpsinTools.depthFirstSearchForNonSuffixAtomWithLocant(possibleAcetalFrag.getFirstAtom(), out.getLocant());
 						if (a!=null){
-							List<Atom> atomList =  possibleAcetalFrag.getAtomList();
+							List<Atom> atomList =  possibleAcetalFrag.getAtoms();
 							if (atomList.get(0).getBondCount()==1){
 								atomToUse = atomList.get(0);
 								break;
@@ -1612,7 +1616,7 @@ class StructureBuilder {
 				}
 			}
 			else{
-				List<Atom> atomList =  acetalFrags.get(0).getAtomList();
+				List<Atom> atomList =  acetalFrags.get(0).getAtoms();
 				if (atomList.get(0).getBondCount()==1){
 					atomToUse = atomList.get(0);
 				}
@@ -2244,7 +2248,7 @@ class StructureBuilder {
 				}
 			}
 			else if (AMINOACID_TYPE_VAL.equals(group.getAttributeValue(TYPE_ATR))) {
-				for (Atom atom : group.getFrag().getAtomList()) {
+				for (Atom atom : group.getFrag().getAtoms()) {
 					if (atom.getElement().isChalcogen() && atom.getElement() != ChemEl.O &&
 							atom.getBondCount() == 3 && atom.getIncomingValency() == 3 && atom.getCharge() == 0) {
 						atom.addChargeAndProtons(1, 1);
@@ -2332,7 +2336,7 @@ class StructureBuilder {
 	 */
 	private void processStereochemistry(Element molecule, Fragment uniFrag) throws StructureBuildingException {
 		List<Element> stereoChemistryEls = findStereochemistryElsInProcessingOrder(molecule);
-		List<Atom> atomList = uniFrag.getAtomList();
+		List<Atom> atomList = uniFrag.getAtoms();
 		List<Atom> atomsWithPreDefinedAtomParity = new ArrayList<Atom>();
 		for (Atom atom : atomList) {
 			if (atom.getAtomParity()!=null){
@@ -2375,10 +2379,9 @@ class StructureBuilder {
 	 */
 	private List<Element> findStereochemistryElsInProcessingOrder(Element parentEl) {
 		List<Element> matchingElements = new ArrayList<Element>();
-		List<Element> children =parentEl.getChildElements();
 		List<Element> stereochemistryElsAtThisLevel = new ArrayList<Element>();
-		for (int i = children.size()-1; i >=0; i--) {
-			Element child = children.get(i);
+		for (int i = parentEl.getChildCount() - 1; i >=0; i--) {
+			Element child = parentEl.getChild(i);
 			if (child.getName().equals(STEREOCHEMISTRY_EL)){
 				stereochemistryElsAtThisLevel.add(child);
 			}
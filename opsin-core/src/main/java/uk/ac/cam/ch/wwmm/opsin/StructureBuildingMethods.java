@@ -2,6 +2,7 @@ package uk.ac.cam.ch.wwmm.opsin;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
@@ -269,7 +270,7 @@ class StructureBuildingMethods {
 					if (atomsToJoinTo == null){
 						throw new StructureBuildingException("Unlocanted substitution failed: unable to find suitable atom to bond atom with id:" + frag.getOutAtom(0).getAtom().getID() + " to!");
 					}
-					if (AmbiguityChecker.isSubstitutionAmbiguous(atomsToJoinTo, 1)) {
+					if (AmbiguityChecker.isSubstitutionAmbiguous(state, atomsToJoinTo, 1)) {
 						state.addIsAmbiguous("Connection of " + group.getValue() + " to " + atomsToJoinTo.get(0).getFrag().getTokenEl().getValue());
 					}
 					joinFragmentsSubstitutively(state, frag, atomsToJoinTo.get(0));
@@ -292,7 +293,7 @@ class StructureBuildingMethods {
 		List<Atom> atomsToHalogenate = new ArrayList<Atom>();
 		for (Fragment fragment : fragmentsToAttachTo) {
 			FragmentTools.convertSpareValenciesToDoubleBonds(fragment);
-			for (Atom atom : fragment.getAtomList()) {
+			for (Atom atom : fragment.getAtoms()) {
 				int substitutableHydrogen = calculateSubstitutableHydrogenAtoms(atom);
 				if (substitutableHydrogen > 0 && FragmentTools.isCharacteristicAtom(atom)){
 					continue;
@@ -425,9 +426,9 @@ class StructureBuildingMethods {
 			if (atomsToJoinTo == null) {
 				throw new StructureBuildingException("Unlocanted substitution failed: unable to find suitable atom to bond atom with id:" + frag.getOutAtom(0).getAtom().getID() + " to!");
 			}
-			if (AmbiguityChecker.isSubstitutionAmbiguous(atomsToJoinTo, numOfSubstituents)) {
+			if (AmbiguityChecker.isSubstitutionAmbiguous(state, atomsToJoinTo, numOfSubstituents)) {
 				state.addIsAmbiguous("Connection of " + group.getValue() + " to " + atomsToJoinTo.get(0).getFrag().getTokenEl().getValue());
-				List<Atom> atomsPreferredByEnvironment = AmbiguityChecker.useAtomEnvironmentsToGivePlausibleSubstitution(atomsToJoinTo, numOfSubstituents);
+				List<Atom> atomsPreferredByEnvironment = AmbiguityChecker.useAtomEnvironmentsToGivePlausibleSubstitution(state, atomsToJoinTo, numOfSubstituents);
 				if (atomsPreferredByEnvironment != null) {
 					atomsToJoinTo = atomsPreferredByEnvironment;
 				}
@@ -475,8 +476,8 @@ class StructureBuildingMethods {
 		List<Element> subtractivePrefixElements = new ArrayList<Element>();
 		List<Element> isotopeSpecifications = new ArrayList<Element>();
 
-		List<Element> children =subOrRoot.getChildElements();
-		for (Element currentEl : children) {
+		for (int i = 0, l = subOrRoot.getChildCount(); i < l; i++) {
+			Element currentEl = subOrRoot.getChild(i);
 			String elName =currentEl.getName();
 			if (elName.equals(UNSATURATOR_EL)){
 				unsaturators.add(currentEl);
@@ -721,11 +722,11 @@ class StructureBuildingMethods {
 	 * @throws StructureBuildingException
 	 */
 	static void applyUnlocantedSubtractivePrefixes(BuildState state, Fragment fragment, ChemEl chemEl, int count) throws StructureBuildingException {
-		List<Atom> applicableTerminalAtoms = FragmentTools.findHydroxyLikeTerminalAtoms(fragment.getAtomList(), chemEl);
+		List<Atom> applicableTerminalAtoms = FragmentTools.findHydroxyLikeTerminalAtoms(fragment.getAtoms(), chemEl);
 		if (applicableTerminalAtoms.isEmpty() || applicableTerminalAtoms.size() < count) {
 			throw new StructureBuildingException("Unable to find terminal atom of type: " + chemEl + " for subtractive nomenclature");
 		}
-		if (AmbiguityChecker.isSubstitutionAmbiguous(applicableTerminalAtoms, count)) {
+		if (AmbiguityChecker.isSubstitutionAmbiguous(state, applicableTerminalAtoms, count)) {
 			state.addIsAmbiguous("Group to remove with subtractive prefix");
 		}
 		for (int i = 0; i < count; i++) {
@@ -873,8 +874,9 @@ class StructureBuildingMethods {
 		 * The atoms in atomsWithSV are in atom order those that can take a hydro element and then those that shouldn't really take a hydro element as its absence is unambiguous
 		 */
 		List<Atom> atomsAcceptingHydroPrefix = new ArrayList<Atom>();
-		Set<Atom> atomsWhichImplicitlyHadTheirSVRemoved = new HashSet<Atom>();
-		List<Atom> atomList = frag.getAtomList();
+		//indexed by Fragment.getAtomIndex
+		BitSet atomsWhichImplicitlyHadTheirSVRemoved = new BitSet(frag.getAtomIndexLimit());
+		List<Atom> atomList = frag.getAtoms();
 		for (Atom atom : atomList) {
 			if (atom.getType().equals(SUFFIX_TYPE_VAL)){
 				continue;
@@ -885,7 +887,7 @@ class StructureBuildingMethods {
 				//if we take into account suffixes is the SV removed
 				atom.ensureSVIsConsistantWithValency(true);
 				if (!atom.hasSpareValency()) {
-					atomsWhichImplicitlyHadTheirSVRemoved.add(atom);
+					atomsWhichImplicitlyHadTheirSVRemoved.set(frag.getAtomIndex(atom));
 				}
 			}
 		}
@@ -906,13 +908,14 @@ class StructureBuildingMethods {
 		List<Atom> atomsWithDefiniteSV = new ArrayList<Atom>();
 		List<Atom> otherAtomsThatCanHaveHydro = new ArrayList<Atom>();
 		for(Atom a : atomsAcceptingHydroPrefix) {
-			if (atomsWhichImplicitlyHadTheirSVRemoved.contains(a)) {
+			if (atomsWhichImplicitlyHadTheirSVRemoved.get(frag.getAtomIndex(a))) {
 				otherAtomsThatCanHaveHydro.add(a);
 			}
 			else {
 				boolean canFormDoubleBond = false;
-				for(Atom aa : frag.getIntraFragmentAtomNeighbours(a)) {
-					if(aa.hasSpareValency()) {
+				for(Bond b : a.getBonds()) {
+					Atom aa = b.getOtherAtom(a);
+					if(aa.hasSpareValency() && frag.containsAtom(aa)) {
 						canFormDoubleBond = true;
 						break;
 					}
@@ -936,7 +939,7 @@ class StructureBuildingMethods {
 		int svCountAfterRemoval = atomsWithDefiniteSV.size() - hydrogenElsCount;
 		if (svCountAfterRemoval > 1) { //ambiguity likely. If it's 1 then an atom will be implicitly hydrogenated
 			//NOTE: as hydrogens as added in pairs the unambiguous if one hydrogen is added and allow atoms are identical condition is unlikely to be ever satisfied
-			if (!(AmbiguityChecker.allAtomsEquivalent(atomsWithDefiniteSV) &&
+			if (!(AmbiguityChecker.allAtomsEquivalent(state, atomsWithDefiniteSV) &&
 					(hydrogenElsCount == 1 || hydrogenElsCount == atomsWithDefiniteSV.size() - 1))) {
 				state.addIsAmbiguous("Ambiguous choice of positions to add hydrogen to on " + frag.getTokenEl().getValue());
 			}
@@ -990,13 +993,13 @@ class StructureBuildingMethods {
 				if (alternativeBondsThatCouldBeUnsaturated.size() >= numToUnsaturate) {
 					List<Bond> allBonds = new ArrayList<Bond>(bondsThatCouldBeUnsaturated);
 					allBonds.addAll(alternativeBondsThatCouldBeUnsaturated);
-					if (!(AmbiguityChecker.allBondsEquivalent(allBonds) &&
+					if (!(AmbiguityChecker.allBondsEquivalent(state, allBonds) &&
 							numToUnsaturate == 1 )) {
 						state.addIsAmbiguous("Unsaturation of bonds of " + frag.getTokenEl().getValue());
 					}
 				}
 				else {
-					if (!(AmbiguityChecker.allBondsEquivalent(bondsThatCouldBeUnsaturated) && 
+					if (!(AmbiguityChecker.allBondsEquivalent(state, bondsThatCouldBeUnsaturated) && 
 							(numToUnsaturate == 1 || numToUnsaturate == bondsThatCouldBeUnsaturated.size() - 1))){
 						state.addIsAmbiguous("Unsaturation of bonds of " + frag.getTokenEl().getValue());
 					}
@@ -1090,7 +1093,7 @@ class StructureBuildingMethods {
 			Integer count = heteroatomDescriptionToCount.get(desc);
 			heteroatomDescriptionToCount.put(desc, count != null ? count + 1 : 1);
 		}
-		List<Atom> atomlist = frag.getAtomList();
+		List<Atom> atomlist = frag.getAtoms();
 		for (Entry<HeteroAtomSmilesAndLambda, Integer> entry : heteroatomDescriptionToCount.entrySet()) {
 			HeteroAtomSmilesAndLambda desc = entry.getKey();
 			int replacementsRequired = entry.getValue();
@@ -1123,7 +1126,7 @@ class StructureBuildingMethods {
 			}
 			
 			if (atomsThatCouldBeReplaced.size() > replacementsRequired && !isCycloAlkaneHeteroatomSpecialCase(frag, replacementsRequired, atomsThatCouldBeReplaced)) {
-				if (!(AmbiguityChecker.allAtomsEquivalent(atomsThatCouldBeReplaced) &&
+				if (!(AmbiguityChecker.allAtomsEquivalent(state, atomsThatCouldBeReplaced) &&
 						(replacementsRequired == 1 || replacementsRequired == atomsThatCouldBeReplaced.size() - 1))) {
 					//by convention cycloalkanes can have one unsaturation implicitly at the 1 locant
 					state.addIsAmbiguous("Heteroatom replacement on " + frag.getTokenEl().getValue());
@@ -1182,7 +1185,7 @@ class StructureBuildingMethods {
 					if (parentAtomsToApplyTo == null){
 						throw new StructureBuildingException("Failed to find sufficient hydrogen atoms for unlocanted hydrogen isotope replacement");
 					}
-					if (AmbiguityChecker.isSubstitutionAmbiguous(parentAtomsToApplyTo, multiplier)) {
+					if (AmbiguityChecker.isSubstitutionAmbiguous(state, parentAtomsToApplyTo, multiplier)) {
 						if (!casIsotopeAmbiguitySpecialCase(frag, parentAtomsToApplyTo, multiplier)) {
 							state.addIsAmbiguous("Position of hydrogen isotope on " + frag.getTokenEl().getValue());
 						}
@@ -1196,7 +1199,7 @@ class StructureBuildingMethods {
 				}
 				else {
 					List<Atom> parentAtomsToApplyTo = new ArrayList<Atom>();
-					for (Atom atom : frag.getAtomList()) {
+					for (Atom atom : frag.getAtoms()) {
 						if (atom.getElement() == chemEl) {
 							parentAtomsToApplyTo.add(atom);
 						}
@@ -1204,7 +1207,7 @@ class StructureBuildingMethods {
 					if (parentAtomsToApplyTo.size() < multiplier) {
 						throw new StructureBuildingException("Failed to find sufficient atoms for " + chemEl.toString() + " isotope replacement");
 					}
-					if (AmbiguityChecker.isSubstitutionAmbiguous(parentAtomsToApplyTo, multiplier)) {
+					if (AmbiguityChecker.isSubstitutionAmbiguous(state, parentAtomsToApplyTo, multiplier)) {
 						state.addIsAmbiguous("Position of isotope on " + frag.getTokenEl().getValue());
 					}
 					for (int j = 0; j < multiplier; j++) {
@@ -1220,7 +1223,7 @@ class StructureBuildingMethods {
 		if (multiplier !=1) {
 			return false;
 		}
-		List<Atom> atoms = frag.getAtomList();
+		List<Atom> atoms = frag.getAtoms();
 		Atom firstAtom = atoms.get(0);
 		if (!parentAtomsToApplyTo.get(0).equals(firstAtom)) {
 			return false;
@@ -1261,7 +1264,7 @@ class StructureBuildingMethods {
 			throw new StructureBuildingException("Failed to assign all unlocanted radicals to actual atoms without violating valency");
 		}
 		if (!((ALKANESTEM_SUBTYPE_VAL.equals(frag.getSubType()) || HETEROSTEM_SUBTYPE_VAL.equals(frag.getSubType())) && possibleAtoms.get(0).equals(frag.getFirstAtom()))) {
-			if (AmbiguityChecker.isSubstitutionAmbiguous(possibleAtoms, 1)) {
+			if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleAtoms, 1)) {
 				state.addIsAmbiguous("Positioning of radical on: " + frag.getTokenEl().getValue());
 			}
 		}
@@ -1287,21 +1290,29 @@ class StructureBuildingMethods {
 	
 	private static List<Bond> findBondsToUnSaturate(Fragment frag, int bondOrder, boolean allowAdjacentUnsaturatedBonds, Set<Bond> bondsToIgnore) {
 		List<Bond> bondsToUnsaturate = new ArrayList<Bond>();
-		mainLoop: for (Atom atom1 : frag.getAtomList()) {
+		List<Atom> atoms = frag.getAtoms();
+		//both indexed by Fragment.getAtomIndex. The atoms with a bond chosen for unsaturation and the bond each atom chose, as each atom chooses at most one
+		BitSet unsaturatedAtoms = new BitSet(frag.getAtomIndexLimit());
+		Bond[] chosenBonds = new Bond[frag.getAtomIndexLimit()];
+		
+		mainLoop: for (int i = 0, l = atoms.size(); i < l; i++) {
+			Atom atom1 = atoms.get(i);
 			if (atom1.hasSpareValency() || SUFFIX_TYPE_VAL.equals(atom1.getType()) || atom1.getProperty(Atom.ISALDEHYDE) !=null) {
 				continue;
 			}
+			int atom1Index = frag.getAtomIndex(atom1);
+			boolean atom1Unsaturated = unsaturatedAtoms.get(atom1Index);
+			//don't place implicitly unsaturated bonds next to each other
+			if (atom1Unsaturated && !allowAdjacentUnsaturatedBonds) {
+				continue;
+			}
 			List<Bond> bonds = atom1.getBonds();
 			int incomingValency = 0;
 			for (Bond bond : bonds) {
-				//don't place implicitly unsaturated bonds next to each other
 				if (bond.getOrder() != 1 && !allowAdjacentUnsaturatedBonds) {
 					continue mainLoop;
 				}
-				if (bondsToUnsaturate.contains(bond)) {
-					if (!allowAdjacentUnsaturatedBonds) {
-						continue mainLoop;
-					}
+				if (atom1Unsaturated && isChosenForUnsaturation(frag, bond, chosenBonds)) {
 					incomingValency += bondOrder;
 				}
 				else {
@@ -1314,22 +1325,24 @@ class StructureBuildingMethods {
 				continue;
 			}
 			bondLoop: for (Bond bond : bonds) {
-				if (bond.getOrder() == 1 && !bondsToUnsaturate.contains(bond) && !bondsToIgnore.contains(bond)) {
+				if (bond.getOrder() == 1 && !(atom1Unsaturated && isChosenForUnsaturation(frag, bond, chosenBonds)) && !bondsToIgnore.contains(bond)) {
 					Atom atom2 = bond.getOtherAtom(atom1);
-					if (frag.getAtomByID(atom2.getID()) != null) {//check other atom is actually in the fragment!
+					int atom2Index = frag.getAtomIndex(atom2);
+					if (atom2Index >= 0) {//check other atom is actually in the fragment!
 						if (atom2.hasSpareValency() || SUFFIX_TYPE_VAL.equals(atom2.getType()) || atom2.getProperty(Atom.ISALDEHYDE) !=null) {
 							continue;
 						}
+						boolean atom2Unsaturated = unsaturatedAtoms.get(atom2Index);
+						//don't place implicitly unsaturated bonds next to each other
+						if (atom2Unsaturated && !allowAdjacentUnsaturatedBonds) {
+							continue;
+						}
 						int incomingValency2 = 0;
 						for (Bond bond2 : atom2.getBonds()) {
-							//don't place implicitly unsaturated bonds next to each other
 							if (bond2.getOrder() != 1 && !allowAdjacentUnsaturatedBonds) {
 								continue bondLoop;
 							}
-							if (bondsToUnsaturate.contains(bond2)) {
-								if (!allowAdjacentUnsaturatedBonds) {
-									continue bondLoop;
-								}
+							if (atom2Unsaturated && isChosenForUnsaturation(frag, bond2, chosenBonds)) {
 								incomingValency2 += bondOrder;
 							}
 							else {
@@ -1342,6 +1355,9 @@ class StructureBuildingMethods {
 							continue;
 						}
 						bondsToUnsaturate.add(bond);
+						chosenBonds[atom1Index] = bond;
+						unsaturatedAtoms.set(atom1Index);
+						unsaturatedAtoms.set(atom2Index);
 						break bondLoop;
 					}
 				}
@@ -1349,6 +1365,24 @@ class StructureBuildingMethods {
 		}
 		return bondsToUnsaturate;
 	}
+
+	/**
+	 * Each atom chooses at most one bond to unsaturate, hence a bond has been chosen
+	 * if it is the bond chosen by either of its atoms.
+	 * Atoms outside the fragment cannot have chosen a bond
+	 * @param frag
+	 * @param bond
+	 * @param chosenBonds indexed by Fragment.getAtomIndex
+	 * @return
+	 */
+	private static boolean isChosenForUnsaturation(Fragment frag, Bond bond, Bond[] chosenBonds) {
+		int fromIndex = frag.getAtomIndex(bond.getFromAtom());
+		if (fromIndex >= 0 && chosenBonds[fromIndex] == bond) {
+			return true;
+		}
+		int toIndex = frag.getAtomIndex(bond.getToAtom());
+		return toIndex >= 0 && chosenBonds[toIndex] == bond;
+	}
 	
 	
 	/**
@@ -1697,7 +1731,7 @@ class StructureBuildingMethods {
 							if (possibleAtoms.isEmpty()) {
 								throw new StructureBuildingException("No suitable atom found for multiplicative operation");
 							}
-							if (AmbiguityChecker.isSubstitutionAmbiguous(possibleAtoms, 1)) {
+							if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleAtoms, 1)) {
 								state.addIsAmbiguous("Connection to multiplied group: " + multipliedGroup.getValue());
 							}
 							atomToJoinTo = possibleAtoms.get(0);
@@ -1790,7 +1824,7 @@ class StructureBuildingMethods {
 				String locant = getLocantOfEndOfChainIfGreaterThan1(multipliedFrag, primesAdded);
 				if (locant != null) {
 					Atom preferredAtom = multipliedFrag.getAtomByLocantOrThrow(locant);
-					List<Atom> possibleAtoms = FragmentTools.findnAtomsForSubstitution(multipliedFrag.getAtomList(), preferredAtom, 1, bondOrder, true);
+					List<Atom> possibleAtoms = FragmentTools.findnAtomsForSubstitution(multipliedFrag.getAtoms(), preferredAtom, 1, bondOrder, true);
 					if (possibleAtoms == null) {
 						possibleAtoms = Collections.emptyList();
 					}
@@ -2044,12 +2078,12 @@ class StructureBuildingMethods {
 		Atom from = out.getAtom();
 		int bondOrder = out.getValency();
 		if (!out.isSetExplicitly()){//not set explicitly so may be an inappropriate atom
-			List<Atom> possibleAtoms = FragmentTools.findnAtomsForSubstitution(fragToBeJoined.getAtomList(), from, 1, bondOrder, false);
+			List<Atom> possibleAtoms = FragmentTools.findnAtomsForSubstitution(fragToBeJoined.getAtoms(), from, 1, bondOrder, false);
 			if (possibleAtoms == null){
 				throw new StructureBuildingException("Failed to assign all unlocanted radicals to actual atoms without violating valency");
 			}
 			if (!((ALKANESTEM_SUBTYPE_VAL.equals(fragToBeJoined.getSubType()) || HETEROSTEM_SUBTYPE_VAL.equals(fragToBeJoined.getSubType())) && possibleAtoms.get(0).equals(fragToBeJoined.getFirstAtom()))) {
-				if (AmbiguityChecker.isSubstitutionAmbiguous(possibleAtoms, 1)) {
+				if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleAtoms, 1)) {
 					state.addIsAmbiguous("Positioning of radical on: " + fragToBeJoined.getTokenEl().getValue());
 				}
 			}
@@ -2073,7 +2107,7 @@ class StructureBuildingMethods {
 	 */
 	static Atom[] formEpoxide(BuildState state, Fragment bridgingFragment, Atom atomToJoinTo) throws StructureBuildingException {
 		Fragment fragToJoinTo = atomToJoinTo.getFrag();
-		List<Atom> atomList = fragToJoinTo.getAtomList();
+		List<Atom> atomList = fragToJoinTo.getAtoms();
 		if (atomList.size()==1){
 			throw new StructureBuildingException("Epoxides must be formed between two different atoms");
 		}
@@ -2097,14 +2131,14 @@ class StructureBuildingMethods {
 		else{
 			int index = atomList.indexOf(firstAtomToJoinTo);
 			Atom preferredAtom = (index + 1 >= atomList.size()) ? atomList.get(index - 1) : atomList.get(index + 1);
-			List<Atom> possibleSecondAtom = FragmentTools.findnAtomsForSubstitution(fragToJoinTo.getAtomList(), preferredAtom, 1, 1, true);
+			List<Atom> possibleSecondAtom = FragmentTools.findnAtomsForSubstitution(fragToJoinTo.getAtoms(), preferredAtom, 1, 1, true);
 			if (possibleSecondAtom != null) {
 				possibleSecondAtom.removeAll(Collections.singleton(firstAtomToJoinTo));
 			}
 			if (possibleSecondAtom == null || possibleSecondAtom.size() == 0) {
 				throw new StructureBuildingException("Unable to find suitable atom to form bridge");
 			}
-			if (AmbiguityChecker.isSubstitutionAmbiguous(possibleSecondAtom, 1)) {
+			if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleSecondAtom, 1)) {
 				state.addIsAmbiguous("Addition of bridge to: "+ fragToJoinTo.getTokenEl().getValue());
 			}
 			secondAtomToJoinTo = possibleSecondAtom.get(0);
@@ -2164,14 +2198,14 @@ class StructureBuildingMethods {
 				for (int j = i + 1; j < l; j++) {
 					Element possibleOtherRoot = possibleParents.get(j);
 					if (possibleOtherRoot.getParent().getName().equals(ROOT_EL)) {
-						atoms.addAll(possibleOtherRoot.getFrag().getAtomList());
+						atoms.addAll(possibleOtherRoot.getFrag().getAtoms());
 					}
 				}
 				rootHandled = true;
 				substitutableAtoms = FragmentTools.findnAtomsForSubstitution(atoms, frag.getDefaultInAtom(), numberOfSubstitutions, bondOrder, true, preserveValency);
 			}
 			else{
-				substitutableAtoms = FragmentTools.findnAtomsForSubstitution(frag.getAtomList(), frag.getDefaultInAtom(), numberOfSubstitutions, bondOrder, true, preserveValency);
+				substitutableAtoms = FragmentTools.findnAtomsForSubstitution(frag.getAtoms(), frag.getDefaultInAtom(), numberOfSubstitutions, bondOrder, true, preserveValency);
 			}
 			if (substitutableAtoms != null){
 				return substitutableAtoms;
@@ -2394,7 +2428,8 @@ class StructureBuildingMethods {
 
 	private static List<Element> getChildrenIgnoringLocantlessImplicitBrackets(Element implicitBracket) {
 		List<Element> childrenAndImplicitBracketChildren = new ArrayList<Element>();
-		for (Element child : implicitBracket.getChildElements()) {
+		for (int i = 0, l = implicitBracket.getChildCount(); i < l; i++) {
+			Element child = implicitBracket.getChild(i);
 			if (child.getName().equals(BRACKET_EL) && IMPLICIT_TYPE_VAL.equals(child.getAttributeValue(TYPE_ATR)) && child.getAttribute(LOCANT_EL) == null) {
 				childrenAndImplicitBracketChildren.addAll(getChildrenIgnoringLocantlessImplicitBrackets(child));
 			}
@@ -2436,9 +2471,8 @@ class StructureBuildingMethods {
 
 	private static boolean potentiallyCanSubstitute(Element subBracketOrRoot) {
 		Element parent = subBracketOrRoot.getParent();
-		List<Element> children =parent.getChildElements();
-		for (int i = parent.indexOf(subBracketOrRoot) +1 ; i < children.size(); i++) {
-			if (!children.get(i).getName().equals(HYPHEN_EL)){
+		for (int i = parent.indexOf(subBracketOrRoot) +1, l = parent.getChildCount(); i < l; i++) {
+			if (!parent.getChild(i).getName().equals(HYPHEN_EL)){
 				return true;
 			}
 		}
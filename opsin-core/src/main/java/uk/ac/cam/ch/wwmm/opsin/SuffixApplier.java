@@ -134,7 +134,7 @@ class SuffixApplier {
 											}
 										}
 										if (!(substitutionsRequired == 1 && (ALKANESTEM_SUBTYPE_VAL.equals(frag.getSubType()) || HETEROSTEM_SUBTYPE_VAL.equals(frag.getSubType())) && possibleAtomsToAttachSuffixTo.get(0).equals(frag.getFirstAtom()))) {
-											if (AmbiguityChecker.isSubstitutionAmbiguous(possibleAtomsToAttachSuffixTo, substitutionsRequired)) {
+											if (AmbiguityChecker.isSubstitutionAmbiguous(state, possibleAtomsToAttachSuffixTo, substitutionsRequired)) {
 												state.addIsAmbiguous("Addition of " + suffixValue +" suffix to: " + group.getValue());
 											}
 										}
@@ -281,7 +281,7 @@ class SuffixApplier {
 						return;
 					}
 				}
-				if (AmbiguityChecker.isSubstitutionAmbiguous(parentAtomsToApplyTo, multiplier)) {
+				if (AmbiguityChecker.isSubstitutionAmbiguous(state, parentAtomsToApplyTo, multiplier)) {
 					state.addIsAmbiguous("Position of hydrogen isotope on " + frag.getTokenEl().getValue());
 				}
 				for (int j = 0; j < multiplier; j++) {
@@ -306,7 +306,7 @@ class SuffixApplier {
 						return;
 					}
 				}
-				if (AmbiguityChecker.isSubstitutionAmbiguous(parentAtomsToApplyTo, multiplier)) {
+				if (AmbiguityChecker.isSubstitutionAmbiguous(state, parentAtomsToApplyTo, multiplier)) {
 					state.addIsAmbiguous("Position of isotope on " + frag.getTokenEl().getValue());
 				}
 				for (int j = 0; j < multiplier; j++) {
@@ -547,7 +547,7 @@ class SuffixApplier {
 		}
 
 		Atom chosenAtom =  listFromWhichToChoose.get(0);
-		if (!AmbiguityChecker.allAtomsEquivalent(listFromWhichToChoose)) {
+		if (!AmbiguityChecker.allAtomsEquivalent(state, listFromWhichToChoose)) {
 			state.addIsAmbiguous("Addition of charge suffix to: " + chosenAtom.getFrag().getTokenEl().getValue());
 		}
 
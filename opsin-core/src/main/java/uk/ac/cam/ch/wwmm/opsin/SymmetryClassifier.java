@@ -0,0 +1,153 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Assigns atoms to symmetry classes i.e. atoms in identical environments share a class.
+ * Substitutable hydrogen are taken into account, as are multiple bonds (in the same way as the CIP rules), but the structure is never modified.
+ *
+ * Colourings are cached per connected component along with the {@link Fragment#getModificationCount()} of the component's fragments,
+ * hence repeated ambiguity checks on an unchanged fragment reuse the same colouring without revisiting the component
+ * whilst any structural edit (e.g. a new bond, a change in bond order or hydrogen count) results in recalculation.
+ * One instance is used per {@link BuildState}
+ */
+class SymmetryClassifier {
+
+	private static final int MAX_CACHED_COMPONENTS = 8;
+
+	/** Most recently used first */
+	private final List<CachedColouring> cache = new ArrayList<CachedColouring>();
+
+	/**
+	 * Returns the symmetry classes of the atoms that are connected to the given atoms
+	 * @param startingAtoms
+	 * @return
+	 */
+	AtomColourRefiner getSymmetryClasses(Collection<Atom> startingAtoms) {
+		for (int i = 0, l = cache.size(); i < l; i++) {
+			CachedColouring cached = cache.get(i);
+			if (cached.isValidFor(startingAtoms)) {
+				if (i > 0) {
+					cache.remove(i);
+					cache.add(0, cached);
+				}
+				return cached.colouring;
+			}
+		}
+		List<Atom> atoms = findConnectedAtoms(startingAtoms);
+		int[] hydrogensToAdd = new int[atoms.size()];
+		for (int i = 0; i < hydrogensToAdd.length; i++) {
+			hydrogensToAdd[i] = StructureBuildingMethods.calculateSubstitutableHydrogenAtoms(atoms.get(i));
+		}
+		AtomColourRefiner colouring = AtomColourRefiner.colourWithGhostAtoms(atoms, hydrogensToAdd);
+		CachedColouring cached = CachedColouring.create(atoms, colouring);
+		if (cached != null) {
+			cache.add(0, cached);
+			if (cache.size() > MAX_CACHED_COMPONENTS) {
+				cache.remove(MAX_CACHED_COMPONENTS);
+			}
+		}
+		return colouring;
+	}
+
+	/**
+	 * The atoms connected to the starting atoms, ordered by ID
+	 */
+	private static List<Atom> findConnectedAtoms(Collection<Atom> startingAtoms) {
+		Set<Atom> visited = new HashSet<Atom>();
+		List<Atom> atoms = new ArrayList<Atom>();
+		Deque<Atom> stack = new ArrayDeque<Atom>(startingAtoms);
+		while (!stack.isEmpty()) {
+			Atom a = stack.removeLast();
+			if (visited.add(a)) {
+				atoms.add(a);
+				for (Bond b : a.getBonds()) {
+					stack.add(b.getOtherAtom(a));
+				}
+			}
+		}
+		Collections.sort(atoms, new Comparator<Atom>() {
+			public int compare(Atom a1, Atom a2) {
+				return a1.getID() < a2.getID() ? -1 : (a1.getID() == a2.getID() ? 0 : 1);
+			}
+		});
+		return atoms;
+	}
+
+	/**
+	 * The colouring of a component, valid whilst none of the component's fragments have been modified
+	 */
+	private static class CachedColouring {
+		/** Ordered by ID */
+		private final Atom[] atoms;
+		private final int[] atomIds;
+		private final Fragment[] fragments;
+		private final int[] modificationCounts;
+		private final AtomColourRefiner colouring;
+
+		private CachedColouring(Atom[] atoms, Fragment[] fragments, AtomColourRefiner colouring) {
+			this.atoms = atoms;
+			this.atomIds = new int[atoms.length];
+			for (int i = 0; i < atoms.length; i++) {
+				atomIds[i] = atoms[i].getID();
+			}
+			this.fragments = fragments;
+			this.modificationCounts = new int[fragments.length];
+			for (int i = 0; i < fragments.length; i++) {
+				modificationCounts[i] = fragments[i].getModificationCount();
+			}
+			this.colouring = colouring;
+		}
+
+		/**
+		 * @param atoms A component, ordered by ID
+		 * @param colouring
+		 * @return The cache entry, or null if a change to the component could not be detected e.g. an atom is not in a fragment
+		 */
+		static CachedColouring create(List<Atom> atoms, AtomColourRefiner colouring) {
+			Set<Fragment> fragments = new LinkedHashSet<Fragment>();
+			for (Atom atom : atoms) {
+				Fragment frag = atom.getFrag();
+				if (frag == null) {
+					return null;
+				}
+				fragments.add(frag);
+			}
+			return new CachedColouring(atoms.toArray(new Atom[atoms.size()]), fragments.toArray(new Fragment[fragments.size()]), colouring);
+		}
+
+		/**
+		 * True if this colouring's component is unchanged and contains all the given atoms, in which case it is the component connected to them.
+		 * An edit that could change the component e.g. a bond to another fragment or an atom moving fragment, modifies at least one of the component's fragments
+		 * @param startingAtoms
+		 * @return
+		 */
+		boolean isValidFor(Collection<Atom> startingAtoms) {
+			if (startingAtoms.isEmpty()) {
+				return false;
+			}
+			for (int i = 0; i < fragments.length; i++) {
+				if (fragments[i].getModificationCount() != modificationCounts[i]) {
+					return false;
+				}
+			}
+			for (Atom atom : startingAtoms) {
+				int index = Arrays.binarySearch(atomIds, atom.getID());
+				if (index < 0 || atoms[index] != atom) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
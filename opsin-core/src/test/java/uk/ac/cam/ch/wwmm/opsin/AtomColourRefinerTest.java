@@ -0,0 +1,80 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AtomColourRefinerTest {
+
+	private static final Comparator<Atom> BY_ELEMENT = new Comparator<Atom>() {
+		public int compare(Atom a, Atom b) {
+			return a.getElement().compareTo(b.getElement());
+		}
+	};
+
+	private FragmentManager fm;
+
+	@Before
+	public void setUp() {
+		IDManager idManager = new IDManager();
+		fm = new FragmentManager(new SMILESFragmentBuilder(idManager), idManager);
+	}
+
+	@Test
+	public void testCyclohexaneAllEquivalent() throws StructureBuildingException {
+		assertEquals(1, countColours(fm.buildSMILES("C1CCCCC1")));
+	}
+
+	@Test
+	public void testPentane() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CCCCC");
+		AtomColourRefiner refiner = AtomColourRefiner.colour(frag.getAtoms(), BY_ELEMENT);
+		List<Atom> atoms = frag.getAtoms();
+		assertEquals(refiner.getColour(atoms.get(0)), refiner.getColour(atoms.get(4)));
+		assertEquals(refiner.getColour(atoms.get(1)), refiner.getColour(atoms.get(3)));
+		assertNotEquals(refiner.getColour(atoms.get(0)), refiner.getColour(atoms.get(1)));
+		assertNotEquals(refiner.getColour(atoms.get(1)), refiner.getColour(atoms.get(2)));
+		assertEquals(3, countColours(frag));
+	}
+
+	@Test
+	public void testDistantHeteroatomBreaksSymmetry() throws StructureBuildingException {
+		//every carbon is distinguished by its distance from the oxygen
+		assertEquals(7, countColours(fm.buildSMILES("CCCCCCO")));
+	}
+
+	@Test
+	public void testRegularGraphsNotDistinguished() throws StructureBuildingException {
+		//colour refinement cannot distinguish the atoms of two 3 membered rings from those of a 6 membered ring
+		Fragment frag = fm.buildSMILES("C1CC1.C1CCCCC1");
+		assertEquals(1, countColours(frag));
+	}
+
+	@Test
+	public void testAtomNotColoured() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CC");
+		AtomColourRefiner refiner = AtomColourRefiner.colour(frag.getAtoms(), BY_ELEMENT);
+		assertNull(refiner.getColour(fm.buildSMILES("C").getFirstAtom()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNeighbourMustBeColoured() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CC");
+		AtomColourRefiner.colour(frag.getAtoms().subList(0, 1), BY_ELEMENT);
+	}
+
+	private static int countColours(Fragment frag) {
+		AtomColourRefiner refiner = AtomColourRefiner.colour(frag.getAtoms(), BY_ELEMENT);
+		Set<Integer> colours = new HashSet<Integer>();
+		for (Atom a : frag.getAtoms()) {
+			colours.add(refiner.getColour(a));
+		}
+		return colours.size();
+	}
+}
@@ -35,6 +35,52 @@ public class AtomTest {
 		assertTrue("Atom now has locant 'C'", atom.hasLocant("C"));
 	}
 	
+	@Test
+	public void testRemoveAndClearLocants() {
+		Atom atom = new Atom(10, ChemEl.N, frag);
+		atom.addLocant("1");
+		atom.addLocant("N");
+		atom.addLocant("alpha");
+		assertEquals(3, atom.getLocants().size());
+		atom.removeLocant("N");
+		assertEquals(2, atom.getLocants().size());
+		assertEquals("1", atom.getFirstLocant());
+		assertEquals("alpha", atom.getLocants().get(1));
+		atom.clearLocants();
+		assertEquals(0, atom.getLocants().size());
+		assertNull(atom.getFirstLocant());
+		assertFalse(atom.hasLocant("1"));
+	}
+	
+	@Test
+	public void testProperties() {
+		Atom atom = new Atom(10, ChemEl.C, frag);
+		assertNull(atom.getProperty(Atom.ATOM_CLASS));
+		atom.setProperty(Atom.ATOM_CLASS, 2);
+		atom.setProperty(Atom.ISALDEHYDE, true);
+		assertEquals(Integer.valueOf(2), atom.getProperty(Atom.ATOM_CLASS));
+		assertEquals(Boolean.TRUE, atom.getProperty(Atom.ISALDEHYDE));
+		assertNull(atom.getProperty(Atom.ISANOMERIC));
+		atom.setProperty(Atom.ATOM_CLASS, null);
+		assertNull(atom.getProperty(Atom.ATOM_CLASS));
+	}
+	
+	@Test
+	public void testOptionalIntegerFields() {
+		Atom atom = new Atom(10, ChemEl.S, frag);
+		assertNull(atom.getIsotope());
+		assertNull(atom.getLambdaConventionValency());
+		assertNull(atom.getMinimumValency());
+		atom.setIsotope(34);
+		atom.setLambdaConventionValency(4);
+		atom.setMinimumValency(2);
+		assertEquals(Integer.valueOf(34), atom.getIsotope());
+		assertEquals(Integer.valueOf(4), atom.getLambdaConventionValency());
+		assertEquals(Integer.valueOf(2), atom.getMinimumValency());
+		atom.setLambdaConventionValency(null);
+		assertNull(atom.getLambdaConventionValency());
+	}
+	
 	@Test
 	public void testGetIncomingValency() throws StructureBuildingException {
 		assertEquals("No bonds", 0, sBuilder.build("C").getFirstAtom().getIncomingValency());
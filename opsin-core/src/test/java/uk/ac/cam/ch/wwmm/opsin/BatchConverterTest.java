@@ -0,0 +1,134 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class BatchConverterTest {
+
+	@Test
+	public void testMultipleOutputFormats() throws Exception {
+		ByteArrayOutputStream smiles = new ByteArrayOutputStream();
+		ByteArrayOutputStream cml = new ByteArrayOutputStream();
+		ByteArrayOutputStream sdf = new ByteArrayOutputStream();
+		new BatchConverter(Arrays.asList(
+				ResultWriter.forFormat("smi", smiles, true, false, false),
+				ResultWriter.forFormat("CML", cml, false, false, false),
+				ResultWriter.forFormat("sdf", sdf, false, false, false)), new NameToStructureConfig(), null, 0)
+				.convert(new ByteArrayInputStream("ethane\tid1\nfooarene\n".getBytes("UTF-8")));
+		assertEquals("CC\tethane\tid1" + OpsinTools.NEWLINE + "\tfooarene" + OpsinTools.NEWLINE, smiles.toString("UTF-8"));
+		String cmlString = cml.toString("UTF-8");
+		assertTrue(cmlString.contains(">ethane</name>"));
+		assertTrue(cmlString.trim().endsWith("</cml>"));
+		assertEquals(3, sdf.toString("UTF-8").split("\\$\\$\\$\\$\n", -1).length);
+		assertNull(ResultWriter.forFormat("foo", smiles, false, false, false));
+	}
+
+	@Test
+	public void testDuplicateNamesAreReused() throws Exception {
+		ByteArrayOutputStream smiles = new ByteArrayOutputStream();
+		String input = "ethane\tr1\nmethanol\tr2\nethane\tr3\nfooarene\nethane\tr4\n";
+		BatchConverter converter = new BatchConverter(Collections.singletonList(ResultWriter.forFormat("smi", smiles, true, false, false)), new NameToStructureConfig(), null, 2);
+		converter.convert(new ByteArrayInputStream(input.getBytes("UTF-8")));
+		String nl = OpsinTools.NEWLINE;
+		assertEquals("CC\tethane\tr1" + nl + "CO\tmethanol\tr2" + nl + "CC\tethane\tr3" + nl + "\tfooarene" + nl + "CC\tethane\tr4" + nl, smiles.toString("UTF-8"));
+		DuplicateNameCache<?> duplicateNames = converter.getDuplicateNameCache();
+		assertEquals(5, duplicateNames.getLookups());
+		assertEquals(2, duplicateNames.getReused());
+		assertEquals(1, duplicateNames.getDiscarded());
+	}
+
+	@Test
+	public void testDuplicateNamesKeepOnlyRenderedOutput() throws Exception {
+		String input = "ethane\nbenzene\nethane\nfooarene\nbenzene\n";
+		ByteArrayOutputStream smiles = new ByteArrayOutputStream();
+		ByteArrayOutputStream cml = new ByteArrayOutputStream();
+		BatchConverter converter = new BatchConverter(Arrays.asList(
+				ResultWriter.forFormat("smi", smiles, false, false, false),
+				ResultWriter.forFormat("cml", cml, false, false, false)), new NameToStructureConfig(), null, 10);
+		converter.convert(new ByteArrayInputStream(input.getBytes("UTF-8")));
+		assertEquals(2, converter.getDuplicateNameCache().getReused());
+
+		ByteArrayOutputStream expectedSmiles = new ByteArrayOutputStream();
+		ByteArrayOutputStream expectedCml = new ByteArrayOutputStream();
+		new BatchConverter(Arrays.asList(
+				ResultWriter.forFormat("smi", expectedSmiles, false, false, false),
+				ResultWriter.forFormat("cml", expectedCml, false, false, false)), new NameToStructureConfig(), null, 0)
+				.convert(new ByteArrayInputStream(input.getBytes("UTF-8")));
+		assertEquals(expectedSmiles.toString("UTF-8"), smiles.toString("UTF-8"));
+		assertEquals(expectedCml.toString("UTF-8"), cml.toString("UTF-8"));
+	}
+
+	@Test
+	public void testChunkedInputMatchesSequentialOutput() throws Exception {
+		String[] names = {"ethane", "m\u00e9thanol", "benzene", "fooarene", "pyridine", "", "acetic acid", "2-chloropropane"};
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			input.append(names[i % names.length]).append('\t').append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+		}
+		input.append("propane");
+		byte[] bytes = input.toString().getBytes("UTF-8");
+		File file = File.createTempFile("opsin", ".txt");
+		try {
+			FileOutputStream fos = new FileOutputStream(file);
+			fos.write(bytes);
+			fos.close();
+			ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+			new BatchConverter(Collections.singletonList(ResultWriter.forFormat("smi", sequential, true, false, false)), new NameToStructureConfig(), null, 0)
+				.convert(new ByteArrayInputStream(bytes));
+			ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+			new BatchConverter(Collections.singletonList(ResultWriter.forFormat("smi", chunked, true, false, false)), new NameToStructureConfig(), null, 10)
+				.convert(file, 3, 50);
+			ByteArrayOutputStream streamChunked = new ByteArrayOutputStream();
+			new BatchConverter(Collections.singletonList(ResultWriter.forFormat("smi", streamChunked, true, false, false)), new NameToStructureConfig(), null, 0)
+				.convert(new ByteArrayInputStream(bytes), 3, 7);
+			assertEquals(201, sequential.toString("UTF-8").split(OpsinTools.NEWLINE).length);
+			assertEquals(sequential.toString("UTF-8"), chunked.toString("UTF-8"));
+			assertEquals(sequential.toString("UTF-8"), streamChunked.toString("UTF-8"));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testFindChunkEnd() throws IOException {
+		File file = File.createTempFile("opsin", ".txt");
+		try {
+			FileOutputStream fos = new FileOutputStream(file);
+			fos.write("ab\ncd\r\nef".getBytes("UTF-8"));
+			fos.close();
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				assertEquals(3, BatchConverter.findChunkEnd(raf.getChannel(), 0, 9));
+				assertEquals(3, BatchConverter.findChunkEnd(raf.getChannel(), 2, 9));
+				assertEquals(7, BatchConverter.findChunkEnd(raf.getChannel(), 3, 9));
+				assertEquals(9, BatchConverter.findChunkEnd(raf.getChannel(), 7, 9));
+				assertEquals(9, BatchConverter.findChunkEnd(raf.getChannel(), 20, 9));
+			}
+			finally {
+				raf.close();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSplitLines() {
+		assertEquals(Arrays.asList("a", "", "b", "c", "d"), BatchConverter.splitLines(CharBuffer.wrap("a\n\nb\r\nc\rd")));
+		assertEquals(Arrays.asList("a"), BatchConverter.splitLines(CharBuffer.wrap("a\n")));
+		assertEquals(Collections.emptyList(), BatchConverter.splitLines(CharBuffer.wrap("")));
+	}
+}
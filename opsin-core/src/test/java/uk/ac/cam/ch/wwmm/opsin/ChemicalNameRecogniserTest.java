@@ -0,0 +1,112 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChemicalNameRecogniserTest {
+
+	@Test
+	public void testSingleWordNames() {
+		String text = "Then 2-methylpropan-1-ol (5 mL) was added to benzene, followed by (2R)-butan-2-ol.";
+		List<ChemicalNameSpan> spans = ChemicalNameRecogniser.findNames(text);
+		assertEquals(Arrays.asList("2-methylpropan-1-ol", "benzene", "(2R)-butan-2-ol"), namesOf(spans));
+		for (ChemicalNameSpan span : spans) {
+			assertEquals(span.getName(), text.substring((int) span.getStart(), (int) span.getEnd()));
+		}
+	}
+
+	@Test
+	public void testMultiWordNames() {
+		String text = "A solution of ethyl acetate and acetic acid was washed with sodium chloride.";
+		assertEquals(Arrays.asList("ethyl acetate", "acetic acid", "sodium chloride"), namesOf(ChemicalNameRecogniser.findNames(text)));
+	}
+
+	@Test
+	public void testPartialNamesAreNotReported() {
+		assertEquals(0, ChemicalNameRecogniser.findNames("The ethyl group was removed with acid.").size());
+		assertEquals(Arrays.asList("Diethyl ether"), namesOf(ChemicalNameRecogniser.findNames("Diethyl ether was distilled")));
+		assertEquals(0, ChemicalNameRecogniser.findNames("ethanolic ethanol1").size());
+	}
+
+	@Test
+	public void testListsOfNamesAreSplit() {
+		assertEquals(Arrays.asList("ethanol", "methanol"), namesOf(ChemicalNameRecogniser.findNames("ethanol methanol")));
+		assertEquals(Arrays.asList("ethanol", "acetate"), namesOf(ChemicalNameRecogniser.findNames("ethanol\nmethyl  acetate")));
+	}
+
+	@Test
+	public void testReaderIsReadIncrementally() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 200000; i++) {
+			sb.append("Step ").append(i).append(": ethyl acetate (").append(i).append(" g) and 1-chloro-").append(i % 9 + 2).append("-methylbenzene at 25 \u00b0C.\n");
+		}
+		String text = sb.toString();
+		List<ChemicalNameSpan> expected = ChemicalNameRecogniser.findNames(text);
+		assertTrue(expected.size() > 1000);
+
+		ChemicalNameRecogniser recogniser = new ChemicalNameRecogniser(new TrickleReader(text, 7), 100);
+		List<ChemicalNameSpan> spans = new ArrayList<ChemicalNameSpan>();
+		ChemicalNameSpan span;
+		while ((span = recogniser.next()) != null) {
+			spans.add(span);
+		}
+		assertEquals(expected.size(), spans.size());
+		for (int i = 0; i < spans.size(); i++) {
+			assertEquals(expected.get(i).getName(), spans.get(i).getName());
+			assertEquals(expected.get(i).getStart(), spans.get(i).getStart());
+			assertEquals(text.substring((int) spans.get(i).getStart(), (int) spans.get(i).getEnd()), spans.get(i).getName());
+		}
+	}
+
+	@Test
+	public void testMaxNameLength() throws IOException {
+		ChemicalNameRecogniser recogniser = new ChemicalNameRecogniser(new StringReader("2-methylpropan-1-ol and ethanol"), 10);
+		assertEquals("ethanol", recogniser.next().getName());
+		assertNull(recogniser.next());
+	}
+
+	private static List<String> namesOf(List<ChemicalNameSpan> spans) {
+		List<String> names = new ArrayList<String>();
+		for (ChemicalNameSpan span : spans) {
+			names.add(span.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Returns at most the given number of chars per read
+	 */
+	private static class TrickleReader extends Reader {
+		private final String text;
+		private final int maxRead;
+		private int pos = 0;
+
+		TrickleReader(String text, int maxRead) {
+			this.text = text;
+			this.maxRead = maxRead;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (pos == text.length()) {
+				return -1;
+			}
+			int read = Math.min(Math.min(len, maxRead), text.length() - pos);
+			text.getChars(pos, pos + read, cbuf, off);
+			pos += read;
+			return read;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class CompressionFormatTest {
+
+	@Test
+	public void testFromFileName() {
+		assertEquals(CompressionFormat.gzip, CompressionFormat.fromFileName("names.txt.gz"));
+		assertEquals(CompressionFormat.gzip, CompressionFormat.fromFileName("NAMES.GZIP"));
+		assertEquals(CompressionFormat.zstd, CompressionFormat.fromFileName("out.smi.zst"));
+		assertEquals(CompressionFormat.none, CompressionFormat.fromFileName("out.smi"));
+		assertEquals(CompressionFormat.zstd, CompressionFormat.fromName("ZSTD"));
+		assertNull(CompressionFormat.fromName("bzip2"));
+	}
+
+	@Test
+	public void testMissingZstdLibraryIsReported() throws IOException {
+		//only sees the JDK's classes
+		ClassLoader withoutZstdJni = new ClassLoader(null) {};
+		CompressionFormat.gzip.checkAvailable(withoutZstdJni);
+		CompressionFormat.zstd.checkAvailable();
+		try {
+			CompressionFormat.zstd.checkAvailable(withoutZstdJni);
+			fail("zstd should not be available without zstd-jni");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().contains("zstd-jni"));
+		}
+	}
+
+	@Test
+	public void testRoundTrips() throws IOException {
+		byte[] data = testData(3000000);
+		for (CompressionFormat compression : CompressionFormat.values()) {
+			for (int threads = 1; threads <= 3; threads += 2) {
+				assertArrayEquals(compression + " with " + threads + " threads", data, roundTrip(compression, threads, data));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelGzipIsReadableAsOneStream() throws IOException {
+		byte[] data = testData(100000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 4, 1000);
+		out.write(data, 0, 12345);
+		out.flush();
+		for (int i = 12345; i < data.length; i++) {
+			out.write(data[i]);
+		}
+		out.close();
+		assertArrayEquals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+	}
+
+	@Test
+	public void testEmptyParallelGzip() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(compressed, 2, 1000).close();
+		assertEquals(0, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))).length);
+	}
+
+	private static byte[] roundTrip(CompressionFormat compression, int threads, byte[] data) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream out = compression.compress(compressed, threads);
+		out.write(data);
+		out.flush();
+		out.close();
+		return IOUtils.toByteArray(compression.decompress(new ByteArrayInputStream(compressed.toByteArray())));
+	}
+
+	private static byte[] testData(int length) {
+		Random random = new Random(42);
+		String[] words = {"methyl", "ethyl", "propan", "-2-ol", "benzene", "\n", "acid", "(2R)-"};
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < length) {
+			sb.append(words[random.nextInt(words.length)]);
+		}
+		return sb.substring(0, length).getBytes();
+	}
+}
@@ -164,5 +164,26 @@ public class CycleDetectorTest {
 		assertEquals(9, atomList.indexOf(pathRightRing.get(2)));
 		assertEquals(8, atomList.indexOf(pathRightRing.get(3)));
 	}
+
+	@Test
+	public void testAssignCyclicLargeBranchedRing() throws StructureBuildingException {
+		//every backbone atom is a branch point so the depth first search is as deep as the ring is long
+		for (int repeats : new int[]{10, 1000, 25000}) {
+			Fragment frag = sBuilder.build("C1" + StringTools.multiplyString("C(C)", repeats) + "C1");
+			List<Atom> atomList = frag.getAtomList();
+			assertEquals(2 * repeats + 2, atomList.size());
+			for (Atom a : atomList) {
+				boolean isBranch = a.getBondCount() == 1;
+				assertEquals(!isBranch, a.getAtomIsInACycle());
+			}
+		}
+	}
+
+	@Test
+	public void testAssignCyclicLargeBranchedChain() throws StructureBuildingException {
+		Fragment frag = sBuilder.build("C" + StringTools.multiplyString("C(C)", 25000) + "C");
+		for (Atom a : frag.getAtomList()) {
+			assertFalse(a.getAtomIsInACycle());
+		}
+	}
 }
-	
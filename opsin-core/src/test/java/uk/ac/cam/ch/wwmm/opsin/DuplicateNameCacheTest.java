@@ -0,0 +1,31 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DuplicateNameCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsedNameIsDiscarded() {
+		DuplicateNameCache<String> cache = new DuplicateNameCache<String>(2);
+		assertNull(cache.get("a"));
+		cache.put("a", "A");
+		assertNull(cache.get("b"));
+		cache.put("b", "B");
+		assertEquals("A", cache.get("a"));
+		assertNull(cache.get("c"));
+		cache.put("c", "C");
+		assertNull("b was least recently used", cache.get("b"));
+		assertEquals("A", cache.get("a"));
+		assertEquals(6, cache.getLookups());
+		assertEquals(2, cache.getReused());
+		assertEquals(1, cache.getDiscarded());
+		assertEquals("6 names, 4 interpreted, 2 reused (33.3%), dedup ratio 1.50:1, 1 discarded from the duplicate cache", cache.getSummary());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumMustBePositive() {
+		new DuplicateNameCache<String>(0);
+	}
+}
@@ -56,4 +56,34 @@ public class FragmentManagerTest {
 		assertNotNull(primedCopy.getAtomByLocant("N''"));
 		assertNotNull(primedCopy.getAtomByLocant("N'''"));
 	}
+
+	@Test
+	public void testGetAtomByID() throws StructureBuildingException {
+		Fragment frag1 = fragManager.buildSMILES("CC");
+		Fragment frag2 = fragManager.buildSMILES("CNC");
+		Atom nitrogen = frag2.getAtomByIDOrThrow(4);
+		assertEquals(ChemEl.N, nitrogen.getElement());
+		assertSame(nitrogen, fragManager.getAtomByID(4));
+		Atom hydrogen = fragManager.createAtom(ChemEl.H, frag1);
+		assertSame(hydrogen, fragManager.getAtomByID(hydrogen.getID()));
+
+		fragManager.removeAtomAndAssociatedBonds(hydrogen);
+		assertNull(fragManager.getAtomByID(hydrogen.getID()));
+		fragManager.removeFragment(frag2);
+		assertNull(fragManager.getAtomByID(4));
+		assertSame(frag1.getFirstAtom(), fragManager.getAtomByID(1));
+		assertNull(fragManager.getAtomByID(100));
+	}
+
+	@Test
+	public void testContainsAtomAfterIncorporation() throws StructureBuildingException {
+		Fragment parent = fragManager.buildSMILES("CC");
+		Fragment child = fragManager.buildSMILES("O");
+		Atom oxygen = child.getFirstAtom();
+		fragManager.incorporateFragment(child, oxygen, parent, parent.getFirstAtom(), 1);
+		assertTrue(parent.containsAtom(oxygen));
+		assertTrue(child.containsAtom(oxygen));
+		assertFalse(child.containsAtom(parent.getFirstAtom()));
+		assertSame(oxygen, fragManager.getAtomByID(oxygen.getID()));
+	}
 }
@@ -37,6 +37,53 @@ public class FragmentTest {
 		assertEquals("Now has one atom", 1, frag.getAtomCount());
 	}
 
+	@Test
+	public void testGetAtomByIDOutOfOrder() {
+		int[] ids = {50, 7, 51, 3, 200, 4};
+		for (int id : ids) {
+			frag.addAtom(new Atom(id, ChemEl.C, frag));
+		}
+		assertEquals(ids.length, frag.getAtomCount());
+		for (int i = 0; i < ids.length; i++) {
+			Atom atom = frag.getAtomByID(ids[i]);
+			assertEquals(ids[i], atom.getID());
+			assertSame("Insertion order is retained", atom, frag.getAtoms().get(i));
+			assertTrue(frag.containsAtom(atom));
+		}
+		assertNull(frag.getAtomByID(5));
+		assertNull(frag.getAtomByID(1));
+		assertNull(frag.getAtomByID(201));
+		Atom replacement = new Atom(7, ChemEl.N, frag);
+		frag.addAtom(replacement);
+		assertEquals(ids.length, frag.getAtomCount());
+		assertSame(replacement, frag.getAtomByID(7));
+		assertSame(replacement, frag.getAtoms().get(1));
+		frag.removeAtom(replacement);
+		assertNull(frag.getAtomByID(7));
+		assertFalse(frag.containsAtom(replacement));
+		assertEquals(ids.length - 1, frag.getAtomCount());
+	}
+
+	@Test
+	public void testAtomsView() throws StructureBuildingException {
+		Fragment frag1 = fm.buildSMILES("CNO");
+		List<Atom> atoms = frag1.getAtoms();
+		assertEquals(3, atoms.size());
+		assertEquals(ChemEl.C, atoms.get(0).getElement());
+		assertEquals(ChemEl.O, atoms.get(2).getElement());
+		Atom nitrogen = atoms.get(1);
+		fm.removeAtomAndAssociatedBonds(nitrogen);
+		assertEquals("View reflects removal", 2, atoms.size());
+		assertEquals(ChemEl.O, atoms.get(1).getElement());
+		try {
+			atoms.add(nitrogen);
+			fail("View should be read-only");
+		}
+		catch (UnsupportedOperationException e) {
+			//expected
+		}
+	}
+
 	@Test
 	public void testAddBond() {
 		frag.addAtom(new Atom(1, ChemEl.C, frag));
@@ -0,0 +1,113 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MolfileWriterTest {
+
+	private FragmentManager fm;
+
+	@Before
+	public void setup(){
+		IDManager idManager = new IDManager();
+		fm = new FragmentManager(new SMILESFragmentBuilder(idManager), idManager);
+	}
+
+	@Test
+	public void testConnectionTable() throws StructureBuildingException {
+		Fragment f = fm.buildSMILES("C=O");
+		fm.makeHydrogensExplicit();
+		String[] lines = MolfileWriter.generateMolfile(f, "formaldehyde").split("\n");
+		assertEquals(12, lines.length);
+		assertEquals("formaldehyde", lines[0]);
+		assertEquals("  4  3  0  0  0  0  0  0  0  0999 V2000", lines[3]);
+		assertEquals("    0.0000    0.0000    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0", lines[4]);
+		assertEquals("    0.0000    0.0000    0.0000 O   0  0  0  0  0  0  0  0  0  0  0  0", lines[5]);
+		assertEquals("  1  2  2  0", lines[8]);
+		assertEquals("M  END", lines[11]);
+	}
+
+	@Test
+	public void testChargesAndIsotopes() throws StructureBuildingException {
+		Fragment f = fm.buildSMILES("[13CH3][NH3+].[Cl-]");
+		fm.makeHydrogensExplicit();
+		String molfile = MolfileWriter.generateMolfile(f, "");
+		assertTrue(molfile.contains("M  CHG  2   2   1   3  -1\n"));
+		assertTrue(molfile.contains("M  ISO  1   1  13\n"));
+	}
+
+	@Test
+	public void testRadical() {
+		NameToStructureConfig n2sConfig = new NameToStructureConfig();
+		n2sConfig.setAllowRadicals(true);
+		String[] lines = NameToStructure.getInstance().parseChemicalName("methyl", n2sConfig).getMolfile().split("\n");
+		assertEquals("    0.0000    0.0000    0.0000 C   0  0  0  0  0  3  0  0  0  0  0  0", lines[4]);
+		assertEquals("M  RAD  1   1   2", lines[11]);
+	}
+
+	@Test
+	public void testAtomParity() throws StructureBuildingException {
+		Fragment f = fm.buildSMILES("N[C@@H](C)C(=O)O");
+		fm.makeHydrogensExplicit();
+		String[] lines = MolfileWriter.generateMolfile(f, "L-alanine").split("\n");
+		assertEquals(" 13 12  0  0  1  0  0  0  0  0999 V2000", lines[3]);
+		assertEquals("    0.0000    0.0000    0.0000 C   0  0  1  0  0  0  0  0  0  0  0  0", lines[5]);
+
+		f = fm.buildSMILES("N[C@H](C)C(=O)O");
+		fm.makeHydrogensExplicit();
+		lines = MolfileWriter.generateMolfile(f, "D-alanine").split("\n");
+		assertEquals("    0.0000    0.0000    0.0000 C   0  0  2  0  0  0  0  0  0  0  0  0", lines[5]);
+
+		//D-alanine again, with the stereocentre as the first atom, so its implicit hydrogen precedes its other neighbours
+		f = fm.buildSMILES("[C@@H](N)(C)C(=O)O");
+		fm.makeHydrogensExplicit();
+		lines = MolfileWriter.generateMolfile(f, "D-alanine").split("\n");
+		assertEquals("    0.0000    0.0000    0.0000 C   0  0  2  0  0  0  0  0  0  0  0  0", lines[4]);
+	}
+
+	@Test
+	public void testLargeStructuresUseV3000() throws StructureBuildingException {
+		Fragment f = fm.buildSMILES(StringTools.multiplyString("C", 400));
+		fm.makeHydrogensExplicit();
+		String molfile = MolfileWriter.generateMolfile(f, "");
+		assertTrue(molfile.contains(" V3000\n"));
+		assertTrue(molfile.contains("M  V30 COUNTS 1202 1201 0 0 0\n"));
+		assertTrue(molfile.contains("M  V30 1202 H 0 0 0 0\n"));
+		assertTrue(molfile.endsWith("M  V30 END BOND\nM  V30 END CTAB\nM  END\n"));
+	}
+
+	@Test
+	public void testV3000() throws StructureBuildingException, IOException {
+		Fragment f = fm.buildSMILES("N[C@@H]([13CH3])C(=O)[O-]");
+		fm.makeHydrogensExplicit();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MolfileWriter(out, true).writeMolfile(f, "");
+		String molfile = out.toString("UTF-8");
+		assertTrue(molfile.contains("M  V30 COUNTS 12 11 0 0 1\n"));
+		assertTrue(molfile.contains("M  V30 2 C 0 0 0 0 CFG=1\n"));
+		assertTrue(molfile.contains("M  V30 3 C 0 0 0 0 MASS=13\n"));
+		assertTrue(molfile.contains("M  V30 6 O 0 0 0 0 CHG=-1\n"));
+		assertTrue(molfile.contains("M  V30 4 2 4 5\n"));
+	}
+
+	@Test
+	public void testSdfRecords() throws StructureBuildingException, IOException {
+		Fragment f = fm.buildSMILES("C");
+		fm.makeHydrogensExplicit();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MolfileWriter writer = new MolfileWriter(out);
+		writer.writeSdfRecord(f, "methane", "NAME", "methane\tCH4");
+		writer.writeSdfRecord(null, "n\u00e9e", null, null);
+		String[] records = out.toString("UTF-8").split("\\$\\$\\$\\$\n", -1);
+		assertEquals(3, records.length);
+		assertTrue(records[0].startsWith("methane\n"));
+		assertTrue(records[0].endsWith("M  END\n>  <NAME>\nmethane\tCH4\n\n"));
+		assertEquals("n\u00e9e\n  OPSIN             0D\n\n  0  0  0  0  0  0  0  0  0  0999 V2000\nM  END\n", records[1]);
+		assertEquals("", records[2]);
+	}
+}
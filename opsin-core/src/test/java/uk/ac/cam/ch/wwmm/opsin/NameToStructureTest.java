@@ -54,4 +54,26 @@ public class NameToStructureTest {
 		String smiles = nts.parseToSmiles("ethane");
 		assertEquals("CC", smiles);
 	}
+
+	@Test
+	public void testCheckParsability() {
+		NameToStructure nts = NameToStructure.getInstance();
+		ParsabilityResult result = nts.checkParsability("2-methylpropan-1-ol");
+		assertTrue(result.isTokenisable());
+		assertTrue(result.isParsable());
+		assertEquals("", result.getMessage());
+
+		result = nts.checkParsability("ethyl");
+		assertTrue(result.isTokenisable());
+		assertFalse(result.isParsable());
+		NameToStructureConfig n2sConfig = new NameToStructureConfig();
+		n2sConfig.setAllowRadicals(true);
+		assertTrue(nts.checkParsability("ethyl", n2sConfig).isParsable());
+
+		result = nts.checkParsability("2-ethylfooarene");
+		assertFalse(result.isTokenisable());
+		assertFalse(result.isParsable());
+		assertEquals("fooarene", result.getUninterpretableName());
+		assertFalse(nts.checkParsability(" ").isParsable());
+	}
 }
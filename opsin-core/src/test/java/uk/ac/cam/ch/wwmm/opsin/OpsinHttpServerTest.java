@@ -0,0 +1,207 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+public class OpsinHttpServerTest {
+
+	private static OpsinHttpServer server;
+
+	@BeforeClass
+	public static void setup() throws IOException {
+		server = new OpsinHttpServer(new InetSocketAddress("127.0.0.1", 0), 2, 2, NameToStructureConfig.getDefaultConfigInstance(), null);
+		server.start();
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		server.stop(0);
+		server = null;
+	}
+
+	@Test
+	public void testName() throws IOException {
+		HttpURLConnection conn = open("/name?name=" + URLEncoder.encode("ethanol", "UTF-8"));
+		assertEquals(200, conn.getResponseCode());
+		assertTrue(conn.getContentType().startsWith("chemical/x-daylight-smiles"));
+		assertEquals("C(C)O", read(conn.getInputStream()));
+
+		conn = open("/name/ethane?format=cml");
+		assertEquals(200, conn.getResponseCode());
+		assertTrue(read(conn.getInputStream()).contains("<cml"));
+
+		conn = open("/name/ethane");
+		conn.setRequestProperty("Accept", "chemical/x-cml");
+		assertEquals(200, conn.getResponseCode());
+		assertTrue(conn.getContentType().startsWith("chemical/x-cml"));
+	}
+
+	@Test
+	public void testNameErrors() throws IOException {
+		assertEquals(404, open("/name?name=notachemicalname").getResponseCode());
+		assertEquals(400, open("/name").getResponseCode());
+		assertEquals(400, open("/name/ethane?format=notaformat").getResponseCode());
+	}
+
+	@Test
+	public void testTextBatch() throws IOException {
+		HttpURLConnection conn = post("/batch", "text/plain", "methane\nnotachemicalname\r\nethane\tignored\n\n");
+		assertEquals(200, conn.getResponseCode());
+		assertEquals("C\n\nCC\n", read(conn.getInputStream()));
+	}
+
+	@Test
+	public void testJsonBatch() throws IOException {
+		HttpURLConnection conn = post("/batch", "application/json", "[\"methane\", \"notachemicalname\", \"eth\\u0061ne\"]");
+		assertEquals(200, conn.getResponseCode());
+		String json = read(conn.getInputStream());
+		assertTrue(json.startsWith("[{\"name\":\"methane\",\"status\":\"SUCCESS\",\"output\":\"C\""));
+		assertTrue(json.contains("{\"name\":\"notachemicalname\",\"status\":\"FAILURE\",\"output\":null"));
+		assertTrue(json.contains("{\"name\":\"ethane\",\"status\":\"SUCCESS\",\"output\":\"CC\""));
+
+		assertEquals(400, post("/batch", "application/json", "[\"methane\"").getResponseCode());
+	}
+
+	@Test
+	public void testJsonInputRequiresJsonContentType() throws IOException {
+		HttpURLConnection conn = post("/batch", "text/plain", "[methane]\nethane\n");
+		assertEquals(200, conn.getResponseCode());
+		//treated as lines, not as a malformed JSON array
+		assertEquals("C\nCC\n", read(conn.getInputStream()));
+		assertTrue(OpsinHttpServer.isJsonContentType("application/json; charset=UTF-8"));
+		assertTrue(OpsinHttpServer.isJsonContentType("application/ld+json"));
+		assertFalse(OpsinHttpServer.isJsonContentType("text/plain"));
+		assertFalse(OpsinHttpServer.isJsonContentType(null));
+	}
+
+	@Test
+	public void testBodyLimit() throws IOException {
+		server.setMaxBodyBytes(16);
+		try {
+			assertEquals(413, post("/batch", "text/plain", "methane\nethane\npropane\n").getResponseCode());
+			assertEquals(413, post("/name", "text/plain", "2,2-dimethylpropane").getResponseCode());
+
+			//length not known upfront
+			HttpURLConnection conn = open("/batch");
+			conn.setRequestMethod("POST");
+			conn.setDoOutput(true);
+			conn.setChunkedStreamingMode(8);
+			OutputStream os = conn.getOutputStream();
+			os.write("methane\nethane\npropane\n".getBytes("UTF-8"));
+			os.close();
+			assertEquals(413, conn.getResponseCode());
+
+			conn = post("/batch", "text/plain", "methane\n");
+			assertEquals(200, conn.getResponseCode());
+			assertEquals("C\n", read(conn.getInputStream()));
+		}
+		finally {
+			server.setMaxBodyBytes(OpsinHttpServer.DEFAULT_MAX_BODY_BYTES);
+		}
+	}
+
+	@Test
+	public void testColumnarBatch() throws IOException {
+		HttpURLConnection conn = post("/batch?format=columnar", "text/plain", "methane\nnotachemicalname\n");
+		assertEquals(200, conn.getResponseCode());
+		assertEquals("application/x-opsin-columnar", conn.getContentType());
+		File file = File.createTempFile("opsin", ".col");
+		try {
+			OutputStream os = new FileOutputStream(file);
+			InputStream is = conn.getInputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				os.write(buffer, 0, read);
+			}
+			is.close();
+			os.close();
+			OpsinResultColumnarReader reader = new OpsinResultColumnarReader(file);
+			try {
+				assertEquals(2, reader.getRowCount());
+				OpsinResultColumnarReader.Chunk chunk = reader.getChunk(0);
+				assertEquals("methane", chunk.getName(0));
+				assertEquals("C", chunk.getSmiles(0));
+				assertEquals(OPSIN_RESULT_STATUS.FAILURE, chunk.getStatus(1));
+				assertNull(chunk.getSmiles(1));
+			}
+			finally {
+				reader.close();
+			}
+		}
+		finally {
+			file.delete();
+		}
+		assertEquals(406, open("/name/methane?format=columnar").getResponseCode());
+	}
+
+	@Test
+	public void testKeepAliveAndMetrics() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			HttpURLConnection conn = open("/name/methane");
+			assertEquals(200, conn.getResponseCode());
+			read(conn.getInputStream());
+		}
+		HttpURLConnection conn = open("/metrics");
+		assertEquals(200, conn.getResponseCode());
+		String metrics = read(conn.getInputStream());
+		assertTrue(metrics.contains("opsin_http_requests_total{endpoint=\"name\"}"));
+		assertTrue(metrics.contains("opsin_names_total{status=\"SUCCESS\"}"));
+		assertTrue(metrics.contains("opsin_name_duration_seconds_bucket{le=\"+Inf\"}"));
+		assertTrue(server.getParseMetrics().getNameCount() >= 3);
+	}
+
+	@Test
+	public void testParseJsonStringArray() throws Exception {
+		List<String> expected = Arrays.asList("a\"b", "c\\d", "e/f\n", "");
+		assertEquals(expected, OpsinHttpServer.parseJsonStringArray(" [\"a\\\"b\",\"c\\\\d\" , \"e\\/f\\n\",\"\"] "));
+		assertEquals(0, OpsinHttpServer.parseJsonStringArray("[]").size());
+		StringBuilder sb = new StringBuilder();
+		OpsinHttpServer.appendJsonString(sb, "a\"b\\c\n\u0001");
+		assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", sb.toString());
+	}
+
+	private static HttpURLConnection open(String path) throws IOException {
+		return (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+	}
+
+	private static HttpURLConnection post(String path, String contentType, String body) throws IOException {
+		HttpURLConnection conn = open(path);
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		conn.setRequestProperty("Content-Type", contentType);
+		OutputStream os = conn.getOutputStream();
+		os.write(body.getBytes("UTF-8"));
+		os.close();
+		return conn;
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, read);
+		}
+		is.close();
+		return new String(baos.toByteArray(), "UTF-8");
+	}
+}
@@ -0,0 +1,211 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+import uk.ac.cam.ch.wwmm.opsin.CachedOpsinResult.Format;
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+public class OpsinResultCacheTest {
+
+	private static final Set<Format> SMILES = EnumSet.of(Format.SMILES);
+	private static final Set<Format> SMILES_AND_CML = EnumSet.of(Format.SMILES, Format.CML);
+	private static NameToStructure n2s;
+	private File cacheFile;
+
+	@BeforeClass
+	public static void setup() {
+		n2s = NameToStructure.getInstance();
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		n2s = null;
+	}
+
+	@Before
+	public void createFile() throws IOException {
+		cacheFile = File.createTempFile("opsin", ".cache");
+		cacheFile.delete();
+	}
+
+	@After
+	public void deleteFile() {
+		cacheFile.delete();
+	}
+
+	@Test
+	public void testWriteThroughAndReopen() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		OpsinResultCache cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			assertNull(cache.get("ethanol", n2sConfig));
+			CachedOpsinResult result = n2s.parseChemicalName("ethanol", n2sConfig, cache, SMILES_AND_CML);
+			assertEquals(OPSIN_RESULT_STATUS.SUCCESS, result.getStatus());
+			assertEquals("C(C)O", result.getSmiles());
+			assertEquals(n2s.parseChemicalName("ethanol").getCml(), result.getCml());
+			assertEquals(1, cache.size());
+
+			CachedOpsinResult failure = n2s.parseChemicalName("notachemicalname", n2sConfig, cache, SMILES_AND_CML);
+			assertEquals(OPSIN_RESULT_STATUS.FAILURE, failure.getStatus());
+			assertNull(failure.getSmiles());
+			assertNull(failure.getCml());
+			assertEquals(2, cache.size());
+		}
+		finally {
+			cache.close();
+		}
+
+		cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			assertEquals(2, cache.size());
+			CachedOpsinResult result = cache.get("ethanol", n2sConfig);
+			assertNotNull(result);
+			assertEquals("ethanol", result.getChemicalName());
+			assertEquals("C(C)O", result.getSmiles());
+			CachedOpsinResult failure = cache.get("notachemicalname", n2sConfig);
+			assertNotNull(failure);
+			assertEquals(OPSIN_RESULT_STATUS.FAILURE, failure.getStatus());
+			assertEquals(n2s.parseChemicalName("notachemicalname").getMessage(), failure.getMessage());
+		}
+		finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testConfigIsPartOfKey() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		NameToStructureConfig radicalConfig = NameToStructureConfig.getDefaultConfigInstance();
+		radicalConfig.setAllowRadicals(true);
+		OpsinResultCache cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			assertEquals(OPSIN_RESULT_STATUS.FAILURE, n2s.parseChemicalName("ethyl", n2sConfig, cache, SMILES).getStatus());
+			assertNull(cache.get("ethyl", radicalConfig));
+			assertEquals(OPSIN_RESULT_STATUS.SUCCESS, n2s.parseChemicalName("ethyl", radicalConfig, cache, SMILES).getStatus());
+			assertEquals(OPSIN_RESULT_STATUS.FAILURE, cache.get("ethyl", n2sConfig).getStatus());
+			assertEquals(2, cache.size());
+		}
+		finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testRecordsSpanningSegments() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		String[] names = new String[]{"methane", "ethane", "propane", "butane", "pentane", "hexane", "heptane", "octane", "nonane", "decane"};
+		OpsinResultCache cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			for (int i = 0; i < 200; i++) {
+				String name = names[i % names.length];
+				n2s.parseChemicalName(i < names.length ? name : "1-" + i + "-" + name, n2sConfig, cache, SMILES);
+			}
+			assertEquals(200, cache.size());
+		}
+		finally {
+			cache.close();
+		}
+		assertTrue(cacheFile.length() > 1 << 14);
+		cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			assertEquals(200, cache.size());
+			for (String name : names) {
+				assertEquals(n2s.parseChemicalName(name).getSmiles(), cache.get(name, n2sConfig).getSmiles());
+			}
+			assertNotNull(cache.get("1-199-decane", n2sConfig));
+		}
+		finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testOnlyRequestedFormatsAreGenerated() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		OpsinResultCache cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			CachedOpsinResult result = n2s.parseChemicalName("ethanol", n2sConfig, cache, SMILES);
+			assertEquals("C(C)O", result.getSmiles());
+			assertFalse(result.hasFormat(Format.CML));
+			assertFalse(cache.get("ethanol", n2sConfig).hasFormat(Format.CML));
+			try {
+				result.getCml();
+				fail("CML was not requested");
+			}
+			catch (IllegalStateException e) {
+				//expected
+			}
+
+			//a record lacking a requested format is superseded, retaining the formats it had
+			result = n2s.parseChemicalName("ethanol", n2sConfig, cache, EnumSet.of(Format.CML));
+			assertEquals(n2s.parseChemicalName("ethanol").getCml(), result.getCml());
+			assertEquals("C(C)O", result.getSmiles());
+			assertTrue(cache.get("ethanol", n2sConfig).hasFormat(Format.CML));
+			assertEquals(1, cache.size());
+		}
+		finally {
+			cache.close();
+		}
+		cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			assertEquals(1, cache.size());
+			CachedOpsinResult result = cache.get("ethanol", n2sConfig);
+			assertEquals("C(C)O", result.getSmiles());
+			assertEquals(n2s.parseChemicalName("ethanol").getCml(), result.getCml());
+		}
+		finally {
+			cache.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testFileInUse() throws IOException {
+		OpsinResultCache cache = new OpsinResultCache(cacheFile, 1 << 14);
+		try {
+			new OpsinResultCache(cacheFile, 1 << 14);
+		}
+		finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testCmlFromCache() throws Exception {
+		OpsinResult result = n2s.parseChemicalName("(2R)-butan-2-ol");
+		CachedOpsinResult cachedResult = new CachedOpsinResult(result, EnumSet.of(Format.CML));
+		assertEquals(writeCmlDocument(result.getStructure(), null, result.getChemicalName()),
+				writeCmlDocument(null, cachedResult.getCml(), result.getChemicalName()));
+	}
+
+	private static String writeCmlDocument(Fragment structure, String cml, String chemicalName) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLStreamWriter writer = new IndentingXMLStreamWriter(new WstxOutputFactory().createXMLStreamWriter(out, "UTF-8"), 2);
+		CMLWriter cmlWriter = new CMLWriter(writer);
+		cmlWriter.writeCmlStart();
+		if (structure != null) {
+			cmlWriter.writeMolecule(structure, chemicalName, 2);
+		}
+		else {
+			cmlWriter.writeMolecule(cml, chemicalName, 2);
+		}
+		cmlWriter.writeCmlEnd();
+		writer.close();
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,141 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+import uk.ac.cam.ch.wwmm.opsin.OpsinWarning.OpsinWarningType;
+
+public class OpsinResultColumnarTest {
+
+	private static NameToStructure n2s;
+	private File file;
+
+	@BeforeClass
+	public static void setup() {
+		n2s = NameToStructure.getInstance();
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		n2s = null;
+	}
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("opsin", ".col");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test
+	public void testRoundTripResults() throws IOException {
+		List<String> names = Arrays.asList("ethanol", "notachemicalname", "2-chloro-N-(2,6-di\u00e9thylphenyl)acetamide", "", "(2R)-butan-2-ol");
+		List<OpsinResult> results = new ArrayList<OpsinResult>();
+		OpsinResultColumnarWriter writer = new OpsinResultColumnarWriter(new FileOutputStream(file), true, false, 2);
+		for (String name : names) {
+			OpsinResult result = n2s.parseChemicalName(name);
+			results.add(result);
+			writer.write(result, result.getSmiles() != null ? "InChI=" + name : null);
+		}
+		writer.close();
+
+		OpsinResultColumnarReader reader = new OpsinResultColumnarReader(file);
+		try {
+			assertEquals(names.size(), reader.getRowCount());
+			assertEquals(3, reader.getChunkCount());
+			assertTrue(reader.hasInchi());
+			int i = 0;
+			for (int c = 0; c < reader.getChunkCount(); c++) {
+				OpsinResultColumnarReader.Chunk chunk = reader.getChunk(c);
+				for (int row = 0; row < chunk.getRowCount(); row++, i++) {
+					OpsinResult expected = results.get(i);
+					assertEquals(names.get(i), chunk.getName(row));
+					assertEquals(expected.getStatus(), chunk.getStatus(row));
+					assertEquals(expected.getMessage(), chunk.getMessage(row));
+					assertEquals(expected.getSmiles(), chunk.getSmiles(row));
+					assertEquals(expected.getSmiles() != null ? "InChI=" + names.get(i) : null, chunk.getInchi(row));
+					assertEquals(0, chunk.getWarnings(row).size());
+				}
+			}
+			assertEquals(names.size(), i);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCompressionAndWarnings() throws IOException {
+		OpsinResultColumnarWriter writer = new OpsinResultColumnarWriter(new FileOutputStream(file), false, true, 1000);
+		for (int i = 0; i < 2500; i++) {
+			List<OpsinWarning> warnings = i % 3 == 0 ? Arrays.asList(
+					new OpsinWarning(OpsinWarningType.APPEARS_AMBIGUOUS, "ambiguous " + i),
+					new OpsinWarning(OpsinWarningType.STEREOCHEMISTRY_IGNORED, "stereo " + i)) : Collections.<OpsinWarning>emptyList();
+			writer.write("name" + i, i % 3 == 0 ? OPSIN_RESULT_STATUS.WARNING : OPSIN_RESULT_STATUS.SUCCESS, "", StringTools.multiplyString("C", i % 20 + 1), null, warnings);
+		}
+		writer.close();
+		assertTrue("Repetitive columns should compress", file.length() < 2500 * 10);
+
+		OpsinResultColumnarReader reader = new OpsinResultColumnarReader(file);
+		try {
+			assertEquals(2500, reader.getRowCount());
+			assertFalse(reader.hasInchi());
+			OpsinResultColumnarReader.Chunk chunk = reader.getChunk(2);
+			assertEquals(500, chunk.getRowCount());
+			assertEquals("CCCCCCCCC", chunk.getSmiles(8));
+			assertEquals("name2000", chunk.getName(0));
+			assertEquals(OPSIN_RESULT_STATUS.SUCCESS, chunk.getStatus(0));
+			assertEquals(0, chunk.getWarnings(0).size());
+			assertEquals(OPSIN_RESULT_STATUS.WARNING, chunk.getStatus(1));
+			List<OpsinWarning> warnings = chunk.getWarnings(1);
+			assertEquals(2, warnings.size());
+			assertEquals(OpsinWarningType.APPEARS_AMBIGUOUS, warnings.get(0).getType());
+			assertEquals("ambiguous 2001", warnings.get(0).getMessage());
+			assertEquals(OpsinWarningType.STEREOCHEMISTRY_IGNORED, warnings.get(1).getType());
+			assertEquals("stereo 2001", warnings.get(1).getMessage());
+			try {
+				chunk.getInchi(0);
+				fail("File has no InChI column");
+			}
+			catch (IllegalStateException e) {
+				//expected
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testIncompleteFileIsRejected() throws IOException {
+		OpsinResultColumnarWriter writer = new OpsinResultColumnarWriter(new FileOutputStream(file), false, false);
+		writer.write(n2s.parseChemicalName("methane"));
+		writer.close();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 1);
+		}
+		finally {
+			raf.close();
+		}
+		new OpsinResultColumnarReader(file).close();
+	}
+}
@@ -0,0 +1,114 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+public class ParseMetricsTest {
+
+	private static NameToStructure n2s;
+
+	@BeforeClass
+	public static void setup() {
+		n2s = NameToStructure.getInstance();
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		n2s = null;
+	}
+
+	@Test
+	public void testSuccessfulName() {
+		ParseMetrics metrics = new ParseMetrics();
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		n2sConfig.setParseListener(metrics);
+		OpsinResult or = n2s.parseChemicalName("(2R)-butan-2-ol", n2sConfig);
+		assertEquals(OPSIN_RESULT_STATUS.SUCCESS, or.getStatus());
+
+		assertEquals(1, metrics.getNameCount());
+		assertEquals(1, metrics.getStatusCount(OPSIN_RESULT_STATUS.SUCCESS));
+		assertEquals(0, metrics.getStatusCount(OPSIN_RESULT_STATUS.FAILURE));
+		assertEquals(1, metrics.getStageCount(ParseStage.PRE_PROCESSING));
+		assertEquals(1, metrics.getStageCount(ParseStage.PARSING));
+		assertEquals(1, metrics.getStageCount(ParseStage.COMPONENT_GENERATION));
+		assertEquals(1, metrics.getStageCount(ParseStage.COMPONENT_PROCESSING));
+		assertEquals(1, metrics.getStageCount(ParseStage.STRUCTURE_BUILDING));
+		assertEquals(1, metrics.getStageCount(ParseStage.STEREOCHEMISTRY));
+		assertEquals(1, metrics.getStageCount(ParseStage.CIP_ORDERING));
+		assertEquals(0, metrics.getStageCount(ParseStage.FUSED_RING_NUMBERING));
+		assertEquals(0, metrics.getStageCount(ParseStage.OUTPUT));
+		assertEquals(1, metrics.getSuccessfulParseIndexHistogram()[0]);
+		assertEquals(1, sum(metrics.getNameDurationHistogram()));
+		assertEquals(1, sum(metrics.getStageDurationHistogram(ParseStage.PARSING)));
+		assertTrue(metrics.getNameTotalNanos() >= metrics.getStageTotalNanos(ParseStage.STRUCTURE_BUILDING));
+		assertTrue(metrics.getStageTotalNanos(ParseStage.STRUCTURE_BUILDING) >= metrics.getStageTotalNanos(ParseStage.STEREOCHEMISTRY));
+
+		assertNotNull(or.getSmiles());
+		assertEquals(1, metrics.getStageCount(ParseStage.OUTPUT));
+	}
+
+	@Test
+	public void testUnparsableName() {
+		ParseMetrics metrics = new ParseMetrics();
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		n2sConfig.setParseListener(metrics);
+		OpsinResult or = n2s.parseChemicalName("notachemicalname", n2sConfig);
+		assertEquals(OPSIN_RESULT_STATUS.FAILURE, or.getStatus());
+
+		assertEquals(1, metrics.getStatusCount(OPSIN_RESULT_STATUS.FAILURE));
+		assertEquals(1, metrics.getParseCountHistogram()[0]);
+		assertEquals(0, sum(metrics.getSuccessfulParseIndexHistogram()));
+		assertEquals(1, metrics.getStageCount(ParseStage.PARSING));
+		assertEquals(0, metrics.getStageCount(ParseStage.COMPONENT_GENERATION));
+	}
+
+	@Test
+	public void testAggregatesAcrossNames() {
+		ParseMetrics metrics = new ParseMetrics();
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		n2sConfig.setParseListener(metrics);
+		n2s.parseChemicalName("ethane", n2sConfig);
+		n2s.parseChemicalName("benzene", n2sConfig.clone());
+		n2s.parseChemicalName("notachemicalname", n2sConfig);
+		assertEquals(3, metrics.getNameCount());
+		assertEquals(2, metrics.getStatusCount(OPSIN_RESULT_STATUS.SUCCESS));
+		assertEquals(3, sum(metrics.getParseCountHistogram()));
+		assertEquals(2, sum(metrics.getSuccessfulParseIndexHistogram()));
+
+		metrics.reset();
+		assertEquals(0, metrics.getNameCount());
+		assertEquals(0, metrics.getStageCount(ParseStage.PARSING));
+		assertEquals(0, sum(metrics.getParseCountHistogram()));
+	}
+
+	@Test
+	public void testNoListenerByDefault() {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		assertNull(n2sConfig.getParseListener());
+		OpsinResult or = n2s.parseChemicalName("ethane", n2sConfig);
+		assertNull(or.getParseListener());
+	}
+
+	@Test
+	public void testDurationBucket() {
+		assertEquals(0, ParseMetrics.durationBucket(999));
+		assertEquals(1, ParseMetrics.durationBucket(1000));
+		assertEquals(2, ParseMetrics.durationBucket(2000));
+		assertEquals(2, ParseMetrics.durationBucket(3999));
+		assertEquals(3, ParseMetrics.durationBucket(4000));
+		assertEquals(ParseMetrics.DURATION_BUCKETS - 1, ParseMetrics.durationBucket(Long.MAX_VALUE));
+	}
+
+	private static long sum(long[] histogram) {
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		return total;
+	}
+}
@@ -3,6 +3,7 @@ package uk.ac.cam.ch.wwmm.opsin;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.AfterClass;
@@ -54,6 +55,58 @@ public class ParserTest {
 		parser.parse(config, "pyridine salt");
 	}
 
+	@Test
+	public void testParsesAreInOrderOfPreference() throws ParsingException {
+		NameToStructureConfig radicalConfig = NameToStructureConfig.getDefaultConfigInstance();
+		radicalConfig.setAllowRadicals(true);
+		List<Element> parses = parser.parse(radicalConfig, "ethylene");
+		assertTrue(parses.size() > 1);
+		assertEquals(WordRule.simple.toString(), parses.get(0).getFirstChildElement(XmlDeclarations.WORDRULE_EL).getAttributeValue(XmlDeclarations.WORDRULE_ATR));
+		assertEquals(WordRule.substituent.toString(), parses.get(parses.size() - 1).getFirstChildElement(XmlDeclarations.WORDRULE_EL).getAttributeValue(XmlDeclarations.WORDRULE_ATR));
+
+		parses = parser.parse(config, "benzal chloride");
+		for (int i = 1; i < parses.size(); i++) {
+			int[] counts1 = OpsinTools.countNumberOfElementsAndNumberOfChildLessElements(parses.get(i - 1));
+			int[] counts2 = OpsinTools.countNumberOfElementsAndNumberOfChildLessElements(parses.get(i));
+			assertTrue(counts1[1] < counts2[1] || (counts1[1] == counts2[1] && counts1[0] <= counts2[0]));
+		}
+	}
+
+	@Test
+	public void testParsesAreWrittenLazily() throws Exception {
+		ResourceGetter resources = new ResourceGetter("uk/ac/cam/ch/wwmm/opsin/resources/");
+		ResourceManager resourceManager = new ResourceManager(resources);
+		CountingWordRules wordRules = new CountingWordRules(resources);
+		Parser countingParser = new Parser(wordRules, new Tokeniser(new ParseRules(resourceManager)), resourceManager);
+		String name = "telluromorpholine-3,4,5-triolate";
+		Iterator<Element> parses = countingParser.parseInOrderOfPreference(config, name);
+		assertEquals("Only the preferred parse tree should have been written", 1, wordRules.parseTreesWritten);
+		Element firstParse = parses.next();
+		assertEquals(1, wordRules.parseTreesWritten);
+		assertEquals(parser.parse(config, name).get(0).toXML(), firstParse.toXML());
+		int parseCount = 1;
+		while (parses.hasNext()) {
+			parses.next();
+			parseCount++;
+		}
+		assertTrue(parseCount > 1);
+		assertTrue(wordRules.parseTreesWritten >= parseCount);
+	}
+
+	private static class CountingWordRules extends WordRules {
+		private int parseTreesWritten = 0;
+
+		CountingWordRules(ResourceGetter resourceGetter) throws IOException {
+			super(resourceGetter);
+		}
+
+		@Override
+		void groupWordsIntoWordRules(Element moleculeEl, NameToStructureConfig n2sConfig, boolean allowSpaceRemoval, Integer[] componentRatios) throws ParsingException {
+			parseTreesWritten++;
+			super.groupWordsIntoWordRules(moleculeEl, n2sConfig, allowSpaceRemoval, componentRatios);
+		}
+	}
+
 	@Test
 	public void testConvertStringToComponentRatios1() throws ParsingException {
 		String ratio = "(1:2)";
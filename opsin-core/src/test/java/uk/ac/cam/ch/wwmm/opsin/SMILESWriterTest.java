@@ -450,4 +450,14 @@ public class SMILESWriterTest {
 		assertEquals("alpha", atoms.get(1).getLocants().get(1));
 		assertEquals("2'", atoms.get(1).getLocants().get(2));
 	}
+
+	@Test
+	public void testRoundTripLargeBranchedStructure() throws StructureBuildingException {
+		//50002 heavy atoms, each backbone atom being a branch point
+		String input = "C1" + StringTools.multiplyString("C(C)", 25000) + "C1";
+		Fragment f = fm.buildSMILES(input);
+		fm.makeHydrogensExplicit();
+		String smiles = SMILESWriter.generateSmiles(f);
+		assertEquals(input, smiles);
+	}
 }
@@ -0,0 +1,97 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SSSRFinderTest {
+
+	private FragmentManager fm;
+
+	@Before
+	public void setUp() {
+		IDManager idManager = new IDManager();
+		fm = new FragmentManager(new SMILESFragmentBuilder(idManager), idManager);
+	}
+
+	@Test
+	public void testCyclohexane() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("C1CCCCC1");
+		assertEquals(Collections.singletonList(6), ringSizes(SSSRFinder.getSetOfSmallestRings(frag)));
+	}
+
+	@Test
+	public void testNaphthalene() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("C1=CC=CC2=CC=CC=C12");
+		assertEquals(list(6, 6), ringSizes(SSSRFinder.getSetOfSmallestRings(frag)));
+	}
+
+	@Test
+	public void testSteroidSkeleton() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("C1CCC2C(C1)CCC1C2CCC2CCCC12");
+		assertEquals(list(5, 6, 6, 6), ringSizes(SSSRFinder.getSetOfSmallestRings(frag)));
+	}
+
+	@Test
+	public void testAdamantane() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("C1C2CC3CC1CC(C2)C3");
+		assertEquals(list(6, 6, 6), ringSizes(SSSRFinder.getSetOfSmallestRings(frag)));
+	}
+
+	@Test
+	public void testCubane() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("C12C3C4C1C5C2C3C45");
+		//a known corner case, one of the five rings is not a smallest ring
+		assertEquals(list(4, 4, 4, 4, 6), ringSizes(SSSRFinder.getSetOfSmallestRings(frag)));
+	}
+
+	@Test
+	public void testPerhydroPolyacene() throws StructureBuildingException {
+		//90 linearly fused cyclohexanes e.g. for 3 rings C1CC2CC3CCCCC3CC2CC1
+		int ringCount = 90;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i <= ringCount; i++) {
+			if (i > 1) {
+				sb.append('C');
+			}
+			sb.append('C').append(ringClosure(i));
+		}
+		sb.append("CCCC");
+		for (int i = ringCount; i >= 1; i--) {
+			sb.append('C').append(ringClosure(i));
+			if (i > 1) {
+				sb.append('C');
+			}
+		}
+		Fragment frag = fm.buildSMILES(sb.toString());
+		List<Ring> rings = SSSRFinder.getSetOfSmallestRings(frag);
+		assertEquals(ringCount, rings.size());
+		for (Ring ring : rings) {
+			assertEquals(6, ring.size());
+		}
+	}
+
+	private static String ringClosure(int i) {
+		return i < 10 ? String.valueOf(i) : "%" + i;
+	}
+
+	private static List<Integer> ringSizes(List<Ring> rings) {
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (Ring ring : rings) {
+			sizes.add(ring.size());
+		}
+		Collections.sort(sizes);
+		return sizes;
+	}
+
+	private static List<Integer> list(Integer... sizes) {
+		List<Integer> l = new ArrayList<Integer>();
+		Collections.addAll(l, sizes);
+		return l;
+	}
+}
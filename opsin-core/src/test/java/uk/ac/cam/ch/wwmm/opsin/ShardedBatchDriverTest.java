@@ -0,0 +1,161 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.junit.Test;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+public class ShardedBatchDriverTest {
+
+	@Test
+	public void testShardBoundariesAreAtLineStarts() throws IOException {
+		File file = createFile("ethane\nmethane\npropane\nbutane\npentane\n");
+		try {
+			long[] boundaries = ShardedBatchDriver.findShardBoundaries(file, 3);
+			assertArrayEquals(new long[]{0, 15, 30, 38}, boundaries);
+			assertArrayEquals(new long[]{0, 38}, ShardedBatchDriver.findShardBoundaries(file, 1));
+			//more shards than lines
+			assertEquals(5, ShardedBatchDriver.findShardBoundaries(file, 20).length);
+		}
+		finally {
+			file.delete();
+		}
+		File empty = createFile("");
+		try {
+			assertArrayEquals(new long[]{0}, ShardedBatchDriver.findShardBoundaries(empty, 3));
+		}
+		finally {
+			empty.delete();
+		}
+	}
+
+	@Test
+	public void testCheckpointRoundTrip() throws IOException {
+		File checkpoint = File.createTempFile("opsin", ".checkpoint");
+		try {
+			checkpoint.delete();
+			assertArrayEquals(new long[]{42, 0}, ShardedBatchDriver.readCheckpoint(checkpoint, 42));
+			ShardedBatchDriver.writeCheckpoint(checkpoint, 1234, 567);
+			assertArrayEquals(new long[]{1234, 567}, ShardedBatchDriver.readCheckpoint(checkpoint, 42));
+		}
+		finally {
+			checkpoint.delete();
+		}
+	}
+
+	@Test
+	public void testWorkerResumesFromCheckpoint() throws Exception {
+		String input = "ethane\tr1\nmethanol\tr2\nbenzene\tr3\n";
+		File inputFile = createFile(input);
+		File outputFile = File.createTempFile("opsin", ".smi");
+		File checkpoint = File.createTempFile("opsin", ".checkpoint");
+		try {
+			String nl = OpsinTools.NEWLINE;
+			//the first name has been converted, followed by output from a worker that crashed before its next checkpoint
+			String converted = "CC\tethane\tr1" + nl;
+			Files.write(outputFile.toPath(), (converted + "CO\tmeth").getBytes("UTF-8"));
+			ShardedBatchDriver.writeCheckpoint(checkpoint, 10, converted.getBytes("UTF-8").length);
+			runWorker(inputFile, outputFile, checkpoint, input.length(), "--lineByLine");
+			assertEquals(converted + "CO\tmethanol\tr2" + nl + "C1=CC=CC=C1\tbenzene\tr3" + nl, new String(Files.readAllBytes(outputFile.toPath()), "UTF-8"));
+			assertArrayEquals(new long[]{input.length(), outputFile.length()}, ShardedBatchDriver.readCheckpoint(checkpoint, 0));
+		}
+		finally {
+			inputFile.delete();
+			outputFile.delete();
+			checkpoint.delete();
+		}
+	}
+
+	@Test
+	public void testWorkerSkipsFirstLine() throws Exception {
+		String input = "ethane\tr1\nmethanol\tr2\nbenzene\tr3\n";
+		File inputFile = createFile(input);
+		File outputFile = File.createTempFile("opsin", ".smi");
+		File checkpoint = File.createTempFile("opsin", ".checkpoint");
+		try {
+			checkpoint.delete();
+			//only the first two lines are in this worker's shard
+			runWorker(inputFile, outputFile, checkpoint, 22, "--skipFirstLine");
+			String nl = OpsinTools.NEWLINE;
+			assertEquals("\tethane\tr1" + nl + "CO\tmethanol\tr2" + nl, new String(Files.readAllBytes(outputFile.toPath()), "UTF-8"));
+			assertEquals(22, ShardedBatchDriver.readCheckpoint(checkpoint, 0)[0]);
+		}
+		finally {
+			inputFile.delete();
+			outputFile.delete();
+			checkpoint.delete();
+		}
+	}
+
+	@Test
+	public void testEachCrashingNameHasItsOwnRestarts() throws Exception {
+		String input = "ethane\ncrash1\nmethanol\ncrash2\ncrash3\nbenzene\n";
+		File inputFile = createFile(input);
+		File outputFile = File.createTempFile("opsin", ".smi");
+		try {
+			//each crashing name needs two restarts: one to convert names one at a time and one to skip it
+			new ShardedBatchDriver(inputFile, outputFile, CompressionFormat.none, Collections.singletonList("-n"), 1, 2, CrashingWorker.class.getName()).run();
+			String nl = OpsinTools.NEWLINE;
+			assertEquals("CC\tethane" + nl + "\tcrash1" + nl + "CO\tmethanol" + nl + "\tcrash2" + nl + "\tcrash3" + nl + "C1=CC=CC=C1\tbenzene" + nl,
+					new String(Files.readAllBytes(outputFile.toPath()), "UTF-8"));
+		}
+		finally {
+			inputFile.delete();
+			outputFile.delete();
+		}
+	}
+
+	/**
+	 * A shard worker whose JVM halts when it starts converting a name beginning with "crash"
+	 */
+	public static class CrashingWorker {
+		public static void main(String[] args) throws Exception {
+			CommandLine cmd = new DefaultParser().parse(NameToStructure.buildCommandLineOptions(), args);
+			NameToStructureConfig n2sConfig = new NameToStructureConfig();
+			n2sConfig.setParseListener(new ParseListener() {
+				public void nameStarted(String name) {
+					if (name.startsWith("crash")) {
+						Runtime.getRuntime().halt(1);
+					}
+				}
+
+				public void stageStarted(ParseStage stage) {
+				}
+
+				public void stageCompleted(ParseStage stage, long startNanos, long endNanos, long allocatedBytes) {
+				}
+
+				public void nameCompleted(String name, OPSIN_RESULT_STATUS status, int parseCount, int successfulParseIndex, long startNanos, long endNanos, long allocatedBytes) {
+				}
+			});
+			ShardedBatchDriver.runWorker(cmd, n2sConfig, 1, 0);
+		}
+	}
+
+	private static void runWorker(File inputFile, File outputFile, File checkpoint, long shardEnd, String restartOption) throws Exception {
+		CommandLine cmd = new DefaultParser().parse(NameToStructure.buildCommandLineOptions(), new String[]{
+				"-n", "--shard", "0-" + shardEnd, "--checkpoint", checkpoint.getPath(), restartOption, inputFile.getPath(), outputFile.getPath()});
+		ShardedBatchDriver.runWorker(cmd, new NameToStructureConfig(), 1, 0);
+	}
+
+	private static File createFile(String contents) throws IOException {
+		File file = File.createTempFile("opsin", ".txt");
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			fos.write(contents.getBytes("UTF-8"));
+		}
+		finally {
+			fos.close();
+		}
+		return file;
+	}
+}
@@ -1,5 +1,6 @@
 package uk.ac.cam.ch.wwmm.opsin;
 
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
@@ -132,4 +133,25 @@ public class StructureBuildingMethodsTest {
 		assertEquals(1, interFragmentBonds.size());
 		assertEquals(ChemEl.O, interFragmentBonds.iterator().next().getOtherAtom(phosphoFrag.getFirstAtom()).getElement());
 	}
+
+	@Test
+	public void unsaturationOfLongChains() throws StructureBuildingException {
+		for (int chainLength = 10; chainLength <= 1000; chainLength *= 10) {
+			BuildState state = new BuildState(mock(NameToStructureConfig.class));
+			StringBuilder smiles = new StringBuilder();
+			for (int i = 0; i < chainLength; i++) {
+				smiles.append('C');
+			}
+			Fragment chain = state.fragManager.buildSMILES(smiles.toString());
+			List<Bond> nonAdjacentBonds = StructureBuildingMethods.findBondsToUnSaturate(chain, 2, false);
+			assertEquals(chainLength / 2, nonAdjacentBonds.size());
+			for (int i = 0; i < nonAdjacentBonds.size(); i++) {
+				Bond b = nonAdjacentBonds.get(i);
+				assertEquals(chain.getIdOfFirstAtom() + 2 * i, b.getFrom());
+				assertEquals(chain.getIdOfFirstAtom() + 2 * i + 1, b.getTo());
+			}
+			assertEquals(chainLength - 1, StructureBuildingMethods.findBondsToUnSaturate(chain, 2, true).size());
+			assertEquals(chainLength / 2, StructureBuildingMethods.findBondsToUnSaturate(chain, 3, true).size());
+		}
+	}
 }
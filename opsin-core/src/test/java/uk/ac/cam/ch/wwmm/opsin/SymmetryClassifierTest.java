@@ -0,0 +1,124 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SymmetryClassifierTest {
+
+	private FragmentManager fm;
+	private SymmetryClassifier classifier;
+
+	@Before
+	public void setUp() {
+		IDManager idManager = new IDManager();
+		fm = new FragmentManager(new SMILESFragmentBuilder(idManager), idManager);
+		classifier = new SymmetryClassifier();
+	}
+
+	@Test
+	public void testToluene() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("Cc1ccccc1");
+		List<Atom> atoms = frag.getAtoms();
+		AtomColourRefiner symmetryClasses = classifier.getSymmetryClasses(Collections.singletonList(atoms.get(0)));
+		assertEquals(symmetryClasses.getColour(atoms.get(2)), symmetryClasses.getColour(atoms.get(6)));
+		assertEquals(symmetryClasses.getColour(atoms.get(3)), symmetryClasses.getColour(atoms.get(5)));
+		assertNotEquals(symmetryClasses.getColour(atoms.get(2)), symmetryClasses.getColour(atoms.get(3)));
+		assertNotEquals(symmetryClasses.getColour(atoms.get(3)), symmetryClasses.getColour(atoms.get(4)));
+	}
+
+	@Test
+	public void testHydrogenDistinguishesAtoms() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CCC");
+		List<Atom> atoms = frag.getAtoms();
+		AtomColourRefiner symmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertEquals(symmetryClasses.getColour(atoms.get(0)), symmetryClasses.getColour(atoms.get(2)));
+
+		atoms.get(2).addOutValency(1);
+		symmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertNotEquals(symmetryClasses.getColour(atoms.get(0)), symmetryClasses.getColour(atoms.get(2)));
+	}
+
+	@Test
+	public void testStructureIsNotModified() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("C=CC(=O)O");
+		List<Atom> atoms = frag.getAtoms();
+		classifier.getSymmetryClasses(atoms);
+		assertEquals(5, frag.getAtomCount());
+		int[] expectedBondCounts = new int[]{1, 2, 3, 1, 1};
+		for (int i = 0; i < atoms.size(); i++) {
+			assertEquals(expectedBondCounts[i], atoms.get(i).getBondCount());
+		}
+		assertEquals(4, frag.getBondSet().size());
+	}
+
+	@Test
+	public void testResultReusedForUnchangedComponent() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CCCC");
+		List<Atom> atoms = frag.getAtoms();
+		AtomColourRefiner symmetryClasses = classifier.getSymmetryClasses(Collections.singletonList(atoms.get(0)));
+		assertSame(symmetryClasses, classifier.getSymmetryClasses(Arrays.asList(atoms.get(3), atoms.get(1))));
+	}
+
+	@Test
+	public void testRecalculatedAfterStructuralChange() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CCC");
+		List<Atom> atoms = frag.getAtoms();
+		AtomColourRefiner symmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertEquals(symmetryClasses.getColour(atoms.get(0)), symmetryClasses.getColour(atoms.get(2)));
+
+		atoms.get(0).getFirstBond().setOrder(2);
+		AtomColourRefiner newSymmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertNotSame(symmetryClasses, newSymmetryClasses);
+		assertNotEquals(newSymmetryClasses.getColour(atoms.get(0)), newSymmetryClasses.getColour(atoms.get(2)));
+	}
+
+	@Test
+	public void testRecalculatedAfterComponentGrows() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("CC");
+		List<Atom> atoms = frag.getAtoms();
+		AtomColourRefiner symmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertEquals(symmetryClasses.getColour(atoms.get(0)), symmetryClasses.getColour(atoms.get(1)));
+
+		Fragment chloro = fm.buildSMILES("Cl");
+		fm.createBond(atoms.get(1), chloro.getFirstAtom(), 1);
+		AtomColourRefiner newSymmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertNotEquals(newSymmetryClasses.getColour(atoms.get(0)), newSymmetryClasses.getColour(atoms.get(1)));
+		assertNotNull(newSymmetryClasses.getColour(chloro.getFirstAtom()));
+	}
+
+	@Test
+	public void testRecalculatedAfterChargeChange() throws StructureBuildingException {
+		Fragment frag = fm.buildSMILES("NCN");
+		List<Atom> atoms = frag.getAtoms();
+		AtomColourRefiner symmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertEquals(symmetryClasses.getColour(atoms.get(0)), symmetryClasses.getColour(atoms.get(2)));
+		int modificationCount = frag.getModificationCount();
+
+		atoms.get(0).addChargeAndProtons(1, 1);
+		assertNotEquals(modificationCount, frag.getModificationCount());
+		AtomColourRefiner newSymmetryClasses = classifier.getSymmetryClasses(atoms);
+		assertNotSame(symmetryClasses, newSymmetryClasses);
+		assertNotEquals(newSymmetryClasses.getColour(atoms.get(0)), newSymmetryClasses.getColour(atoms.get(2)));
+		assertSame(newSymmetryClasses, classifier.getSymmetryClasses(Collections.singletonList(atoms.get(1))));
+	}
+
+	@Test
+	public void testSeparateComponentsAreCachedSeparately() throws StructureBuildingException {
+		Fragment ethane = fm.buildSMILES("CC");
+		Fragment propane = fm.buildSMILES("CCC");
+		AtomColourRefiner ethaneClasses = classifier.getSymmetryClasses(Collections.singletonList(ethane.getFirstAtom()));
+		AtomColourRefiner propaneClasses = classifier.getSymmetryClasses(Collections.singletonList(propane.getFirstAtom()));
+		assertNotSame(ethaneClasses, propaneClasses);
+		assertSame(ethaneClasses, classifier.getSymmetryClasses(ethane.getAtoms()));
+		assertSame(propaneClasses, classifier.getSymmetryClasses(propane.getAtoms()));
+		AtomColourRefiner bothClasses = classifier.getSymmetryClasses(Arrays.asList(ethane.getFirstAtom(), propane.getFirstAtom()));
+		assertNotNull(bothClasses.getColour(ethane.getFirstAtom()));
+		assertNotNull(bothClasses.getColour(propane.getFirstAtom()));
+	}
+}
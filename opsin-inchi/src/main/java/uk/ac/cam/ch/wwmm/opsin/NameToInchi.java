@@ -113,6 +113,7 @@ public class NameToInchi {
 	private static String convertResultToInChI(OpsinResult result, boolean produceStdInChI){
 		if (result.getStructure() != null){
 			String inchi = null;
+			StageTimer timer = StageTimer.start(result.getParseListener(), ParseStage.OUTPUT);
 			try{
 				inchi = opsinFragmentToInchi(result.getStructure(), produceStdInChI);
 			}
@@ -122,6 +123,11 @@ public class NameToInchi {
 				}
 				return null;
 			}
+			finally {
+				if (timer != null) {
+					timer.stageCompleted();
+				}
+			}
 			if (inchi ==null){
 				//inchi generation failed
 				return null;
@@ -0,0 +1,123 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import uk.ac.cam.ch.wwmm.opsin.OpsinResult.OPSIN_RESULT_STATUS;
+
+/**
+ * A {@link ParseListener} that records Java Flight Recorder events:
+ * a "uk.ac.cam.ch.wwmm.opsin.NameParse" event for each name that fails or whose interpretation takes at least the name threshold,
+ * and a "uk.ac.cam.ch.wwmm.opsin.ParseStage" event for each stage (e.g. fused ring numbering, CIP ordering) that takes at least the stage threshold.
+ * Events are only recorded when enabled in the active recording, hence usage is e.g.
+ * <pre>
+ * NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+ * n2sConfig.setParseListener(new JfrParseListener(TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(10)));
+ * </pre>
+ * then start the JVM with e.g. -XX:StartFlightRecording.<br>
+ * Each event is begun when its name/stage starts and committed when it completes, hence the event's start time and duration are those of the name/stage.
+ * A single instance may be shared between threads
+ */
+public class JfrParseListener implements ParseListener {
+
+	/** Stages that are reported during, and included in the duration of, another stage */
+	private static final Map<ParseStage, ParseStage> ENCLOSING_STAGE = new EnumMap<>(ParseStage.class);
+	static {
+		ENCLOSING_STAGE.put(ParseStage.FUSED_RING_NUMBERING, ParseStage.COMPONENT_PROCESSING);
+		ENCLOSING_STAGE.put(ParseStage.STEREOCHEMISTRY, ParseStage.STRUCTURE_BUILDING);
+		ENCLOSING_STAGE.put(ParseStage.CIP_ORDERING, ParseStage.STEREOCHEMISTRY);
+	}
+
+	private final long nameThresholdNanos;
+	private final long stageThresholdNanos;
+
+	/** Per thread, the events begun for the name and stages currently in progress */
+	private final ThreadLocal<InProgress> inProgress = ThreadLocal.withInitial(InProgress::new);
+
+	private static class InProgress {
+		NameParseEvent nameEvent;
+		final ParseStageEvent[] stageEvents = new ParseStageEvent[ParseStage.values().length];
+		/** The time spent in each stage, excluding nested stages, for the name currently being interpreted */
+		final long[] stageNanos = new long[ParseStage.values().length];
+	}
+
+	/**
+	 * Records events for all names and stages
+	 */
+	public JfrParseListener() {
+		this(0, 0);
+	}
+
+	/**
+	 * @param nameThresholdNanos Names that take at least this long are recorded. Names that fail are always recorded
+	 * @param stageThresholdNanos Stages that take at least this long are recorded
+	 */
+	public JfrParseListener(long nameThresholdNanos, long stageThresholdNanos) {
+		this.nameThresholdNanos = nameThresholdNanos;
+		this.stageThresholdNanos = stageThresholdNanos;
+	}
+
+	@Override
+	public void nameStarted(String name) {
+		NameParseEvent event = new NameParseEvent();
+		event.begin();
+		inProgress.get().nameEvent = event;
+	}
+
+	@Override
+	public void stageStarted(ParseStage stage) {
+		ParseStageEvent event = new ParseStageEvent();
+		event.begin();
+		inProgress.get().stageEvents[stage.ordinal()] = event;
+	}
+
+	@Override
+	public void stageCompleted(ParseStage stage, long startNanos, long endNanos, long allocatedBytes) {
+		long nanos = endNanos - startNanos;
+		InProgress current = inProgress.get();
+		ParseStageEvent event = current.stageEvents[stage.ordinal()];
+		current.stageEvents[stage.ordinal()] = null;
+		if (stage != ParseStage.OUTPUT) {
+			long[] nanosPerStage = current.stageNanos;
+			nanosPerStage[stage.ordinal()] += nanos;
+			ParseStage enclosingStage = ENCLOSING_STAGE.get(stage);
+			if (enclosingStage != null) {
+				nanosPerStage[enclosingStage.ordinal()] -= nanos;
+			}
+		}
+		if (event != null && nanos >= stageThresholdNanos && event.isEnabled()) {
+			event.stage = stage.toString();
+			event.allocatedBytes = allocatedBytes;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void nameCompleted(String name, OPSIN_RESULT_STATUS status, int parseCount, int successfulParseIndex, long startNanos, long endNanos, long allocatedBytes) {
+		InProgress current = inProgress.get();
+		long[] nanosPerStage = current.stageNanos;
+		NameParseEvent event = current.nameEvent;
+		long nanos = endNanos - startNanos;
+		if (event != null && (nanos >= nameThresholdNanos || status == OPSIN_RESULT_STATUS.FAILURE) && event.isEnabled()) {
+			int slowestStage = 0;
+			for (int i = 1; i < nanosPerStage.length; i++) {
+				if (nanosPerStage[i] > nanosPerStage[slowestStage]) {
+					slowestStage = i;
+				}
+			}
+			event.name = name;
+			event.status = status.toString();
+			event.allocatedBytes = allocatedBytes;
+			event.parseCount = parseCount;
+			event.successfulParseIndex = successfulParseIndex;
+			event.slowestStage = ParseStage.values()[slowestStage].toString();
+			event.slowestStageDuration = nanosPerStage[slowestStage];
+			event.commit();
+		}
+		current.nameEvent = null;
+		//stages that were started but not completed e.g. due to an exception
+		Arrays.fill(current.stageEvents, null);
+		Arrays.fill(nanosPerStage, 0);
+	}
+}
@@ -0,0 +1,48 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for the interpretation of a single chemical name, see {@link JfrParseListener}
+ */
+@Name(NameParseEvent.NAME)
+@Label("OPSIN Name Parse")
+@Category("OPSIN")
+@Description("A chemical name that was slow to interpret or could not be interpreted")
+@StackTrace(false)
+class NameParseEvent extends jdk.jfr.Event {
+
+	static final String NAME = "uk.ac.cam.ch.wwmm.opsin.NameParse";
+
+	@Label("Name")
+	String name;
+
+	@Label("Status")
+	String status;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+
+	@Label("Parses")
+	@Description("Number of parses generated for the name")
+	int parseCount;
+
+	@Label("Successful Parse Index")
+	@Description("Index of the parse the structure was generated from, -1 if none")
+	int successfulParseIndex;
+
+	@Label("Slowest Stage")
+	@Description("The stage in which most time was spent, excluding time in stages nested within it")
+	String slowestStage;
+
+	@Label("Slowest Stage Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long slowestStageDuration;
+}
@@ -0,0 +1,28 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a single slow stage e.g. numbering of a fused ring system or CIP ordering, see {@link JfrParseListener}
+ */
+@Name(ParseStageEvent.NAME)
+@Label("OPSIN Parse Stage")
+@Category("OPSIN")
+@Description("A stage of interpreting a chemical name that was slow")
+@StackTrace(false)
+class ParseStageEvent extends jdk.jfr.Event {
+
+	static final String NAME = "uk.ac.cam.ch.wwmm.opsin.ParseStage";
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+}
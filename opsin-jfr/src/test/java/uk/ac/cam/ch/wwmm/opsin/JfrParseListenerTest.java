@@ -0,0 +1,106 @@
+package uk.ac.cam.ch.wwmm.opsin;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrParseListenerTest {
+
+	private static NameToStructure n2s;
+
+	@BeforeClass
+	public static void setup() {
+		n2s = NameToStructure.getInstance();
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		n2s = null;
+	}
+
+	@Test
+	public void testNameAndStageEvents() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		n2sConfig.setParseListener(new JfrParseListener());
+		List<RecordedEvent> events = record(n2sConfig, "(2R)-butan-2-ol", "notachemicalname");
+
+		List<RecordedEvent> nameEvents = filter(events, NameParseEvent.NAME);
+		assertEquals(2, nameEvents.size());
+		RecordedEvent success = nameEvents.get(0);
+		assertEquals("(2R)-butan-2-ol", success.getString("name"));
+		assertEquals("SUCCESS", success.getString("status"));
+		assertEquals(0, success.getInt("successfulParseIndex"));
+		assertTrue(success.getInt("parseCount") > 0);
+		assertNotNull(success.getString("slowestStage"));
+		assertTrue("Event should span the interpretation of the name", success.getDuration().toNanos() > 0);
+		assertTrue(success.getLong("slowestStageDuration") > 0);
+
+		RecordedEvent failure = nameEvents.get(1);
+		assertEquals("notachemicalname", failure.getString("name"));
+		assertEquals("FAILURE", failure.getString("status"));
+		assertEquals(0, failure.getInt("parseCount"));
+		assertEquals(-1, failure.getInt("successfulParseIndex"));
+
+		List<String> stages = new ArrayList<>();
+		for (RecordedEvent stageEvent : filter(events, ParseStageEvent.NAME)) {
+			stages.add(stageEvent.getString("stage"));
+			assertTrue("Event should span the stage", stageEvent.getDuration().toNanos() > 0);
+		}
+		assertTrue(stages.contains(ParseStage.PARSING.toString()));
+		assertTrue(stages.contains(ParseStage.CIP_ORDERING.toString()));
+	}
+
+	@Test
+	public void testThresholds() throws IOException {
+		NameToStructureConfig n2sConfig = NameToStructureConfig.getDefaultConfigInstance();
+		n2sConfig.setParseListener(new JfrParseListener(Long.MAX_VALUE, Long.MAX_VALUE));
+		List<RecordedEvent> events = record(n2sConfig, "ethane", "notachemicalname");
+
+		List<RecordedEvent> nameEvents = filter(events, NameParseEvent.NAME);
+		assertEquals("Only failing names should be recorded", 1, nameEvents.size());
+		assertEquals("notachemicalname", nameEvents.get(0).getString("name"));
+		assertEquals(0, filter(events, ParseStageEvent.NAME).size());
+	}
+
+	private static List<RecordedEvent> record(NameToStructureConfig n2sConfig, String... names) throws IOException {
+		Path file = Files.createTempFile("opsin", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable(NameParseEvent.NAME);
+				recording.enable(ParseStageEvent.NAME);
+				recording.start();
+				for (String name : names) {
+					n2s.parseChemicalName(name, n2sConfig);
+				}
+				recording.stop();
+				recording.dump(file);
+			}
+			return RecordingFile.readAllEvents(file);
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<RecordedEvent> filter(List<RecordedEvent> events, String eventName) {
+		List<RecordedEvent> filtered = new ArrayList<>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(eventName)) {
+				filtered.add(event);
+			}
+		}
+		return filtered;
+	}
+}